@@ -7,6 +7,13 @@ java {
     targetCompatibility = JavaVersion.VERSION_1_8
 }
 
+// The sources use javafx.util.Pair and the flight recorder API (jdk.jfr), so they need a JDK 8 with JavaFX and jdk.jfr
+// (8u272 or later), e.g. a Zulu FX or Liberica Full JDK. The compilation fails early on any other one.
+val requiredJdkClasses = mapOf(
+    "javafx.util.Pair" to "JavaFX",
+    "jdk.jfr.Event" to "the flight recorder API (8u272 or later)"
+)
+
 repositories {
     mavenCentral()
 }
@@ -22,8 +29,36 @@ dependencies {
 }
 
 tasks {
+    "compileJava"(JavaCompile::class) {
+        doFirst {
+            for ((className, feature) in requiredJdkClasses) {
+                try {
+                    Class.forName(className, false, ClassLoader.getSystemClassLoader())
+                } catch (e: ClassNotFoundException) {
+                    throw GradleException("Building needs a JDK 8 with $feature, which the JDK " +
+                        System.getProperty("java.version") + " in " + System.getProperty("java.home") + " lacks.")
+                }
+            }
+        }
+    }
+
     // Use the built-in JUnit support of Gradle.
     "test"(Test::class) {
-        useJUnitPlatform()
+        useJUnitPlatform {
+            excludeTags("benchmark")
+        }
+    }
+
+    // The local benchmarks only run on demand, with ./gradlew benchmark
+    register<Test>("benchmark") {
+        description = "Runs the local benchmarks."
+        group = "verification"
+        testClassesDirs = sourceSets["test"].output.classesDirs
+        classpath = sourceSets["test"].runtimeClasspath
+        // as a deployment of the HTTP server should
+        systemProperty("sun.net.httpserver.nodelay", "true")
+        useJUnitPlatform {
+            includeTags("benchmark")
+        }
     }
 }
\ No newline at end of file
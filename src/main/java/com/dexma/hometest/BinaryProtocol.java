@@ -0,0 +1,207 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * BinaryProtocol class - Frames and encoding of the binary protocol spoken by {@link VendingMachineTcpServer} and
+ * {@link VendingMachineTcpClient}.
+ * <p>
+ * Every request and response is a frame of a big-endian int with the length of the rest, followed by an int request id:
+ * <pre>
+ * request   int length | int request id | byte operation | arguments
+ * response  int length | int request id | byte status    | result, or a short length and a UTF-8 message if failed
+ * </pre>
+ * The response carries the id of its request, so a client may send many requests without waiting and match the
+ * responses as they come, which are sent in the order of the requests of each connection. Products and cash items are
+ * the byte ordinal of their {@link Beverage} or {@link Coin}, amounts are a long of cents, quantities of items are a byte
+ * count followed by a byte ordinal and an int quantity each, and lists of items a byte count followed by the ordinals.
+ */
+final class BinaryProtocol
+{
+    // operations
+    static final byte SELECT_PRODUCT = 1;
+    static final byte INSERT_CASH = 2;
+    static final byte CONFIRM_PURCHASE = 3;
+    static final byte REFUND = 4;
+    static final byte GET_ALLOWED_CASH_ITEMS = 5;
+    static final byte GET_AVAILABLE_PRODUCTS = 6;
+    static final byte REFILL_PRODUCTS = 7;
+    static final byte REFILL_CASH = 8;
+    static final byte GET_PRODUCT_STOCK_STATUS = 9;
+    static final byte GET_CASH_STOCK_STATUS = 10;
+
+    // statuses
+    static final byte OK = 0;
+    // a VendingMachineException, with its message
+    static final byte FAILED = 1;
+    // a request that couldn't be decoded, with a message
+    static final byte BAD_REQUEST = 2;
+
+    static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+    static final int MAX_FRAME_SIZE = 512;
+    static final int MAX_MESSAGE_SIZE = 256;
+
+    private static final Beverage[] PRODUCTS = Beverage.getValidBeverages();
+    private static final Coin[] CASH_ITEMS = Coin.getValidCoins();
+
+    private BinaryProtocol()
+    {
+    }
+
+    /**
+     * Starts a frame in {@code buffer} with its request id and operation or status.
+     *
+     * @return the position of the frame, to be passed to {@link #endFrame}
+     */
+    static int beginFrame(final ByteBuffer buffer, final int requestId, final byte operationOrStatus)
+    {
+        final int start = buffer.position();
+        buffer.putInt(0).putInt(requestId).put(operationOrStatus);
+        return start;
+    }
+
+    static void endFrame(final ByteBuffer buffer, final int start)
+    {
+        buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+    }
+
+    static void putAmount(final ByteBuffer buffer, final BigDecimal amount)
+    {
+        buffer.putLong(Cents.toCents(amount));
+    }
+
+    static BigDecimal getAmount(final ByteBuffer buffer)
+    {
+        return BigDecimal.valueOf(buffer.getLong(), 2);
+    }
+
+    static void putProduct(final ByteBuffer buffer, final Product product)
+    {
+        buffer.put((byte) ((Beverage) product).ordinal());
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the ordinal isn't a valid product
+     */
+    static Product getProduct(final ByteBuffer buffer)
+    {
+        return PRODUCTS[buffer.get()];
+    }
+
+    static void putCash(final ByteBuffer buffer, final Cash cash)
+    {
+        buffer.put((byte) ((Coin) cash).ordinal());
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the ordinal isn't a valid cash item
+     */
+    static Cash getCash(final ByteBuffer buffer)
+    {
+        return CASH_ITEMS[buffer.get()];
+    }
+
+    /**
+     * Puts {@code quantities} by item, or a count of -1 for null.
+     */
+    static void putQuantities(final ByteBuffer buffer, final Map<?, Integer> quantities)
+    {
+        if (quantities == null)
+        {
+            buffer.put((byte) -1);
+            return;
+        }
+        buffer.put((byte) quantities.size());
+        for (final Map.Entry<?, Integer> entry : quantities.entrySet())
+        {
+            buffer.put((byte) ((Enum<?>) entry.getKey()).ordinal()).putInt(entry.getValue());
+        }
+    }
+
+    static Map<Product, Integer> getProductQuantities(final ByteBuffer buffer)
+    {
+        final int count = buffer.get();
+        final Map<Product, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            quantities.put(getProduct(buffer), buffer.getInt());
+        }
+        return quantities;
+    }
+
+    static Map<Cash, Integer> getCashQuantities(final ByteBuffer buffer)
+    {
+        final int count = buffer.get();
+        if (count < 0)
+        {
+            return null;
+        }
+        final Map<Cash, Integer> quantities = new HashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            quantities.put(getCash(buffer), buffer.getInt());
+        }
+        return quantities;
+    }
+
+    static void putItems(final ByteBuffer buffer, final List<?> items)
+    {
+        buffer.put((byte) items.size());
+        for (final Object item : items)
+        {
+            buffer.put((byte) ((Enum<?>) item).ordinal());
+        }
+    }
+
+    static List<Product> getProducts(final ByteBuffer buffer)
+    {
+        final int count = buffer.get();
+        final List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            products.add(getProduct(buffer));
+        }
+        return products;
+    }
+
+    static List<Cash> getCashItems(final ByteBuffer buffer)
+    {
+        final int count = buffer.get();
+        final List<Cash> cashItems = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            cashItems.add(getCash(buffer));
+        }
+        return cashItems;
+    }
+
+    /**
+     * Puts {@code message} truncated to {@link #MAX_MESSAGE_SIZE} bytes.
+     */
+    static void putMessage(final ByteBuffer buffer, final String message)
+    {
+        final byte[] bytes = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        final int length = Math.min(bytes.length, MAX_MESSAGE_SIZE);
+        buffer.putShort((short) length).put(bytes, 0, length);
+    }
+
+    static String getMessage(final ByteBuffer buffer)
+    {
+        final byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,192 @@
+package com.dexma.hometest;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.dexma.hometest.error.VendingMachineException;
+
+
+/**
+ * IdempotencyTable class - Remembers the results of the operations run with an idempotency key, so that a retry with the
+ * same key returns the same result without running the operation again.
+ * <p>
+ * The results are kept in insertion order for a fixed time, so the expired ones are always the eldest and are dropped in
+ * constant time as new keys come. The table never holds more than {@code capacity} keys of at most
+ * {@link #MAX_KEY_LENGTH} characters: when it is full the eldest completed key is dropped even if it hasn't expired, and
+ * a new key is rejected if all of them are still running. A retry arriving while its operation is still running waits
+ * for its result, and a key can't be reused with other arguments. An operation that fails isn't remembered so that it
+ * may be retried, which relies on the operations of {@link VendingMachineApi} rolling back whatever they changed before
+ * failing (also when their journal record can't be made durable).
+ */
+final class IdempotencyTable
+{
+    static final int MAX_KEY_LENGTH = 64;
+
+    private final int capacity;
+    private final long timeToLiveMillis;
+    private final LongSupplier clock;
+    // guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    IdempotencyTable(final int capacity, final long timeToLiveMillis)
+    {
+        this(capacity, timeToLiveMillis, System::currentTimeMillis);
+    }
+
+    IdempotencyTable(final int capacity, final long timeToLiveMillis, final LongSupplier clock)
+    {
+        this.capacity = capacity;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs {@code operation} with {@code arguments} unless it was already run with {@code idempotencyKey} and hasn't
+     * expired, in which case its result is returned instead. The keys of each kind of {@code operationName} and of each
+     * {@code scope} (e.g. the session the operation belongs to) are apart.
+     *
+     * @throws VendingMachineException if the key was already used with other arguments, or the table is full of
+     * operations still running
+     */
+    @SuppressWarnings("unchecked")
+    <T> T execute(final String operationName,
+                  final long scope,
+                  final String idempotencyKey,
+                  final Object arguments,
+                  final Supplier<T> operation)
+    {
+        validateKey(idempotencyKey);
+        final String key = operationName + '/' + scope + '/' + idempotencyKey;
+        final Entry entry;
+        final CompletableFuture<Object> previous;
+        synchronized (this)
+        {
+            final long now = clock.getAsLong();
+            dropExpired(now);
+            final Entry existing = entries.get(key);
+            if (existing == null)
+            {
+                if (entries.size() >= capacity && !dropEldestCompleted())
+                {
+                    throw new VendingMachineException("Too many operations with an idempotency key are running, try again later.");
+                }
+                entry = new Entry(now + timeToLiveMillis, arguments);
+                entries.put(key, entry);
+                previous = null;
+            }
+            else if (!Objects.equals(existing.arguments, arguments))
+            {
+                throw new VendingMachineException("The idempotency key " + idempotencyKey + " was already used with other arguments.");
+            }
+            else
+            {
+                entry = null;
+                previous = existing.result;
+            }
+        }
+
+        if (previous != null)
+        {
+            try
+            {
+                return (T) previous.join();
+            }
+            catch (final CompletionException ex)
+            {
+                // the first run failed while this retry waited for it
+                if (ex.getCause() instanceof Error)
+                {
+                    throw (Error) ex.getCause();
+                }
+                throw (RuntimeException) ex.getCause();
+            }
+        }
+
+        try
+        {
+            final T result = operation.get();
+            entry.result.complete(result);
+            return result;
+        }
+        catch (final RuntimeException | Error ex)
+        {
+            synchronized (this)
+            {
+                entries.remove(key, entry);
+            }
+            entry.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private static void validateKey(final String key)
+    {
+        if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH)
+        {
+            throw new VendingMachineException("An idempotency key of 1 to " + MAX_KEY_LENGTH + " characters should be provided.");
+        }
+    }
+
+    private void dropExpired(final long now)
+    {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            final Entry entry = iterator.next();
+            if (entry.expiresAtMillis > now)
+            {
+                return;
+            }
+            // a running operation is kept until it completes, so that its retries still wait for it
+            if (entry.result.isDone())
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return true if a completed entry was dropped, false if all of them are still running
+     */
+    private boolean dropEldestCompleted()
+    {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext())
+        {
+            if (iterator.next().getValue().result.isDone())
+            {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Entry class - The result, maybe still to come, of the operation run with a key and its arguments, and when it
+     * expires.
+     */
+    private static final class Entry
+    {
+        private final long expiresAtMillis;
+        private final Object arguments;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Entry(final long expiresAtMillis, final Object arguments)
+        {
+            this.expiresAtMillis = expiresAtMillis;
+            this.arguments = arguments;
+        }
+    }
+}
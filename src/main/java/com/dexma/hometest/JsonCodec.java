@@ -0,0 +1,210 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * JsonCodec class - The little JSON spoken by {@link VendingMachineHttpServer}, written and read by hand.
+ * <p>
+ * Products and cash items are written by their enum name, amounts as plain decimal numbers and stocks as objects of
+ * quantities by name. The only JSON read is an object of quantities by name, the body of the refill operations.
+ */
+final class JsonCodec
+{
+    private JsonCodec()
+    {
+    }
+
+    static StringBuilder appendName(final StringBuilder json, final Object item)
+    {
+        return appendString(json, ((Enum<?>) item).name());
+    }
+
+    static StringBuilder appendString(final StringBuilder json, final String value)
+    {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char character = value.charAt(i);
+            if (character == '"' || character == '\\')
+            {
+                json.append('\\').append(character);
+            }
+            else if (character < 0x20)
+            {
+                json.append(String.format("\\u%04x", (int) character));
+            }
+            else
+            {
+                json.append(character);
+            }
+        }
+        return json.append('"');
+    }
+
+    static StringBuilder appendAmount(final StringBuilder json, final BigDecimal amount)
+    {
+        return amount == null ? json.append("null") : json.append(amount.toPlainString());
+    }
+
+    /**
+     * Appends {@code quantities} as an object of quantities by item name, or null.
+     */
+    static StringBuilder appendQuantities(final StringBuilder json, final Map<?, Integer> quantities)
+    {
+        if (quantities == null)
+        {
+            return json.append("null");
+        }
+        json.append('{');
+        boolean first = true;
+        for (final Map.Entry<?, Integer> entry : quantities.entrySet())
+        {
+            if (!first)
+            {
+                json.append(',');
+            }
+            appendName(json, entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return json.append('}');
+    }
+
+    static StringBuilder appendNames(final StringBuilder json, final Collection<?> items)
+    {
+        json.append('[');
+        boolean first = true;
+        for (final Object item : items)
+        {
+            if (!first)
+            {
+                json.append(',');
+            }
+            appendName(json, item);
+            first = false;
+        }
+        return json.append(']');
+    }
+
+    /**
+     * Reads an object of integer quantities by name, such as {@code {"COKE": 3, "WATER": 1}}.
+     *
+     * @throws IllegalArgumentException if {@code json} isn't such an object
+     */
+    static Map<String, Integer> readQuantities(final String json)
+    {
+        final Reader reader = new Reader(json);
+        final Map<String, Integer> quantities = new LinkedHashMap<>();
+        reader.expect('{');
+        if (!reader.consume('}'))
+        {
+            do
+            {
+                final String name = reader.readString();
+                reader.expect(':');
+                quantities.put(name, reader.readInt());
+            }
+            while (reader.consume(','));
+            reader.expect('}');
+        }
+        reader.expectEnd();
+        return quantities;
+    }
+
+    /**
+     * Reader class - Cursor over the characters of a JSON text, skipping whitespace between tokens.
+     */
+    private static final class Reader
+    {
+        private final String json;
+        private int position;
+
+        private Reader(final String json)
+        {
+            this.json = json;
+        }
+
+        private void skipWhitespace()
+        {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position)))
+            {
+                position++;
+            }
+        }
+
+        private boolean consume(final char expected)
+        {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == expected)
+            {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(final char expected)
+        {
+            if (!consume(expected))
+            {
+                throw malformed("'" + expected + "' expected");
+            }
+        }
+
+        private void expectEnd()
+        {
+            skipWhitespace();
+            if (position != json.length())
+            {
+                throw malformed("end expected");
+            }
+        }
+
+        private String readString()
+        {
+            expect('"');
+            final int end = json.indexOf('"', position);
+            if (end < 0)
+            {
+                throw malformed("unterminated string");
+            }
+            final String value = json.substring(position, end);
+            if (value.indexOf('\\') >= 0)
+            {
+                throw malformed("escapes are not supported in names");
+            }
+            position = end + 1;
+            return value;
+        }
+
+        private int readInt()
+        {
+            skipWhitespace();
+            final int start = position;
+            if (position < json.length() && json.charAt(position) == '-')
+            {
+                position++;
+            }
+            while (position < json.length() && Character.isDigit(json.charAt(position)))
+            {
+                position++;
+            }
+            try
+            {
+                return Integer.parseInt(json.substring(start, position));
+            }
+            catch (final NumberFormatException ex)
+            {
+                throw malformed("integer expected");
+            }
+        }
+
+        private IllegalArgumentException malformed(final String reason)
+        {
+            return new IllegalArgumentException("Malformed JSON at " + position + ": " + reason + ".");
+        }
+    }
+}
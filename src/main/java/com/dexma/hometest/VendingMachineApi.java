@@ -1,34 +1,133 @@
 package com.dexma.hometest;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+import com.dexma.hometest.archive.SalesArchive;
 import com.dexma.hometest.business.CashManager;
 import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
 import com.dexma.hometest.domain.BalanceResult;
 import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.MappedStockRegion;
 import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.StockSnapshot;
 import com.dexma.hometest.error.CashManagerException;
+import com.dexma.hometest.error.JournalException;
 import com.dexma.hometest.error.ProductManagerException;
+import com.dexma.hometest.error.SalesArchiveException;
 import com.dexma.hometest.error.VendingMachineException;
+import com.dexma.hometest.events.EventOutcome;
+import com.dexma.hometest.events.PurchaseEvent;
+import com.dexma.hometest.events.VendingMachineEvents;
+import com.dexma.hometest.journal.Journal;
+import com.dexma.hometest.journal.JournalState;
+import com.dexma.hometest.stats.FailureCause;
+import com.dexma.hometest.stats.MeteredOperation;
+import com.dexma.hometest.stats.OperationMetrics;
+import com.dexma.hometest.stats.SalesStatistics;
 
 import javafx.util.Pair;
 
 
 /**
  * VendingMachineApi class - Contains the implementation of all the user and supplier operations in a Vending Machine.
+ * <p>
+ * The user operations without a session serve one customer at a time. The session operations serve several customers
+ * at the same time over the same stock, which then should be a {@link com.dexma.hometest.domain.ConcurrentStock} for
+ * both the products and the cash. Purchases are committed all or nothing in both cases.
+ * <p>
+ * Every operation changing the state is recorded in a {@link Journal} and only returns once the record is durable. When
+ * the record can't be made durable the change is rolled back and the operation fails with a
+ * {@link VendingMachineException}, so that the state never gets ahead of the journal. The
+ * {@link VendingMachineEngine} applies its commands in batches instead, between {@link #beginBatch()} and
+ * {@link #endBatch()}, which waits once for the records of the whole batch.
  */
-public class VendingMachineApi implements VendingMachineUserOperations, VendingMachineSupplierOperations
+public class VendingMachineApi implements VendingMachineUserOperations, VendingMachineSupplierOperations, VendingMachineSessionOperations
 {
+    static final int IDEMPOTENCY_CAPACITY = 10_000;
+    static final long IDEMPOTENCY_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
     private final ProductManager productManager;
     private final CashManager cashManager;
+    private final Journal journal;
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final Map<Long, Session> recoveredSessions = new HashMap<>();
+    private final SalesStatistics salesStatistics = new SalesStatistics();
+    private final OperationMetrics operationMetrics = new OperationMetrics();
+    private final IdempotencyTable idempotentOperations = new IdempotencyTable(IDEMPOTENCY_CAPACITY, IDEMPOTENCY_TIME_TO_LIVE_MILLIS);
+    private volatile MappedStockRegion stockRegion;
+    private volatile SalesArchive salesArchive;
+    private volatile SalesArchiveException salesArchiveFailure;
+    private volatile RuntimeException completionFailure;
+    // open while the engine's writer applies a batch of commands, only touched by that thread
+    private OperationBatch batch;
 
     VendingMachineApi(final ProductManager productManager, final CashManager cashManager)
+    {
+        this(productManager, cashManager, Journal.NONE);
+    }
+
+    /**
+     * Creates a vending machine recording its operations in {@code journal}. The state recovered by the journal is
+     * restored first, so both managers should start with an empty stock.
+     */
+    VendingMachineApi(final ProductManager productManager, final CashManager cashManager, final Journal journal)
     {
         this.productManager = productManager;
         this.cashManager = cashManager;
+        this.journal = journal;
+        final JournalState recoveredState = journal.getRecoveredState();
+        if (!recoveredState.isEmpty())
+        {
+            restore(recoveredState);
+        }
+    }
+
+    private void restore(final JournalState state)
+    {
+        final Map<Product, Integer> productStock = state.getProductStock();
+        if (!productStock.isEmpty())
+        {
+            productManager.insertProductItemsInStock(productStock);
+        }
+        final Map<Cash, Integer> cashStock = state.getCashStock();
+        if (!cashStock.isEmpty())
+        {
+            cashManager.insertCashItemsInStock(cashStock);
+        }
+
+        sessionIds.set(state.getLastSessionId());
+        for (final JournalState.RecoveredSession recoveredSession : state.getSessions())
+        {
+            if (recoveredSession.getId() == Journal.MACHINE_SESSION_ID)
+            {
+                cashManager.restoreCurrentBalance(recoveredSession.getCurrentBalance());
+                if (recoveredSession.getSelectedProduct() != null)
+                {
+                    productManager.setSelectedProduct(recoveredSession.getSelectedProduct());
+                }
+            }
+            else
+            {
+                final Session session = new Session(recoveredSession.getId());
+                cashManager.restoreCurrentBalance(session, recoveredSession.getCurrentBalance());
+                if (recoveredSession.getSelectedProduct() != null)
+                {
+                    productManager.setSelectedProduct(session, recoveredSession.getSelectedProduct());
+                }
+                recoveredSessions.put(session.getId(), session);
+            }
+        }
     }
 
     /***
@@ -38,26 +137,46 @@ public class VendingMachineApi implements VendingMachineUserOperations, VendingM
     @Override
     public void refillProducts(final Map<Product, Integer> productMap) throws VendingMachineException
     {
+        final long startNanos = System.nanoTime();
         try
         {
-            productManager.insertProductItemsInStock(productMap);
+            try
+            {
+                productManager.insertProductItemsInStock(productMap);
+            }
+            catch (final ProductManagerException ex)
+            {
+                throw failure(FailureCause.INVALID_PRODUCT, ex.getMessage(), ex);
+            }
+            commit(() -> journal.recordRefillProducts(productMap), () -> productManager.removeProductItemsFromStock(productMap));
+            stockChanged();
         }
-        catch (final ProductManagerException ex)
+        finally
         {
-            throw new VendingMachineException(ex.getMessage(), ex);
+            operationMetrics.recordLatency(MeteredOperation.REFILL_PRODUCTS, System.nanoTime() - startNanos);
         }
     }
 
     @Override
     public void refillCash(final Map<Cash, Integer> cashMap) throws VendingMachineException
     {
+        final long startNanos = System.nanoTime();
         try
         {
-            cashManager.insertCashItemsInStock(cashMap);
+            try
+            {
+                cashManager.insertCashItemsInStock(cashMap);
+            }
+            catch (final CashManagerException ex)
+            {
+                throw failure(FailureCause.INVALID_CASH, ex.getMessage(), ex);
+            }
+            commit(() -> journal.recordRefillCash(cashMap), () -> cashManager.removeCashItemsFromStock(cashMap));
+            stockChanged();
         }
-        catch (final CashManagerException ex)
+        finally
         {
-            throw new VendingMachineException(ex.getMessage(), ex);
+            operationMetrics.recordLatency(MeteredOperation.REFILL_CASH, System.nanoTime() - startNanos);
         }
     }
 
@@ -73,6 +192,18 @@ public class VendingMachineApi implements VendingMachineUserOperations, VendingM
         return cashManager.getCashStock();
     }
 
+    @Override
+    public StockSnapshot<Product> getProductStockSnapshot()
+    {
+        return productManager.getProductStockSnapshot();
+    }
+
+    @Override
+    public StockSnapshot<Cash> getCashStockSnapshot()
+    {
+        return cashManager.getCashStockSnapshot();
+    }
+
     /***
      * User operations
      */
@@ -80,84 +211,151 @@ public class VendingMachineApi implements VendingMachineUserOperations, VendingM
     @Override
     public Map<Cash, Integer> refund()
     {
-        Map<Cash, Integer> refund = null;
-        if (cashManager.hasCurrentBalance())
+        final long startNanos = System.nanoTime();
+        try
+        {
+            if (!cashManager.hasCurrentBalance())
+            {
+                return null;
+            }
+            final BigDecimal balance = cashManager.getCurrentBalance();
+            final Map<Cash, Integer> insertedCash = cashManager.getInsertedCash();
+            final Map<Cash, Integer> refund = cashManager.calculateRefund();
+            if (refund != null)
+            {
+                commit(() -> journal.recordRefund(Journal.MACHINE_SESSION_ID, refund), () ->
+                {
+                    cashManager.insertCashItemsInStock(refund);
+                    cashManager.restoreCurrentBalance(balance, insertedCash);
+                });
+                stockChanged();
+            }
+            return refund;
+        }
+        finally
         {
-            refund = cashManager.calculateRefund();
+            operationMetrics.recordLatency(MeteredOperation.REFUND, System.nanoTime() - startNanos);
         }
-        return refund;
     }
 
     @Override
     public BigDecimal selectProduct(final Product product)
+    {
+        final long startNanos = System.nanoTime();
+        try
+        {
+            validateProductToSelect(product);
+
+            final Product previousProduct = productManager.getSelectedProduct();
+            productManager.setSelectedProduct(product);
+            commit(() -> journal.recordSelectProduct(Journal.MACHINE_SESSION_ID, product),
+                () -> productManager.setSelectedProduct(previousProduct));
+            return productManager.getPriceOfSelectedProduct();
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.SELECT_PRODUCT, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void validateProductToSelect(final Product product)
     {
         if (!productManager.isProductItemAllowed(product))
         {
-            throw new VendingMachineException("A valid product item should be provided.");
+            throw failure(FailureCause.INVALID_PRODUCT, "A valid product item should be provided.");
         }
 
         if (!productManager.isProductItemAvailable(product))
         {
-            throw new VendingMachineException("Product " + product.getName() + " is not available in stock.");
+            throw failure(FailureCause.OUT_OF_STOCK, "Product " + product.getName() + " is not available in stock.");
         }
-
-        productManager.setSelectedProduct(product);
-        return productManager.getPriceOfSelectedProduct();
     }
 
     @Override
     public BigDecimal insertCash(final Cash cash) throws VendingMachineException
     {
+        final long startNanos = System.nanoTime();
         try
         {
-            return cashManager.receiveCash(cash);
+            final BigDecimal previousBalance = cashManager.getCurrentBalance();
+            final Map<Cash, Integer> previousInsertedCash = cashManager.getInsertedCash();
+            final BigDecimal currentBalance;
+            try
+            {
+                currentBalance = cashManager.receiveCash(cash);
+            }
+            catch (final CashManagerException e)
+            {
+                throw failure(FailureCause.INVALID_CASH, "A valid cash item should be provided.");
+            }
+            commit(() -> journal.recordInsertCash(Journal.MACHINE_SESSION_ID, cash), () ->
+            {
+                cashManager.removeCashItemsFromStock(Collections.singletonMap(cash, 1));
+                cashManager.restoreCurrentBalance(previousBalance, previousInsertedCash);
+            });
+            stockChanged();
+            return currentBalance;
         }
-        catch (final CashManagerException e)
+        finally
         {
-            throw new VendingMachineException("A valid cash item should be provided.");
+            operationMetrics.recordLatency(MeteredOperation.INSERT_CASH, System.nanoTime() - startNanos);
         }
     }
 
     @Override
     public Pair<Product, Map<Cash, Integer>> confirmPurchase()
     {
-        if (!productManager.isProductSelected())
-        {
-            throw new VendingMachineException("Before confirm a purchase one product should be selected first.");
-        }
-
-        final Product selectedProduct = productManager.getSelectedProduct();
-        final BigDecimal productPrice = selectedProduct.getPrice();
-        final BalanceResult balanceResult = cashManager.isPossibleToPurchaseProduct(productPrice);
+        final long startNanos = System.nanoTime();
+        final boolean recording = VendingMachineEvents.isRecording();
+        final Product requestedProduct = recording ? productManager.getSelectedProduct() : null;
+        final PurchaseEvent flightEvent = recording ? VendingMachineEvents.beginPurchase() : null;
         Pair<Product, Map<Cash, Integer>> purchaseResult = null;
-        switch (balanceResult)
+        try
         {
-            case BELOW_AMOUNT:
-            {
-                // not enough money
-                throw new VendingMachineException("Current balance is not enough to buy Product " + selectedProduct.getName() + ".");
-            }
-            case EXACT_AMOUNT:
+            if (!productManager.isProductSelected())
             {
-                // balance equal to price
-                purchaseResult = createPurchaseResponse(selectedProduct, Collections.emptyMap());
-                break;
+                throw failure(FailureCause.NO_PRODUCT_SELECTED, "Before confirm a purchase one product should be selected first.");
             }
-            case ABOVE_AMOUNT:
+
+            final Product selectedProduct = productManager.getSelectedProduct();
+            final BigDecimal productPrice = selectedProduct.getPrice();
+            final BalanceResult balanceResult = cashManager.isPossibleToPurchaseProduct(productPrice);
+            switch (balanceResult)
             {
-                // more than enough
-                final BigDecimal changeToRefund = cashManager.calculateRemainingChange(productPrice);
-                final Map<Cash, Integer> change = cashManager.getCashItemsForChange(changeToRefund);
-                if (change == null)
+                case BELOW_AMOUNT:
                 {
-                    throw new VendingMachineException("Not sufficient change to provide.");
+                    // not enough money
+                    throw failure(FailureCause.INSUFFICIENT_BALANCE, "Current balance is not enough to buy Product " + selectedProduct.getName() + ".");
+                }
+                case EXACT_AMOUNT:
+                {
+                    // balance equal to price
+                    purchaseResult = createPurchaseResponse(selectedProduct, Collections.emptyMap());
+                    break;
+                }
+                case ABOVE_AMOUNT:
+                {
+                    // more than enough
+                    final BigDecimal changeToRefund = cashManager.calculateRemainingChange(productPrice);
+                    final long changeStartNanos = System.nanoTime();
+                    final Map<Cash, Integer> change = cashManager.getCashItemsForChange(changeToRefund);
+                    operationMetrics.recordLatency(MeteredOperation.CHANGE_COMPUTATION, System.nanoTime() - changeStartNanos);
+                    if (change == null)
+                    {
+                        throw failure(FailureCause.NO_CHANGE, "Not sufficient change to provide.");
+                    }
+                    purchaseResult = createPurchaseResponse(selectedProduct, change);
+                    break;
                 }
-                purchaseResult = createPurchaseResponse(selectedProduct, change);
-                break;
-            }
 
+            }
+            return purchaseResult;
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.CONFIRM_PURCHASE, System.nanoTime() - startNanos);
+            purchaseFinished(flightEvent, startNanos, requestedProduct, purchaseResult);
         }
-        return purchaseResult;
     }
 
     @Override
@@ -172,14 +370,541 @@ public class VendingMachineApi implements VendingMachineUserOperations, VendingM
         return productManager.getAvailableProducts();
     }
 
+    /***
+     * Session operations
+     */
+
+    @Override
+    public Session openSession()
+    {
+        return new Session(sessionIds.incrementAndGet());
+    }
+
+    @Override
+    public Map<Cash, Integer> refund(final Session session)
+    {
+        final long startNanos = System.nanoTime();
+        try
+        {
+            validateSession(session);
+            // the session is held until its record is durable, so that a rollback can't undo a later operation
+            synchronized (session)
+            {
+                if (!session.hasCurrentBalance())
+                {
+                    return null;
+                }
+                final BigDecimal balance = session.getCurrentBalance();
+                final Map<Cash, Integer> insertedCash = session.getInsertedCash();
+                final Map<Cash, Integer> refund = cashManager.calculateRefund(session);
+                if (refund != null)
+                {
+                    commit(() -> journal.recordRefund(session.getId(), refund), () ->
+                    {
+                        cashManager.insertCashItemsInStock(refund);
+                        cashManager.restoreCurrentBalance(session, balance, insertedCash);
+                    });
+                    stockChanged();
+                }
+                return refund;
+            }
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.REFUND, System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public BigDecimal selectProduct(final Session session, final Product product)
+    {
+        final long startNanos = System.nanoTime();
+        try
+        {
+            validateSession(session);
+            validateProductToSelect(product);
+            synchronized (session)
+            {
+                final Product previousProduct = session.getSelectedProduct();
+                productManager.setSelectedProduct(session, product);
+                commit(() -> journal.recordSelectProduct(session.getId(), product),
+                    () -> productManager.setSelectedProduct(session, previousProduct));
+                return productManager.getPriceOfSelectedProduct(session);
+            }
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.SELECT_PRODUCT, System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public BigDecimal insertCash(final Session session, final Cash cash)
+    {
+        final long startNanos = System.nanoTime();
+        try
+        {
+            validateSession(session);
+            final BigDecimal currentBalance;
+            // recorded while holding the session, so that its records keep the order of its operations
+            synchronized (session)
+            {
+                final BigDecimal previousBalance = session.getCurrentBalance();
+                final Map<Cash, Integer> previousInsertedCash = session.getInsertedCash();
+                try
+                {
+                    currentBalance = cashManager.receiveCash(session, cash);
+                }
+                catch (final CashManagerException e)
+                {
+                    throw failure(FailureCause.INVALID_CASH, "A valid cash item should be provided.");
+                }
+                commit(() -> journal.recordInsertCash(session.getId(), cash), () ->
+                {
+                    cashManager.removeCashItemsFromStock(Collections.singletonMap(cash, 1));
+                    cashManager.restoreCurrentBalance(session, previousBalance, previousInsertedCash);
+                });
+            }
+            stockChanged();
+            return currentBalance;
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.INSERT_CASH, System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public Pair<Product, Map<Cash, Integer>> confirmPurchase(final Session session)
+    {
+        final long startNanos = System.nanoTime();
+        final boolean recording = VendingMachineEvents.isRecording();
+        final Product requestedProduct = recording && session != null ? session.getSelectedProduct() : null;
+        final PurchaseEvent flightEvent = recording ? VendingMachineEvents.beginPurchase() : null;
+        Pair<Product, Map<Cash, Integer>> purchaseResult = null;
+        try
+        {
+            validateSession(session);
+            final Map<Cash, Integer> insertedCash;
+            synchronized (session)
+            {
+                if (!session.isProductSelected())
+                {
+                    throw failure(FailureCause.NO_PRODUCT_SELECTED, "Before confirm a purchase one product should be selected first.");
+                }
+
+                final Product selectedProduct = session.getSelectedProduct();
+                final BigDecimal productPrice = selectedProduct.getPrice();
+                if (cashManager.isPossibleToPurchaseProduct(session, productPrice) == BalanceResult.BELOW_AMOUNT)
+                {
+                    throw failure(FailureCause.INSUFFICIENT_BALANCE, "Current balance is not enough to buy Product " + selectedProduct.getName() + ".");
+                }
+
+                // all or nothing, as in createPurchaseResponse
+                takeProductItemFromStock(selectedProduct);
+                Map<Cash, Integer> change = null;
+                final long changeStartNanos = System.nanoTime();
+                try
+                {
+                    change = cashManager.takeCashItemsForChange(cashManager.calculateRemainingChange(session, productPrice));
+                }
+                finally
+                {
+                    operationMetrics.recordLatency(MeteredOperation.CHANGE_COMPUTATION, System.nanoTime() - changeStartNanos);
+                    if (change == null)
+                    {
+                        productManager.returnProductItemToStock(selectedProduct);
+                    }
+                }
+                if (change == null)
+                {
+                    throw failure(FailureCause.NO_CHANGE, "Not sufficient change to provide.");
+                }
+
+                final BigDecimal balance = session.getCurrentBalance();
+                insertedCash = session.getInsertedCash();
+                productManager.resetSelectedProduct(session);
+                cashManager.resetCurrentBalance(session);
+                final Map<Cash, Integer> takenChange = change;
+                commit(() -> journal.recordConfirmPurchase(session.getId(), selectedProduct, takenChange), () ->
+                {
+                    returnPurchaseToStock(selectedProduct, takenChange);
+                    productManager.setSelectedProduct(session, selectedProduct);
+                    cashManager.restoreCurrentBalance(session, balance, insertedCash);
+                });
+                purchaseResult = new Pair<>(selectedProduct, change);
+            }
+            stockChanged();
+            saleCompleted(purchaseResult.getKey(), insertedCash, purchaseResult.getValue());
+            return purchaseResult;
+        }
+        finally
+        {
+            operationMetrics.recordLatency(MeteredOperation.CONFIRM_PURCHASE, System.nanoTime() - startNanos);
+            purchaseFinished(flightEvent, startNanos, requestedProduct, purchaseResult);
+        }
+    }
+
+    private void validateSession(final Session session)
+    {
+        if (session == null)
+        {
+            throw failure(FailureCause.INVALID_SESSION, "A valid session should be provided.");
+        }
+    }
+
+    /***
+     * Idempotent operations: run at most once per key, a retry with the same key and arguments within 10 minutes
+     * returns the result of the first call without running it again (see {@link IdempotencyTable}). The keys of each
+     * session are apart.
+     */
+
+    public void refillCashOnce(final String idempotencyKey, final Map<Cash, Integer> cashMap)
+    {
+        // kept as the arguments of the key, so the caller may change or reuse its map afterwards
+        final Map<Cash, Integer> arguments = cashMap == null ? null : Collections.unmodifiableMap(new HashMap<>(cashMap));
+        idempotentOperations.execute("refillCash", Journal.MACHINE_SESSION_ID, idempotencyKey, arguments, () ->
+        {
+            refillCash(arguments);
+            return null;
+        });
+    }
+
+    public BigDecimal insertCashOnce(final String idempotencyKey, final Cash cash)
+    {
+        return idempotentOperations.execute("insertCash", Journal.MACHINE_SESSION_ID, idempotencyKey, cash, () -> insertCash(cash));
+    }
+
+    public Pair<Product, Map<Cash, Integer>> confirmPurchaseOnce(final String idempotencyKey)
+    {
+        return idempotentOperations.execute("confirmPurchase", Journal.MACHINE_SESSION_ID, idempotencyKey, null, this::confirmPurchase);
+    }
+
+    public BigDecimal insertCashOnce(final Session session, final String idempotencyKey, final Cash cash)
+    {
+        validateSession(session);
+        return idempotentOperations.execute("insertCash", session.getId(), idempotencyKey, cash, () -> insertCash(session, cash));
+    }
+
+    public Pair<Product, Map<Cash, Integer>> confirmPurchaseOnce(final Session session, final String idempotencyKey)
+    {
+        validateSession(session);
+        return idempotentOperations.execute("confirmPurchase", session.getId(), idempotencyKey, null, () -> confirmPurchase(session));
+    }
+
+    /**
+     * @return the sessions left open when the vending machine stopped, by id, so that their customers can go on
+     */
+    public Map<Long, Session> getRecoveredSessions()
+    {
+        return Collections.unmodifiableMap(recoveredSessions);
+    }
+
+    /**
+     * Mirrors the product and cash stock counters into a memory-mapped {@code file}, updated after every operation
+     * changing them, so that other local processes can read them with a {@link com.dexma.hometest.domain.StockRegionReader}.
+     *
+     * @return the region, to be closed by the caller once the vending machine stops
+     */
+    public MappedStockRegion mirrorStockTo(final Path file)
+    {
+        try
+        {
+            final MappedStockRegion region = MappedStockRegion.create(file, productManager.getProductStock(), cashManager.getCashStock());
+            this.stockRegion = region;
+            return region;
+        }
+        catch (final IOException ex)
+        {
+            throw new VendingMachineException("The stock region couldn't be created in " + file + ".", ex);
+        }
+    }
+
+    private void stockChanged()
+    {
+        if (batch != null)
+        {
+            batch.stockChanged = true;
+            return;
+        }
+        final MappedStockRegion region = stockRegion;
+        if (region != null)
+        {
+            region.update();
+        }
+    }
+
+    /**
+     * Records every purchase confirmed from now on in {@code archive}, which is still owned (and closed) by the caller.
+     */
+    public void archiveSalesTo(final SalesArchive archive)
+    {
+        this.salesArchive = archive;
+    }
+
+    /**
+     * @return the last failure recording a sale in the archive, or null. The purchase itself was completed anyway.
+     */
+    public SalesArchiveException getSalesArchiveFailure()
+    {
+        return salesArchiveFailure;
+    }
+
+    /**
+     * @return the rolling counters of the purchases confirmed since the vending machine started
+     */
+    public SalesStatistics getSalesStatistics()
+    {
+        return salesStatistics;
+    }
+
+    /**
+     * @return the latency of every operation and the number of failures of every cause since the vending machine started
+     */
+    public OperationMetrics getOperationMetrics()
+    {
+        return operationMetrics;
+    }
+
+    private VendingMachineException failure(final FailureCause cause, final String message)
+    {
+        operationMetrics.recordFailure(cause);
+        return new VendingMachineException(message);
+    }
+
+    private VendingMachineException failure(final FailureCause cause, final String message, final Throwable exception)
+    {
+        operationMetrics.recordFailure(cause);
+        return new VendingMachineException(message, exception);
+    }
+
+    private void purchaseFinished(final PurchaseEvent flightEvent,
+                                  final long startNanos,
+                                  final Product requestedProduct,
+                                  final Pair<Product, Map<Cash, Integer>> purchaseResult)
+    {
+        if (VendingMachineEvents.isRecording())
+        {
+            // the strategy of the change calculated by this purchase, if any
+            VendingMachineEvents.purchase(flightEvent, startNanos, requestedProduct, cashManager.getChangeStrategySince(startNanos),
+                purchaseResult == null ? null : purchaseResult.getValue(),
+                purchaseResult == null ? EventOutcome.FAILED : EventOutcome.COMPLETED);
+        }
+    }
+
+    private void saleCompleted(final Product product, final Map<Cash, Integer> insertedCash, final Map<Cash, Integer> change)
+    {
+        if (batch != null)
+        {
+            // a sale only counts once its record is durable
+            batch.completions.add(() -> recordSale(product, insertedCash, change));
+            return;
+        }
+        recordSale(product, insertedCash, change);
+    }
+
+    private void recordSale(final Product product, final Map<Cash, Integer> insertedCash, final Map<Cash, Integer> change)
+    {
+        final long timestamp = System.currentTimeMillis();
+        salesStatistics.recordSale(timestamp, product);
+        final SalesArchive archive = salesArchive;
+        if (archive != null && insertedCash != null)
+        {
+            try
+            {
+                archive.recordSale(timestamp, product, insertedCash, change);
+            }
+            catch (final SalesArchiveException ex)
+            {
+                // the purchase is already durable, so the customer shouldn't see it fail
+                salesArchiveFailure = ex;
+            }
+        }
+    }
+
+    /**
+     * @return true if the vending machine may not be able to give change and it should be asked to insert the exact amount
+     */
+    public boolean isExactChangeOnly()
+    {
+        return cashManager.isExactChangeOnly();
+    }
+
+    /**
+     * Commits a purchase all or nothing: the product and the change are taken from the stock together, and only then the
+     * selection and the balance are reset. When the change can't be taken anymore the product is put back.
+     */
     private Pair<Product, Map<Cash, Integer>> createPurchaseResponse(final Product selectedProduct, final Map<Cash, Integer> change)
     {
-        final Pair<Product, Map<Cash, Integer>> purchaseResult;
-        productManager.removeProductItemFromStock(selectedProduct);
+        takeProductItemFromStock(selectedProduct);
+        boolean changeTaken = false;
+        try
+        {
+            // the change may have been taken by another purchase since it was calculated
+            changeTaken = change.isEmpty() || cashManager.takeCashItemsFromStock(change);
+        }
+        finally
+        {
+            if (!changeTaken)
+            {
+                productManager.returnProductItemToStock(selectedProduct);
+            }
+        }
+        if (!changeTaken)
+        {
+            throw failure(FailureCause.NO_CHANGE, "Not sufficient change to provide.");
+        }
+
+        final BigDecimal balance = cashManager.getCurrentBalance();
+        final Map<Cash, Integer> insertedCash = cashManager.getInsertedCash();
         productManager.resetSelectedProduct();
-        cashManager.removeCashItemsFromStock(change);
         cashManager.resetCurrentBalance();
-        purchaseResult = new Pair<>(selectedProduct, change);
-        return purchaseResult;
+        commit(() -> journal.recordConfirmPurchase(Journal.MACHINE_SESSION_ID, selectedProduct, change), () ->
+        {
+            returnPurchaseToStock(selectedProduct, change);
+            productManager.setSelectedProduct(selectedProduct);
+            cashManager.restoreCurrentBalance(balance, insertedCash);
+        });
+        stockChanged();
+        saleCompleted(selectedProduct, insertedCash, change);
+        return new Pair<>(selectedProduct, change);
+    }
+
+    private void returnPurchaseToStock(final Product product, final Map<Cash, Integer> change)
+    {
+        productManager.returnProductItemToStock(product);
+        if (!change.isEmpty())
+        {
+            cashManager.insertCashItemsInStock(change);
+        }
+    }
+
+    /**
+     * Appends the record of a change already applied to the state and waits until it's durable. When the record can't
+     * be appended or made durable the change is undone by {@code rollback} before failing, so that a failed operation
+     * leaves the state as it was. Within a batch it only appends the record, and the batch waits for it when it ends.
+     */
+    private void commit(final LongSupplier record, final Runnable rollback)
+    {
+        try
+        {
+            final long sequence = record.getAsLong();
+            if (batch != null)
+            {
+                batch.add(sequence, rollback);
+                return;
+            }
+            journal.awaitDurable(sequence);
+        }
+        catch (final JournalException ex)
+        {
+            rollback.run();
+            throw failure(FailureCause.JOURNAL_FAILURE, "The operation couldn't be recorded in the journal.", ex);
+        }
+    }
+
+    /**
+     * Begins a batch of operations applied by the calling thread, which appends their records to the journal without
+     * waiting for them until {@link #endBatch()}. Only the writer thread of a {@link VendingMachineEngine} should use it.
+     */
+    void beginBatch()
+    {
+        batch = new OperationBatch();
+    }
+
+    /**
+     * Ends the batch begun by {@link #beginBatch()}, waiting once until the records of all its operations are durable.
+     * When they can't be made durable every change of the batch is rolled back, the latest first. Otherwise what follows
+     * each operation runs on its own, so that one failing doesn't fail the others.
+     *
+     * @return null, or the failure of the operations of the batch when their records couldn't be made durable
+     */
+    VendingMachineException endBatch()
+    {
+        final OperationBatch current = batch;
+        batch = null;
+        VendingMachineException batchFailure = null;
+        try
+        {
+            if (!current.rollbacks.isEmpty())
+            {
+                journal.awaitDurable(current.lastSequence);
+            }
+        }
+        catch (final JournalException ex)
+        {
+            for (int i = current.rollbacks.size() - 1; i >= 0; i--)
+            {
+                current.rollbacks.get(i).run();
+                operationMetrics.recordFailure(FailureCause.JOURNAL_FAILURE);
+            }
+            current.completions.clear();
+            batchFailure = new VendingMachineException("The operation couldn't be recorded in the journal.", ex);
+        }
+        if (current.stockChanged)
+        {
+            complete(this::stockChanged);
+        }
+        for (final Runnable completion : current.completions)
+        {
+            complete(completion);
+        }
+        return batchFailure;
+    }
+
+    /**
+     * Runs what should follow an operation of a batch once it's durable. The operation has succeeded by then, so a
+     * failure here is kept apart instead of failing it, or any other operation of the batch.
+     */
+    private void complete(final Runnable completion)
+    {
+        try
+        {
+            completion.run();
+        }
+        catch (final RuntimeException ex)
+        {
+            completionFailure = ex;
+        }
+    }
+
+    /**
+     * @return the last failure of what follows a durable operation of a batch (e.g. counting a sale), or null. The
+     * operation itself was completed anyway.
+     */
+    RuntimeException getCompletionFailure()
+    {
+        return completionFailure;
+    }
+
+    private void takeProductItemFromStock(final Product selectedProduct)
+    {
+        try
+        {
+            // another purchase may have taken the last item since it was selected
+            productManager.takeProductItemFromStock(selectedProduct);
+        }
+        catch (final ProductManagerException ex)
+        {
+            throw failure(FailureCause.OUT_OF_STOCK, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * OperationBatch class - The records appended by a batch of operations, with what undoes their changes and what
+     * should only run once they are durable.
+     */
+    private static final class OperationBatch
+    {
+        private final List<Runnable> rollbacks = new ArrayList<>();
+        private final List<Runnable> completions = new ArrayList<>();
+        private long lastSequence;
+        private boolean stockChanged;
+
+        private void add(final long sequence, final Runnable rollback)
+        {
+            lastSequence = Math.max(lastSequence, sequence);
+            rollbacks.add(rollback);
+        }
     }
 }
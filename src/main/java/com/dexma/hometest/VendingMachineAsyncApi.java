@@ -0,0 +1,179 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineAsyncApi class - Runs the operations of a {@link VendingMachineApi} on an executor without blocking the
+ * caller.
+ * <p>
+ * The operations of the same session run one after another in the order they were submitted, each one starting when the
+ * previous one completed (normally or not), so a caller can pipeline them without waiting. The user operations without a
+ * session and the supplier operations act on the whole machine and keep their order as one more session. Different
+ * sessions run in parallel, which needs the same {@link com.dexma.hometest.domain.ConcurrentStock} as
+ * {@link VendingMachineApi} for sessions.
+ */
+public final class VendingMachineAsyncApi implements VendingMachineAsyncOperations
+{
+    // key of the operations acting on the whole machine
+    private static final Object MACHINE = new Object();
+
+    private final VendingMachineApi vendingMachineApi;
+    private final Executor executor;
+    // last operation submitted for each key, removed once it completed with nothing queued behind it
+    private final ConcurrentMap<Object, CompletableFuture<?>> lastOperations = new ConcurrentHashMap<>();
+
+    public VendingMachineAsyncApi(final VendingMachineApi vendingMachineApi)
+    {
+        this(vendingMachineApi, ForkJoinPool.commonPool());
+    }
+
+    public VendingMachineAsyncApi(final VendingMachineApi vendingMachineApi, final Executor executor)
+    {
+        this.vendingMachineApi = vendingMachineApi;
+        this.executor = executor;
+    }
+
+    /***
+     * Supplier operations
+     */
+
+    @Override
+    public CompletableFuture<Void> refillProductsAsync(final Map<Product, Integer> productMap)
+    {
+        return submit(MACHINE, () ->
+        {
+            vendingMachineApi.refillProducts(productMap);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> refillCashAsync(final Map<Cash, Integer> cashMap)
+    {
+        return submit(MACHINE, () ->
+        {
+            vendingMachineApi.refillCash(cashMap);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<Product, Integer>> getProductStockStatusAsync()
+    {
+        return submit(MACHINE, () -> vendingMachineApi.getProductStockSnapshot().getStockMap());
+    }
+
+    @Override
+    public CompletableFuture<Map<Cash, Integer>> getCashStockStatusAsync()
+    {
+        return submit(MACHINE, () -> vendingMachineApi.getCashStockSnapshot().getStockMap());
+    }
+
+    /***
+     * User operations
+     */
+
+    @Override
+    public CompletableFuture<Map<Cash, Integer>> refundAsync()
+    {
+        return submit(MACHINE, vendingMachineApi::refund);
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> selectProductAsync(final Product product)
+    {
+        return submit(MACHINE, () -> vendingMachineApi.selectProduct(product));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> insertCashAsync(final Cash cash)
+    {
+        return submit(MACHINE, () -> vendingMachineApi.insertCash(cash));
+    }
+
+    @Override
+    public CompletableFuture<Pair<Product, Map<Cash, Integer>>> confirmPurchaseAsync()
+    {
+        return submit(MACHINE, vendingMachineApi::confirmPurchase);
+    }
+
+    @Override
+    public CompletableFuture<List<Cash>> getAllowedCashItemsAsync()
+    {
+        return submit(MACHINE, vendingMachineApi::getAllowedCashItems);
+    }
+
+    @Override
+    public CompletableFuture<List<Product>> getAvailableProductsAsync()
+    {
+        return submit(MACHINE, vendingMachineApi::getAvailableProducts);
+    }
+
+    /***
+     * Session operations
+     */
+
+    @Override
+    public CompletableFuture<Session> openSessionAsync()
+    {
+        return CompletableFuture.supplyAsync(vendingMachineApi::openSession, executor);
+    }
+
+    @Override
+    public CompletableFuture<Map<Cash, Integer>> refundAsync(final Session session)
+    {
+        return submit(session, () -> vendingMachineApi.refund(session));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> selectProductAsync(final Session session, final Product product)
+    {
+        return submit(session, () -> vendingMachineApi.selectProduct(session, product));
+    }
+
+    @Override
+    public CompletableFuture<BigDecimal> insertCashAsync(final Session session, final Cash cash)
+    {
+        return submit(session, () -> vendingMachineApi.insertCash(session, cash));
+    }
+
+    @Override
+    public CompletableFuture<Pair<Product, Map<Cash, Integer>>> confirmPurchaseAsync(final Session session)
+    {
+        return submit(session, () -> vendingMachineApi.confirmPurchase(session));
+    }
+
+    /**
+     * Chains {@code operation} after the last operation submitted with the same key. An operation without key (a missing
+     * session) isn't chained, the vending machine rejects it anyway.
+     */
+    private <T> CompletableFuture<T> submit(final Object key, final Supplier<T> operation)
+    {
+        if (key == null)
+        {
+            return CompletableFuture.supplyAsync(operation, executor);
+        }
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<T> future = (CompletableFuture<T>) lastOperations.compute(key, (k, last) -> last == null
+            ? CompletableFuture.supplyAsync(operation, executor)
+            : last.handleAsync((result, ex) -> operation.get(), executor));
+        future.whenComplete((result, ex) -> lastOperations.remove(key, future));
+        return future;
+    }
+}
@@ -0,0 +1,50 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineAsyncOperations interface - Describes the user, supplier and session operations in a Vending Machine
+ * without blocking the caller, each one returning a future completed with its result.
+ */
+public interface VendingMachineAsyncOperations
+{
+    CompletableFuture<Void> refillProductsAsync(Map<Product, Integer> product);
+
+    CompletableFuture<Void> refillCashAsync(Map<Cash, Integer> cash);
+
+    CompletableFuture<Map<Product, Integer>> getProductStockStatusAsync();
+
+    CompletableFuture<Map<Cash, Integer>> getCashStockStatusAsync();
+
+    CompletableFuture<Map<Cash, Integer>> refundAsync();
+
+    CompletableFuture<BigDecimal> selectProductAsync(Product product);
+
+    CompletableFuture<BigDecimal> insertCashAsync(Cash cash);
+
+    CompletableFuture<Pair<Product, Map<Cash, Integer>>> confirmPurchaseAsync();
+
+    CompletableFuture<List<Cash>> getAllowedCashItemsAsync();
+
+    CompletableFuture<List<Product>> getAvailableProductsAsync();
+
+    CompletableFuture<Session> openSessionAsync();
+
+    CompletableFuture<Map<Cash, Integer>> refundAsync(Session session);
+
+    CompletableFuture<BigDecimal> selectProductAsync(Session session, Product product);
+
+    CompletableFuture<BigDecimal> insertCashAsync(Session session, Cash cash);
+
+    CompletableFuture<Pair<Product, Map<Cash, Integer>>> confirmPurchaseAsync(Session session);
+}
@@ -0,0 +1,554 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.StockSnapshot;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineEngine class - Runs all the operations of a {@link VendingMachineApi} in a single writer thread.
+ * <p>
+ * Every operation is submitted as a command to a preallocated ring buffer and the calling thread waits for its result.
+ * The writer thread applies the commands in order, in batches of all the commands published since the last batch, so
+ * the state of the vending machine is only touched by one thread and needs no locks nor concurrent stock. Callers only
+ * contend on claiming a slot of the ring, and wait for free slots when the ring is full.
+ * <p>
+ * The records of a batch are appended to the journal as its commands are applied, and the writer waits once until they
+ * are durable before completing the commands. When they can't be made durable the whole batch is rolled back and every
+ * command of it that didn't fail on its own fails with the journal failure.
+ * <p>
+ * The stock status is returned as an immutable snapshot, since the live stock is only safe to read from the writer thread.
+ */
+public final class VendingMachineEngine implements VendingMachineUserOperations, VendingMachineSupplierOperations,
+    VendingMachineSessionOperations, AutoCloseable
+{
+    public static final int DEFAULT_RING_SIZE = 1024;
+
+    private static final long CLOSED = 1L << 62;
+    private static final int SPINS_BEFORE_PARKING = 100;
+
+    private final VendingMachineApi vendingMachineApi;
+    private final Command[] ring;
+    private final int mask;
+    // sequence published in each slot of the ring
+    private final AtomicLongArray published;
+    // number of claimed slots, with the CLOSED bit set once closed
+    private final AtomicLong claimed = new AtomicLong();
+    // number of commands applied by the writer
+    private volatile long applied;
+    private volatile boolean writerParked;
+    private final Thread writer;
+
+    private VendingMachineEngine(final VendingMachineApi vendingMachineApi, final int ringSize)
+    {
+        if (ringSize <= 0 || Integer.bitCount(ringSize) != 1)
+        {
+            throw new IllegalArgumentException("Ring size should be a power of two.");
+        }
+        this.vendingMachineApi = vendingMachineApi;
+        this.ring = new Command[ringSize];
+        this.mask = ringSize - 1;
+        this.published = new AtomicLongArray(ringSize);
+        for (int i = 0; i < ringSize; i++)
+        {
+            ring[i] = new Command();
+            published.set(i, -1L);
+        }
+        this.writer = new Thread(this::runWriter, "vending-machine-engine");
+        this.writer.setDaemon(true);
+    }
+
+    public static VendingMachineEngine start(final VendingMachineApi vendingMachineApi)
+    {
+        return start(vendingMachineApi, DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * Creates an engine over {@code vendingMachineApi} with a ring of {@code ringSize} commands (a power of two) and starts
+     * its writer thread. From then on the vending machine should only be used through the engine.
+     */
+    public static VendingMachineEngine start(final VendingMachineApi vendingMachineApi, final int ringSize)
+    {
+        final VendingMachineEngine engine = new VendingMachineEngine(vendingMachineApi, ringSize);
+        engine.writer.start();
+        return engine;
+    }
+
+    /***
+     * Supplier operations
+     */
+
+    @Override
+    public void refillProducts(final Map<Product, Integer> productMap)
+    {
+        execute(CommandType.REFILL_PRODUCTS, productMap, null);
+    }
+
+    @Override
+    public void refillCash(final Map<Cash, Integer> cashMap)
+    {
+        execute(CommandType.REFILL_CASH, cashMap, null);
+    }
+
+    @Override
+    public Map<Product, Integer> getProductStockStatus()
+    {
+        return getProductStockSnapshot().getStockMap();
+    }
+
+    @Override
+    public Map<Cash, Integer> getCashStockStatus()
+    {
+        return getCashStockSnapshot().getStockMap();
+    }
+
+    @Override
+    public StockSnapshot<Product> getProductStockSnapshot()
+    {
+        return execute(CommandType.GET_PRODUCT_STOCK_SNAPSHOT, null, null);
+    }
+
+    @Override
+    public StockSnapshot<Cash> getCashStockSnapshot()
+    {
+        return execute(CommandType.GET_CASH_STOCK_SNAPSHOT, null, null);
+    }
+
+    /***
+     * User operations
+     */
+
+    @Override
+    public Map<Cash, Integer> refund()
+    {
+        return execute(CommandType.REFUND, null, null);
+    }
+
+    @Override
+    public BigDecimal selectProduct(final Product product)
+    {
+        return execute(CommandType.SELECT_PRODUCT, product, null);
+    }
+
+    @Override
+    public BigDecimal insertCash(final Cash cash)
+    {
+        return execute(CommandType.INSERT_CASH, cash, null);
+    }
+
+    @Override
+    public Pair<Product, Map<Cash, Integer>> confirmPurchase()
+    {
+        return execute(CommandType.CONFIRM_PURCHASE, null, null);
+    }
+
+    @Override
+    public List<Cash> getAllowedCashItems()
+    {
+        return execute(CommandType.GET_ALLOWED_CASH_ITEMS, null, null);
+    }
+
+    @Override
+    public List<Product> getAvailableProducts()
+    {
+        return execute(CommandType.GET_AVAILABLE_PRODUCTS, null, null);
+    }
+
+    /***
+     * Session operations
+     */
+
+    @Override
+    public Session openSession()
+    {
+        return execute(CommandType.OPEN_SESSION, null, null);
+    }
+
+    @Override
+    public Map<Cash, Integer> refund(final Session session)
+    {
+        return execute(CommandType.SESSION_REFUND, session, null);
+    }
+
+    @Override
+    public BigDecimal selectProduct(final Session session, final Product product)
+    {
+        return execute(CommandType.SESSION_SELECT_PRODUCT, session, product);
+    }
+
+    @Override
+    public BigDecimal insertCash(final Session session, final Cash cash)
+    {
+        return execute(CommandType.SESSION_INSERT_CASH, session, cash);
+    }
+
+    @Override
+    public Pair<Product, Map<Cash, Integer>> confirmPurchase(final Session session)
+    {
+        return execute(CommandType.SESSION_CONFIRM_PURCHASE, session, null);
+    }
+
+    /**
+     * Stops accepting commands, waits until the writer applied all the commands already submitted and stops it.
+     */
+    @Override
+    public void close()
+    {
+        long current;
+        do
+        {
+            current = claimed.get();
+        }
+        while ((current & CLOSED) == 0 && !claimed.compareAndSet(current, current | CLOSED));
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return (claimed.get() & CLOSED) != 0;
+    }
+
+    /**
+     * Submits a command and returns a future completed by the writer thread with its result.
+     */
+    <T> CompletableFuture<T> submit(final CommandType type, final Object firstArgument, final Object secondArgument)
+    {
+        final long sequence = claim();
+        final int index = (int) sequence & mask;
+        // wait until the writer applied the command that used this slot one lap before
+        while (applied <= sequence - ring.length)
+        {
+            LockSupport.parkNanos(1_000L);
+        }
+
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        ring[index].set(type, firstArgument, secondArgument, future);
+        published.set(index, sequence);
+        if (writerParked)
+        {
+            LockSupport.unpark(writer);
+        }
+        return future;
+    }
+
+    private <T> T execute(final CommandType type, final Object firstArgument, final Object secondArgument)
+    {
+        final CompletableFuture<T> future = submit(type, firstArgument, secondArgument);
+        try
+        {
+            return future.join();
+        }
+        catch (final CompletionException ex)
+        {
+            if (ex.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error)
+            {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private long claim()
+    {
+        long current;
+        do
+        {
+            current = claimed.get();
+            if ((current & CLOSED) != 0)
+            {
+                throw new VendingMachineException("The vending machine engine is closed.");
+            }
+        }
+        while (!claimed.compareAndSet(current, current + 1));
+        return current;
+    }
+
+    private void runWriter()
+    {
+        long next = 0;
+        int spins = 0;
+        while (true)
+        {
+            // take as a batch every command published in order since the last batch
+            long end = next;
+            while (published.get((int) end & mask) == end)
+            {
+                end++;
+            }
+
+            if (end > next)
+            {
+                applyBatch(next, end);
+                next = end;
+                applied = end;
+                spins = 0;
+            }
+            else if ((claimed.get() & CLOSED) != 0 && (claimed.get() & ~CLOSED) == next)
+            {
+                return;
+            }
+            else if (++spins < SPINS_BEFORE_PARKING)
+            {
+                Thread.yield();
+            }
+            else
+            {
+                writerParked = true;
+                if (published.get((int) next & mask) != next && (claimed.get() & CLOSED) == 0)
+                {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    /**
+     * Applies the commands in [{@code start}, {@code end}), waits once until their records are durable and only then
+     * completes them.
+     */
+    private void applyBatch(final long start, final long end)
+    {
+        vendingMachineApi.beginBatch();
+        for (long sequence = start; sequence < end; sequence++)
+        {
+            ring[(int) sequence & mask].apply(vendingMachineApi);
+        }
+        Throwable batchFailure;
+        try
+        {
+            batchFailure = vendingMachineApi.endBatch();
+        }
+        catch (final Throwable ex)
+        {
+            batchFailure = ex;
+        }
+        for (long sequence = start; sequence < end; sequence++)
+        {
+            ring[(int) sequence & mask].complete(batchFailure);
+        }
+    }
+
+    /**
+     * Command class - A slot of the ring, reused for every command submitted to it.
+     */
+    private static final class Command
+    {
+        private CommandType type;
+        private Object firstArgument;
+        private Object secondArgument;
+        private CompletableFuture<Object> future;
+        private Object result;
+        private Throwable failure;
+
+        @SuppressWarnings("unchecked")
+        private void set(final CommandType type, final Object firstArgument, final Object secondArgument,
+                         final CompletableFuture<?> future)
+        {
+            this.type = type;
+            this.firstArgument = firstArgument;
+            this.secondArgument = secondArgument;
+            this.future = (CompletableFuture<Object>) future;
+        }
+
+        private void apply(final VendingMachineApi vendingMachineApi)
+        {
+            try
+            {
+                result = type.apply(vendingMachineApi, firstArgument, secondArgument);
+            }
+            catch (final Throwable ex)
+            {
+                // whatever a command throws fails only that command, the writer keeps running
+                failure = ex;
+            }
+        }
+
+        /**
+         * Completes the command with its result, or with its own failure, or else with {@code batchFailure} if any.
+         */
+        private void complete(final Throwable batchFailure)
+        {
+            final CompletableFuture<Object> commandFuture = future;
+            final Object commandResult = result;
+            final Throwable commandFailure = failure != null ? failure : batchFailure;
+            clear();
+            if (commandFailure != null)
+            {
+                commandFuture.completeExceptionally(commandFailure);
+            }
+            else
+            {
+                commandFuture.complete(commandResult);
+            }
+        }
+
+        private void clear()
+        {
+            type = null;
+            firstArgument = null;
+            secondArgument = null;
+            future = null;
+            result = null;
+            failure = null;
+        }
+    }
+
+    /**
+     * CommandType enum - The operations that can be submitted to the engine.
+     */
+    enum CommandType
+    {
+        REFILL_PRODUCTS
+            {
+                @Override
+                @SuppressWarnings("unchecked")
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    api.refillProducts((Map<Product, Integer>) first);
+                    return null;
+                }
+            },
+        REFILL_CASH
+            {
+                @Override
+                @SuppressWarnings("unchecked")
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    api.refillCash((Map<Cash, Integer>) first);
+                    return null;
+                }
+            },
+        GET_PRODUCT_STOCK_SNAPSHOT
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.getProductStockSnapshot();
+                }
+            },
+        GET_CASH_STOCK_SNAPSHOT
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.getCashStockSnapshot();
+                }
+            },
+        REFUND
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.refund();
+                }
+            },
+        SELECT_PRODUCT
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.selectProduct((Product) first);
+                }
+            },
+        INSERT_CASH
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.insertCash((Cash) first);
+                }
+            },
+        CONFIRM_PURCHASE
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.confirmPurchase();
+                }
+            },
+        GET_ALLOWED_CASH_ITEMS
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.getAllowedCashItems();
+                }
+            },
+        GET_AVAILABLE_PRODUCTS
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.getAvailableProducts();
+                }
+            },
+        OPEN_SESSION
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.openSession();
+                }
+            },
+        SESSION_REFUND
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.refund((Session) first);
+                }
+            },
+        SESSION_SELECT_PRODUCT
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.selectProduct((Session) first, (Product) second);
+                }
+            },
+        SESSION_INSERT_CASH
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.insertCash((Session) first, (Cash) second);
+                }
+            },
+        SESSION_CONFIRM_PURCHASE
+            {
+                @Override
+                Object apply(final VendingMachineApi api, final Object first, final Object second)
+                {
+                    return api.confirmPurchase((Session) first);
+                }
+            };
+
+        abstract Object apply(VendingMachineApi api, Object first, Object second);
+    }
+}
@@ -0,0 +1,452 @@
+package com.dexma.hometest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.StockSnapshot;
+import com.dexma.hometest.error.VendingMachineException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineHttpServer class - Embedded HTTP front end with a JSON route for every user and supplier operation of a
+ * {@link VendingMachineApi}.
+ * <p>
+ * Connections are accepted and read by the selector thread of the JDK {@link HttpServer}, and the requests are handled by
+ * a fixed pool of workers with a bounded queue. When the queue is full the selector thread handles the request itself,
+ * so it stops accepting more until the workers catch up. The operations act on the whole machine, as the user operations
+ * without a session do, so they run one at a time.
+ * <p>
+ * Routes (products and cash items go by their enum name, and the refill bodies are objects of quantities by name):
+ * <pre>
+ * POST /user/select/{product}        {"price":1.5}
+ * POST /user/insert/{cash}           {"balance":1.2}
+ * POST /user/confirm                 {"product":"COKE","change":{"TEN_CENTS":1}}
+ * POST /user/refund                  {"refund":{"ONE":1}} or {"refund":null}
+ * GET  /user/cash-items              {"cashItems":["FIVE_CENTS",...]}
+ * GET  /user/products                {"products":["COKE",...]}
+ * POST /supplier/products            {"COKE":3}            (204)
+ * POST /supplier/cash                {"ONE":10}            (204)
+ * GET  /supplier/products            {"COKE":3,...}
+ * GET  /supplier/cash                {"ONE":10,...}
+ * GET  /supplier/products/snapshot   {"version":4,"stock":{"COKE":3,...}}
+ * GET  /supplier/cash/snapshot       {"version":2,"stock":{"ONE":10,...}}
+ * </pre>
+ * The insert, confirm and cash refill routes take an optional Idempotency-Key header: a retry with the same key gets the
+ * result of the first request without running it again.
+ * <p>
+ * A {@link VendingMachineException} is answered with 409, a malformed request with 400, a body larger than
+ * {@link #MAX_BODY_SIZE} bytes with 413 and any other failure with 500, all as {"error":"..."}.
+ * <p>
+ * The JDK server writes the headers and the body of a response apart, so with Nagle's algorithm on the body waits until
+ * the client acknowledges the headers, which a client delaying its acknowledgements does only after ~40 ms. Deployments
+ * should start the JVM with {@code -Dsun.net.httpserver.nodelay=true}, which the JDK reads once, when the first server is
+ * created.
+ */
+public final class VendingMachineHttpServer implements AutoCloseable
+{
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    // far more than a refill of every product or cash item
+    public static final int MAX_BODY_SIZE = 16 * 1024;
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String GET = "GET";
+    private static final String POST = "POST";
+    private static final int OK = 200;
+    private static final int NO_CONTENT = 204;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int CONFLICT = 409;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+    private static final int INTERNAL_SERVER_ERROR = 500;
+
+    private final VendingMachineApi vendingMachineApi;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    // the operations without a session serve one customer at a time
+    private final Object machineLock = new Object();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private VendingMachineHttpServer(final VendingMachineApi vendingMachineApi, final HttpServer server, final ThreadPoolExecutor workers)
+    {
+        this.vendingMachineApi = vendingMachineApi;
+        this.server = server;
+        this.workers = workers;
+    }
+
+    public static VendingMachineHttpServer start(final VendingMachineApi vendingMachineApi, final InetSocketAddress address)
+    {
+        return start(vendingMachineApi, address, DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Starts serving {@code vendingMachineApi} on {@code address} with {@code numberOfWorkers} workers and up to
+     * {@code queueCapacity} requests waiting for them.
+     */
+    public static VendingMachineHttpServer start(final VendingMachineApi vendingMachineApi, final InetSocketAddress address,
+                                                 final int numberOfWorkers, final int queueCapacity)
+    {
+        final HttpServer server;
+        try
+        {
+            server = HttpServer.create(address, 0);
+        }
+        catch (final IOException ex)
+        {
+            throw new VendingMachineException("The HTTP server couldn't be started on " + address + ".", ex);
+        }
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable ->
+        {
+            final Thread thread = new Thread(runnable, "http-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final ThreadPoolExecutor workers = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        final VendingMachineHttpServer httpServer = new VendingMachineHttpServer(vendingMachineApi, server, workers);
+        server.createContext("/", httpServer::handle);
+        server.setExecutor(workers);
+        server.start();
+        return httpServer;
+    }
+
+    /**
+     * @return the address the server listens on, with the actual port when it was started on port 0
+     */
+    public InetSocketAddress getAddress()
+    {
+        return server.getAddress();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException
+    {
+        Response response;
+        try
+        {
+            response = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath().split("/"), exchange);
+        }
+        catch (final VendingMachineException ex)
+        {
+            response = error(CONFLICT, ex.getMessage());
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            response = error(BAD_REQUEST, ex.getMessage());
+        }
+        catch (final RuntimeException ex)
+        {
+            // a bug in one operation fails that request only, and its details stay on the server
+            response = error(INTERNAL_SERVER_ERROR, "Internal error.");
+        }
+
+        try
+        {
+            if (response.body == null)
+            {
+                exchange.sendResponseHeaders(response.status, -1);
+            }
+            else
+            {
+                final byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(response.status, body.length);
+                try (OutputStream output = exchange.getResponseBody())
+                {
+                    output.write(body);
+                }
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private Response route(final String method, final String[] path, final HttpExchange exchange) throws IOException
+    {
+        // the path starts with '/', so path[0] is empty
+        if (path.length < 3)
+        {
+            return error(NOT_FOUND, "Unknown route.");
+        }
+        final String resource = path[2];
+        if ("user".equals(path[1]))
+        {
+            if (path.length == 4 && "select".equals(resource))
+            {
+                return POST.equals(method) ? selectProduct(path[3]) : methodNotAllowed();
+            }
+            if (path.length == 4 && "insert".equals(resource))
+            {
+                return POST.equals(method) ? insertCash(path[3], idempotencyKeyOf(exchange)) : methodNotAllowed();
+            }
+            if (path.length == 3 && "confirm".equals(resource))
+            {
+                return POST.equals(method) ? confirmPurchase(idempotencyKeyOf(exchange)) : methodNotAllowed();
+            }
+            if (path.length == 3 && "refund".equals(resource))
+            {
+                return POST.equals(method) ? refund() : methodNotAllowed();
+            }
+            if (path.length == 3 && "cash-items".equals(resource))
+            {
+                return GET.equals(method) ? getAllowedCashItems() : methodNotAllowed();
+            }
+            if (path.length == 3 && "products".equals(resource))
+            {
+                return GET.equals(method) ? getAvailableProducts() : methodNotAllowed();
+            }
+        }
+        else if ("supplier".equals(path[1]) && ("products".equals(resource) || "cash".equals(resource)))
+        {
+            final boolean products = "products".equals(resource);
+            if (path.length == 3 && POST.equals(method))
+            {
+                final String body = readBody(exchange);
+                if (body == null)
+                {
+                    return error(PAYLOAD_TOO_LARGE, "The request body is larger than " + MAX_BODY_SIZE + " bytes.");
+                }
+                return products ? refillProducts(body) : refillCash(body, idempotencyKeyOf(exchange));
+            }
+            if (path.length == 3)
+            {
+                return GET.equals(method) ? getStockStatus(products) : methodNotAllowed();
+            }
+            if (path.length == 4 && "snapshot".equals(path[3]))
+            {
+                return GET.equals(method) ? getStockSnapshot(products) : methodNotAllowed();
+            }
+        }
+        return error(NOT_FOUND, "Unknown route.");
+    }
+
+    /***
+     * User operations
+     */
+
+    private Response selectProduct(final String productName)
+    {
+        final Product product = Beverage.valueOf(productName);
+        final BigDecimal price;
+        synchronized (machineLock)
+        {
+            price = vendingMachineApi.selectProduct(product);
+        }
+        return ok(JsonCodec.appendAmount(new StringBuilder("{\"price\":"), price).append('}'));
+    }
+
+    private Response insertCash(final String cashName, final String idempotencyKey)
+    {
+        final Cash cash = Coin.valueOf(cashName);
+        final BigDecimal balance;
+        synchronized (machineLock)
+        {
+            balance = idempotencyKey == null ? vendingMachineApi.insertCash(cash) : vendingMachineApi.insertCashOnce(idempotencyKey, cash);
+        }
+        return ok(JsonCodec.appendAmount(new StringBuilder("{\"balance\":"), balance).append('}'));
+    }
+
+    private Response confirmPurchase(final String idempotencyKey)
+    {
+        final Pair<Product, Map<Cash, Integer>> purchase;
+        synchronized (machineLock)
+        {
+            purchase = idempotencyKey == null ? vendingMachineApi.confirmPurchase() : vendingMachineApi.confirmPurchaseOnce(idempotencyKey);
+        }
+        final StringBuilder json = JsonCodec.appendName(new StringBuilder("{\"product\":"), purchase.getKey());
+        return ok(JsonCodec.appendQuantities(json.append(",\"change\":"), purchase.getValue()).append('}'));
+    }
+
+    private Response refund()
+    {
+        final Map<Cash, Integer> refund;
+        synchronized (machineLock)
+        {
+            refund = vendingMachineApi.refund();
+        }
+        return ok(JsonCodec.appendQuantities(new StringBuilder("{\"refund\":"), refund).append('}'));
+    }
+
+    private Response getAllowedCashItems()
+    {
+        final List<Cash> cashItems;
+        synchronized (machineLock)
+        {
+            cashItems = vendingMachineApi.getAllowedCashItems();
+        }
+        return ok(JsonCodec.appendNames(new StringBuilder("{\"cashItems\":"), cashItems).append('}'));
+    }
+
+    private Response getAvailableProducts()
+    {
+        final List<Product> products;
+        synchronized (machineLock)
+        {
+            products = vendingMachineApi.getAvailableProducts();
+        }
+        return ok(JsonCodec.appendNames(new StringBuilder("{\"products\":"), products).append('}'));
+    }
+
+    /***
+     * Supplier operations
+     */
+
+    private Response refillProducts(final String body)
+    {
+        final Map<Product, Integer> productMap = new HashMap<>();
+        for (final Map.Entry<String, Integer> entry : JsonCodec.readQuantities(body).entrySet())
+        {
+            productMap.put(Beverage.valueOf(entry.getKey()), entry.getValue());
+        }
+        synchronized (machineLock)
+        {
+            vendingMachineApi.refillProducts(productMap);
+        }
+        return new Response(NO_CONTENT, null);
+    }
+
+    private Response refillCash(final String body, final String idempotencyKey)
+    {
+        final Map<Cash, Integer> cashMap = new HashMap<>();
+        for (final Map.Entry<String, Integer> entry : JsonCodec.readQuantities(body).entrySet())
+        {
+            cashMap.put(Coin.valueOf(entry.getKey()), entry.getValue());
+        }
+        synchronized (machineLock)
+        {
+            if (idempotencyKey == null)
+            {
+                vendingMachineApi.refillCash(cashMap);
+            }
+            else
+            {
+                vendingMachineApi.refillCashOnce(idempotencyKey, cashMap);
+            }
+        }
+        return new Response(NO_CONTENT, null);
+    }
+
+    private Response getStockStatus(final boolean products)
+    {
+        final Map<?, Integer> stock;
+        synchronized (machineLock)
+        {
+            stock = products ? vendingMachineApi.getProductStockStatus() : vendingMachineApi.getCashStockStatus();
+        }
+        return ok(JsonCodec.appendQuantities(new StringBuilder(), stock));
+    }
+
+    private Response getStockSnapshot(final boolean products)
+    {
+        final StockSnapshot<?> snapshot;
+        synchronized (machineLock)
+        {
+            snapshot = products ? vendingMachineApi.getProductStockSnapshot() : vendingMachineApi.getCashStockSnapshot();
+        }
+        final StringBuilder json = new StringBuilder("{\"version\":").append(snapshot.getVersion()).append(",\"stock\":");
+        return ok(JsonCodec.appendQuantities(json, snapshot.getStockMap()).append('}'));
+    }
+
+    private static String idempotencyKeyOf(final HttpExchange exchange)
+    {
+        return exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY_HEADER);
+    }
+
+    /**
+     * @return the body of the request, or null if it's larger than {@link #MAX_BODY_SIZE}
+     */
+    private static String readBody(final HttpExchange exchange) throws IOException
+    {
+        final String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && contentLength.length() > 0 && Long.parseLong(contentLength.trim()) > MAX_BODY_SIZE)
+        {
+            return null;
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[512];
+        try (InputStream input = exchange.getRequestBody())
+        {
+            int read;
+            while ((read = input.read(buffer)) != -1)
+            {
+                // the body may come chunked, without a length
+                if (body.size() + read > MAX_BODY_SIZE)
+                {
+                    return null;
+                }
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Response ok(final StringBuilder json)
+    {
+        return new Response(OK, json.toString());
+    }
+
+    private static Response methodNotAllowed()
+    {
+        return error(METHOD_NOT_ALLOWED, "Method not allowed.");
+    }
+
+    private static Response error(final int status, final String message)
+    {
+        final StringBuilder json = JsonCodec.appendString(new StringBuilder("{\"error\":"), String.valueOf(message));
+        return new Response(status, json.append('}').toString());
+    }
+
+    /**
+     * Stops accepting requests, lets the ones being handled finish for up to a second and stops the workers.
+     */
+    @Override
+    public void close()
+    {
+        if (closed.compareAndSet(false, true))
+        {
+            server.stop(1);
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Response class - Status and JSON body (null for none) of a handled request.
+     */
+    private static final class Response
+    {
+        private final int status;
+        private final String body;
+
+        private Response(final int status, final String body)
+        {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
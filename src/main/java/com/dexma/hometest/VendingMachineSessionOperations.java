@@ -0,0 +1,28 @@
+package com.dexma.hometest;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineSessionOperations interface - Describes the user operations in a Vending Machine serving several
+ * customers at the same time, each one with its own session.
+ */
+public interface VendingMachineSessionOperations
+{
+    Session openSession();
+
+    Map<Cash, Integer> refund(Session session);
+
+    BigDecimal selectProduct(Session session, Product product);
+
+    BigDecimal insertCash(Session session, Cash cash);
+
+    Pair<Product, Map<Cash, Integer>> confirmPurchase(Session session);
+}
@@ -4,6 +4,7 @@ import java.util.Map;
 
 import com.dexma.hometest.domain.Cash;
 import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.StockSnapshot;
 
 
 /**
@@ -18,4 +19,8 @@ public interface VendingMachineSupplierOperations
     Map<Product, Integer> getProductStockStatus();
 
     Map<Cash, Integer> getCashStockStatus();
+
+    StockSnapshot<Product> getProductStockSnapshot();
+
+    StockSnapshot<Cash> getCashStockSnapshot();
 }
@@ -0,0 +1,250 @@
+package com.dexma.hometest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineTcpClient class - Calls the operations of a remote {@link VendingMachineTcpServer} over one connection.
+ * <p>
+ * Every operation sends its request right away and returns a future completed when its response arrives, so many
+ * operations can be pipelined on the connection without waiting for the previous ones. A failed operation completes its
+ * future with a {@link VendingMachineException}, carrying the message of the server. The futures are completed by the
+ * thread reading the responses, so operations depending on others should be chained with the async methods of
+ * {@link CompletableFuture}, not to hold that thread.
+ */
+public final class VendingMachineTcpClient implements AutoCloseable
+{
+    private final SocketChannel channel;
+    private final ByteBuffer requests = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_SIZE);
+    private final ConcurrentMap<Integer, PendingRequest<?>> pendingRequests = new ConcurrentHashMap<>();
+    private final Thread readerThread;
+    private int nextRequestId;
+    // guarded by requests
+    private boolean closed;
+
+    private VendingMachineTcpClient(final SocketChannel channel)
+    {
+        this.channel = channel;
+        this.readerThread = new Thread(this::readResponses, "tcp-client-reader");
+        this.readerThread.setDaemon(true);
+    }
+
+    public static VendingMachineTcpClient connect(final InetSocketAddress address)
+    {
+        try
+        {
+            final SocketChannel channel = SocketChannel.open(address);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final VendingMachineTcpClient client = new VendingMachineTcpClient(channel);
+            client.readerThread.start();
+            return client;
+        }
+        catch (final IOException ex)
+        {
+            throw new VendingMachineException("The vending machine at " + address + " couldn't be reached.", ex);
+        }
+    }
+
+    /***
+     * User operations
+     */
+
+    public CompletableFuture<BigDecimal> selectProduct(final Product product)
+    {
+        return send(BinaryProtocol.SELECT_PRODUCT, request -> BinaryProtocol.putProduct(request, product), BinaryProtocol::getAmount);
+    }
+
+    public CompletableFuture<BigDecimal> insertCash(final Cash cash)
+    {
+        return send(BinaryProtocol.INSERT_CASH, request -> BinaryProtocol.putCash(request, cash), BinaryProtocol::getAmount);
+    }
+
+    public CompletableFuture<Pair<Product, Map<Cash, Integer>>> confirmPurchase()
+    {
+        return send(BinaryProtocol.CONFIRM_PURCHASE, null,
+            response -> new Pair<>(BinaryProtocol.getProduct(response), BinaryProtocol.getCashQuantities(response)));
+    }
+
+    public CompletableFuture<Map<Cash, Integer>> refund()
+    {
+        return send(BinaryProtocol.REFUND, null, BinaryProtocol::getCashQuantities);
+    }
+
+    public CompletableFuture<List<Cash>> getAllowedCashItems()
+    {
+        return send(BinaryProtocol.GET_ALLOWED_CASH_ITEMS, null, BinaryProtocol::getCashItems);
+    }
+
+    public CompletableFuture<List<Product>> getAvailableProducts()
+    {
+        return send(BinaryProtocol.GET_AVAILABLE_PRODUCTS, null, BinaryProtocol::getProducts);
+    }
+
+    /***
+     * Supplier operations
+     */
+
+    public CompletableFuture<Void> refillProducts(final Map<Product, Integer> productMap)
+    {
+        return send(BinaryProtocol.REFILL_PRODUCTS, request -> BinaryProtocol.putQuantities(request, productMap), response -> null);
+    }
+
+    public CompletableFuture<Void> refillCash(final Map<Cash, Integer> cashMap)
+    {
+        return send(BinaryProtocol.REFILL_CASH, request -> BinaryProtocol.putQuantities(request, cashMap), response -> null);
+    }
+
+    public CompletableFuture<Map<Product, Integer>> getProductStockStatus()
+    {
+        return send(BinaryProtocol.GET_PRODUCT_STOCK_STATUS, null, BinaryProtocol::getProductQuantities);
+    }
+
+    public CompletableFuture<Map<Cash, Integer>> getCashStockStatus()
+    {
+        return send(BinaryProtocol.GET_CASH_STOCK_STATUS, null, BinaryProtocol::getCashQuantities);
+    }
+
+    private <T> CompletableFuture<T> send(final byte operation, final Consumer<ByteBuffer> arguments, final Function<ByteBuffer, T> result)
+    {
+        final PendingRequest<T> pendingRequest = new PendingRequest<>(result);
+        synchronized (requests)
+        {
+            if (closed)
+            {
+                pendingRequest.future.completeExceptionally(new VendingMachineException("The connection is closed."));
+                return pendingRequest.future;
+            }
+            final int requestId = nextRequestId++;
+            pendingRequests.put(requestId, pendingRequest);
+            requests.clear();
+            final int start = BinaryProtocol.beginFrame(requests, requestId, operation);
+            if (arguments != null)
+            {
+                arguments.accept(requests);
+            }
+            BinaryProtocol.endFrame(requests, start);
+            requests.flip();
+            try
+            {
+                while (requests.hasRemaining())
+                {
+                    channel.write(requests);
+                }
+            }
+            catch (final IOException ex)
+            {
+                pendingRequests.remove(requestId);
+                pendingRequest.future.completeExceptionally(new VendingMachineException("The request couldn't be sent.", ex));
+            }
+        }
+        return pendingRequest.future;
+    }
+
+    private void readResponses()
+    {
+        final ByteBuffer responses = ByteBuffer.allocate(VendingMachineTcpServer.BUFFER_SIZE);
+        try
+        {
+            while (channel.read(responses) >= 0)
+            {
+                responses.flip();
+                while (responses.remaining() >= Integer.BYTES
+                    && responses.remaining() >= Integer.BYTES + responses.getInt(responses.position()))
+                {
+                    final int frameEnd = responses.position() + Integer.BYTES + responses.getInt();
+                    final int requestId = responses.getInt();
+                    final byte status = responses.get();
+                    final PendingRequest<?> pendingRequest = pendingRequests.remove(requestId);
+                    if (pendingRequest != null)
+                    {
+                        pendingRequest.complete(status, responses);
+                    }
+                    responses.position(frameEnd);
+                }
+                responses.compact();
+            }
+        }
+        catch (final IOException ex)
+        {
+            // the connection is closed, failed below
+        }
+        finally
+        {
+            // no request can be sent anymore once these are failed
+            synchronized (requests)
+            {
+                closed = true;
+                for (final PendingRequest<?> pendingRequest : pendingRequests.values())
+                {
+                    pendingRequest.future.completeExceptionally(new VendingMachineException("The connection is closed."));
+                }
+                pendingRequests.clear();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection, failing the operations still waiting for their response.
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+            readerThread.join();
+        }
+        catch (final IOException ex)
+        {
+            // closed anyway
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * PendingRequest class - The future of a request sent, and how to decode its result.
+     */
+    private static final class PendingRequest<T>
+    {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final Function<ByteBuffer, T> result;
+
+        private PendingRequest(final Function<ByteBuffer, T> result)
+        {
+            this.result = result;
+        }
+
+        private void complete(final byte status, final ByteBuffer response)
+        {
+            if (status == BinaryProtocol.OK)
+            {
+                future.complete(result.apply(response));
+            }
+            else
+            {
+                future.completeExceptionally(new VendingMachineException(BinaryProtocol.getMessage(response)));
+            }
+        }
+    }
+}
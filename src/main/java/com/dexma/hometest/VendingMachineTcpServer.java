@@ -0,0 +1,329 @@
+package com.dexma.hometest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineTcpServer class - Serves the user and supplier operations of a {@link VendingMachineApi} over the
+ * {@link BinaryProtocol}, with every connection multiplexed on one selector thread.
+ * <p>
+ * The requests of each connection are handled in the order they arrive, as many as were read at once, and their
+ * responses are written back together. The selector thread runs the operations itself, so the operations of all the
+ * connections run one at a time, as the user operations without a session require. A connection whose responses aren't
+ * being read stops being read too until they are, so every connection takes two fixed buffers at most.
+ */
+public final class VendingMachineTcpServer implements AutoCloseable
+{
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private final VendingMachineApi vendingMachineApi;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    private VendingMachineTcpServer(final VendingMachineApi vendingMachineApi, final Selector selector,
+                                    final ServerSocketChannel serverChannel)
+    {
+        this.vendingMachineApi = vendingMachineApi;
+        this.selector = selector;
+        this.serverChannel = serverChannel;
+        this.selectorThread = new Thread(this::run, "tcp-selector");
+        this.selectorThread.setDaemon(true);
+    }
+
+    /**
+     * Starts serving {@code vendingMachineApi} on {@code address}.
+     */
+    public static VendingMachineTcpServer start(final VendingMachineApi vendingMachineApi, final InetSocketAddress address)
+    {
+        try
+        {
+            final Selector selector = Selector.open();
+            final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            final VendingMachineTcpServer server = new VendingMachineTcpServer(vendingMachineApi, selector, serverChannel);
+            server.selectorThread.start();
+            return server;
+        }
+        catch (final IOException ex)
+        {
+            throw new VendingMachineException("The TCP server couldn't be started on " + address + ".", ex);
+        }
+    }
+
+    /**
+     * @return the address the server listens on, with the actual port when it was started on port 0
+     */
+    public InetSocketAddress getAddress()
+    {
+        try
+        {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        }
+        catch (final IOException ex)
+        {
+            throw new VendingMachineException("The TCP server address couldn't be read.", ex);
+        }
+    }
+
+    private void run()
+    {
+        while (running)
+        {
+            try
+            {
+                selector.select();
+            }
+            catch (final IOException ex)
+            {
+                break;
+            }
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext())
+            {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                try
+                {
+                    if (key.isAcceptable())
+                    {
+                        accept();
+                    }
+                    else
+                    {
+                        serve(key);
+                    }
+                }
+                catch (final IOException | RuntimeException ex)
+                {
+                    // the connection failed or broke the protocol
+                    close(key);
+                }
+            }
+        }
+        for (final SelectionKey key : selector.keys())
+        {
+            close(key);
+        }
+        try
+        {
+            selector.close();
+        }
+        catch (final IOException ex)
+        {
+            // stopping anyway
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection());
+        }
+    }
+
+    private void serve(final SelectionKey key) throws IOException
+    {
+        final SocketChannel channel = (SocketChannel) key.channel();
+        final Connection connection = (Connection) key.attachment();
+        if (key.isReadable() && channel.read(connection.input) < 0)
+        {
+            close(key);
+            return;
+        }
+        int handled;
+        do
+        {
+            handled = handleRequests(connection);
+            connection.output.flip();
+            channel.write(connection.output);
+            connection.output.compact();
+        }
+        // requests may have been left waiting for room in the output
+        while (handled > 0 && connection.output.position() == 0);
+
+        final boolean pendingOutput = connection.output.position() > 0;
+        // stop reading while the input is full of requests waiting for room in the output
+        final int interest = (connection.input.hasRemaining() ? SelectionKey.OP_READ : 0) | (pendingOutput ? SelectionKey.OP_WRITE : 0);
+        key.interestOps(interest);
+    }
+
+    /**
+     * Handles every complete request in the input while there is room in the output for the largest response.
+     *
+     * @return the number of requests handled
+     */
+    private int handleRequests(final Connection connection)
+    {
+        final ByteBuffer input = connection.input;
+        final ByteBuffer output = connection.output;
+        int handled = 0;
+        input.flip();
+        try
+        {
+            while (input.remaining() >= Integer.BYTES && output.remaining() >= BinaryProtocol.MAX_FRAME_SIZE)
+            {
+                final int length = input.getInt(input.position());
+                if (length < BinaryProtocol.HEADER_SIZE - Integer.BYTES || length > BinaryProtocol.MAX_FRAME_SIZE - Integer.BYTES)
+                {
+                    throw new IllegalStateException("Invalid frame length " + length + ".");
+                }
+                if (input.remaining() < Integer.BYTES + length)
+                {
+                    break;
+                }
+                final int frameEnd = input.position() + Integer.BYTES + length;
+                final int limit = input.limit();
+                input.position(input.position() + Integer.BYTES);
+                input.limit(frameEnd);
+                handleRequest(input, output);
+                input.limit(limit);
+                input.position(frameEnd);
+                handled++;
+            }
+        }
+        finally
+        {
+            input.compact();
+        }
+        return handled;
+    }
+
+    private void handleRequest(final ByteBuffer request, final ByteBuffer output)
+    {
+        final int requestId = request.getInt();
+        final byte operation = request.get();
+        final int start = output.position();
+        try
+        {
+            BinaryProtocol.beginFrame(output, requestId, BinaryProtocol.OK);
+            handleOperation(operation, request, output);
+        }
+        catch (final VendingMachineException ex)
+        {
+            output.position(start);
+            BinaryProtocol.beginFrame(output, requestId, BinaryProtocol.FAILED);
+            BinaryProtocol.putMessage(output, ex.getMessage());
+        }
+        catch (final IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException ex)
+        {
+            output.position(start);
+            BinaryProtocol.beginFrame(output, requestId, BinaryProtocol.BAD_REQUEST);
+            BinaryProtocol.putMessage(output, "Malformed request for operation " + operation + ".");
+        }
+        catch (final RuntimeException ex)
+        {
+            // a bug in one operation fails that request only, the connection and its other requests go on
+            output.position(start);
+            BinaryProtocol.beginFrame(output, requestId, BinaryProtocol.FAILED);
+            BinaryProtocol.putMessage(output, "Operation " + operation + " failed unexpectedly.");
+        }
+        BinaryProtocol.endFrame(output, start);
+    }
+
+    private void handleOperation(final byte operation, final ByteBuffer request, final ByteBuffer output)
+    {
+        switch (operation)
+        {
+            case BinaryProtocol.SELECT_PRODUCT:
+                BinaryProtocol.putAmount(output, vendingMachineApi.selectProduct(BinaryProtocol.getProduct(request)));
+                break;
+            case BinaryProtocol.INSERT_CASH:
+                BinaryProtocol.putAmount(output, vendingMachineApi.insertCash(BinaryProtocol.getCash(request)));
+                break;
+            case BinaryProtocol.CONFIRM_PURCHASE:
+            {
+                final Pair<Product, Map<Cash, Integer>> purchase = vendingMachineApi.confirmPurchase();
+                BinaryProtocol.putProduct(output, purchase.getKey());
+                BinaryProtocol.putQuantities(output, purchase.getValue());
+                break;
+            }
+            case BinaryProtocol.REFUND:
+                BinaryProtocol.putQuantities(output, vendingMachineApi.refund());
+                break;
+            case BinaryProtocol.GET_ALLOWED_CASH_ITEMS:
+                BinaryProtocol.putItems(output, vendingMachineApi.getAllowedCashItems());
+                break;
+            case BinaryProtocol.GET_AVAILABLE_PRODUCTS:
+                BinaryProtocol.putItems(output, vendingMachineApi.getAvailableProducts());
+                break;
+            case BinaryProtocol.REFILL_PRODUCTS:
+                vendingMachineApi.refillProducts(BinaryProtocol.getProductQuantities(request));
+                break;
+            case BinaryProtocol.REFILL_CASH:
+                vendingMachineApi.refillCash(BinaryProtocol.getCashQuantities(request));
+                break;
+            case BinaryProtocol.GET_PRODUCT_STOCK_STATUS:
+                BinaryProtocol.putQuantities(output, vendingMachineApi.getProductStockStatus());
+                break;
+            case BinaryProtocol.GET_CASH_STOCK_STATUS:
+                BinaryProtocol.putQuantities(output, vendingMachineApi.getCashStockStatus());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation + ".");
+        }
+    }
+
+    private static void close(final SelectionKey key)
+    {
+        key.cancel();
+        try
+        {
+            key.channel().close();
+        }
+        catch (final IOException ex)
+        {
+            // closed anyway
+        }
+    }
+
+    /**
+     * Stops the selector thread and closes every connection.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        selector.wakeup();
+        try
+        {
+            selectorThread.join();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Connection class - The buffers of a connection: requests read but not handled yet, and responses not written yet.
+     */
+    private static final class Connection
+    {
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,106 @@
+package com.dexma.hometest.archive;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+import com.dexma.hometest.codec.VarInts;
+
+
+/**
+ * ColumnCodec class - Encoding of the blocks of values of a column.
+ * <p>
+ * A block is its number of values, its length in bytes and the encoded values: the zigzag varint of the difference with
+ * the previous value (delta), or pairs of a zigzag varint value and a varint run length (run-length). Each block starts
+ * from scratch, so a reader can skip a block by its length.
+ */
+final class ColumnCodec
+{
+    private ColumnCodec()
+    {
+    }
+
+    /**
+     * @return the maximum number of bytes taken by the encoded values of a block of {@code count} values
+     */
+    static int maxEncodedSize(final int count)
+    {
+        // up to two varints per value
+        return 2 * VarInts.MAX_VAR_LONG_SIZE * count;
+    }
+
+    /**
+     * Encodes the first {@code count} values as a block in {@code buffer}, using {@code scratch} to encode the values
+     * before their length is known.
+     */
+    static void encodeBlock(final ByteBuffer buffer, final ByteBuffer scratch, final long[] values, final int count,
+                            final boolean deltaEncoded)
+    {
+        scratch.clear();
+        if (deltaEncoded)
+        {
+            long previous = 0;
+            for (int i = 0; i < count; i++)
+            {
+                VarInts.putZigZag(scratch, values[i] - previous);
+                previous = values[i];
+            }
+        }
+        else
+        {
+            int i = 0;
+            while (i < count)
+            {
+                int run = 1;
+                while (i + run < count && values[i + run] == values[i])
+                {
+                    run++;
+                }
+                VarInts.putZigZag(scratch, values[i]);
+                VarInts.putVarLong(scratch, run);
+                i += run;
+            }
+        }
+        scratch.flip();
+
+        VarInts.putVarLong(buffer, count);
+        VarInts.putVarLong(buffer, scratch.remaining());
+        buffer.put(scratch);
+    }
+
+    /**
+     * Decodes every block left in {@code buffer}, passing each value to {@code consumer} in order.
+     */
+    static void decodeBlocks(final ByteBuffer buffer, final boolean deltaEncoded, final LongConsumer consumer)
+    {
+        while (buffer.hasRemaining())
+        {
+            final long count = VarInts.getVarLong(buffer);
+            final long length = VarInts.getVarLong(buffer);
+            final int end = buffer.position() + (int) length;
+            if (deltaEncoded)
+            {
+                long value = 0;
+                for (long i = 0; i < count; i++)
+                {
+                    value += VarInts.getZigZag(buffer);
+                    consumer.accept(value);
+                }
+            }
+            else
+            {
+                long decoded = 0;
+                while (decoded < count)
+                {
+                    final long value = VarInts.getZigZag(buffer);
+                    final long run = VarInts.getVarLong(buffer);
+                    for (long i = 0; i < run; i++)
+                    {
+                        consumer.accept(value);
+                    }
+                    decoded += run;
+                }
+            }
+            buffer.position(end);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.dexma.hometest.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.SalesArchiveException;
+
+
+/**
+ * SalesArchive class - Append-only columnar archive of the completed sales.
+ * <p>
+ * Sales are split in segments of a fixed time span, each one a directory with a file per {@link SalesColumn}. Rows are
+ * kept in memory until a block of {@code blockRows} is full (or the segment changes, or the archive is flushed) and then
+ * each column is appended to its file as an encoded block, so a report only reads the files of the columns it needs.
+ * Rows not flushed yet are lost if the machine stops; the stock itself is kept by the journal.
+ * <p>
+ * Once the blocks of every column are written, a flush commits them by appending the new length of every column file to
+ * the commit file of the segment, and readers ignore whatever follows the last committed length. A flush that fails
+ * keeps its rows in memory, and the next one overwrites whatever the failed one wrote past the committed lengths.
+ */
+public final class SalesArchive implements AutoCloseable
+{
+    public static final long DEFAULT_SEGMENT_MILLIS = TimeUnit.DAYS.toMillis(1);
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String COMMIT_FILE_NAME = "commits";
+
+    private static final SalesColumn[] COLUMNS = SalesColumn.values();
+    // the committed length of every column
+    private static final int COMMIT_SIZE = COLUMNS.length * Long.BYTES;
+
+    private final Path directory;
+    private final long segmentMillis;
+    private final int blockRows;
+    // values of the rows not flushed yet, per column
+    private final long[][] blocks = new long[COLUMNS.length][];
+    private final ByteBuffer encoded;
+    private final ByteBuffer scratch;
+    private final ByteBuffer commit = ByteBuffer.allocate(COMMIT_SIZE);
+    // committed length of every column file of the segment committedSegment, and of its commit file
+    private final long[] committedLengths = new long[COLUMNS.length];
+    private long commitFileLength;
+    private Path committedSegment;
+    private int rows;
+    private long segmentStart;
+    private boolean closed;
+
+    private SalesArchive(final Path directory, final long segmentMillis, final int blockRows)
+    {
+        this.directory = directory;
+        this.segmentMillis = segmentMillis;
+        this.blockRows = blockRows;
+        int maxValuesPerBlock = 0;
+        for (final SalesColumn column : COLUMNS)
+        {
+            blocks[column.ordinal()] = new long[blockRows * column.getValuesPerRow()];
+            maxValuesPerBlock = Math.max(maxValuesPerBlock, blockRows * column.getValuesPerRow());
+        }
+        this.scratch = ByteBuffer.allocate(ColumnCodec.maxEncodedSize(maxValuesPerBlock));
+        // header of two varints and the encoded values
+        this.encoded = ByteBuffer.allocate(20 + scratch.capacity());
+    }
+
+    public static SalesArchive open(final Path directory)
+    {
+        return open(directory, DEFAULT_SEGMENT_MILLIS, DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Opens the archive in {@code directory} (created if needed) with segments of {@code segmentMillis} and blocks of
+     * {@code blockRows} rows. New sales are appended to the segments already there.
+     */
+    public static SalesArchive open(final Path directory, final long segmentMillis, final int blockRows)
+    {
+        if (segmentMillis <= 0 || blockRows <= 0)
+        {
+            throw new IllegalArgumentException("Segment span and block rows should be positive.");
+        }
+        try
+        {
+            Files.createDirectories(directory);
+        }
+        catch (final IOException ex)
+        {
+            throw new SalesArchiveException("The sales archive in " + directory + " couldn't be opened.", ex);
+        }
+        return new SalesArchive(directory, segmentMillis, blockRows);
+    }
+
+    /**
+     * Records a sale of {@code product} completed at {@code timestamp} (epoch millis), paid with {@code insertedCash} and
+     * with {@code change} given back.
+     */
+    public synchronized void recordSale(final long timestamp, final Product product, final Map<Cash, Integer> insertedCash,
+                                        final Map<Cash, Integer> change)
+    {
+        if (closed)
+        {
+            throw new SalesArchiveException("The sales archive is closed.");
+        }
+        if (!(product instanceof Beverage))
+        {
+            throw new SalesArchiveException("Only beverages can be archived.");
+        }
+        final long start = timestamp - Math.floorMod(timestamp, segmentMillis);
+        // a block kept by a failed flush is written before taking more rows
+        if (rows == blockRows || rows > 0 && start != segmentStart)
+        {
+            flush();
+        }
+        segmentStart = start;
+
+        blocks[SalesColumn.TIMESTAMP.ordinal()][rows] = timestamp;
+        blocks[SalesColumn.PRODUCT.ordinal()][rows] = ((Beverage) product).ordinal();
+        blocks[SalesColumn.PRICE_CENTS.ordinal()][rows] = Cents.toCents(product.getPrice());
+        putCoins(blocks[SalesColumn.INSERTED_COINS.ordinal()], insertedCash);
+        putCoins(blocks[SalesColumn.CHANGE_COINS.ordinal()], change);
+        if (++rows == blockRows)
+        {
+            flush();
+        }
+    }
+
+    private void putCoins(final long[] block, final Map<Cash, Integer> cashItems)
+    {
+        final int offset = rows * Coin.getValidCoins().length;
+        for (final Coin coin : Coin.getValidCoins())
+        {
+            final Integer quantity = cashItems.get(coin);
+            block[offset + coin.ordinal()] = quantity == null ? 0 : quantity;
+        }
+    }
+
+    /**
+     * Appends the rows kept in memory to the files of their segment and commits them. When it fails the rows are kept
+     * for the next flush.
+     */
+    public synchronized void flush()
+    {
+        if (rows == 0)
+        {
+            return;
+        }
+        final Path segment = directory.resolve(segmentName(segmentStart, segmentStart + segmentMillis));
+        try
+        {
+            Files.createDirectories(segment);
+            if (!segment.equals(committedSegment))
+            {
+                loadCommit(segment);
+            }
+            commit.clear();
+            for (final SalesColumn column : COLUMNS)
+            {
+                encoded.clear();
+                ColumnCodec.encodeBlock(encoded, scratch, blocks[column.ordinal()], rows * column.getValuesPerRow(),
+                    column.isDeltaEncoded());
+                encoded.flip();
+                final long length = committedLengths[column.ordinal()];
+                commit.putLong(length + encoded.remaining());
+                write(segment.resolve(column.getFileName()), length, encoded);
+            }
+            commit.flip();
+            write(segment.resolve(COMMIT_FILE_NAME), commitFileLength, commit);
+        }
+        catch (final IOException ex)
+        {
+            throw new SalesArchiveException("The sales archive segment " + segment + " couldn't be written.", ex);
+        }
+        commitFileLength += COMMIT_SIZE;
+        commit.flip();
+        for (int i = 0; i < COLUMNS.length; i++)
+        {
+            committedLengths[i] = commit.getLong();
+        }
+        rows = 0;
+    }
+
+    /**
+     * Writes {@code buffer} at {@code position} of {@code file}, dropping whatever a failed flush left after it, and
+     * forces it to the disk so that a commit never gets ahead of its blocks.
+     */
+    private static void write(final Path file, final long position, final ByteBuffer buffer) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            channel.truncate(position);
+            long offset = position;
+            while (buffer.hasRemaining())
+            {
+                offset += channel.write(buffer, offset);
+            }
+            channel.force(false);
+        }
+    }
+
+    private void loadCommit(final Path segment) throws IOException
+    {
+        final Path commitFile = segment.resolve(COMMIT_FILE_NAME);
+        final long[] lengths = readCommittedLengths(segment);
+        System.arraycopy(lengths, 0, committedLengths, 0, COLUMNS.length);
+        // a commit cut short by a failure doesn't count
+        commitFileLength = Files.exists(commitFile) ? Files.size(commitFile) / COMMIT_SIZE * COMMIT_SIZE : 0L;
+        committedSegment = segment;
+    }
+
+    /**
+     * @return the committed length of the file of every column of {@code segment}, by ordinal, all 0 when nothing was
+     * committed yet
+     */
+    static long[] readCommittedLengths(final Path segment) throws IOException
+    {
+        final long[] lengths = new long[COLUMNS.length];
+        final Path commitFile = segment.resolve(COMMIT_FILE_NAME);
+        if (!Files.exists(commitFile))
+        {
+            return lengths;
+        }
+        try (FileChannel channel = FileChannel.open(commitFile, StandardOpenOption.READ))
+        {
+            final long commits = channel.size() / COMMIT_SIZE;
+            if (commits == 0)
+            {
+                return lengths;
+            }
+            final ByteBuffer lastCommit = ByteBuffer.allocate(COMMIT_SIZE);
+            long offset = (commits - 1) * COMMIT_SIZE;
+            while (lastCommit.hasRemaining())
+            {
+                final int read = channel.read(lastCommit, offset);
+                if (read < 0)
+                {
+                    throw new IOException("The commit file " + commitFile + " was cut short.");
+                }
+                offset += read;
+            }
+            lastCommit.flip();
+            for (int i = 0; i < lengths.length; i++)
+            {
+                lengths[i] = lastCommit.getLong();
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (!closed)
+        {
+            flush();
+            closed = true;
+        }
+    }
+
+    static String segmentName(final long start, final long end)
+    {
+        return String.format("%s%020d-%020d", SEGMENT_PREFIX, start, end);
+    }
+}
@@ -0,0 +1,127 @@
+package com.dexma.hometest.archive;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+import com.dexma.hometest.error.SalesArchiveException;
+
+
+/**
+ * SalesArchiveReader class - Streams the columns of a {@link SalesArchive}.
+ * <p>
+ * A column is read one segment at a time, mapping its file and decoding its blocks straight to the consumer, so reading a
+ * column never touches the files of the other columns nor builds the rows. The values of the same row in different
+ * columns come in the same order. Only the blocks committed by a flush are read.
+ */
+public final class SalesArchiveReader
+{
+    private final Path directory;
+
+    public SalesArchiveReader(final Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the start (epoch millis) of every segment in the archive, in order
+     */
+    public List<Long> getSegmentStarts()
+    {
+        final List<Long> starts = new ArrayList<>();
+        for (final Path segment : listSegments())
+        {
+            starts.add(startOf(segment));
+        }
+        return starts;
+    }
+
+    /**
+     * Streams to {@code consumer} the values of {@code column} of the segments overlapping the time span from
+     * {@code fromMillis} (inclusive) to {@code toMillis} (exclusive). The coin columns pass
+     * {@link SalesColumn#getValuesPerRow()} values per row.
+     */
+    public void readColumn(final SalesColumn column, final long fromMillis, final long toMillis, final LongConsumer consumer)
+    {
+        for (final Path segment : listSegments())
+        {
+            if (startOf(segment) < toMillis && endOf(segment) > fromMillis)
+            {
+                readColumn(segment, column, consumer);
+            }
+        }
+    }
+
+    /**
+     * Streams to {@code consumer} the values of {@code column} of every segment.
+     */
+    public void readColumn(final SalesColumn column, final LongConsumer consumer)
+    {
+        readColumn(column, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    private void readColumn(final Path segment, final SalesColumn column, final LongConsumer consumer)
+    {
+        final Path file = segment.resolve(column.getFileName());
+        try
+        {
+            final long committedLength = SalesArchive.readCommittedLengths(segment)[column.ordinal()];
+            if (committedLength == 0)
+            {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+            {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, committedLength);
+                ColumnCodec.decodeBlocks(buffer, column.isDeltaEncoded(), consumer);
+            }
+        }
+        catch (final IOException ex)
+        {
+            throw new SalesArchiveException("The sales archive column " + file + " couldn't be read.", ex);
+        }
+    }
+
+    private List<Path> listSegments()
+    {
+        final List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+        {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SalesArchive.SEGMENT_PREFIX + "*"))
+        {
+            for (final Path segment : stream)
+            {
+                segments.add(segment);
+            }
+        }
+        catch (final IOException ex)
+        {
+            throw new SalesArchiveException("The sales archive in " + directory + " couldn't be read.", ex);
+        }
+        // names are zero padded, so they sort as their start
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long startOf(final Path segment)
+    {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SalesArchive.SEGMENT_PREFIX.length(), name.indexOf('-', SalesArchive.SEGMENT_PREFIX.length())));
+    }
+
+    private static long endOf(final Path segment)
+    {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-', SalesArchive.SEGMENT_PREFIX.length()) + 1));
+    }
+}
@@ -0,0 +1,50 @@
+package com.dexma.hometest.archive;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * SalesColumn enum - The columns of the sales archive, each one stored in its own file per segment.
+ * <p>
+ * Timestamps grow slowly, so they are delta encoded. The other columns repeat the same values, so they are run-length
+ * encoded. A product is stored as its {@link Beverage} ordinal and the coin columns have one value per {@link Coin} in
+ * each row (the quantity of that coin, by ordinal).
+ */
+public enum SalesColumn
+{
+    TIMESTAMP("timestamp", 1, true),
+    PRODUCT("product", 1, false),
+    PRICE_CENTS("price", 1, false),
+    INSERTED_COINS("inserted", Coin.getValidCoins().length, false),
+    CHANGE_COINS("change", Coin.getValidCoins().length, false);
+
+    private final String fileName;
+    private final int valuesPerRow;
+    private final boolean deltaEncoded;
+
+    SalesColumn(final String name, final int valuesPerRow, final boolean deltaEncoded)
+    {
+        this.fileName = name + ".col";
+        this.valuesPerRow = valuesPerRow;
+        this.deltaEncoded = deltaEncoded;
+    }
+
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /**
+     * @return the number of values of each row: one per {@link Coin} for the coin columns and 1 for the others
+     */
+    public int getValuesPerRow()
+    {
+        return valuesPerRow;
+    }
+
+    public boolean isDeltaEncoded()
+    {
+        return deltaEncoded;
+    }
+}
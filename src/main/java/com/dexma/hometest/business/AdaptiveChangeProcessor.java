@@ -0,0 +1,177 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.events.VendingMachineEvents;
+
+
+/**
+ * AdaptiveChangeProcessor class - Chooses, for each call, the strategy to process change from the stock and the amount.
+ * <p>
+ * The greedy strategy over cents is used when the denominations are canonical and every one of them has at least
+ * {@code plentifulQuantity} items in stock, or when the amount is above {@code maxOptimalAmountInCents}. In any other
+ * case (or when the greedy strategy doesn't find change) the optimal strategy is used. Calls, latency and fallbacks of
+ * each strategy are counted so that both thresholds can be tuned.
+ * <p>
+ * In a batch every amount up to {@code maxOptimalAmountInCents} is solved by the optimal strategy, since a single pass
+ * of it is shared by all of them, and the remaining amounts by the greedy strategy.
+ */
+public class AdaptiveChangeProcessor implements ChangeProcessor
+{
+    public static final int DEFAULT_PLENTIFUL_QUANTITY = 5;
+    public static final long DEFAULT_MAX_OPTIMAL_AMOUNT_IN_CENTS = 10_000L;
+
+    private final Denominations denominations;
+    private final int plentifulQuantity;
+    private final long maxOptimalAmountInCents;
+    private final CentsChangeProcessor greedyChangeProcessor;
+    private final OptimalChangeProcessor optimalChangeProcessor;
+    private final Map<ChangeStrategy, ChangeProcessorStats> stats = new EnumMap<>(ChangeStrategy.class);
+    // only kept while the events are recording
+    private final ThreadLocal<ChangeStrategy> lastStrategy = new ThreadLocal<>();
+
+    public AdaptiveChangeProcessor()
+    {
+        this(Coin.getValidCoins(), DEFAULT_PLENTIFUL_QUANTITY, DEFAULT_MAX_OPTIMAL_AMOUNT_IN_CENTS);
+    }
+
+    public AdaptiveChangeProcessor(final int plentifulQuantity, final long maxOptimalAmountInCents)
+    {
+        this(Coin.getValidCoins(), plentifulQuantity, maxOptimalAmountInCents);
+    }
+
+    public AdaptiveChangeProcessor(final Cash[] cashItems, final int plentifulQuantity, final long maxOptimalAmountInCents)
+    {
+        this.denominations = Denominations.of(cashItems);
+        this.plentifulQuantity = plentifulQuantity;
+        this.maxOptimalAmountInCents = maxOptimalAmountInCents;
+        this.greedyChangeProcessor = new CentsChangeProcessor(cashItems);
+        this.optimalChangeProcessor = new OptimalChangeProcessor(cashItems);
+        this.stats.put(ChangeStrategy.CENTS_GREEDY, new ChangeProcessorStats());
+        this.stats.put(ChangeStrategy.OPTIMAL, new ChangeProcessorStats());
+    }
+
+    @Override
+    public Map<Cash, Integer> processChange(final Map<Cash, Integer> cashStock, final BigDecimal amount)
+    {
+        final long amountInCents = Cents.toCents(amount);
+        if (cashStock == null || cashStock.isEmpty() || amountInCents <= 0)
+        {
+            if (VendingMachineEvents.isRecording())
+            {
+                lastStrategy.remove();
+            }
+            return null;
+        }
+
+        if (selectStrategy(cashStock, amountInCents) == ChangeStrategy.CENTS_GREEDY)
+        {
+            final Map<Cash, Integer> change = process(ChangeStrategy.CENTS_GREEDY, greedyChangeProcessor, cashStock, amount);
+            if (change != null || amountInCents > maxOptimalAmountInCents)
+            {
+                return change;
+            }
+            stats.get(ChangeStrategy.CENTS_GREEDY).recordFallback();
+        }
+        return process(ChangeStrategy.OPTIMAL, optimalChangeProcessor, cashStock, amount);
+    }
+
+    @Override
+    public List<Map<Cash, Integer>> processChangeBatch(final Map<Cash, Integer> cashStock, final BigDecimal[] amounts)
+    {
+        final List<Integer> greedyIndexes = new ArrayList<>();
+        final BigDecimal[] optimalAmounts = new BigDecimal[amounts.length];
+        for (int i = 0; i < amounts.length; i++)
+        {
+            if (Cents.toCents(amounts[i]) > maxOptimalAmountInCents)
+            {
+                greedyIndexes.add(i);
+            }
+            else
+            {
+                optimalAmounts[i] = amounts[i];
+            }
+        }
+
+        long start = System.nanoTime();
+        final List<Map<Cash, Integer>> changes = new ArrayList<>(optimalChangeProcessor.processChangeBatch(cashStock, optimalAmounts));
+        stats.get(ChangeStrategy.OPTIMAL).recordCalls(amounts.length - greedyIndexes.size(), System.nanoTime() - start);
+
+        if (!greedyIndexes.isEmpty())
+        {
+            final BigDecimal[] greedyAmounts = greedyIndexes.stream().map(i -> amounts[i]).toArray(BigDecimal[]::new);
+            start = System.nanoTime();
+            final List<Map<Cash, Integer>> greedyChanges = greedyChangeProcessor.processChangeBatch(cashStock, greedyAmounts);
+            stats.get(ChangeStrategy.CENTS_GREEDY).recordCalls(greedyAmounts.length, System.nanoTime() - start);
+            for (int i = 0; i < greedyAmounts.length; i++)
+            {
+                changes.set(greedyIndexes.get(i), greedyChanges.get(i));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Method that chooses the strategy to use for {@code amountInCents} considering the current {@code cashStock}.
+     */
+    ChangeStrategy selectStrategy(final Map<Cash, Integer> cashStock, final long amountInCents)
+    {
+        if (amountInCents > maxOptimalAmountInCents)
+        {
+            return ChangeStrategy.CENTS_GREEDY;
+        }
+        return denominations.isCanonical() && isPlentiful(cashStock) ? ChangeStrategy.CENTS_GREEDY : ChangeStrategy.OPTIMAL;
+    }
+
+    /**
+     * @return the strategy, greedy or optimal, that calculated the last change of the current thread (the optimal one when
+     * the greedy one fell back to it), or null when none was run. Only kept while the events are recording.
+     */
+    @Override
+    public ChangeStrategy getLastStrategy()
+    {
+        return lastStrategy.get();
+    }
+
+    /**
+     * @return the counters of {@code changeStrategy} or null if it's not used by this processor
+     */
+    public ChangeProcessorStats getStats(final ChangeStrategy changeStrategy)
+    {
+        return stats.get(changeStrategy);
+    }
+
+    private boolean isPlentiful(final Map<Cash, Integer> cashStock)
+    {
+        for (int i = 0; i < denominations.size(); i++)
+        {
+            if (denominations.getQuantity(cashStock, i) < plentifulQuantity)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<Cash, Integer> process(final ChangeStrategy changeStrategy,
+                                       final ChangeProcessor changeProcessor,
+                                       final Map<Cash, Integer> cashStock,
+                                       final BigDecimal amount)
+    {
+        final long start = System.nanoTime();
+        final Map<Cash, Integer> change = changeProcessor.processChange(cashStock, amount);
+        stats.get(changeStrategy).recordCall(System.nanoTime() - start);
+        if (VendingMachineEvents.isRecording())
+        {
+            lastStrategy.set(changeStrategy);
+        }
+        return change;
+    }
+}
@@ -0,0 +1,165 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.domain.StockSnapshot;
+import com.dexma.hometest.events.VendingMachineEvents;
+
+
+/**
+ * CachingChangeProcessor class - Decorator that memoizes the change calculated by another {@link ChangeProcessor}.
+ * <p>
+ * Entries are kept in a bounded LRU and keyed by the amount in cents and the version of the snapshot of the cash stock
+ * the change is calculated over, so an entry is never served after the stock has changed. Calls for any other map than the one of the given stock are not cached.
+ */
+public class CachingChangeProcessor implements ChangeProcessor
+{
+    private static final Map<Cash, Integer> NO_CHANGE = Collections.emptyMap();
+
+    private final ChangeProcessor changeProcessor;
+    private final Stock<Cash> cashStock;
+    private final Map<ChangeKey, Map<Cash, Integer>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // only kept while the events are recording
+    private final ThreadLocal<ChangeStrategy> lastStrategy = new ThreadLocal<>();
+
+    public CachingChangeProcessor(final ChangeProcessor changeProcessor, final Stock<Cash> cashStock, final int maxEntries)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum number of entries.");
+        }
+        this.changeProcessor = changeProcessor;
+        this.cashStock = cashStock;
+        this.cache = new LinkedHashMap<ChangeKey, Map<Cash, Integer>>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 2906637402744387271L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<ChangeKey, Map<Cash, Integer>> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Map<Cash, Integer> processChange(final Map<Cash, Integer> cashStockMap, final BigDecimal amount)
+    {
+        final long amountInCents = Cents.toCents(amount);
+        if (cashStockMap != cashStock.getStockMap() || amountInCents <= 0)
+        {
+            return calculateChange(cashStockMap, amount);
+        }
+
+        // calculated over a snapshot, whose contents always match its version
+        final StockSnapshot<Cash> snapshot = cashStock.getSnapshot();
+        final ChangeKey key = new ChangeKey(amountInCents, snapshot.getVersion());
+        final Map<Cash, Integer> cached;
+        synchronized (cache)
+        {
+            cached = cache.get(key);
+        }
+
+        if (cached != null)
+        {
+            hits.incrementAndGet();
+            if (VendingMachineEvents.isRecording())
+            {
+                lastStrategy.remove();
+            }
+            return cached == NO_CHANGE ? null : cached;
+        }
+
+        misses.incrementAndGet();
+        final Map<Cash, Integer> change = calculateChange(snapshot.getStockMap(), amount);
+        final Map<Cash, Integer> toCache = change == null ? NO_CHANGE : Collections.unmodifiableMap(change);
+        synchronized (cache)
+        {
+            cache.put(key, toCache);
+        }
+        return change == null ? null : toCache;
+    }
+
+    private Map<Cash, Integer> calculateChange(final Map<Cash, Integer> cashStockMap, final BigDecimal amount)
+    {
+        final Map<Cash, Integer> change = changeProcessor.processChange(cashStockMap, amount);
+        if (VendingMachineEvents.isRecording())
+        {
+            lastStrategy.set(changeProcessor.getLastStrategy());
+        }
+        return change;
+    }
+
+    /**
+     * @return the strategy of the decorated processor that calculated the last change of the current thread, or null when
+     * it was served from the cache. Only kept while the events are recording.
+     */
+    @Override
+    public ChangeStrategy getLastStrategy()
+    {
+        return lastStrategy.get();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public int size()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    /**
+     * ChangeKey class - Key of the cache (amount in cents and version of the stock).
+     */
+    private static final class ChangeKey
+    {
+        private final long amountInCents;
+        private final long stockVersion;
+
+        private ChangeKey(final long amountInCents, final long stockVersion)
+        {
+            this.amountInCents = amountInCents;
+            this.stockVersion = stockVersion;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof ChangeKey))
+            {
+                return false;
+            }
+            final ChangeKey other = (ChangeKey) o;
+            return amountInCents == other.amountInCents && stockVersion == other.stockVersion;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * Long.hashCode(amountInCents) + Long.hashCode(stockVersion);
+        }
+    }
+}
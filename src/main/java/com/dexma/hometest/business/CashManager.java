@@ -2,14 +2,21 @@ package com.dexma.hometest.business;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.dexma.hometest.domain.BalanceResult;
 import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
 import com.dexma.hometest.domain.Coin;
 import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.domain.StockSnapshot;
 import com.dexma.hometest.error.CashManagerException;
+import com.dexma.hometest.events.ChangeEvent;
+import com.dexma.hometest.events.EventType;
+import com.dexma.hometest.events.VendingMachineEvents;
 
 
 /**
@@ -17,16 +24,53 @@ import com.dexma.hometest.error.CashManagerException;
  */
 public class CashManager
 {
+    private static final int MAX_TAKE_CHANGE_ATTEMPTS = 16;
+    // only kept while the events are recording
+    private static final ThreadLocal<LastChange> LAST_CHANGES = ThreadLocal.withInitial(LastChange::new);
+
     private final Stock<Cash> cashStock;
     private BigDecimal currentBalance;
+    private final Map<Cash, Integer> insertedCash = new HashMap<>();
     private final ChangeProcessorFactory changeProcessorFactory;
+    private final CachingChangeProcessor cachingChangeProcessor;
+    private final ChangeFeasibilityTable changeFeasibilityTable;
 
     public CashManager(final Stock<Cash> cashStock,
                        final ChangeProcessorFactory changeProcessorFactory)
+    {
+        this(cashStock, changeProcessorFactory, 0, null);
+    }
+
+    /**
+     * Creates a CashManager that keeps in an LRU cache up to {@code changeCacheSize} calculated changes.
+     */
+    public CashManager(final Stock<Cash> cashStock,
+                       final ChangeProcessorFactory changeProcessorFactory,
+                       final int changeCacheSize)
+    {
+        this(cashStock, changeProcessorFactory, changeCacheSize, null);
+    }
+
+    /**
+     * Creates a CashManager with an optional cache of calculated changes (disabled when {@code changeCacheSize} is 0)
+     * and an optional {@code changeFeasibilityTable} kept up to date with every change in the cash stock.
+     */
+    public CashManager(final Stock<Cash> cashStock,
+                       final ChangeProcessorFactory changeProcessorFactory,
+                       final int changeCacheSize,
+                       final ChangeFeasibilityTable changeFeasibilityTable)
     {
         this.cashStock = cashStock;
         this.currentBalance = BigDecimal.ZERO;
         this.changeProcessorFactory = changeProcessorFactory;
+        this.cachingChangeProcessor = changeCacheSize > 0
+            ? new CachingChangeProcessor(changeProcessorFactory.getChangeProcessor(), cashStock, changeCacheSize)
+            : null;
+        this.changeFeasibilityTable = changeFeasibilityTable;
+        if (changeFeasibilityTable != null)
+        {
+            changeFeasibilityTable.reset(cashStock.getStockMap());
+        }
     }
 
     /***
@@ -40,7 +84,12 @@ public class CashManager
 
     public Map<Cash, Integer> getCashStock()
     {
-        return cashStock.getStockMap();
+        return Collections.unmodifiableMap(cashStock.getStockMap());
+    }
+
+    public StockSnapshot<Cash> getCashStockSnapshot()
+    {
+        return cashStock.getSnapshot();
     }
 
     public void insertCashItemsInStock(final Map<Cash, Integer> cashMap)
@@ -51,8 +100,11 @@ public class CashManager
         {
             final Cash productToAdd = entry.getKey();
             final int quantityOfProduct = entry.getValue();
-            validateCashEntry(productToAdd, quantityOfProduct);
             cashStock.insertItem(productToAdd, quantityOfProduct);
+            if (changeFeasibilityTable != null)
+            {
+                changeFeasibilityTable.addCashItem(productToAdd, quantityOfProduct);
+            }
         }
     }
 
@@ -64,17 +116,53 @@ public class CashManager
         {
             final Cash productToAdd = entry.getKey();
             final int quantityOfProduct = entry.getValue();
-            validateCashEntry(productToAdd, quantityOfProduct);
             cashStock.deleteItem(productToAdd, quantityOfProduct);
+            if (changeFeasibilityTable != null)
+            {
+                changeFeasibilityTable.removeCashItem(productToAdd, quantityOfProduct);
+            }
+        }
+    }
+
+    /**
+     * Method that removes all the {@code cashMap} items from the cash stock only if all of them are still in stock
+     * (atomically when the cash stock is a {@link com.dexma.hometest.domain.ConcurrentStock}).
+     *
+     * @return true if they were removed, false if the cash stock was left unchanged
+     */
+    public boolean takeCashItemsFromStock(final Map<Cash, Integer> cashMap)
+    {
+        validateInputCashMap(cashMap);
+
+        if (!cashStock.tryTakeAll(cashMap))
+        {
+            return false;
         }
+        if (changeFeasibilityTable != null)
+        {
+            for (final Map.Entry<Cash, Integer> entry : cashMap.entrySet())
+            {
+                changeFeasibilityTable.removeCashItem(entry.getKey(), entry.getValue());
+            }
+        }
+        return true;
     }
 
+    /**
+     * Validates every entry of {@code cashMap} before any of them is applied, so an invalid entry never leaves the
+     * stock partially updated.
+     */
     private void validateInputCashMap(final Map<Cash, Integer> cashMap)
     {
         if (cashMap == null || cashMap.isEmpty())
         {
             throw new CashManagerException("At least one cash item should be provided.");
         }
+
+        for (final Map.Entry<Cash, Integer> entry : cashMap.entrySet())
+        {
+            validateCashEntry(entry.getKey(), entry.getValue());
+        }
     }
 
     private boolean isCashItemAllowed(final Cash cash)
@@ -82,14 +170,14 @@ public class CashManager
         return cash != null && getValidCashItems().contains(cash);
     }
 
-    private void validateCashEntry(final Cash cash, final int quantity)
+    private void validateCashEntry(final Cash cash, final Integer quantity)
     {
         if (!isCashItemAllowed(cash))
         {
             throw new CashManagerException("Invalid cash item specified.");
         }
 
-        if (quantity <= 0)
+        if (quantity == null || quantity <= 0)
         {
             throw new CashManagerException("Invalid quantity specified.");
         }
@@ -101,16 +189,12 @@ public class CashManager
 
     public BalanceResult isPossibleToPurchaseProduct(final BigDecimal productPrice)
     {
-        validateProductPrice(productPrice);
-
-        return BalanceResult.getBalanceResultByValue(currentBalance.compareTo(productPrice));
+        return compareBalance(currentBalance, productPrice);
     }
 
     public BigDecimal calculateRemainingChange(final BigDecimal productPrice)
     {
-        validateProductPrice(productPrice);
-
-        return hasCurrentBalance() ? currentBalance.subtract(productPrice) : BigDecimal.ZERO;
+        return calculateRemainingChange(currentBalance, productPrice);
     }
 
     public boolean hasCurrentBalance()
@@ -126,6 +210,34 @@ public class CashManager
     public void resetCurrentBalance()
     {
         setCurrentBalance(BigDecimal.ZERO);
+        insertedCash.clear();
+    }
+
+    /**
+     * @return a copy of the cash items inserted since the balance was last reset
+     */
+    public Map<Cash, Integer> getInsertedCash()
+    {
+        return new HashMap<>(insertedCash);
+    }
+
+    /**
+     * Sets back the balance the customer had when the vending machine stopped (see
+     * {@link com.dexma.hometest.journal.Journal}).
+     */
+    public void restoreCurrentBalance(final BigDecimal currentBalance)
+    {
+        setCurrentBalance(currentBalance);
+    }
+
+    /**
+     * Sets back the balance and the inserted cash items an operation that couldn't be recorded in the journal reset.
+     */
+    public void restoreCurrentBalance(final BigDecimal currentBalance, final Map<Cash, Integer> insertedCash)
+    {
+        setCurrentBalance(currentBalance);
+        this.insertedCash.clear();
+        this.insertedCash.putAll(insertedCash);
     }
 
     private void incrementCurrentBalance(final BigDecimal amount)
@@ -138,7 +250,21 @@ public class CashManager
         this.currentBalance = currentBalance;
     }
 
-    private void validateProductPrice(final BigDecimal productPrice)
+    private static BalanceResult compareBalance(final BigDecimal balance, final BigDecimal productPrice)
+    {
+        validateProductPrice(productPrice);
+
+        return BalanceResult.getBalanceResultByValue(balance.compareTo(productPrice));
+    }
+
+    private static BigDecimal calculateRemainingChange(final BigDecimal balance, final BigDecimal productPrice)
+    {
+        validateProductPrice(productPrice);
+
+        return balance.compareTo(BigDecimal.ZERO) > 0 ? balance.subtract(productPrice) : BigDecimal.ZERO;
+    }
+
+    private static void validateProductPrice(final BigDecimal productPrice)
     {
         if (productPrice == null || productPrice.compareTo(BigDecimal.ZERO) < 0)
         {
@@ -151,14 +277,114 @@ public class CashManager
      */
 
     public Map<Cash, Integer> getCashItemsForChange(final BigDecimal changeToRefund)
+    {
+        if (!VendingMachineEvents.isRecording())
+        {
+            return processChange(changeToRefund);
+        }
+        final long startNanos = System.nanoTime();
+        final ChangeEvent flightEvent = VendingMachineEvents.beginChange();
+        // no strategy when it's known in advance that there's no change
+        final boolean calculated = canGiveChange(changeToRefund);
+        final ChangeProcessor changeProcessor = getChangeProcessor();
+        final Map<Cash, Integer> change = calculated ? changeProcessor.processChange(cashStock.getStockMap(), changeToRefund) : null;
+        final ChangeStrategy strategy = calculated ? changeProcessor.getLastStrategy() : null;
+        final LastChange lastChange = LAST_CHANGES.get();
+        lastChange.startNanos = startNanos;
+        lastChange.strategy = strategy;
+        VendingMachineEvents.change(flightEvent, EventType.CHANGE, startNanos, toCentsOrZero(changeToRefund), strategy, change);
+        return change;
+    }
+
+    private Map<Cash, Integer> processChange(final BigDecimal changeToRefund)
+    {
+        if (!canGiveChange(changeToRefund))
+        {
+            // known in advance that there's no change, no need to run the change processor
+            return null;
+        }
+
+        return getChangeProcessor().processChange(cashStock.getStockMap(), changeToRefund);
+    }
+
+    private ChangeProcessor getChangeProcessor()
+    {
+        return cachingChangeProcessor != null ? cachingChangeProcessor : changeProcessorFactory.getChangeProcessor();
+    }
+
+    /**
+     * @return the strategy the change processor was configured with, or null when it's none of the available ones
+     */
+    public ChangeStrategy getChangeStrategy()
+    {
+        return changeProcessorFactory.getChangeStrategy();
+    }
+
+    /**
+     * @return the strategy that calculated the last change of the current thread if it was calculated since
+     * {@code sinceNanos} (as given by {@link System#nanoTime()}), otherwise null. Only known while the
+     * {@link VendingMachineEvents} are recording.
+     */
+    public ChangeStrategy getChangeStrategySince(final long sinceNanos)
+    {
+        final LastChange lastChange = LAST_CHANGES.get();
+        return lastChange.startNanos - sinceNanos >= 0 ? lastChange.strategy : null;
+    }
+
+    private static long toCentsOrZero(final BigDecimal amount)
+    {
+        return amount == null ? 0L : Cents.toCents(amount);
+    }
+
+    /**
+     * Method that calculates the change for several amounts at once over the same snapshot of the cash stock (e.g. to check
+     * which price and payment combinations can still be served). The cash stock isn't updated.
+     */
+    public List<Map<Cash, Integer>> getCashItemsForChangeBatch(final BigDecimal[] changesToRefund)
     {
         final ChangeProcessor changeProcessor = changeProcessorFactory.getChangeProcessor();
-        return changeProcessor.processChange(cashStock.getStockMap(), changeToRefund);
+        // every sub-batch of the change processor reads the same copy, even while other threads change the stock
+        return changeProcessor.processChangeBatch(cashStock.getSnapshot().getStockMap(), changesToRefund);
+    }
+
+    /**
+     * @return the cache of calculated changes or null when this CashManager was created without one
+     */
+    public CachingChangeProcessor getChangeCache()
+    {
+        return cachingChangeProcessor;
+    }
+
+    /**
+     * Method that checks if the cash stock can pay {@code amount} exactly. It's answered in O(1) by the change
+     * feasibility table when available and the amount is within its range, otherwise it's assumed to be possible.
+     */
+    public boolean canGiveChange(final BigDecimal amount)
+    {
+        if (changeFeasibilityTable == null)
+        {
+            return true;
+        }
+
+        final long amountInCents = Cents.toCents(amount);
+        return !changeFeasibilityTable.isTracked(amountInCents) || changeFeasibilityTable.canGiveChange(amountInCents);
+    }
+
+    /**
+     * @return true if the change feasibility table is available and there are amounts within its range that can't be paid
+     */
+    public boolean isExactChangeOnly()
+    {
+        return changeFeasibilityTable != null && changeFeasibilityTable.isExactChangeOnly();
     }
 
     public Map<Cash, Integer> calculateRefund()
     {
-        final Map<Cash, Integer> refund = getCashItemsForChange(currentBalance);
+        final boolean recording = VendingMachineEvents.isRecording();
+        final long startNanos = recording ? System.nanoTime() : 0L;
+        final ChangeEvent flightEvent = recording ? VendingMachineEvents.beginChange() : null;
+        final BigDecimal balance = currentBalance;
+        final Map<Cash, Integer> refund = getCashItemsForChange(balance);
         if (refund != null)
         {
             // update cashStock (decrement coins from stock)
@@ -167,6 +393,11 @@ public class CashManager
             // update current balance
             resetCurrentBalance();
         }
+        if (recording)
+        {
+            VendingMachineEvents.change(flightEvent, EventType.REFUND, startNanos, toCentsOrZero(balance),
+                getChangeStrategySince(startNanos), refund);
+        }
         return refund;
     }
 
@@ -176,8 +407,9 @@ public class CashManager
         {
             // increment current balance and update cash stock
             incrementCurrentBalance(cash.getValue());
+            insertedCash.merge(cash, 1, Integer::sum);
             // insert quantity 1
-            cashStock.insertItem(cash);
+            insertCashItem(cash);
         }
         else
         {
@@ -186,4 +418,116 @@ public class CashManager
         return getCurrentBalance();
     }
 
+    private void insertCashItem(final Cash cash)
+    {
+        cashStock.insertItem(cash);
+        if (changeFeasibilityTable != null)
+        {
+            changeFeasibilityTable.addCashItem(cash, 1);
+        }
+    }
+
+    /**
+     * Method that calculates the change for {@code amount} and takes it from the cash stock all or nothing, so that two
+     * sessions can't be given the same cash items. The change is calculated without locking and, when another purchase
+     * took some of its cash items meanwhile, calculated again over the new cash stock (up to
+     * {@value #MAX_TAKE_CHANGE_ATTEMPTS} times).
+     *
+     * @return the cash items taken from the stock (empty for a zero amount) or null when there's no change, leaving the
+     * cash stock unchanged
+     */
+    public Map<Cash, Integer> takeCashItemsForChange(final BigDecimal amount)
+    {
+        if (amount != null && amount.signum() == 0)
+        {
+            return Collections.emptyMap();
+        }
+
+        for (int attempt = 0; attempt < MAX_TAKE_CHANGE_ATTEMPTS; attempt++)
+        {
+            final long version = cashStock.getVersion();
+            final Map<Cash, Integer> change = getCashItemsForChange(amount);
+            if (change == null || change.isEmpty() || takeCashItemsFromStock(change))
+            {
+                return change;
+            }
+            if (cashStock.getVersion() == version)
+            {
+                // nothing changed since the change was calculated, calculating it again wouldn't help
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /***
+     * Session related operations
+     */
+
+    public BalanceResult isPossibleToPurchaseProduct(final Session session, final BigDecimal productPrice)
+    {
+        return compareBalance(session.getCurrentBalance(), productPrice);
+    }
+
+    public BigDecimal calculateRemainingChange(final Session session, final BigDecimal productPrice)
+    {
+        return calculateRemainingChange(session.getCurrentBalance(), productPrice);
+    }
+
+    public void resetCurrentBalance(final Session session)
+    {
+        session.setCurrentBalance(BigDecimal.ZERO);
+        session.resetInsertedCash();
+    }
+
+    public void restoreCurrentBalance(final Session session, final BigDecimal currentBalance)
+    {
+        session.setCurrentBalance(currentBalance);
+    }
+
+    public void restoreCurrentBalance(final Session session, final BigDecimal currentBalance, final Map<Cash, Integer> insertedCash)
+    {
+        session.setCurrentBalance(currentBalance);
+        session.restoreInsertedCash(insertedCash);
+    }
+
+    public Map<Cash, Integer> calculateRefund(final Session session)
+    {
+        final boolean recording = VendingMachineEvents.isRecording();
+        final long startNanos = recording ? System.nanoTime() : 0L;
+        final ChangeEvent flightEvent = recording ? VendingMachineEvents.beginChange() : null;
+        final BigDecimal balance = session.getCurrentBalance();
+        final Map<Cash, Integer> refund = takeCashItemsForChange(balance);
+        if (refund != null)
+        {
+            resetCurrentBalance(session);
+        }
+        if (recording)
+        {
+            VendingMachineEvents.change(flightEvent, EventType.REFUND, startNanos, toCentsOrZero(balance),
+                getChangeStrategySince(startNanos), refund);
+        }
+        return refund;
+    }
+
+    public BigDecimal receiveCash(final Session session, final Cash cash)
+    {
+        if (!isCashItemAllowed(cash))
+        {
+            throw new CashManagerException("A valid cash item should be provided.");
+        }
+        insertCashItem(cash);
+        session.setCurrentBalance(session.getCurrentBalance().add(cash.getValue()));
+        session.addInsertedCash(cash);
+        return session.getCurrentBalance();
+    }
+
+    /**
+     * LastChange class - When the last change of a thread was calculated and by which strategy.
+     */
+    private static final class LastChange
+    {
+        private long startNanos = Long.MIN_VALUE;
+        private ChangeStrategy strategy;
+    }
 }
@@ -0,0 +1,131 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * CentsChangeProcessor class - Implements a greedy strategy to process change using integer arithmetic over cents.
+ * <p>
+ * The denominations are sorted only once (on creation). A call reads the quantity of each denomination from the stock
+ * once, in a single pass, keeping the quantities taken in a buffer of the calling thread, and the only allocation done
+ * is the resulting map, built from that buffer only when the change was found. A batch reads the stock only once and is
+ * split across the available cores when it has at least {@link #PARALLEL_BATCH_THRESHOLD} amounts.
+ */
+public class CentsChangeProcessor implements ChangeProcessor
+{
+    public static final int PARALLEL_BATCH_THRESHOLD = 512;
+
+    private final Denominations denominations;
+    // quantity taken of each denomination by the last call of the thread
+    private final ThreadLocal<int[]> takenQuantities;
+
+    public CentsChangeProcessor()
+    {
+        this(Coin.getValidCoins());
+    }
+
+    public CentsChangeProcessor(final Cash[] cashItems)
+    {
+        this.denominations = Denominations.of(cashItems);
+        this.takenQuantities = ThreadLocal.withInitial(() -> new int[denominations.size()]);
+    }
+
+    @Override
+    public Map<Cash, Integer> processChange(final Map<Cash, Integer> cashStock, final BigDecimal amount)
+    {
+        final long amountInCents = Cents.toCents(amount);
+        if (!isValid(cashStock) || amountInCents <= 0)
+        {
+            return null;
+        }
+
+        final ChangeTrace trace = ChangeTrace.isEnabled() ? ChangeTrace.begin(ChangeStrategy.CENTS_GREEDY, amountInCents) : null;
+        final int[] taken = takenQuantities.get();
+        long remaining = amountInCents;
+        int used = 0;
+        for (; used < denominations.size() && remaining > 0; used++)
+        {
+            final int inStock = denominations.getQuantity(cashStock, used);
+            taken[used] = (int) Math.min(remaining / denominations.getCents(used), inStock);
+            remaining -= taken[used] * (long) denominations.getCents(used);
+            if (trace != null)
+            {
+                trace.step(denominations.getCents(used), remaining, inStock - taken[used]);
+            }
+        }
+
+        if (trace != null)
+        {
+            trace.end(remaining == 0);
+        }
+        return remaining == 0 ? toChange(taken, used) : null;
+    }
+
+    @Override
+    public List<Map<Cash, Integer>> processChangeBatch(final Map<Cash, Integer> cashStock, final BigDecimal[] amounts)
+    {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Map<Cash, Integer>[] changes = new Map[amounts.length];
+        if (isValid(cashStock))
+        {
+            final int[] quantities = new int[denominations.size()];
+            for (int i = 0; i < quantities.length; i++)
+            {
+                quantities[i] = denominations.getQuantity(cashStock, i);
+            }
+
+            final IntStream indexes = IntStream.range(0, amounts.length);
+            (amounts.length >= PARALLEL_BATCH_THRESHOLD ? indexes.parallel() : indexes)
+                .forEach(i -> changes[i] = processChange(quantities, Cents.toCents(amounts[i])));
+        }
+        return Arrays.asList(changes);
+    }
+
+    private Map<Cash, Integer> processChange(final int[] quantities, final long amountInCents)
+    {
+        if (amountInCents <= 0)
+        {
+            return null;
+        }
+
+        final int[] taken = takenQuantities.get();
+        long remaining = amountInCents;
+        int used = 0;
+        for (; used < quantities.length && remaining > 0; used++)
+        {
+            taken[used] = (int) Math.min(remaining / denominations.getCents(used), quantities[used]);
+            remaining -= taken[used] * (long) denominations.getCents(used);
+        }
+        return remaining == 0 ? toChange(taken, used) : null;
+    }
+
+    /**
+     * @return the change made of the quantities {@code taken} of the first {@code used} denominations
+     */
+    private Map<Cash, Integer> toChange(final int[] taken, final int used)
+    {
+        final Map<Cash, Integer> change = new HashMap<>();
+        for (int i = 0; i < used; i++)
+        {
+            if (taken[i] > 0)
+            {
+                change.put(denominations.getCashItem(i), taken[i]);
+            }
+        }
+        return change;
+    }
+
+    private boolean isValid(final Map<Cash, Integer> cashStock)
+    {
+        return cashStock != null && !cashStock.isEmpty();
+    }
+}
@@ -0,0 +1,218 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * ChangeFeasibilityTable class - Keeps, for every amount up to a maximum, whether the cash stock can pay it exactly.
+ * <p>
+ * The table holds one layer of reachable amounts per denomination, sorted from the biggest: layer k tells which amounts
+ * can be paid with the first k denominations, so the last layer answers the checks in O(1). Layer k+1 is built from
+ * layer k in one linear pass, keeping for every amount the fewest items of the k-th denomination needed to reach it,
+ * which must not exceed its quantity. Changing the quantity of a denomination only rebuilds the layers after it, and
+ * stops as soon as a layer comes out unchanged. The layers are plain booleans, so unlike counting the combinations they
+ * can't overflow.
+ * <p>
+ * The operations are synchronized, so the table can be shared by several sessions. A change of quantity, such as the
+ * one made by every coin inserted, rebuilds up to one layer per denomination while holding the lock: O(number of
+ * denominations * maximum amount) work, a few thousand steps for the coins and the default maximum.
+ */
+public class ChangeFeasibilityTable
+{
+    private final Denominations denominations;
+    private final int maxAmountInCents;
+    // reachable[k][a]: the amount of a units can be paid with the first k denominations
+    private final boolean[][] reachable;
+    // fewest items of the denomination of the layer being built needed to reach each amount
+    private final int[] itemsUsed;
+    private final int[] quantities;
+    private int unreachableAmounts;
+
+    public ChangeFeasibilityTable(final int maxAmountInCents)
+    {
+        this(Coin.getValidCoins(), maxAmountInCents);
+    }
+
+    public ChangeFeasibilityTable(final Cash[] cashItems, final int maxAmountInCents)
+    {
+        if (maxAmountInCents <= 0)
+        {
+            throw new IllegalArgumentException("Invalid maximum amount.");
+        }
+        this.denominations = Denominations.of(cashItems);
+        this.maxAmountInCents = maxAmountInCents;
+        this.reachable = new boolean[denominations.size() + 1][maxAmountInCents / denominations.getUnit() + 1];
+        this.itemsUsed = new int[reachable[0].length];
+        this.quantities = new int[denominations.size()];
+        clear();
+    }
+
+    /**
+     * Method that rebuilds the whole table for the given {@code cashStock}.
+     */
+    public synchronized void reset(final Map<Cash, Integer> cashStock)
+    {
+        clear();
+        if (cashStock != null)
+        {
+            for (int i = 0; i < denominations.size(); i++)
+            {
+                quantities[i] = denominations.getQuantity(cashStock, i);
+            }
+            // every quantity may have changed
+            for (int k = 0; k < denominations.size(); k++)
+            {
+                rebuildLayer(k);
+            }
+            countUnreachableAmounts();
+        }
+    }
+
+    public synchronized void addCashItem(final Cash cash, final int quantity)
+    {
+        final int index = denominations.indexOf(cash);
+        if (index >= 0 && quantity > 0)
+        {
+            updateQuantity(index, quantities[index] + quantity);
+        }
+    }
+
+    public synchronized void removeCashItem(final Cash cash, final int quantity)
+    {
+        final int index = denominations.indexOf(cash);
+        if (index >= 0 && quantity > 0)
+        {
+            updateQuantity(index, Math.max(quantities[index] - quantity, 0));
+        }
+    }
+
+    /**
+     * @return true if {@code amountInCents} is within the maximum amount kept by this table
+     */
+    public boolean isTracked(final long amountInCents)
+    {
+        return amountInCents >= 0 && amountInCents <= maxAmountInCents;
+    }
+
+    /**
+     * Method that checks in O(1) if the cash stock can pay exactly {@code amountInCents}.
+     *
+     * @return true if it can, false if it can't or if the amount isn't tracked by this table
+     */
+    public synchronized boolean canGiveChange(final long amountInCents)
+    {
+        if (!isTracked(amountInCents) || amountInCents % denominations.getUnit() != 0)
+        {
+            return false;
+        }
+        return reachable[denominations.size()][(int) (amountInCents / denominations.getUnit())];
+    }
+
+    public boolean canGiveChange(final BigDecimal amount)
+    {
+        return canGiveChange(Cents.toCents(amount));
+    }
+
+    /**
+     * @return true if at least one amount up to the maximum can't be paid exactly by the cash stock
+     */
+    public synchronized boolean isExactChangeOnly()
+    {
+        return unreachableAmounts > 0;
+    }
+
+    public int getMaxAmountInCents()
+    {
+        return maxAmountInCents;
+    }
+
+    private void clear()
+    {
+        for (final boolean[] layer : reachable)
+        {
+            Arrays.fill(layer, false);
+            layer[0] = true;
+        }
+        Arrays.fill(quantities, 0);
+        unreachableAmounts = reachable[0].length - 1;
+    }
+
+    private void updateQuantity(final int index, final int newQuantity)
+    {
+        if (newQuantity != quantities[index])
+        {
+            quantities[index] = newQuantity;
+            rebuildLayersFrom(index);
+        }
+    }
+
+    // only the quantity of the denomination at index changed, so the layers before it stay as they are
+    private void rebuildLayersFrom(final int index)
+    {
+        for (int k = index; k < denominations.size(); k++)
+        {
+            if (!rebuildLayer(k))
+            {
+                // the next layers are built from this one, which didn't change
+                break;
+            }
+        }
+        countUnreachableAmounts();
+    }
+
+    private void countUnreachableAmounts()
+    {
+        final boolean[] last = reachable[denominations.size()];
+        int unreachable = 0;
+        for (int a = 1; a < last.length; a++)
+        {
+            if (!last[a])
+            {
+                unreachable++;
+            }
+        }
+        unreachableAmounts = unreachable;
+    }
+
+    /**
+     * Builds layer k+1 from layer k: an amount is reachable if it already was without the k-th denomination, or if it's
+     * one more item of it after a reachable amount that used fewer items than its quantity.
+     *
+     * @return true if the layer changed
+     */
+    private boolean rebuildLayer(final int k)
+    {
+        final boolean[] previous = reachable[k];
+        final boolean[] next = reachable[k + 1];
+        final int value = denominations.getCents(k) / denominations.getUnit();
+        final int quantity = quantities[k];
+        boolean changed = false;
+        for (int a = 0; a < next.length; a++)
+        {
+            final boolean isReachable;
+            if (previous[a])
+            {
+                itemsUsed[a] = 0;
+                isReachable = true;
+            }
+            else if (a >= value && next[a - value] && itemsUsed[a - value] < quantity)
+            {
+                itemsUsed[a] = itemsUsed[a - value] + 1;
+                isReachable = true;
+            }
+            else
+            {
+                isReachable = false;
+            }
+            changed |= next[a] != isReachable;
+            next[a] = isReachable;
+        }
+        return changed;
+    }
+}
@@ -1,6 +1,9 @@
 package com.dexma.hometest.business;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.dexma.hometest.domain.Cash;
@@ -19,4 +22,33 @@ public interface ChangeProcessor
      * @return a map containing the change (cash item and respective quantity) or null if no change available
      */
     Map<Cash, Integer> processChange(final Map<Cash, Integer> cashStock, BigDecimal amount);
+
+    /**
+     * Method that process change for each one of the {@code amounts} considering the same snapshot of {@code cashStock}.
+     * Each change is calculated independently, i.e. as if it was the only one to be given.
+     *
+     * @param cashStock - represent the stock of the available cash
+     * @param amounts - values about which the change should be calculated
+     * @return a list with the change of each amount (in the same order), with null for the amounts without change available
+     */
+    default List<Map<Cash, Integer>> processChangeBatch(final Map<Cash, Integer> cashStock, final BigDecimal[] amounts)
+    {
+        final Map<Cash, Integer> snapshot = cashStock == null ? null : new HashMap<>(cashStock);
+        final List<Map<Cash, Integer>> changes = new ArrayList<>(amounts.length);
+        for (final BigDecimal amount : amounts)
+        {
+            changes.add(processChange(snapshot, amount));
+        }
+        return changes;
+    }
+
+    /**
+     * @return the strategy that calculated the last change processed by the current thread, or null when it's none of the
+     * available ones. The processors choosing a strategy for each call only keep it while the
+     * {@link com.dexma.hometest.events.VendingMachineEvents} are recording.
+     */
+    default ChangeStrategy getLastStrategy()
+    {
+        return ChangeProcessorFactory.strategyOf(this);
+    }
 }
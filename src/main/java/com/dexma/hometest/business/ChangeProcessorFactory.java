@@ -5,10 +5,74 @@ package com.dexma.hometest.business;
  */
 public class ChangeProcessorFactory
 {
-    private final GreedyChangeProcessor greedyChangeProcessor = new GreedyChangeProcessor();
+    private final ChangeProcessor changeProcessor;
+    private final ChangeStrategy changeStrategy;
+
+    public ChangeProcessorFactory()
+    {
+        this(ChangeStrategy.ADAPTIVE);
+    }
+
+    public ChangeProcessorFactory(final ChangeStrategy changeStrategy)
+    {
+        this(createChangeProcessor(changeStrategy));
+    }
+
+    /**
+     * Creates a factory for an already configured {@code changeProcessor} (e.g. an {@link AdaptiveChangeProcessor} with
+     * tuned thresholds).
+     */
+    public ChangeProcessorFactory(final ChangeProcessor changeProcessor)
+    {
+        this.changeProcessor = changeProcessor;
+        this.changeStrategy = strategyOf(changeProcessor);
+    }
 
     ChangeProcessor getChangeProcessor()
     {
-        return greedyChangeProcessor;
+        return changeProcessor;
+    }
+
+    /**
+     * @return the strategy the change processor was configured with, or null when it's none of the available ones. The
+     * strategy of each call of an {@link ChangeStrategy#ADAPTIVE} processor is given by
+     * {@link ChangeProcessor#getLastStrategy()}.
+     */
+    public ChangeStrategy getChangeStrategy()
+    {
+        return changeStrategy;
+    }
+
+    static ChangeStrategy strategyOf(final ChangeProcessor changeProcessor)
+    {
+        if (changeProcessor instanceof AdaptiveChangeProcessor)
+        {
+            return ChangeStrategy.ADAPTIVE;
+        }
+        if (changeProcessor instanceof OptimalChangeProcessor)
+        {
+            return ChangeStrategy.OPTIMAL;
+        }
+        if (changeProcessor instanceof CentsChangeProcessor)
+        {
+            return ChangeStrategy.CENTS_GREEDY;
+        }
+        return changeProcessor instanceof GreedyChangeProcessor ? ChangeStrategy.GREEDY : null;
+    }
+
+    private static ChangeProcessor createChangeProcessor(final ChangeStrategy changeStrategy)
+    {
+        switch (changeStrategy)
+        {
+            case CENTS_GREEDY:
+                return new CentsChangeProcessor();
+            case OPTIMAL:
+                return new OptimalChangeProcessor();
+            case ADAPTIVE:
+                return new AdaptiveChangeProcessor();
+            case GREEDY:
+            default:
+                return new GreedyChangeProcessor();
+        }
     }
 }
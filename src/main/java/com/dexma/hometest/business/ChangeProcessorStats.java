@@ -0,0 +1,61 @@
+package com.dexma.hometest.business;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * ChangeProcessorStats class - Counters about the calls done to a certain change strategy.
+ */
+public class ChangeProcessorStats
+{
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    void recordCall(final long elapsedNanos)
+    {
+        calls.increment();
+        totalNanos.add(elapsedNanos);
+    }
+
+    void recordCalls(final long numberOfCalls, final long elapsedNanos)
+    {
+        calls.add(numberOfCalls);
+        totalNanos.add(elapsedNanos);
+    }
+
+    void recordFallback()
+    {
+        fallbacks.increment();
+    }
+
+    public long getCalls()
+    {
+        return calls.sum();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    public long getAverageNanos()
+    {
+        final long numberOfCalls = getCalls();
+        return numberOfCalls == 0 ? 0 : getTotalNanos() / numberOfCalls;
+    }
+
+    /**
+     * @return the number of calls where this strategy didn't find change and another strategy had to be used
+     */
+    public long getFallbacks()
+    {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ChangeProcessorStats{calls=" + getCalls() + ", averageNanos=" + getAverageNanos() + ", fallbacks=" + getFallbacks() + "}";
+    }
+}
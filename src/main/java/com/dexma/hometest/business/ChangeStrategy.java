@@ -0,0 +1,9 @@
+package com.dexma.hometest.business;
+
+/**
+ * ChangeStrategy enum - Describes the available strategies to calculate change.
+ */
+public enum ChangeStrategy
+{
+    GREEDY, CENTS_GREEDY, OPTIMAL, ADAPTIVE
+}
@@ -0,0 +1,205 @@
+package com.dexma.hometest.business;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * ChangeTrace class - Optional trace of the steps taken by the {@link ChangeProcessor}s to calculate change, to find out
+ * why there was no change for an amount.
+ * <p>
+ * While enabled, every change calculated by a thread appends its strategy and amount, each cash item tried (its
+ * denomination, the amount remaining after it and the quantity left in stock) and whether change was found, to a ring
+ * buffer of that thread allocated once with room for the last {@link #CAPACITY} rows. The change processors check
+ * {@link #isEnabled()}, which reads the constant target of a call site: the JIT folds it into the compiled code, so
+ * while disabled the tracing costs nothing, and enabling or disabling it deoptimizes the code that checked it.
+ * <p>
+ * Every thread that traced is registered, so {@link #getAllThreadsTrace()} can dump them all. A thread tracing while
+ * it's dumped may show its latest rows half written.
+ */
+public final class ChangeTrace
+{
+    public static final int CAPACITY = 256;
+
+    private static final byte BEGIN = 0;
+    private static final byte STEP = 1;
+    private static final byte END = 2;
+    private static final ChangeStrategy[] STRATEGIES = ChangeStrategy.values();
+    private static final MutableCallSite ENABLED = new MutableCallSite(MethodHandles.constant(boolean.class, false));
+    private static final MethodHandle IS_ENABLED = ENABLED.dynamicInvoker();
+    // the trace of every thread that traced, pruned of the ended threads when a thread registers
+    private static final Queue<ChangeTrace> ALL_TRACES = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<ChangeTrace> TRACES = ThreadLocal.withInitial(ChangeTrace::register);
+
+    private final byte[] kinds = new byte[CAPACITY];
+    // amount in cents for BEGIN, remaining amount in cents for STEP
+    private final long[] amounts = new long[CAPACITY];
+    // strategy ordinal for BEGIN, denomination in cents for STEP, 1 if found for END
+    private final int[] values = new int[CAPACITY];
+    // quantity left in stock for STEP
+    private final int[] stockLeft = new int[CAPACITY];
+    private final WeakReference<Thread> owner;
+    private final String threadName;
+    private long rows;
+
+    private ChangeTrace(final Thread thread)
+    {
+        this.owner = new WeakReference<>(thread);
+        this.threadName = thread.getName();
+    }
+
+    private static ChangeTrace register()
+    {
+        ALL_TRACES.removeIf(trace ->
+        {
+            final Thread thread = trace.owner.get();
+            return thread == null || !thread.isAlive();
+        });
+        final ChangeTrace trace = new ChangeTrace(Thread.currentThread());
+        ALL_TRACES.add(trace);
+        return trace;
+    }
+
+    public static void enable()
+    {
+        setEnabled(true);
+    }
+
+    public static void disable()
+    {
+        setEnabled(false);
+    }
+
+    private static void setEnabled(final boolean enabled)
+    {
+        ENABLED.setTarget(MethodHandles.constant(boolean.class, enabled));
+        // so that every thread sees the new target
+        MutableCallSite.syncAll(new MutableCallSite[] {ENABLED});
+    }
+
+    public static boolean isEnabled()
+    {
+        try
+        {
+            return (boolean) IS_ENABLED.invokeExact();
+        }
+        catch (final Throwable ex)
+        {
+            // a constant handle throws nothing
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Starts tracing the change for {@code amountInCents} in the buffer of the current thread. Should only be called
+     * when {@link #isEnabled()}.
+     */
+    static ChangeTrace begin(final ChangeStrategy strategy, final long amountInCents)
+    {
+        final ChangeTrace trace = TRACES.get();
+        trace.append(BEGIN, amountInCents, strategy.ordinal(), 0);
+        return trace;
+    }
+
+    void step(final int denominationInCents, final long remainingInCents, final int quantityLeft)
+    {
+        append(STEP, remainingInCents, denominationInCents, quantityLeft);
+    }
+
+    void end(final boolean changeFound)
+    {
+        append(END, 0L, changeFound ? 1 : 0, 0);
+    }
+
+    private void append(final byte kind, final long amount, final int value, final int quantity)
+    {
+        final int row = (int) (rows++ % CAPACITY);
+        kinds[row] = kind;
+        amounts[row] = amount;
+        values[row] = value;
+        stockLeft[row] = quantity;
+    }
+
+    /**
+     * @return the changes traced by the current thread, one per line and oldest first, starting with "..." when older
+     * rows were overwritten. Empty when nothing was traced since the last {@link #clear()}.
+     */
+    public static String getCurrentThreadTrace()
+    {
+        return TRACES.get().format();
+    }
+
+    /**
+     * @return the changes traced by every thread still running, each one after a line with the name of its thread, in
+     * the order the threads first traced. Threads with nothing traced are left out.
+     */
+    public static String getAllThreadsTrace()
+    {
+        final StringBuilder builder = new StringBuilder();
+        for (final ChangeTrace trace : ALL_TRACES)
+        {
+            final Thread thread = trace.owner.get();
+            if (thread == null || !thread.isAlive() || trace.rows == 0L)
+            {
+                continue;
+            }
+            if (builder.length() > 0)
+            {
+                builder.append('\n');
+            }
+            builder.append(trace.threadName).append(":\n").append(trace.format());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Empties the buffer of the current thread.
+     */
+    public static void clear()
+    {
+        TRACES.get().rows = 0L;
+    }
+
+    private String format()
+    {
+        final StringBuilder builder = new StringBuilder();
+        final long first = Math.max(0L, rows - CAPACITY);
+        if (first > 0 && kinds[(int) (first % CAPACITY)] != BEGIN)
+        {
+            builder.append("...");
+        }
+        for (long i = first; i < rows; i++)
+        {
+            final int row = (int) (i % CAPACITY);
+            switch (kinds[row])
+            {
+                case BEGIN:
+                {
+                    if (builder.length() > 0)
+                    {
+                        builder.append('\n');
+                    }
+                    builder.append(STRATEGIES[values[row]]).append(" change for ").append(amounts[row]).append(" cents:");
+                    break;
+                }
+                case STEP:
+                {
+                    builder.append(' ').append(values[row]).append(" cents -> ").append(amounts[row]).append(" left (")
+                        .append(stockLeft[row]).append(" in stock),");
+                    break;
+                }
+                case END:
+                default:
+                {
+                    builder.append(values[row] == 1 ? " found" : " not found");
+                    break;
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
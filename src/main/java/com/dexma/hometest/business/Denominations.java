@@ -0,0 +1,137 @@
+package com.dexma.hometest.business;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+
+
+/**
+ * Denominations class - Immutable set of cash items sorted once in descending order of value, with their values in cents.
+ */
+final class Denominations
+{
+    private final Cash[] cashItems;
+    private final int[] cents;
+    private final int unit;
+    private final boolean canonical;
+
+    private Denominations(final Cash[] cashItems)
+    {
+        this.cashItems = cashItems;
+        this.cents = new int[cashItems.length];
+        int gcd = 0;
+        for (int i = 0; i < cashItems.length; i++)
+        {
+            this.cents[i] = cashItems[i].getCents();
+            gcd = gcd(gcd, this.cents[i]);
+        }
+        this.unit = gcd == 0 ? 1 : gcd;
+        this.canonical = checkCanonical();
+    }
+
+    static Denominations of(final Cash[] cashItems)
+    {
+        final Cash[] sorted = Arrays.copyOf(cashItems, cashItems.length);
+        // need to have cash items sorted in descending order (from biggest to smallest)
+        Arrays.sort(sorted, Comparator.comparingInt(Cash::getCents).reversed());
+        return new Denominations(sorted);
+    }
+
+    int size()
+    {
+        return cashItems.length;
+    }
+
+    Cash getCashItem(final int index)
+    {
+        return cashItems[index];
+    }
+
+    int getCents(final int index)
+    {
+        return cents[index];
+    }
+
+    /**
+     * @return the greatest common divisor of all the values in cents (every amount that can be paid is a multiple of it)
+     */
+    int getUnit()
+    {
+        return unit;
+    }
+
+    /**
+     * @return true if, with an unlimited quantity of each cash item, the greedy strategy always gives the fewest cash items
+     */
+    boolean isCanonical()
+    {
+        return canonical;
+    }
+
+    int indexOf(final Cash cash)
+    {
+        for (int i = 0; i < cashItems.length; i++)
+        {
+            if (cashItems[i] == cash)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getQuantity(final Map<Cash, Integer> cashStock, final int index)
+    {
+        final Integer quantity = cashStock.get(cashItems[index]);
+        return quantity == null || quantity < 0 ? 0 : quantity;
+    }
+
+    // a counterexample to the greedy strategy, if any, is smaller than the sum of the two biggest values (Kozen and Zaks);
+    // the bound needs the smallest value to be the unit, otherwise the system is conservatively considered non canonical
+    private boolean checkCanonical()
+    {
+        if (cents.length < 2)
+        {
+            return true;
+        }
+        if (cents[cents.length - 1] != unit)
+        {
+            return false;
+        }
+
+        final int limit = (cents[0] + cents[1]) / unit;
+        final int[] fewest = new int[limit + 1];
+        for (int amount = 1; amount <= limit; amount++)
+        {
+            fewest[amount] = Integer.MAX_VALUE;
+            for (final int value : cents)
+            {
+                final int valueInUnits = value / unit;
+                if (valueInUnits <= amount && fewest[amount - valueInUnits] != Integer.MAX_VALUE)
+                {
+                    fewest[amount] = Math.min(fewest[amount], fewest[amount - valueInUnits] + 1);
+                }
+            }
+
+            int remaining = amount;
+            int greedy = 0;
+            for (final int value : cents)
+            {
+                greedy += remaining / (value / unit);
+                remaining %= value / unit;
+            }
+            if (remaining != 0 ? fewest[amount] != Integer.MAX_VALUE : greedy > fewest[amount])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int gcd(final int a, final int b)
+    {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
 
 
 /**
@@ -22,6 +23,7 @@ public class GreedyChangeProcessor implements ChangeProcessor
             // need to have stock of cash sorted in descending order (from biggest to smallest)
             final TreeMap<Cash, Integer> treeMap = new TreeMap<>(Comparator.comparing(Cash::getValue).reversed());
             treeMap.putAll(cashStock);
+            final ChangeTrace trace = ChangeTrace.isEnabled() ? ChangeTrace.begin(ChangeStrategy.GREEDY, Cents.toCents(amount)) : null;
 
             final Map<Cash, Integer> change = new HashMap<>();
             for (final Map.Entry<Cash, Integer> entry : treeMap.entrySet())
@@ -32,11 +34,13 @@ public class GreedyChangeProcessor implements ChangeProcessor
                 Integer quantity = entry.getValue();
                 while (cashValue.compareTo(amount) <= 0 && quantity > 0)
                 {
-//                    System.out.print("Change: " + amount + " - " + cashItem);
                     amount = amount.subtract(cashValue);
-//                    System.out.print(" = " + amount + "\n");
                     change.put(cashItem, ++cnt);
                     quantity--;
+                    if (trace != null)
+                    {
+                        trace.step(cashItem.getCents(), Cents.toCents(amount), quantity);
+                    }
                 }
 
                 // no need for more iterations
@@ -46,7 +50,12 @@ public class GreedyChangeProcessor implements ChangeProcessor
                 }
             }
 
-            return amount.compareTo(BigDecimal.ZERO) == 0 ? change : null;
+            final boolean changeFound = amount.compareTo(BigDecimal.ZERO) == 0;
+            if (trace != null)
+            {
+                trace.end(changeFound);
+            }
+            return changeFound ? change : null;
         }
         return null;
     }
@@ -58,6 +67,6 @@ public class GreedyChangeProcessor implements ChangeProcessor
 
     private boolean isValid(final BigDecimal amount)
     {
-        return amount.compareTo(BigDecimal.ZERO) > 0;
+        return amount != null && amount.compareTo(BigDecimal.ZERO) > 0;
     }
 }
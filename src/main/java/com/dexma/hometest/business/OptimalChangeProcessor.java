@@ -0,0 +1,282 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * OptimalChangeProcessor class - Implements a bounded knapsack (dynamic programming) strategy to process change.
+ * <p>
+ * Unlike the greedy strategies it always finds change when some combination of the available cash exists, and
+ * the change returned uses the fewest possible cash items. Amounts are handled in multiples of the greatest common
+ * divisor of the denominations and each denomination is added in O(amount) with a sliding window minimum, so a call
+ * costs O(denominations * amount). The buffers are kept per thread and reused between calls.
+ * <p>
+ * A single pass up to the biggest amount of a batch solves all of its amounts at once, after which the change of each
+ * amount is rebuilt from the shared table (split across the available cores when the batch has at least
+ * {@link #PARALLEL_BATCH_THRESHOLD} amounts).
+ */
+public class OptimalChangeProcessor implements ChangeProcessor
+{
+    public static final int PARALLEL_BATCH_THRESHOLD = 512;
+
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final Denominations denominations;
+    private final ThreadLocal<Workspace> workspaces;
+
+    public OptimalChangeProcessor()
+    {
+        this(Coin.getValidCoins());
+    }
+
+    public OptimalChangeProcessor(final Cash[] cashItems)
+    {
+        this.denominations = Denominations.of(cashItems);
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(denominations.size()));
+    }
+
+    @Override
+    public Map<Cash, Integer> processChange(final Map<Cash, Integer> cashStock, final BigDecimal amount)
+    {
+        final long amountInCents = Cents.toCents(amount);
+        if (!isValid(cashStock) || amountInCents <= 0 || amountInCents % denominations.getUnit() != 0)
+        {
+            return null;
+        }
+
+        final Workspace workspace = workspaces.get();
+        final long totalInUnits = workspace.readStock(cashStock);
+        final long amountInUnits = amountInCents / denominations.getUnit();
+        final ChangeTrace trace = ChangeTrace.isEnabled() ? ChangeTrace.begin(ChangeStrategy.OPTIMAL, amountInCents) : null;
+        if (amountInUnits > totalInUnits)
+        {
+            if (trace != null)
+            {
+                workspace.traceStock(trace, amountInCents);
+            }
+            return null;
+        }
+
+        final int target = (int) amountInUnits;
+        workspace.solve(target);
+        final Map<Cash, Integer> change = workspace.isReachable(target) ? workspace.buildChange(target) : null;
+        if (trace != null)
+        {
+            if (change == null)
+            {
+                workspace.traceStock(trace, amountInCents);
+            }
+            else
+            {
+                workspace.traceChange(trace, amountInCents, change);
+            }
+        }
+        return change;
+    }
+
+    @Override
+    public List<Map<Cash, Integer>> processChangeBatch(final Map<Cash, Integer> cashStock, final BigDecimal[] amounts)
+    {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final Map<Cash, Integer>[] changes = new Map[amounts.length];
+        if (!isValid(cashStock))
+        {
+            return Arrays.asList(changes);
+        }
+
+        final Workspace workspace = workspaces.get();
+        final long totalInUnits = workspace.readStock(cashStock);
+        final int[] targets = new int[amounts.length];
+        int maxTarget = 0;
+        for (int i = 0; i < amounts.length; i++)
+        {
+            final long amountInCents = Cents.toCents(amounts[i]);
+            final boolean valid = amountInCents > 0 && amountInCents % denominations.getUnit() == 0
+                && amountInCents / denominations.getUnit() <= totalInUnits;
+            targets[i] = valid ? (int) (amountInCents / denominations.getUnit()) : -1;
+            maxTarget = Math.max(maxTarget, targets[i]);
+        }
+
+        if (maxTarget > 0)
+        {
+            workspace.solve(maxTarget);
+            final IntStream indexes = IntStream.range(0, amounts.length);
+            (amounts.length >= PARALLEL_BATCH_THRESHOLD ? indexes.parallel() : indexes)
+                .filter(i -> targets[i] > 0 && workspace.isReachable(targets[i]))
+                .forEach(i -> changes[i] = workspace.buildChange(targets[i]));
+        }
+        return Arrays.asList(changes);
+    }
+
+    private boolean isValid(final Map<Cash, Integer> cashStock)
+    {
+        return cashStock != null && !cashStock.isEmpty();
+    }
+
+    /**
+     * Workspace class - Per thread buffers used to solve the bounded knapsack.
+     */
+    private final class Workspace
+    {
+        private final int[] values;
+        private final int[] quantities;
+        private int[] best = new int[0];
+        private int[] next = new int[0];
+        // taken[i * (capacity + 1) + a] - number of cash items i used in the best change for amount a (in units)
+        private int[] taken = new int[0];
+        private int[] window = new int[0];
+        private int capacity = -1;
+
+        private Workspace(final int size)
+        {
+            this.values = new int[size];
+            this.quantities = new int[size];
+            for (int i = 0; i < size; i++)
+            {
+                this.values[i] = denominations.getCents(i) / denominations.getUnit();
+            }
+        }
+
+        private long readStock(final Map<Cash, Integer> cashStock)
+        {
+            long total = 0;
+            for (int i = 0; i < values.length; i++)
+            {
+                quantities[i] = denominations.getQuantity(cashStock, i);
+                total += quantities[i] * (long) values[i];
+            }
+            return total;
+        }
+
+        private void ensureCapacity(final int target)
+        {
+            if (target > capacity)
+            {
+                capacity = target;
+                best = new int[target + 1];
+                next = new int[target + 1];
+                taken = new int[values.length * (target + 1)];
+                window = new int[target + 1];
+            }
+        }
+
+        private void solve(final int target)
+        {
+            ensureCapacity(target);
+            Arrays.fill(best, 0, target + 1, UNREACHABLE);
+            best[0] = 0;
+
+            for (int i = 0; i < values.length; i++)
+            {
+                addDenomination(i, target);
+                final int[] swap = best;
+                best = next;
+                next = swap;
+            }
+        }
+
+        // next[a] = min over k in [0, quantity] of best[a - k * value] + k, computed for each residue class modulo value
+        // with a monotonic queue over the key best[r + j * value] - j
+        private void addDenomination(final int index, final int target)
+        {
+            final int value = values[index];
+            final int maxQuantity = quantities[index];
+            final int offset = index * (capacity + 1);
+
+            for (int residue = 0; residue < value && residue <= target; residue++)
+            {
+                int head = 0;
+                int tail = 0;
+                for (int j = 0, a = residue; a <= target; j++, a += value)
+                {
+                    if (best[a] != UNREACHABLE)
+                    {
+                        final int key = best[a] - j;
+                        while (tail > head && keyOf(residue, value, window[tail - 1]) >= key)
+                        {
+                            tail--;
+                        }
+                        window[tail++] = j;
+                    }
+
+                    while (tail > head && window[head] < j - maxQuantity)
+                    {
+                        head++;
+                    }
+
+                    if (tail > head)
+                    {
+                        final int from = window[head];
+                        next[a] = keyOf(residue, value, from) + j;
+                        taken[offset + a] = j - from;
+                    }
+                    else
+                    {
+                        next[a] = UNREACHABLE;
+                        taken[offset + a] = 0;
+                    }
+                }
+            }
+        }
+
+        private int keyOf(final int residue, final int value, final int j)
+        {
+            return best[residue + j * value] - j;
+        }
+
+        private boolean isReachable(final int target)
+        {
+            return best[target] != UNREACHABLE;
+        }
+
+        // all the cash items are weighed at once, so without change the trace is the stock of each one
+        private void traceStock(final ChangeTrace trace, final long amountInCents)
+        {
+            for (int i = 0; i < values.length; i++)
+            {
+                trace.step(denominations.getCents(i), amountInCents, quantities[i]);
+            }
+            trace.end(false);
+        }
+
+        private void traceChange(final ChangeTrace trace, final long amountInCents, final Map<Cash, Integer> change)
+        {
+            long remaining = amountInCents;
+            for (int i = 0; i < values.length; i++)
+            {
+                final Integer quantity = change.get(denominations.getCashItem(i));
+                if (quantity != null)
+                {
+                    remaining -= quantity * (long) denominations.getCents(i);
+                    trace.step(denominations.getCents(i), remaining, quantities[i] - quantity);
+                }
+            }
+            trace.end(true);
+        }
+
+        private Map<Cash, Integer> buildChange(final int target)
+        {
+            final Map<Cash, Integer> change = new HashMap<>();
+            int remaining = target;
+            for (int i = values.length - 1; i >= 0 && remaining > 0; i--)
+            {
+                final int quantity = taken[i * (capacity + 1) + remaining];
+                if (quantity > 0)
+                {
+                    change.put(denominations.getCashItem(i), quantity);
+                    remaining -= quantity * values[i];
+                }
+            }
+            return change;
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package com.dexma.hometest.business;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import com.dexma.hometest.domain.Beverage;
 import com.dexma.hometest.domain.Product;
 import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.domain.StockSnapshot;
 import com.dexma.hometest.error.ProductManagerException;
 
 
@@ -17,8 +19,12 @@ import com.dexma.hometest.error.ProductManagerException;
  */
 public class ProductManager
 {
+    private static final Product[] VALID_PRODUCT_ITEMS = Beverage.getValidBeverages();
+    private static final List<Product> VALID_PRODUCT_ITEMS_LIST = Collections.unmodifiableList(Arrays.asList(VALID_PRODUCT_ITEMS));
+
     private final Stock<Product> productStock;
     private Product selectedProduct;
+    private volatile Availability availability = Availability.UNKNOWN;
 
     public ProductManager(final Stock<Product> productStock)
     {
@@ -39,31 +45,58 @@ public class ProductManager
         return productStock.hasItem(product);
     }
 
+    /**
+     * @return an immutable list of the products in stock, rebuilt only when the availability of a product changed
+     */
     public List<Product> getAvailableProducts()
     {
-        return Arrays.stream(Beverage.getValidBeverages())
-            .filter(this::isProductItemAvailable)
-            .collect(Collectors.toList());
+        final Availability current = availability;
+        final long version = productStock.getVersion();
+        if (version == current.version)
+        {
+            return current.products;
+        }
+
+        long inStockMask = 0L;
+        for (int i = 0; i < VALID_PRODUCT_ITEMS.length; i++)
+        {
+            if (isProductItemAvailable(VALID_PRODUCT_ITEMS[i]))
+            {
+                inStockMask |= 1L << i;
+            }
+        }
+        final List<Product> products = inStockMask == current.inStockMask ? current.products : toProducts(inStockMask);
+        availability = new Availability(version, inStockMask, products);
+        return products;
     }
 
     public Map<Product, Integer> getProductStock()
     {
-        return productStock.getStockMap();
+        return Collections.unmodifiableMap(productStock.getStockMap());
+    }
+
+    public StockSnapshot<Product> getProductStockSnapshot()
+    {
+        return productStock.getSnapshot();
     }
 
     public void insertProductItemsInStock(final Map<Product, Integer> productMap)
     {
-        if (productMap == null || productMap.isEmpty())
+        validateProductMap(productMap);
+
+        for (final Map.Entry<Product, Integer> entry : productMap.entrySet())
         {
-            throw new ProductManagerException("At least one valid product should be provided.");
+            productStock.insertItem(entry.getKey(), entry.getValue());
         }
+    }
+
+    public void removeProductItemsFromStock(final Map<Product, Integer> productMap)
+    {
+        validateProductMap(productMap);
 
         for (final Map.Entry<Product, Integer> entry : productMap.entrySet())
         {
-            final Product productToAdd = entry.getKey();
-            final int quantityOfProduct = entry.getValue();
-            validateProductEntry(productToAdd, quantityOfProduct);
-            productStock.insertItem(productToAdd, quantityOfProduct);
+            productStock.deleteItem(entry.getKey(), entry.getValue());
         }
     }
 
@@ -76,19 +109,74 @@ public class ProductManager
         productStock.deleteItem(product);
     }
 
+    /**
+     * Removes one item of {@code product} only if it is still in stock, checking and removing in a single step (atomic
+     * when the product stock is a {@link com.dexma.hometest.domain.ConcurrentStock}).
+     */
+    public void takeProductItemFromStock(final Product product)
+    {
+        if (!isProductItemAllowed(product))
+        {
+            throw new ProductManagerException("Invalid product specified.");
+        }
+        if (!productStock.tryTake(product, 1))
+        {
+            throw new ProductManagerException("Product " + product.getName() + " is not available in stock.");
+        }
+    }
+
+    /**
+     * Puts back in stock one item of {@code product} taken by {@link #takeProductItemFromStock(Product)} for a purchase
+     * that couldn't be completed.
+     */
+    public void returnProductItemToStock(final Product product)
+    {
+        productStock.insertItem(product, 1);
+    }
+
     private List<Product> getValidProductItems()
     {
-        return Arrays.asList(Beverage.getValidBeverages());
+        return VALID_PRODUCT_ITEMS_LIST;
     }
 
-    private void validateProductEntry(final Product product, final int quantity)
+    private static List<Product> toProducts(final long inStockMask)
+    {
+        final List<Product> products = new ArrayList<>(Long.bitCount(inStockMask));
+        for (int i = 0; i < VALID_PRODUCT_ITEMS.length; i++)
+        {
+            if ((inStockMask & 1L << i) != 0)
+            {
+                products.add(VALID_PRODUCT_ITEMS[i]);
+            }
+        }
+        return Collections.unmodifiableList(products);
+    }
+
+    /**
+     * Validates every entry of {@code productMap} before any of them is applied, so an invalid entry never leaves the
+     * stock partially updated.
+     */
+    private void validateProductMap(final Map<Product, Integer> productMap)
+    {
+        if (productMap == null || productMap.isEmpty())
+        {
+            throw new ProductManagerException("At least one valid product should be provided.");
+        }
+
+        for (final Map.Entry<Product, Integer> entry : productMap.entrySet())
+        {
+            validateProductEntry(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void validateProductEntry(final Product product, final Integer quantity)
     {
         if (!isProductItemAllowed(product))
         {
             throw new ProductManagerException("Invalid product specified.");
         }
 
-        if (quantity <= 0)
+        if (quantity == null || quantity <= 0)
         {
             throw new ProductManagerException("Invalid quantity specified.");
         }
@@ -123,4 +211,42 @@ public class ProductManager
         return this.selectedProduct != null;
     }
 
+    /***
+     * Session related operations
+     */
+
+    public void setSelectedProduct(final Session session, final Product product)
+    {
+        session.setSelectedProduct(product);
+    }
+
+    public BigDecimal getPriceOfSelectedProduct(final Session session)
+    {
+        return session.isProductSelected() ? session.getSelectedProduct().getPrice() : BigDecimal.ZERO;
+    }
+
+    public void resetSelectedProduct(final Session session)
+    {
+        setSelectedProduct(session, null);
+    }
+
+    /**
+     * Availability class - The products in stock at a certain stock version, one bit per valid product (by ordinal).
+     */
+    private static final class Availability
+    {
+        // no stock has a negative version, so the first call always computes the availability
+        private static final Availability UNKNOWN = new Availability(-1L, -1L, Collections.emptyList());
+
+        private final long version;
+        private final long inStockMask;
+        private final List<Product> products;
+
+        private Availability(final long version, final long inStockMask, final List<Product> products)
+        {
+            this.version = version;
+            this.inStockMask = inStockMask;
+            this.products = products;
+        }
+    }
 }
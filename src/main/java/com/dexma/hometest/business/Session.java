@@ -0,0 +1,96 @@
+package com.dexma.hometest.business;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * Session class - The state of one customer in the vending machine (current balance and selected product), so that
+ * several customers can be served at the same time over the same product and cash stock.
+ * <p>
+ * A session should be used by one customer at a time; its state is only changed by the managers.
+ */
+public final class Session
+{
+    private final long id;
+    private volatile BigDecimal currentBalance;
+    private volatile Product selectedProduct;
+    private volatile Map<Cash, Integer> insertedCash = Collections.emptyMap();
+
+    public Session(final long id)
+    {
+        this.id = id;
+        this.currentBalance = BigDecimal.ZERO;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public BigDecimal getCurrentBalance()
+    {
+        return currentBalance;
+    }
+
+    public Product getSelectedProduct()
+    {
+        return selectedProduct;
+    }
+
+    /**
+     * @return the cash items inserted since the balance was last reset
+     */
+    public Map<Cash, Integer> getInsertedCash()
+    {
+        return insertedCash;
+    }
+
+    public boolean hasCurrentBalance()
+    {
+        return currentBalance.compareTo(BigDecimal.ZERO) > 0;
+    }
+
+    public boolean isProductSelected()
+    {
+        return selectedProduct != null;
+    }
+
+    void setCurrentBalance(final BigDecimal currentBalance)
+    {
+        this.currentBalance = currentBalance;
+    }
+
+    void addInsertedCash(final Cash cash)
+    {
+        final Map<Cash, Integer> cashItems = new HashMap<>(insertedCash);
+        cashItems.merge(cash, 1, Integer::sum);
+        this.insertedCash = Collections.unmodifiableMap(cashItems);
+    }
+
+    void resetInsertedCash()
+    {
+        this.insertedCash = Collections.emptyMap();
+    }
+
+    void restoreInsertedCash(final Map<Cash, Integer> insertedCash)
+    {
+        this.insertedCash = insertedCash;
+    }
+
+    void setSelectedProduct(final Product selectedProduct)
+    {
+        this.selectedProduct = selectedProduct;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Session{id=" + id + ", currentBalance=" + currentBalance + ", selectedProduct=" + selectedProduct + "}";
+    }
+}
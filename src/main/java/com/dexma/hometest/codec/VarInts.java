@@ -0,0 +1,63 @@
+package com.dexma.hometest.codec;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * VarInts class - Variable length encoding of numbers, shared by the journal and the sales archive.
+ * <p>
+ * A varint takes 7 bits per byte, least significant first, with the high bit set on every byte but the last, so small
+ * numbers take one byte. Signed numbers are zigzag encoded first (0, -1, 1, -2... as 0, 1, 2, 3...) so that small
+ * negative numbers stay small too.
+ */
+public final class VarInts
+{
+    /**
+     * The maximum number of bytes taken by a varint of a long.
+     */
+    public static final int MAX_VAR_LONG_SIZE = 10;
+
+    private VarInts()
+    {
+    }
+
+    public static void putVarLong(final ByteBuffer buffer, final long value)
+    {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the varint takes more than {@link #MAX_VAR_LONG_SIZE} bytes
+     */
+    public static long getVarLong(final ByteBuffer buffer)
+    {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7)
+        {
+            final byte current = buffer.get();
+            value |= (long) (current & 0x7F) << shift;
+            if (current >= 0)
+            {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    public static void putZigZag(final ByteBuffer buffer, final long value)
+    {
+        putVarLong(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    public static long getZigZag(final ByteBuffer buffer)
+    {
+        final long value = getVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
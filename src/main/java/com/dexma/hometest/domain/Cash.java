@@ -9,4 +9,12 @@ import java.math.BigDecimal;
 public interface Cash
 {
     BigDecimal getValue();
+
+    /**
+     * @return the value in cents, or -1 if it has fractions of a cent. Cash items with a fixed value should cache it.
+     */
+    default int getCents()
+    {
+        return (int) Cents.toCents(getValue());
+    }
 }
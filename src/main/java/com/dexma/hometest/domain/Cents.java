@@ -0,0 +1,65 @@
+package com.dexma.hometest.domain;
+
+import java.math.BigDecimal;
+
+
+/**
+ * Cents class - Conversions between monetary amounts expressed as BigDecimal and integer amounts of cents.
+ */
+public final class Cents
+{
+    public static final long INVALID = -1L;
+
+    private static final int CENTS_SCALE = 2;
+    // below it an amount of cents converted through a double is exact, with room to spare
+    private static final double MAX_EXACT_AMOUNT = (1L << 50) / 100.0;
+
+    private Cents()
+    {
+    }
+
+    /**
+     * Method that converts a monetary {@code amount} into cents.
+     *
+     * @param amount - value to convert (e.g. 1.35)
+     * @return the amount in cents (e.g. 135) or {@link #INVALID} if the amount is null, negative or has fractions of a cent
+     */
+    public static long toCents(final BigDecimal amount)
+    {
+        if (amount == null || amount.signum() < 0)
+        {
+            return INVALID;
+        }
+
+        // an amount with at most 2 decimals is a whole number of cents, and BigDecimal converts the usual ones to double
+        // without allocating
+        if (amount.scale() <= CENTS_SCALE)
+        {
+            final double value = amount.doubleValue();
+            if (value < MAX_EXACT_AMOUNT)
+            {
+                return Math.round(value * 100);
+            }
+        }
+
+        final BigDecimal cents = amount.movePointRight(CENTS_SCALE);
+        if (cents.scale() > 0 && cents.stripTrailingZeros().scale() > 0)
+        {
+            return INVALID;
+        }
+
+        try
+        {
+            return cents.longValueExact();
+        }
+        catch (final ArithmeticException ex)
+        {
+            return INVALID;
+        }
+    }
+
+    public static BigDecimal fromCents(final long cents)
+    {
+        return BigDecimal.valueOf(cents, CENTS_SCALE).stripTrailingZeros();
+    }
+}
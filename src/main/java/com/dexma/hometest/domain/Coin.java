@@ -8,54 +8,28 @@ import java.math.BigDecimal;
  */
 public enum Coin implements Cash
 {
-    FIVE_CENTS
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(0.05);
-            }
-        },
-    TEN_CENTS
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(0.1);
-            }
-        },
-    TWENTY_CENTS
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(0.2);
-            }
-        },
-    FIFTY_CENTS
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(0.5);
-            }
-        },
-    ONE
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(1);
-            }
-        },
-    TWO
-        {
-            @Override
-            public BigDecimal getValue()
-            {
-                return BigDecimal.valueOf(2);
-            }
-        };
+    FIVE_CENTS(5), TEN_CENTS(10), TWENTY_CENTS(20), FIFTY_CENTS(50), ONE(100), TWO(200);
+
+    private final int cents;
+    private final BigDecimal value;
+
+    Coin(final int cents)
+    {
+        this.cents = cents;
+        this.value = Cents.fromCents(cents);
+    }
+
+    @Override
+    public BigDecimal getValue()
+    {
+        return value;
+    }
+
+    @Override
+    public int getCents()
+    {
+        return cents;
+    }
 
     public static Coin[] getValidCoins()
     {
@@ -0,0 +1,285 @@
+package com.dexma.hometest.domain;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * ConcurrentStock class - A thread-safe "Stock" of enum items (e.g. {@link Coin} or {@link Beverage}) without locks.
+ * <p>
+ * Each item has its own slot in an {@link AtomicIntegerArray}, updated with CAS loops, so {@link #tryTake(Object, int)}
+ * either removes all the requested items or none of them. Slots are {@value #SLOT_STRIDE} ints apart so that two
+ * items don't share a cache line.
+ * <p>
+ * Next to each quantity two counters work as a seqlock shared by every writer of that slot: the writes started, bumped
+ * before changing the quantity, and the writes finished, bumped after. The version is the sum of the writes finished,
+ * which only grows, and a snapshot is only kept when every slot had as many writes started as finished before copying
+ * it and no write started while copying it.
+ */
+public class ConcurrentStock<T> extends Stock<T>
+{
+    // 16 ints = 64 bytes, the usual cache line size
+    private static final int SLOT_STRIDE = 16;
+    private static final int ABSENT = -1;
+    private static final int STARTED = 1;
+    private static final int FINISHED = 2;
+
+    private final AtomicStockMap<T> slots;
+
+    /**
+     * Creates an empty stock for {@code items}, which should be all the constants of an enum in ordinal order (e.g.
+     * {@code Coin.values()}).
+     */
+    public ConcurrentStock(final T[] items)
+    {
+        this(new AtomicStockMap<>(EnumStockMap.validate(items)));
+    }
+
+    private ConcurrentStock(final AtomicStockMap<T> slots)
+    {
+        super(slots);
+        this.slots = slots;
+    }
+
+    public static ConcurrentStock<Cash> forCash()
+    {
+        return new ConcurrentStock<>(Coin.getValidCoins());
+    }
+
+    public static ConcurrentStock<Product> forProducts()
+    {
+        return new ConcurrentStock<>(Beverage.getValidBeverages());
+    }
+
+    @Override
+    public void insertItem(final T item)
+    {
+        insertItem(item, 1);
+    }
+
+    @Override
+    public void insertItem(final T item, final int quantity)
+    {
+        final int slot = slots.slotOf(slots.indexOfKnown(item));
+        final AtomicIntegerArray values = slots.values;
+        values.incrementAndGet(slot + STARTED);
+        int current;
+        do
+        {
+            current = values.get(slot);
+        }
+        while (!values.compareAndSet(slot, current, (current == ABSENT ? 0 : current) + quantity));
+        values.incrementAndGet(slot + FINISHED);
+        stockChanged(item, quantity);
+    }
+
+    @Override
+    public void deleteItem(final T item)
+    {
+        tryTake(item, 1);
+    }
+
+    @Override
+    public void deleteItem(final T item, final int quantity)
+    {
+        final int index = slots.indexOf(item);
+        if (index < 0)
+        {
+            return;
+        }
+        final int slot = slots.slotOf(index);
+        final AtomicIntegerArray values = slots.values;
+        values.incrementAndGet(slot + STARTED);
+        int current;
+        int next;
+        do
+        {
+            current = values.get(slot);
+            next = (current == ABSENT ? 0 : current) - quantity;
+        }
+        while (!values.compareAndSet(slot, current, next >= 0 ? next : 0));
+        values.incrementAndGet(slot + FINISHED);
+        stockChanged(item, (next >= 0 ? next : 0) - (current == ABSENT ? 0 : current));
+    }
+
+    @Override
+    public boolean tryTake(final T item, final int quantity)
+    {
+        final int index = slots.indexOf(item);
+        if (index < 0 || quantity <= 0)
+        {
+            return false;
+        }
+        final int slot = slots.slotOf(index);
+        final AtomicIntegerArray values = slots.values;
+        boolean taken;
+        do
+        {
+            final int current = values.get(slot);
+            if (current < quantity)
+            {
+                return false;
+            }
+            // every attempt is a write of its own, so that a take that ends up failing doesn't leave one started
+            values.incrementAndGet(slot + STARTED);
+            taken = values.compareAndSet(slot, current, current - quantity);
+            values.incrementAndGet(slot + FINISHED);
+        }
+        while (!taken);
+        stockChanged(item, -quantity);
+        return true;
+    }
+
+    /**
+     * Takes the items one by one with {@link #tryTake(Object, int)} and, if one of them isn't available, puts back the
+     * ones already taken. Other threads may see them missing for that short while, but no item is ever lost or
+     * duplicated.
+     */
+    @Override
+    public boolean tryTakeAll(final Map<T, Integer> items)
+    {
+        int taken = 0;
+        for (final Map.Entry<T, Integer> entry : items.entrySet())
+        {
+            if (!tryTake(entry.getKey(), entry.getValue()))
+            {
+                giveBack(items, taken);
+                return false;
+            }
+            taken++;
+        }
+        return true;
+    }
+
+    private void giveBack(final Map<T, Integer> items, final int count)
+    {
+        int given = 0;
+        for (final Map.Entry<T, Integer> entry : items.entrySet())
+        {
+            if (given++ == count)
+            {
+                return;
+            }
+            insertItem(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean hasItem(final T item)
+    {
+        return getQuantity(item) > 0;
+    }
+
+    /**
+     * Copies the stock on read: the quantities are read from the atomic slots, which is safe while other threads change
+     * them.
+     */
+    @Override
+    public StockSnapshot<T> getSnapshot()
+    {
+        return getSnapshotCopiedOnRead();
+    }
+
+    /**
+     * @return the quantity of {@code item} in stock (0 for unknown items)
+     */
+    public int getQuantity(final T item)
+    {
+        final int index = slots.indexOf(item);
+        return index < 0 ? 0 : slots.getQuantityAt(index);
+    }
+
+    /**
+     * Copies the stock again until no write was in progress before copying it and none started while copying it.
+     */
+    @Override
+    protected StockSnapshot<T> copySnapshot()
+    {
+        while (true)
+        {
+            final long finished = slots.sumCounters(FINISHED);
+            final long started = slots.sumCounters(STARTED);
+            if (started == finished)
+            {
+                final StockSnapshot<T> copy = new StockSnapshot<>(finished, getStockMap());
+                if (slots.sumCounters(STARTED) == started)
+                {
+                    return copy;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public long getVersion()
+    {
+        return slots.sumCounters(FINISHED);
+    }
+
+    /**
+     * AtomicStockMap class - Quantities held in padded slots of an atomic array; {@value #ABSENT} marks an item never
+     * inserted nor deleted, and the two ints next to each quantity count the writes started and finished on it.
+     */
+    private static final class AtomicStockMap<T> extends EnumStockMap<T>
+    {
+        private final int length;
+        private final AtomicIntegerArray values;
+
+        private AtomicStockMap(final Object[] items)
+        {
+            super(items);
+            this.length = items.length;
+            // one extra stride of padding before the first slot, away from the array header
+            this.values = new AtomicIntegerArray((items.length + 1) * SLOT_STRIDE);
+            for (int i = 0; i < items.length; i++)
+            {
+                values.set(slotOf(i), ABSENT);
+            }
+        }
+
+        private int slotOf(final int index)
+        {
+            return (index + 1) * SLOT_STRIDE;
+        }
+
+        private long sumCounters(final int counter)
+        {
+            long sum = 0;
+            for (int i = 0; i < length; i++)
+            {
+                sum += values.get(slotOf(i) + counter);
+            }
+            return sum;
+        }
+
+        @Override
+        boolean isPresentAt(final int index)
+        {
+            return values.get(slotOf(index)) != ABSENT;
+        }
+
+        @Override
+        int getQuantityAt(final int index)
+        {
+            final int quantity = values.get(slotOf(index));
+            return quantity == ABSENT ? 0 : quantity;
+        }
+
+        @Override
+        void setQuantityAt(final int index, final int quantity)
+        {
+            values.incrementAndGet(slotOf(index) + STARTED);
+            values.set(slotOf(index), quantity);
+            values.incrementAndGet(slotOf(index) + FINISHED);
+        }
+
+        @Override
+        void removeAt(final int index)
+        {
+            values.incrementAndGet(slotOf(index) + STARTED);
+            values.set(slotOf(index), ABSENT);
+            values.incrementAndGet(slotOf(index) + FINISHED);
+        }
+    }
+}
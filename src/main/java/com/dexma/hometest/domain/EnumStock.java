@@ -0,0 +1,202 @@
+package com.dexma.hometest.domain;
+
+import java.util.concurrent.locks.StampedLock;
+
+
+/**
+ * EnumStock class - A "Stock" of enum items (e.g. {@link Coin} or {@link Beverage}) backed by an int array indexed by ordinal.
+ * <p>
+ * Checking, inserting and deleting items don't hash nor allocate. {@link #getStockMap()} returns a live map view
+ * with the same contents that a {@link Stock} over a HashMap would have (items are present once inserted or deleted).
+ * <p>
+ * Each change holds the write lock of a {@link StampedLock} (uncontended, as a single thread changes the stock), so
+ * that the snapshots copied on read by other threads are validated against it like a seqlock.
+ */
+public class EnumStock<T> extends Stock<T>
+{
+    private final ArrayStockMap<T> quantities;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Creates an empty stock for {@code items}, which should be all the constants of an enum in ordinal order (e.g.
+     * {@code Coin.values()}).
+     */
+    public EnumStock(final T[] items)
+    {
+        this(new ArrayStockMap<>(EnumStockMap.validate(items)));
+    }
+
+    private EnumStock(final ArrayStockMap<T> quantities)
+    {
+        super(quantities);
+        this.quantities = quantities;
+    }
+
+    public static EnumStock<Cash> forCash()
+    {
+        return new EnumStock<>(Coin.getValidCoins());
+    }
+
+    public static EnumStock<Product> forProducts()
+    {
+        return new EnumStock<>(Beverage.getValidBeverages());
+    }
+
+    @Override
+    public void insertItem(final T item)
+    {
+        insertItem(item, 1);
+    }
+
+    @Override
+    public void insertItem(final T item, final int quantity)
+    {
+        final int index = quantities.indexOfKnown(item);
+        setQuantityAt(index, quantities.getQuantityAt(index) + quantity);
+        stockChanged(item, quantity);
+    }
+
+    @Override
+    public void deleteItem(final T item)
+    {
+        final int index = quantities.indexOf(item);
+        if (index >= 0 && quantities.getQuantityAt(index) > 0)
+        {
+            setQuantityAt(index, quantities.getQuantityAt(index) - 1);
+            stockChanged(item, -1);
+        }
+    }
+
+    @Override
+    public void deleteItem(final T item, final int quantity)
+    {
+        final int index = quantities.indexOf(item);
+        if (index >= 0)
+        {
+            final int initialQuantity = quantities.getQuantityAt(index);
+            final int finalQuantity = initialQuantity - quantity;
+            setQuantityAt(index, finalQuantity >= 0 ? finalQuantity : 0);
+            stockChanged(item, (finalQuantity >= 0 ? finalQuantity : 0) - initialQuantity);
+        }
+    }
+
+    @Override
+    public boolean tryTake(final T item, final int quantity)
+    {
+        final int index = quantities.indexOf(item);
+        if (index < 0 || quantity <= 0 || quantities.getQuantityAt(index) < quantity)
+        {
+            return false;
+        }
+        setQuantityAt(index, quantities.getQuantityAt(index) - quantity);
+        stockChanged(item, -quantity);
+        return true;
+    }
+
+    private void setQuantityAt(final int index, final int quantity)
+    {
+        final long stamp = lock.writeLock();
+        try
+        {
+            quantities.setQuantityAt(index, quantity);
+            incrementVersion();
+        }
+        finally
+        {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean hasItem(final T item)
+    {
+        return getQuantity(item) > 0;
+    }
+
+    /**
+     * Copies the stock on read: the quantities are read from an array and the copy is validated against the lock.
+     */
+    @Override
+    public StockSnapshot<T> getSnapshot()
+    {
+        return getSnapshotCopiedOnRead();
+    }
+
+    /**
+     * Copies the stock without locking and keeps the copy only if no change happened meanwhile, or else copies it again
+     * holding the read lock.
+     */
+    @Override
+    protected StockSnapshot<T> copySnapshot()
+    {
+        final long optimisticStamp = lock.tryOptimisticRead();
+        if (optimisticStamp != 0L)
+        {
+            final StockSnapshot<T> copy = super.copySnapshot();
+            if (lock.validate(optimisticStamp))
+            {
+                return copy;
+            }
+        }
+        final long stamp = lock.readLock();
+        try
+        {
+            return super.copySnapshot();
+        }
+        finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the quantity of {@code item} in stock (0 for unknown items)
+     */
+    public int getQuantity(final T item)
+    {
+        final int index = quantities.indexOf(item);
+        return index < 0 ? 0 : quantities.getQuantityAt(index);
+    }
+
+    /**
+     * ArrayStockMap class - Quantities held in a plain int array.
+     */
+    private static final class ArrayStockMap<T> extends EnumStockMap<T>
+    {
+        private final int[] quantities;
+        private final boolean[] present;
+
+        private ArrayStockMap(final Object[] items)
+        {
+            super(items);
+            this.quantities = new int[items.length];
+            this.present = new boolean[items.length];
+        }
+
+        @Override
+        boolean isPresentAt(final int index)
+        {
+            return present[index];
+        }
+
+        @Override
+        int getQuantityAt(final int index)
+        {
+            return quantities[index];
+        }
+
+        @Override
+        void setQuantityAt(final int index, final int quantity)
+        {
+            quantities[index] = quantity;
+            present[index] = true;
+        }
+
+        @Override
+        void removeAt(final int index)
+        {
+            quantities[index] = 0;
+            present[index] = false;
+        }
+    }
+}
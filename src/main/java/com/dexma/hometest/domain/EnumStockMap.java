@@ -0,0 +1,192 @@
+package com.dexma.hometest.domain;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * EnumStockMap class - Live map view over the quantities of a stock of enum items indexed by ordinal.
+ * <p>
+ * Subclasses define how a quantity is stored for each index. An item is present in the map once it has been inserted
+ * or deleted, like in a HashMap backed {@link Stock}.
+ */
+abstract class EnumStockMap<T> extends AbstractMap<T, Integer>
+{
+    private final Object[] items;
+
+    EnumStockMap(final Object[] items)
+    {
+        this.items = items;
+    }
+
+    abstract boolean isPresentAt(int index);
+
+    abstract int getQuantityAt(int index);
+
+    abstract void setQuantityAt(int index, int quantity);
+
+    abstract void removeAt(int index);
+
+    int indexOf(final Object item)
+    {
+        if (!(item instanceof Enum))
+        {
+            return -1;
+        }
+        final int ordinal = ((Enum<?>) item).ordinal();
+        return ordinal < items.length && items[ordinal] == item ? ordinal : -1;
+    }
+
+    int indexOfKnown(final Object item)
+    {
+        final int index = indexOf(item);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("Unknown item " + item + ".");
+        }
+        return index;
+    }
+
+    static Object[] validate(final Object[] items)
+    {
+        for (int i = 0; i < items.length; i++)
+        {
+            if (!(items[i] instanceof Enum) || ((Enum<?>) items[i]).ordinal() != i)
+            {
+                throw new IllegalArgumentException("Items should be the constants of an enum in ordinal order.");
+            }
+        }
+        return items.clone();
+    }
+
+    @Override
+    public Integer get(final Object key)
+    {
+        final int index = indexOf(key);
+        return index >= 0 && isPresentAt(index) ? getQuantityAt(index) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        final int index = indexOf(key);
+        return index >= 0 && isPresentAt(index);
+    }
+
+    @Override
+    public Integer put(final T key, final Integer value)
+    {
+        if (value == null)
+        {
+            throw new IllegalArgumentException("Invalid quantity for item " + key + ".");
+        }
+        final int index = indexOfKnown(key);
+        final Integer previous = get(key);
+        setQuantityAt(index, value);
+        return previous;
+    }
+
+    @Override
+    public Integer remove(final Object key)
+    {
+        final Integer previous = get(key);
+        if (previous != null)
+        {
+            removeAt(indexOf(key));
+        }
+        return previous;
+    }
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (int i = 0; i < items.length; i++)
+        {
+            size += isPresentAt(i) ? 1 : 0;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<T, Integer>> entrySet()
+    {
+        return new AbstractSet<Entry<T, Integer>>()
+        {
+            @Override
+            public Iterator<Entry<T, Integer>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return EnumStockMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * EntryIterator class - Iterates over the present items in ordinal order.
+     */
+    private final class EntryIterator implements Iterator<Entry<T, Integer>>
+    {
+        private int next = advance(0);
+        private int last = -1;
+
+        private int advance(final int from)
+        {
+            int index = from;
+            while (index < items.length && !isPresentAt(index))
+            {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < items.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<T, Integer> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            final int index = last;
+            return new SimpleEntry<T, Integer>((T) items[index], getQuantityAt(index))
+            {
+                private static final long serialVersionUID = -5718396339457961520L;
+
+                @Override
+                public Integer setValue(final Integer value)
+                {
+                    setQuantityAt(index, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last < 0)
+            {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            last = -1;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.dexma.hometest.domain;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * MappedStockRegion class - Mirrors the product and cash stock counters into a memory-mapped file, so that other local
+ * processes can read them without any call to the vending machine.
+ * <p>
+ * The file has a fixed little-endian layout:
+ * <pre>
+ *  0  int   magic number (0x564D5354)
+ *  4  int   layout version (1)
+ *  8  long  sequence, odd while the counters are being written
+ * 16  int   number of products P
+ * 20  int   number of cash items C
+ * 24  int[] quantity of each {@link Beverage} by ordinal (P ints), followed by the quantity of each {@link Coin} by
+ *           ordinal (C ints)
+ * </pre>
+ * A reader follows the seqlock protocol: it reads the sequence, the counters and the sequence again, and retries when
+ * the sequence was odd or changed (see {@link StockRegionReader}).
+ * <p>
+ * The counters are read from live views of both stocks. {@link #update()} should be called after they changed; when
+ * several threads call it at the same time only one of them writes, once more for every update requested meanwhile, so
+ * the writer is always single as the seqlock requires.
+ */
+public final class MappedStockRegion implements AutoCloseable
+{
+    static final int MAGIC = 0x564D5354;
+    static final int LAYOUT_VERSION = 1;
+    static final int SEQUENCE_OFFSET = 8;
+    static final int NUMBER_OF_PRODUCTS_OFFSET = 16;
+    static final int NUMBER_OF_CASH_ITEMS_OFFSET = 20;
+    static final int COUNTERS_OFFSET = 24;
+
+    private static final Beverage[] PRODUCTS = Beverage.getValidBeverages();
+    private static final Coin[] CASH_ITEMS = Coin.getValidCoins();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer region;
+    private final Map<Product, Integer> productStock;
+    private final Map<Cash, Integer> cashStock;
+    private final AtomicInteger requestedUpdates = new AtomicInteger();
+    // Java 8 has no explicit fences: writing this volatile field around the counters keeps them between both writes of
+    // the sequence in the region (HotSpot follows every volatile write with a full fence)
+    private volatile long sequence;
+
+    private MappedStockRegion(final FileChannel channel, final MappedByteBuffer region, final Map<Product, Integer> productStock,
+                              final Map<Cash, Integer> cashStock)
+    {
+        this.channel = channel;
+        this.region = region;
+        this.productStock = productStock;
+        this.cashStock = cashStock;
+    }
+
+    /**
+     * Creates (or overwrites) the region in {@code file} and writes the current counters of the live views
+     * {@code productStock} and {@code cashStock}.
+     */
+    public static MappedStockRegion create(final Path file, final Map<Product, Integer> productStock, final Map<Cash, Integer> cashStock)
+        throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try
+        {
+            final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(PRODUCTS.length, CASH_ITEMS.length));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            region.putInt(0, MAGIC);
+            region.putInt(4, LAYOUT_VERSION);
+            region.putLong(SEQUENCE_OFFSET, 0L);
+            region.putInt(NUMBER_OF_PRODUCTS_OFFSET, PRODUCTS.length);
+            region.putInt(NUMBER_OF_CASH_ITEMS_OFFSET, CASH_ITEMS.length);
+
+            final MappedStockRegion stockRegion = new MappedStockRegion(channel, region, productStock, cashStock);
+            stockRegion.update();
+            return stockRegion;
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    static int sizeOf(final int numberOfProducts, final int numberOfCashItems)
+    {
+        return COUNTERS_OFFSET + Integer.BYTES * (numberOfProducts + numberOfCashItems);
+    }
+
+    /**
+     * Writes the current counters of both stocks into the region.
+     */
+    public void update()
+    {
+        if (requestedUpdates.getAndIncrement() != 0)
+        {
+            // the thread writing will write once more
+            return;
+        }
+
+        int updates = 1;
+        do
+        {
+            write();
+            updates = requestedUpdates.addAndGet(-updates);
+        }
+        while (updates != 0);
+    }
+
+    /**
+     * @return the sequence of the region, odd while the counters are being written
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    private void write()
+    {
+        final long odd = sequence + 1;
+        region.putLong(SEQUENCE_OFFSET, odd);
+        sequence = odd;
+
+        int offset = COUNTERS_OFFSET;
+        for (final Beverage product : PRODUCTS)
+        {
+            region.putInt(offset, quantityOf(productStock.get(product)));
+            offset += Integer.BYTES;
+        }
+        for (final Coin cash : CASH_ITEMS)
+        {
+            region.putInt(offset, quantityOf(cashStock.get(cash)));
+            offset += Integer.BYTES;
+        }
+
+        sequence = odd + 1;
+        region.putLong(SEQUENCE_OFFSET, odd + 1);
+    }
+
+    private static int quantityOf(final Integer quantity)
+    {
+        return quantity == null ? 0 : quantity;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released when the region is garbage collected.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -1,18 +1,28 @@
 package com.dexma.hometest.domain;
 
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.dexma.hometest.events.VendingMachineEvents;
 
 
 /**
  * Stock class - A wrapper over Map to create a "Stock" that allows to hold cash and product items (key) with a certain integer quantity (value).
+ * <p>
+ * The map isn't safe to read while it's changed, so every insert and delete publishes an immutable
+ * {@link StockSnapshot} of it (copy on write) for the threads reading the stock from elsewhere.
  */
 public class Stock<T>
 {
     private final Map<T, Integer> stockMap;
+    private volatile long version;
+    // published on every change of this class, taken on read by the subclasses (see getSnapshotCopiedOnRead)
+    private final AtomicReference<StockSnapshot<T>> snapshot;
 
     public Stock(final Map<T, Integer> stockMap)
     {
         this.stockMap = stockMap;
+        this.snapshot = new AtomicReference<>(new StockSnapshot<>(0L, stockMap));
     }
 
     T getItem(final T item)
@@ -24,12 +34,16 @@ public class Stock<T>
     {
         int quantity = getQuantity(item);
         stockMap.put(item, ++quantity);
+        changed();
+        stockChanged(item, 1);
     }
 
     public void insertItem(final T item, final int quantity)
     {
         final int finalQuantity = getQuantity(item) + quantity;
         stockMap.put(item, finalQuantity);
+        changed();
+        stockChanged(item, quantity);
     }
 
     public void deleteItem(final T item)
@@ -39,13 +53,57 @@ public class Stock<T>
             final int quantity = stockMap.get(item);
             final int finalQuantity = quantity - 1;
             stockMap.put(item, finalQuantity >= 0 ? finalQuantity : 0);
+            changed();
+            stockChanged(item, -1);
         }
     }
 
     public void deleteItem(final T item, final int quantity)
     {
-        final int finalQuantity = getQuantity(item) - quantity;
+        final int initialQuantity = getQuantity(item);
+        final int finalQuantity = initialQuantity - quantity;
         stockMap.put(item, finalQuantity >= 0 ? finalQuantity : 0);
+        changed();
+        stockChanged(item, (finalQuantity >= 0 ? finalQuantity : 0) - initialQuantity);
+    }
+
+    /**
+     * Removes {@code quantity} items only if all of them are in stock. This implementation is not thread-safe, see
+     * {@link ConcurrentStock} for an atomic one.
+     *
+     * @return true if the items were removed, false if the stock was left unchanged
+     */
+    public boolean tryTake(final T item, final int quantity)
+    {
+        if (quantity <= 0 || getQuantity(item) < quantity)
+        {
+            return false;
+        }
+        deleteItem(item, quantity);
+        return true;
+    }
+
+    /**
+     * Removes all the {@code items} (item and quantity) only if all of them are in stock. This implementation is not
+     * thread-safe, see {@link ConcurrentStock} for an atomic one.
+     *
+     * @return true if the items were removed, false if the stock was left unchanged
+     */
+    public boolean tryTakeAll(final Map<T, Integer> items)
+    {
+        for (final Map.Entry<T, Integer> entry : items.entrySet())
+        {
+            final int quantity = entry.getValue();
+            if (quantity <= 0 || getQuantity(entry.getKey()) < quantity)
+            {
+                return false;
+            }
+        }
+        for (final Map.Entry<T, Integer> entry : items.entrySet())
+        {
+            deleteItem(entry.getKey(), entry.getValue());
+        }
+        return true;
     }
 
     public boolean hasItem(final T item)
@@ -58,6 +116,78 @@ public class Stock<T>
         return stockMap;
     }
 
+    /**
+     * @return a counter incremented on every insert and delete, so that two equal versions mean an unchanged stock
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return an immutable copy of the stock as of its last change, which can be read from any thread
+     */
+    public StockSnapshot<T> getSnapshot()
+    {
+        return snapshot.get();
+    }
+
+    private void changed()
+    {
+        final long next = version + 1;
+        snapshot.set(new StockSnapshot<>(next, stockMap));
+        version = next;
+    }
+
+    /**
+     * Returns an immutable copy of the stock, taken again only when the version changed since the last one (copy on
+     * read), for the subclasses whose map can be read safely while it's changed, so that their insert and delete
+     * operations don't pay for it. Readers copying at the same time publish their copies with a CAS, so that the
+     * published snapshot never goes back to an older version.
+     */
+    protected final StockSnapshot<T> getSnapshotCopiedOnRead()
+    {
+        final StockSnapshot<T> current = snapshot.get();
+        if (current.getVersion() == getVersion())
+        {
+            return current;
+        }
+
+        final StockSnapshot<T> next = copySnapshot();
+        StockSnapshot<T> published = current;
+        while (published.getVersion() < next.getVersion() && !snapshot.compareAndSet(published, next))
+        {
+            published = snapshot.get();
+        }
+        return next;
+    }
+
+    /**
+     * Copies the stock together with the version of its contents. The subclasses copying on read override it so that a
+     * copy taken while the stock is changed is never tagged with the version before or after that change.
+     */
+    protected StockSnapshot<T> copySnapshot()
+    {
+        return new StockSnapshot<>(getVersion(), getStockMap());
+    }
+
+    protected void incrementVersion()
+    {
+        version++;
+    }
+
+    /**
+     * Records that {@code quantity} items of {@code item} were inserted (or deleted, when negative) as a
+     * {@link com.dexma.hometest.events.VendingMachineEvent}, only while the events are recording.
+     */
+    protected final void stockChanged(final T item, final int quantity)
+    {
+        if (VendingMachineEvents.isRecording())
+        {
+            VendingMachineEvents.stockChanged(item, quantity);
+        }
+    }
+
     private int getQuantity(final T item)
     {
         final Integer quantity = stockMap.get(item);
@@ -0,0 +1,121 @@
+package com.dexma.hometest.domain;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * StockRegionReader class - Reads the stock counters mirrored by a {@link MappedStockRegion}, possibly from another process.
+ * <p>
+ * The counters are read straight from the mapped file into arrays provided by the caller, retrying while the region is
+ * being written, so a read never sees counters from two different writes.
+ */
+public final class StockRegionReader implements AutoCloseable
+{
+    private final FileChannel channel;
+    private final MappedByteBuffer region;
+    private final int numberOfProducts;
+    private final int numberOfCashItems;
+    // Java 8 has no explicit fences: writing this volatile field around the counters keeps them between both reads of the
+    // sequence (HotSpot follows every volatile write with a full fence)
+    private volatile long fence;
+
+    private StockRegionReader(final FileChannel channel, final MappedByteBuffer region)
+    {
+        this.channel = channel;
+        this.region = region;
+        this.numberOfProducts = region.getInt(MappedStockRegion.NUMBER_OF_PRODUCTS_OFFSET);
+        this.numberOfCashItems = region.getInt(MappedStockRegion.NUMBER_OF_CASH_ITEMS_OFFSET);
+    }
+
+    public static StockRegionReader open(final Path file) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < MappedStockRegion.COUNTERS_OFFSET || region.getInt(0) != MappedStockRegion.MAGIC
+                || region.getInt(4) != MappedStockRegion.LAYOUT_VERSION)
+            {
+                throw new IOException("File " + file + " isn't a stock region.");
+            }
+            final StockRegionReader reader = new StockRegionReader(channel, region);
+            if (channel.size() < MappedStockRegion.sizeOf(reader.numberOfProducts, reader.numberOfCashItems))
+            {
+                throw new IOException("File " + file + " is shorter than its stock region.");
+            }
+            return reader;
+        }
+        catch (final IOException | RuntimeException ex)
+        {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public int getNumberOfProducts()
+    {
+        return numberOfProducts;
+    }
+
+    public int getNumberOfCashItems()
+    {
+        return numberOfCashItems;
+    }
+
+    /**
+     * Reads a consistent copy of the counters: the quantity of each {@link Beverage} and {@link Coin} by ordinal.
+     *
+     * @return the (even) sequence of the write the counters come from
+     */
+    public long read(final int[] productQuantities, final int[] cashQuantities)
+    {
+        if (productQuantities.length < numberOfProducts || cashQuantities.length < numberOfCashItems)
+        {
+            throw new IllegalArgumentException("Arrays should have room for every product and cash item.");
+        }
+
+        while (true)
+        {
+            final long sequence = region.getLong(MappedStockRegion.SEQUENCE_OFFSET);
+            if ((sequence & 1) == 0)
+            {
+                fence = sequence;
+                int offset = MappedStockRegion.COUNTERS_OFFSET;
+                for (int i = 0; i < numberOfProducts; i++, offset += Integer.BYTES)
+                {
+                    productQuantities[i] = region.getInt(offset);
+                }
+                for (int i = 0; i < numberOfCashItems; i++, offset += Integer.BYTES)
+                {
+                    cashQuantities[i] = region.getInt(offset);
+                }
+                fence = sequence;
+                if (region.getLong(MappedStockRegion.SEQUENCE_OFFSET) == sequence)
+                {
+                    return sequence;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the sequence of the region, which only changes when the counters are written
+     */
+    public long getSequence()
+    {
+        return region.getLong(MappedStockRegion.SEQUENCE_OFFSET);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.dexma.hometest.domain;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * StockSnapshot class - An immutable copy of a "Stock" taken at a certain version.
+ * <p>
+ * Snapshots can be read from any thread without locking. Two snapshots with the same version have the same contents,
+ * so a poller can skip its work when the version didn't change since the last poll.
+ */
+public final class StockSnapshot<T>
+{
+    private final long version;
+    private final Map<T, Integer> stockMap;
+
+    StockSnapshot(final long version, final Map<T, Integer> stockMap)
+    {
+        this.version = version;
+        this.stockMap = Collections.unmodifiableMap(new LinkedHashMap<>(stockMap));
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return an unmodifiable map with the quantity of each item
+     */
+    public Map<T, Integer> getStockMap()
+    {
+        return stockMap;
+    }
+
+    public int getQuantity(final T item)
+    {
+        final Integer quantity = stockMap.get(item);
+        return quantity == null ? 0 : quantity;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StockSnapshot{version=" + version + ", stockMap=" + stockMap + "}";
+    }
+}
@@ -0,0 +1,19 @@
+package com.dexma.hometest.error;
+
+/**
+ * JournalException exception - Exceptions thrown when the operation journal can't be written or read.
+ */
+public class JournalException extends RuntimeException
+{
+    private static final long serialVersionUID = 4122358716412187230L;
+
+    public JournalException(final String message)
+    {
+        super(message);
+    }
+
+    public JournalException(final String message, final Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,19 @@
+package com.dexma.hometest.error;
+
+/**
+ * SalesArchiveException exception - Exceptions thrown when the sales archive can't be written or read.
+ */
+public class SalesArchiveException extends RuntimeException
+{
+    private static final long serialVersionUID = -6290460254873316521L;
+
+    public SalesArchiveException(final String message)
+    {
+        super(message);
+    }
+
+    public SalesArchiveException(final String message, final Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,35 @@
+package com.dexma.hometest.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * ChangeEvent class - The flight recorder event of a {@link EventType#CHANGE} or a {@link EventType#REFUND}, committed
+ * by {@link VendingMachineEvents} together with its {@link VendingMachineEvent}.
+ */
+@Name("com.dexma.hometest.Change")
+@Label("Change")
+@Category("Vending Machine")
+@Description("A change or a refund calculated from the cash stock")
+public final class ChangeEvent extends Event
+{
+    @Label("Refund")
+    boolean refund;
+
+    @Label("Amount in Cents")
+    long amountCents;
+
+    @Label("Change Strategy")
+    @Description("The strategy that calculated the change, none when it wasn't calculated")
+    String strategy;
+
+    @Label("Coins Given Back")
+    int coins;
+
+    @Label("Outcome")
+    String outcome;
+}
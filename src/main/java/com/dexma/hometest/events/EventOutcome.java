@@ -0,0 +1,12 @@
+package com.dexma.hometest.events;
+
+/**
+ * EventOutcome enum - How the operation of a {@link VendingMachineEvent} ended.
+ */
+public enum EventOutcome
+{
+    COMPLETED,
+    // there was no change (or refund) for the amount with the cash in stock
+    NO_CHANGE,
+    FAILED
+}
@@ -0,0 +1,13 @@
+package com.dexma.hometest.events;
+
+/**
+ * EventRecorder interface - Receives the {@link VendingMachineEvent}s while it is recording (see
+ * {@link VendingMachineEvents#startRecording(EventRecorder)}), e.g. to keep them in memory or to forward them to a
+ * profiler. It's called by the thread of each operation, so it should be thread-safe and quick. Unlike the flight
+ * recorder events, it needs no recording to observe them (see {@link VendingMachineEvents}).
+ */
+@FunctionalInterface
+public interface EventRecorder
+{
+    void record(VendingMachineEvent event);
+}
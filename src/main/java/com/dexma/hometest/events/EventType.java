@@ -0,0 +1,16 @@
+package com.dexma.hometest.events;
+
+/**
+ * EventType enum - What a {@link VendingMachineEvent} was recorded around.
+ */
+public enum EventType
+{
+    // VendingMachineApi.confirmPurchase, with or without a session
+    PURCHASE,
+    // CashManager.getCashItemsForChange
+    CHANGE,
+    // CashManager.calculateRefund, with or without a session
+    REFUND,
+    // every insert or delete of items in a Stock
+    STOCK
+}
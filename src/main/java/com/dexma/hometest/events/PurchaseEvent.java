@@ -0,0 +1,35 @@
+package com.dexma.hometest.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * PurchaseEvent class - The flight recorder event of a {@link EventType#PURCHASE}, committed by
+ * {@link VendingMachineEvents} together with its {@link VendingMachineEvent}.
+ */
+@Name("com.dexma.hometest.Purchase")
+@Label("Purchase")
+@Category("Vending Machine")
+@Description("A purchase confirmed with or without a session")
+public final class PurchaseEvent extends Event
+{
+    @Label("Product")
+    String product;
+
+    @Label("Price in Cents")
+    long amountCents;
+
+    @Label("Change Strategy")
+    @Description("The strategy that calculated the change, none when there was no change to calculate")
+    String strategy;
+
+    @Label("Coins Given Back")
+    int coins;
+
+    @Label("Outcome")
+    String outcome;
+}
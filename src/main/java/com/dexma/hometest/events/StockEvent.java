@@ -0,0 +1,30 @@
+package com.dexma.hometest.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * StockEvent class - The flight recorder event of a {@link EventType#STOCK}, committed by {@link VendingMachineEvents}
+ * together with its {@link VendingMachineEvent}.
+ */
+@Name("com.dexma.hometest.Stock")
+@Label("Stock Mutation")
+@Category("Vending Machine")
+@Description("Items added to or removed from the product or the cash stock")
+public final class StockEvent extends Event
+{
+    @Label("Item")
+    String item;
+
+    @Label("Value in Cents")
+    @Description("The value added to the stock, negative when removed")
+    long amountCents;
+
+    @Label("Quantity")
+    @Description("The quantity added to the stock, negative when removed")
+    int quantity;
+}
@@ -0,0 +1,102 @@
+package com.dexma.hometest.events;
+
+import com.dexma.hometest.business.ChangeStrategy;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * VendingMachineEvent class - A timed record of a purchase, a change or refund computation, or a stock mutation.
+ * <p>
+ * The amount is in cents: the price of the product for a {@link EventType#PURCHASE}, the change or refund asked for a
+ * {@link EventType#CHANGE} or {@link EventType#REFUND}, and the value added to (or removed from, when negative) the stock
+ * for a {@link EventType#STOCK}. The number of coins is the ones given back, or added to (or removed from) the cash stock.
+ * The product and the strategy are null when they don't apply.
+ */
+public final class VendingMachineEvent
+{
+    private final EventType type;
+    private final long startNanos;
+    private final long durationNanos;
+    private final String threadName;
+    private final Product product;
+    private final long amountCents;
+    private final ChangeStrategy strategy;
+    private final int coins;
+    private final EventOutcome outcome;
+
+    VendingMachineEvent(final EventType type,
+                        final long startNanos,
+                        final long durationNanos,
+                        final Product product,
+                        final long amountCents,
+                        final ChangeStrategy strategy,
+                        final int coins,
+                        final EventOutcome outcome)
+    {
+        this.type = type;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+        this.threadName = Thread.currentThread().getName();
+        this.product = product;
+        this.amountCents = amountCents;
+        this.strategy = strategy;
+        this.coins = coins;
+        this.outcome = outcome;
+    }
+
+    public EventType getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return when the operation started, as given by {@link System#nanoTime()}
+     */
+    public long getStartNanos()
+    {
+        return startNanos;
+    }
+
+    public long getDurationNanos()
+    {
+        return durationNanos;
+    }
+
+    public String getThreadName()
+    {
+        return threadName;
+    }
+
+    public Product getProduct()
+    {
+        return product;
+    }
+
+    public long getAmountCents()
+    {
+        return amountCents;
+    }
+
+    public ChangeStrategy getStrategy()
+    {
+        return strategy;
+    }
+
+    public int getCoins()
+    {
+        return coins;
+    }
+
+    public EventOutcome getOutcome()
+    {
+        return outcome;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VendingMachineEvent{type=" + type + ", startNanos=" + startNanos + ", durationNanos=" + durationNanos
+            + ", threadName=" + threadName + ", product=" + (product == null ? null : product.getName()) + ", amountCents="
+            + amountCents + ", strategy=" + strategy + ", coins=" + coins + ", outcome=" + outcome + '}';
+    }
+}
@@ -0,0 +1,217 @@
+package com.dexma.hometest.events;
+
+import java.util.Map;
+
+import com.dexma.hometest.business.ChangeStrategy;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * VendingMachineEvents class - The switch of the {@link VendingMachineEvent}s of the whole vending machine, which are
+ * also committed as flight recorder events ({@link PurchaseEvent}, {@link ChangeEvent} and {@link StockEvent}) while a
+ * flight recording enables them.
+ * <p>
+ * Every instrumented operation checks {@link #isRecording()} first, a read of a field and of the enabled flags of the
+ * flight recorder events, and only when something records it takes the time and creates its events. So while nothing
+ * records, the events cost nothing but that check.
+ * <p>
+ * There are two paths on purpose. The flight recorder events only reach a recording, which is read once it's dumped
+ * (JDK 8 has no event streaming), while an {@link EventRecorder} gets every event in process as it happens, which is
+ * what the tests and the code embedding the vending machine (e.g. to export metrics) need.
+ */
+public final class VendingMachineEvents
+{
+    // only asked whether they are enabled, which is the same for every event of a class
+    private static final PurchaseEvent PURCHASE_EVENTS = new PurchaseEvent();
+    private static final ChangeEvent CHANGE_EVENTS = new ChangeEvent();
+    private static final StockEvent STOCK_EVENTS = new StockEvent();
+
+    private static volatile EventRecorder recorder;
+
+    private VendingMachineEvents()
+    {
+    }
+
+    /**
+     * Sends every event from now on to {@code eventRecorder}, instead of the previous recorder if any.
+     */
+    public static void startRecording(final EventRecorder eventRecorder)
+    {
+        recorder = eventRecorder;
+    }
+
+    public static void stopRecording()
+    {
+        recorder = null;
+    }
+
+    public static boolean isRecording()
+    {
+        return recorder != null || PURCHASE_EVENTS.isEnabled() || CHANGE_EVENTS.isEnabled() || STOCK_EVENTS.isEnabled();
+    }
+
+    /**
+     * Starts timing a purchase for the flight recorder, to be passed to
+     * {@link #purchase(PurchaseEvent, long, Product, ChangeStrategy, Map, EventOutcome)} when it ends.
+     *
+     * @return the begun event, or null when no flight recording enables it
+     */
+    public static PurchaseEvent beginPurchase()
+    {
+        if (!PURCHASE_EVENTS.isEnabled())
+        {
+            return null;
+        }
+        final PurchaseEvent flightEvent = new PurchaseEvent();
+        flightEvent.begin();
+        return flightEvent;
+    }
+
+    /**
+     * Starts timing a change or refund for the flight recorder, to be passed to
+     * {@link #change(ChangeEvent, EventType, long, long, ChangeStrategy, Map)} when it ends.
+     *
+     * @return the begun event, or null when no flight recording enables it
+     */
+    public static ChangeEvent beginChange()
+    {
+        if (!CHANGE_EVENTS.isEnabled())
+        {
+            return null;
+        }
+        final ChangeEvent flightEvent = new ChangeEvent();
+        flightEvent.begin();
+        return flightEvent;
+    }
+
+    /**
+     * Records a purchase of {@code product} whose change, if any, was calculated by {@code strategy}.
+     */
+    public static void purchase(final PurchaseEvent flightEvent,
+                                final long startNanos,
+                                final Product product,
+                                final ChangeStrategy strategy,
+                                final Map<Cash, Integer> change,
+                                final EventOutcome outcome)
+    {
+        final long amountCents = product == null ? 0L : Cents.toCents(product.getPrice());
+        final int coins = countCoins(change);
+        if (recorder != null)
+        {
+            record(new VendingMachineEvent(EventType.PURCHASE, startNanos, System.nanoTime() - startNanos, product, amountCents,
+                strategy, coins, outcome));
+        }
+        if (flightEvent != null)
+        {
+            flightEvent.end();
+            if (flightEvent.shouldCommit())
+            {
+                flightEvent.product = product == null ? null : product.getName();
+                flightEvent.amountCents = amountCents;
+                flightEvent.strategy = strategy == null ? null : strategy.name();
+                flightEvent.coins = coins;
+                flightEvent.outcome = outcome.name();
+                flightEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Records the computation of a {@link EventType#CHANGE} or a {@link EventType#REFUND} of {@code amountCents} by
+     * {@code strategy}, whose outcome is {@link EventOutcome#NO_CHANGE} when {@code change} is null.
+     */
+    public static void change(final ChangeEvent flightEvent,
+                              final EventType type,
+                              final long startNanos,
+                              final long amountCents,
+                              final ChangeStrategy strategy,
+                              final Map<Cash, Integer> change)
+    {
+        final int coins = countCoins(change);
+        final EventOutcome outcome = change == null ? EventOutcome.NO_CHANGE : EventOutcome.COMPLETED;
+        if (recorder != null)
+        {
+            record(new VendingMachineEvent(type, startNanos, System.nanoTime() - startNanos, null, amountCents, strategy, coins,
+                outcome));
+        }
+        if (flightEvent != null)
+        {
+            flightEvent.end();
+            if (flightEvent.shouldCommit())
+            {
+                flightEvent.refund = type == EventType.REFUND;
+                flightEvent.amountCents = amountCents;
+                flightEvent.strategy = strategy == null ? null : strategy.name();
+                flightEvent.coins = coins;
+                flightEvent.outcome = outcome.name();
+                flightEvent.commit();
+            }
+        }
+    }
+
+    /**
+     * Records that {@code quantity} items of {@code item}, a product or a cash item, were added to a stock (or removed
+     * from it, when negative).
+     */
+    public static void stockChanged(final Object item, final int quantity)
+    {
+        final long now = System.nanoTime();
+        final long amountCents;
+        if (item instanceof Product)
+        {
+            final Product product = (Product) item;
+            amountCents = Cents.toCents(product.getPrice()) * quantity;
+            if (recorder != null)
+            {
+                record(new VendingMachineEvent(EventType.STOCK, now, 0L, product, amountCents, null, 0, EventOutcome.COMPLETED));
+            }
+        }
+        else if (item instanceof Cash)
+        {
+            amountCents = (long) ((Cash) item).getCents() * quantity;
+            if (recorder != null)
+            {
+                record(new VendingMachineEvent(EventType.STOCK, now, 0L, null, amountCents, null, quantity, EventOutcome.COMPLETED));
+            }
+        }
+        else
+        {
+            return;
+        }
+        if (STOCK_EVENTS.isEnabled())
+        {
+            final StockEvent flightEvent = new StockEvent();
+            if (flightEvent.shouldCommit())
+            {
+                flightEvent.item = item instanceof Product ? ((Product) item).getName() : item.toString();
+                flightEvent.amountCents = amountCents;
+                flightEvent.quantity = quantity;
+                flightEvent.commit();
+            }
+        }
+    }
+
+    private static void record(final VendingMachineEvent event)
+    {
+        final EventRecorder current = recorder;
+        if (current != null)
+        {
+            current.record(event);
+        }
+    }
+
+    private static int countCoins(final Map<Cash, Integer> change)
+    {
+        int coins = 0;
+        if (change != null)
+        {
+            for (final int quantity : change.values())
+            {
+                coins += quantity;
+            }
+        }
+        return coins;
+    }
+}
@@ -0,0 +1,591 @@
+package com.dexma.hometest.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.dexma.hometest.codec.VarInts;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.JournalException;
+
+
+/**
+ * FileJournal class - A {@link Journal} written to segment files in a directory, with group commit.
+ * <p>
+ * Records are appended to an in-memory buffer. The first thread waiting for a record to be durable writes the whole
+ * buffer with a single write and force, while the records appended meanwhile go to another buffer and are written by the
+ * next one, so concurrent customers share the cost of each force. Each record is framed as its length (varint), the
+ * record and a CRC32 of it.
+ * <p>
+ * A segment is named after the sequence of its first record and a new one is started when it would exceed the segment
+ * size. Opening the journal replays every segment into a {@link JournalState}; a record left half written by a crash at
+ * the end of the last segment is discarded.
+ * <p>
+ * The journal also keeps the state up to its last record, applying each record as it is appended. A snapshot copies it
+ * (the only pause for the other threads), writes the copy in the background and deletes the segments and snapshots it
+ * makes unnecessary, so opening the journal only reads the latest snapshot and replays the records after it.
+ */
+public final class FileJournal implements Journal, AutoCloseable
+{
+    public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final JournalState recoveredState;
+    // state up to the last record appended
+    private final JournalState state;
+    private final Object snapshotLock = new Object();
+    private final ByteBuffer record = ByteBuffer.allocate(JournalCodec.MAX_RECORD_SIZE);
+    private final CRC32 checksum = new CRC32();
+
+    // records appended and not written yet
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    // buffer to swap with pending on each write, null while being written
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long appended;
+    private long durable;
+    private boolean writing;
+    private boolean closed;
+    private IOException failure;
+    // start a new segment on the next write, so that the current one can be deleted by the next snapshot
+    private boolean rollRequested;
+    private ScheduledExecutorService snapshotExecutor;
+    private volatile RuntimeException snapshotFailure;
+    // only used by the thread writing
+    private FileChannel segment;
+
+    private FileJournal(final Path directory, final long segmentSize, final JournalState recoveredState)
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.recoveredState = recoveredState;
+        this.state = recoveredState.copy();
+        this.appended = recoveredState.getLastSequence();
+        this.durable = recoveredState.getLastSequence();
+    }
+
+    public static FileJournal open(final Path directory)
+    {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in {@code directory} (created if needed), loading its latest snapshot and replaying the records
+     * after it, and appends the next records to new segments of up to {@code segmentSize} bytes.
+     */
+    public static FileJournal open(final Path directory, final long segmentSize)
+    {
+        if (segmentSize <= 0)
+        {
+            throw new IllegalArgumentException("Segment size should be positive.");
+        }
+        try
+        {
+            Files.createDirectories(directory);
+            final JournalState state = JournalSnapshots.readLatest(directory);
+            final List<Path> segments = listSegments(directory);
+            for (int i = 0; i < segments.size(); i++)
+            {
+                // skip the segments whose records are all in the snapshot
+                if (i == segments.size() - 1 || firstSequenceOf(segments.get(i + 1)) > state.getLastSequence() + 1)
+                {
+                    replaySegment(segments.get(i), state, i == segments.size() - 1);
+                }
+            }
+            return new FileJournal(directory, segmentSize, state);
+        }
+        catch (final IOException ex)
+        {
+            throw new JournalException("The journal in " + directory + " couldn't be opened.", ex);
+        }
+    }
+
+    @Override
+    public JournalState getRecoveredState()
+    {
+        return recoveredState;
+    }
+
+    @Override
+    public synchronized long recordInsertCash(final long sessionId, final Cash cash)
+    {
+        prepareRecord();
+        JournalCodec.encodeItemRecord(record, JournalCodec.INSERT_CASH, sessionId, JournalCodec.ordinalOf(cash));
+        return appendRecord();
+    }
+
+    @Override
+    public synchronized long recordSelectProduct(final long sessionId, final Product product)
+    {
+        prepareRecord();
+        JournalCodec.encodeItemRecord(record, JournalCodec.SELECT_PRODUCT, sessionId, JournalCodec.ordinalOf(product));
+        return appendRecord();
+    }
+
+    @Override
+    public synchronized long recordConfirmPurchase(final long sessionId, final Product product, final Map<Cash, Integer> change)
+    {
+        prepareRecord();
+        JournalCodec.encodePurchaseRecord(record, sessionId, product, change);
+        return appendRecord();
+    }
+
+    @Override
+    public synchronized long recordRefund(final long sessionId, final Map<Cash, Integer> refund)
+    {
+        prepareRecord();
+        JournalCodec.encodeItemsRecord(record, JournalCodec.REFUND, sessionId, refund);
+        return appendRecord();
+    }
+
+    @Override
+    public synchronized long recordRefillProducts(final Map<Product, Integer> productMap)
+    {
+        prepareRecord();
+        JournalCodec.encodeItemsRecord(record, JournalCodec.REFILL_PRODUCTS, MACHINE_SESSION_ID, productMap);
+        return appendRecord();
+    }
+
+    @Override
+    public synchronized long recordRefillCash(final Map<Cash, Integer> cashMap)
+    {
+        prepareRecord();
+        JournalCodec.encodeItemsRecord(record, JournalCodec.REFILL_CASH, MACHINE_SESSION_ID, cashMap);
+        return appendRecord();
+    }
+
+    @Override
+    public void awaitDurable(final long sequence)
+    {
+        final ByteBuffer batch;
+        final boolean roll;
+        final long firstSequence;
+        final long lastSequence;
+        synchronized (this)
+        {
+            while (durable < sequence && writing && failure == null)
+            {
+                waitForWriter();
+            }
+            if (durable >= sequence)
+            {
+                return;
+            }
+            checkFailure();
+
+            // this thread writes every record appended so far, the next ones go to the spare buffer
+            writing = true;
+            roll = rollRequested;
+            rollRequested = false;
+            batch = pending;
+            pending = spare;
+            spare = null;
+            firstSequence = durable + 1;
+            lastSequence = appended;
+        }
+
+        IOException error = null;
+        try
+        {
+            write(batch, firstSequence, roll);
+        }
+        catch (final IOException ex)
+        {
+            error = ex;
+        }
+
+        synchronized (this)
+        {
+            batch.clear();
+            spare = batch;
+            writing = false;
+            if (error == null)
+            {
+                durable = lastSequence;
+            }
+            else
+            {
+                failure = error;
+            }
+            notifyAll();
+            checkFailure();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the state up to the last record appended, once that record is durable, and deletes the
+     * segments and snapshots older than it. The other threads only wait while the state is copied.
+     *
+     * @return the sequence of the last record in the snapshot (0 if there was nothing to snapshot)
+     */
+    public long snapshot()
+    {
+        synchronized (snapshotLock)
+        {
+            final JournalState copy;
+            synchronized (this)
+            {
+                copy = state.copy();
+            }
+            final long lastSequence = copy.getLastSequence();
+            if (lastSequence == 0)
+            {
+                return 0;
+            }
+
+            // a snapshot should only contain durable records
+            awaitDurable(lastSequence);
+            synchronized (this)
+            {
+                rollRequested = true;
+            }
+            try
+            {
+                // the snapshot is in the directory for good before the files it replaces are deleted
+                JournalSnapshots.write(directory, copy);
+                JournalSnapshots.deleteBefore(directory, lastSequence);
+                deleteSegmentsBefore(lastSequence);
+            }
+            catch (final IOException ex)
+            {
+                throw new JournalException("The journal snapshot couldn't be written.", ex);
+            }
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Writes a snapshot every {@code period} in a background thread, until the journal is closed.
+     */
+    public synchronized void startSnapshots(final long period, final TimeUnit unit)
+    {
+        if (snapshotExecutor != null)
+        {
+            throw new IllegalStateException("Snapshots are already started.");
+        }
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            final Thread thread = new Thread(runnable, "journal-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotExecutor.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                snapshot();
+                snapshotFailure = null;
+            }
+            catch (final RuntimeException ex)
+            {
+                // keep trying on the next period, the journal still has every record
+                snapshotFailure = ex;
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * @return the reason why the last background snapshot failed, or null if it succeeded
+     */
+    public RuntimeException getSnapshotFailure()
+    {
+        return snapshotFailure;
+    }
+
+    /**
+     * Stops accepting records, waits until the records already appended are durable and closes the current segment.
+     */
+    @Override
+    public void close()
+    {
+        final long lastSequence;
+        final ScheduledExecutorService executor;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            lastSequence = appended;
+            executor = snapshotExecutor;
+        }
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            try
+            {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try
+        {
+            awaitDurable(lastSequence);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                while (writing)
+                {
+                    waitForWriter();
+                }
+                closeSegment();
+            }
+        }
+    }
+
+    public synchronized long getDurableSequence()
+    {
+        return durable;
+    }
+
+    private void prepareRecord()
+    {
+        if (closed)
+        {
+            throw new JournalException("The journal is closed.");
+        }
+        checkFailure();
+        record.clear();
+    }
+
+    private long appendRecord()
+    {
+        record.flip();
+        final int length = record.remaining();
+        checksum.reset();
+        checksum.update(record.array(), 0, length);
+
+        // a varint of the length takes at most 5 bytes
+        if (pending.remaining() < 5 + length + CHECKSUM_SIZE)
+        {
+            final ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        VarInts.putVarLong(pending, length);
+        pending.put(record);
+        pending.putInt((int) checksum.getValue());
+
+        JournalCodec.apply(ByteBuffer.wrap(record.array(), 0, length), state);
+        state.setLastSequence(++appended);
+        return appended;
+    }
+
+    private void write(final ByteBuffer batch, final long firstSequence, final boolean roll) throws IOException
+    {
+        batch.flip();
+        if (segment != null && segment.position() > 0 && (roll || segment.position() + batch.remaining() > segmentSize))
+        {
+            closeSegment();
+        }
+        final boolean created = segment == null;
+        if (created)
+        {
+            segment = FileChannel.open(directory.resolve(segmentName(firstSequence)), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        while (batch.hasRemaining())
+        {
+            segment.write(batch);
+        }
+        segment.force(false);
+        if (created)
+        {
+            // the records of a new segment aren't durable until the segment itself is in the directory
+            forceDirectory(directory);
+        }
+    }
+
+    /**
+     * Deletes the segments whose records are all up to {@code lastSequence}, which is the case when the next segment
+     * starts right after it or earlier. The last segment is never deleted.
+     */
+    private void deleteSegmentsBefore(final long lastSequence) throws IOException
+    {
+        final List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - 1; i++)
+        {
+            if (firstSequenceOf(segments.get(i + 1)) <= lastSequence + 1)
+            {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    private void closeSegment()
+    {
+        if (segment != null)
+        {
+            try
+            {
+                segment.close();
+            }
+            catch (final IOException ex)
+            {
+                throw new JournalException("The journal segment couldn't be closed.", ex);
+            }
+            finally
+            {
+                segment = null;
+            }
+        }
+    }
+
+    private void waitForWriter()
+    {
+        try
+        {
+            wait();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new JournalException("Interrupted while waiting for the journal.", ex);
+        }
+    }
+
+    private void checkFailure()
+    {
+        if (failure != null)
+        {
+            throw new JournalException("The journal couldn't be written.", failure);
+        }
+    }
+
+    /**
+     * Forces the entries of {@code directory} (files created, renamed or deleted) to the storage device, as forcing a
+     * file only makes its content durable. Skipped on Windows, where a directory can't be opened.
+     */
+    static void forceDirectory(final Path directory) throws IOException
+    {
+        if (File.separatorChar == '\\')
+        {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+    }
+
+    static String segmentName(final long firstSequence)
+    {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    static long firstSequenceOf(final Path segment)
+    {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * @return the segments in {@code directory} in the order they were written
+     */
+    static List<Path> listSegments(final Path directory) throws IOException
+    {
+        final List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX))
+        {
+            for (final Path segment : stream)
+            {
+                segments.add(segment);
+            }
+        }
+        // names are zero padded, so they sort as their first sequence
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static void replaySegment(final Path segment, final JournalState state, final boolean last) throws IOException
+    {
+        long sequence = firstSequenceOf(segment);
+        if (sequence > state.getLastSequence() + 1)
+        {
+            throw new JournalException("Journal segment " + segment + " doesn't follow record " + state.getLastSequence() + ".");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        final CRC32 crc = new CRC32();
+        while (buffer.hasRemaining())
+        {
+            final int start = buffer.position();
+            final ByteBuffer payload = readRecord(buffer, crc);
+            if (payload == null)
+            {
+                if (!last)
+                {
+                    throw new JournalException("Journal segment " + segment + " is corrupted at position " + start + ".");
+                }
+                // a record half written when the machine stopped, it was never durable
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE))
+                {
+                    channel.truncate(start);
+                }
+                return;
+            }
+            // the records up to the snapshot are already in the state
+            if (sequence > state.getLastSequence())
+            {
+                JournalCodec.apply(payload, state);
+                state.setLastSequence(sequence);
+            }
+            sequence++;
+        }
+    }
+
+    /**
+     * @return the next record in {@code buffer} or null if it's incomplete or its checksum doesn't match
+     */
+    private static ByteBuffer readRecord(final ByteBuffer buffer, final CRC32 crc)
+    {
+        try
+        {
+            final long length = VarInts.getVarLong(buffer);
+            if (length <= 0 || length > JournalCodec.MAX_RECORD_SIZE || buffer.remaining() < length + CHECKSUM_SIZE)
+            {
+                return null;
+            }
+            final int start = buffer.position();
+            crc.reset();
+            crc.update(buffer.array(), start, (int) length);
+            buffer.position(start + (int) length);
+            if (buffer.getInt() != (int) crc.getValue())
+            {
+                return null;
+            }
+            return ByteBuffer.wrap(buffer.array(), start, (int) length);
+        }
+        catch (final BufferUnderflowException | IllegalArgumentException | JournalException ex)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.dexma.hometest.journal;
+
+import java.util.Map;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * Journal interface - Describes an append-only journal of the operations that change the state of a Vending Machine.
+ * <p>
+ * Recording an operation only appends it and returns its sequence, {@link #awaitDurable(long)} then waits until it is
+ * durable, so that an operation can be recorded while holding a lock and waited for after releasing it. The operations of
+ * the customer served without a session are recorded with {@link #MACHINE_SESSION_ID}.
+ */
+public interface Journal
+{
+    long MACHINE_SESSION_ID = 0L;
+
+    /**
+     * A journal that records nothing, for a vending machine that keeps its state only in memory.
+     */
+    Journal NONE = new Journal()
+    {
+        @Override
+        public long recordInsertCash(final long sessionId, final Cash cash)
+        {
+            return 0L;
+        }
+
+        @Override
+        public long recordSelectProduct(final long sessionId, final Product product)
+        {
+            return 0L;
+        }
+
+        @Override
+        public long recordConfirmPurchase(final long sessionId, final Product product, final Map<Cash, Integer> change)
+        {
+            return 0L;
+        }
+
+        @Override
+        public long recordRefund(final long sessionId, final Map<Cash, Integer> refund)
+        {
+            return 0L;
+        }
+
+        @Override
+        public long recordRefillProducts(final Map<Product, Integer> productMap)
+        {
+            return 0L;
+        }
+
+        @Override
+        public long recordRefillCash(final Map<Cash, Integer> cashMap)
+        {
+            return 0L;
+        }
+
+        @Override
+        public void awaitDurable(final long sequence)
+        {
+        }
+
+        @Override
+        public JournalState getRecoveredState()
+        {
+            return new JournalState();
+        }
+    };
+
+    long recordInsertCash(long sessionId, Cash cash);
+
+    long recordSelectProduct(long sessionId, Product product);
+
+    long recordConfirmPurchase(long sessionId, Product product, Map<Cash, Integer> change);
+
+    long recordRefund(long sessionId, Map<Cash, Integer> refund);
+
+    long recordRefillProducts(Map<Product, Integer> productMap);
+
+    long recordRefillCash(Map<Cash, Integer> cashMap);
+
+    /**
+     * Waits until the operation recorded with {@code sequence} (and all the previous ones) is durable.
+     */
+    void awaitDurable(long sequence);
+
+    /**
+     * @return the state rebuilt from the operations already in the journal when it was opened
+     */
+    JournalState getRecoveredState();
+}
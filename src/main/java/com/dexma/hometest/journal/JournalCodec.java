@@ -0,0 +1,154 @@
+package com.dexma.hometest.journal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.dexma.hometest.codec.VarInts;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.JournalException;
+
+
+/**
+ * JournalCodec class - Binary encoding of the journal records.
+ * <p>
+ * A record is its type, the session id and the items of the operation. Numbers are unsigned varints (7 bits per byte)
+ * and items are the ordinal of their {@link Coin} or {@link Beverage}, so most records take 3 to 10 bytes. A list of
+ * items is its number of entries followed by an ordinal and a quantity per entry.
+ */
+final class JournalCodec
+{
+    static final byte INSERT_CASH = 1;
+    static final byte SELECT_PRODUCT = 2;
+    static final byte CONFIRM_PURCHASE = 3;
+    static final byte REFUND = 4;
+    static final byte REFILL_PRODUCTS = 5;
+    static final byte REFILL_CASH = 6;
+
+    // type + session id + product + the quantity of every cash item, with room to spare
+    static final int MAX_RECORD_SIZE = 256;
+
+    private JournalCodec()
+    {
+    }
+
+    static void encodeItemRecord(final ByteBuffer buffer, final byte type, final long sessionId, final int ordinal)
+    {
+        buffer.put(type);
+        VarInts.putVarLong(buffer, sessionId);
+        VarInts.putVarLong(buffer, ordinal);
+    }
+
+    static void encodeItemsRecord(final ByteBuffer buffer, final byte type, final long sessionId, final Map<?, Integer> items)
+    {
+        buffer.put(type);
+        VarInts.putVarLong(buffer, sessionId);
+        putItems(buffer, items);
+    }
+
+    static void encodePurchaseRecord(final ByteBuffer buffer, final long sessionId, final Product product, final Map<Cash, Integer> change)
+    {
+        buffer.put(CONFIRM_PURCHASE);
+        VarInts.putVarLong(buffer, sessionId);
+        VarInts.putVarLong(buffer, ordinalOf(product));
+        putItems(buffer, change);
+    }
+
+    static int ordinalOf(final Cash cash)
+    {
+        if (!(cash instanceof Coin))
+        {
+            throw new JournalException("Cash item " + cash + " can't be journaled.");
+        }
+        return ((Coin) cash).ordinal();
+    }
+
+    static int ordinalOf(final Product product)
+    {
+        if (!(product instanceof Beverage))
+        {
+            throw new JournalException("Product " + product + " can't be journaled.");
+        }
+        return ((Beverage) product).ordinal();
+    }
+
+    private static void putItems(final ByteBuffer buffer, final Map<?, Integer> items)
+    {
+        VarInts.putVarLong(buffer, items.size());
+        for (final Map.Entry<?, Integer> entry : items.entrySet())
+        {
+            final Object item = entry.getKey();
+            VarInts.putVarLong(buffer, item instanceof Cash ? ordinalOf((Cash) item) : ordinalOf((Product) item));
+            VarInts.putVarLong(buffer, entry.getValue());
+        }
+    }
+
+    /**
+     * Decodes the record in {@code payload} and applies it to {@code state}.
+     */
+    static void apply(final ByteBuffer payload, final JournalState state)
+    {
+        try
+        {
+            final byte type = payload.get();
+            final long sessionId = VarInts.getVarLong(payload);
+            switch (type)
+            {
+                case INSERT_CASH:
+                    state.insertCash(sessionId, getOrdinal(payload, JournalState.CASH_ITEMS.length));
+                    break;
+                case SELECT_PRODUCT:
+                    state.selectProduct(sessionId, getOrdinal(payload, JournalState.PRODUCTS.length));
+                    break;
+                case CONFIRM_PURCHASE:
+                    final int productOrdinal = getOrdinal(payload, JournalState.PRODUCTS.length);
+                    state.confirmPurchase(sessionId, productOrdinal, getItems(payload, JournalState.CASH_ITEMS.length));
+                    break;
+                case REFUND:
+                    state.refund(sessionId, getItems(payload, JournalState.CASH_ITEMS.length));
+                    break;
+                case REFILL_PRODUCTS:
+                    state.refillProducts(getItems(payload, JournalState.PRODUCTS.length));
+                    break;
+                case REFILL_CASH:
+                    state.refillCash(getItems(payload, JournalState.CASH_ITEMS.length));
+                    break;
+                default:
+                    throw new JournalException("Unknown journal record type " + type + ".");
+            }
+        }
+        catch (final BufferUnderflowException ex)
+        {
+            throw new JournalException("Truncated journal record.", ex);
+        }
+        catch (final IllegalArgumentException ex)
+        {
+            throw new JournalException("Malformed number in journal record.", ex);
+        }
+    }
+
+    private static int getOrdinal(final ByteBuffer payload, final int numberOfItems)
+    {
+        final long ordinal = VarInts.getVarLong(payload);
+        if (ordinal >= numberOfItems)
+        {
+            throw new JournalException("Unknown item " + ordinal + " in journal record.");
+        }
+        return (int) ordinal;
+    }
+
+    private static int[] getItems(final ByteBuffer payload, final int numberOfItems)
+    {
+        final int[] quantities = new int[numberOfItems];
+        final long entries = VarInts.getVarLong(payload);
+        for (long i = 0; i < entries; i++)
+        {
+            final int ordinal = getOrdinal(payload, numberOfItems);
+            quantities[ordinal] += (int) VarInts.getVarLong(payload);
+        }
+        return quantities;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dexma.hometest.journal;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.dexma.hometest.error.JournalException;
+
+
+/**
+ * JournalSnapshots class - Snapshots of a {@link JournalState} written next to the journal segments.
+ * <p>
+ * A snapshot is named after the sequence of the last record it contains and holds a magic number, the state (see
+ * {@link JournalState}) and a CRC32 of both. It's written to a temporary file and then renamed, so a snapshot is either
+ * complete or not there at all; one that doesn't match its checksum anyway is skipped in favour of an older one. The
+ * rename is forced to the directory before returning, so the records the snapshot replaces can be deleted safely.
+ */
+final class JournalSnapshots
+{
+    private static final int MAGIC = 0x564D534E;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private JournalSnapshots()
+    {
+    }
+
+    static Path write(final Path directory, final JournalState state) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + state.getMaxEncodedSize() + Integer.BYTES);
+        buffer.putInt(MAGIC);
+        state.writeTo(buffer);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        final Path snapshot = directory.resolve(snapshotName(state.getLastSequence()));
+        final Path temporary = directory.resolve(snapshot.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileJournal.forceDirectory(directory);
+        return snapshot;
+    }
+
+    /**
+     * @return the state in the latest valid snapshot in {@code directory} or an empty state if there's none
+     */
+    static JournalState readLatest(final Path directory) throws IOException
+    {
+        final List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--)
+        {
+            final JournalState state = read(snapshots.get(i));
+            if (state != null)
+            {
+                return state;
+            }
+        }
+        return new JournalState();
+    }
+
+    /**
+     * Deletes the snapshots older than the one of {@code lastSequence}.
+     */
+    static void deleteBefore(final Path directory, final long lastSequence) throws IOException
+    {
+        for (final Path snapshot : list(directory))
+        {
+            if (sequenceOf(snapshot) < lastSequence)
+            {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+    }
+
+    static List<Path> list(final Path directory) throws IOException
+    {
+        final List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX))
+        {
+            for (final Path snapshot : stream)
+            {
+                snapshots.add(snapshot);
+            }
+        }
+        // names are zero padded, so they sort as their sequence
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private static JournalState read(final Path snapshot) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+            if (size < 2 * Integer.BYTES)
+            {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final ByteBuffer content = buffer.duplicate();
+            content.limit((int) size - Integer.BYTES);
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            if (buffer.getInt((int) size - Integer.BYTES) != (int) crc.getValue() || buffer.getInt(0) != MAGIC)
+            {
+                return null;
+            }
+
+            buffer.position(Integer.BYTES);
+            buffer.limit((int) size - Integer.BYTES);
+            final JournalState state = JournalState.readFrom(buffer);
+            return state.getLastSequence() == sequenceOf(snapshot) ? state : null;
+        }
+        catch (final BufferUnderflowException | IllegalArgumentException | JournalException ex)
+        {
+            return null;
+        }
+    }
+
+    private static String snapshotName(final long lastSequence)
+    {
+        return String.format("%s%020d%s", SNAPSHOT_PREFIX, lastSequence, SNAPSHOT_SUFFIX);
+    }
+
+    private static long sequenceOf(final Path snapshot)
+    {
+        final String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+}
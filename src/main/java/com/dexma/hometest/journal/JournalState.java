@@ -0,0 +1,293 @@
+package com.dexma.hometest.journal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.dexma.hometest.codec.VarInts;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.JournalException;
+
+
+/**
+ * JournalState class - The state of a Vending Machine rebuilt by replaying its journal: the product and cash stock and
+ * the sessions left open (with some balance or a selected product).
+ * <p>
+ * Items are indexed by the ordinal of their {@link Beverage} or {@link Coin}, the same way they are encoded in the journal.
+ * A state can be written to and read from a snapshot with the same encoding: the last sequence and session id, the
+ * quantity of every item (zigzag varints, since records of different sessions may be applied in a different order than
+ * their operations) and the balance in cents and selected product of every open session.
+ */
+public final class JournalState
+{
+    static final Beverage[] PRODUCTS = Beverage.getValidBeverages();
+    static final Coin[] CASH_ITEMS = Coin.getValidCoins();
+
+    private final int[] productQuantities = new int[PRODUCTS.length];
+    private final int[] cashQuantities = new int[CASH_ITEMS.length];
+    private final Map<Long, RecoveredSession> sessions = new HashMap<>();
+    private long lastSequence;
+    private long lastSessionId;
+
+    /**
+     * @return the sequence of the last operation applied (0 when none)
+     */
+    public long getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    /**
+     * @return the highest session id seen, so that new sessions don't reuse it
+     */
+    public long getLastSessionId()
+    {
+        return lastSessionId;
+    }
+
+    public boolean isEmpty()
+    {
+        return lastSequence == 0;
+    }
+
+    public Map<Product, Integer> getProductStock()
+    {
+        final Map<Product, Integer> productStock = new LinkedHashMap<>();
+        for (int i = 0; i < PRODUCTS.length; i++)
+        {
+            if (productQuantities[i] > 0)
+            {
+                productStock.put(PRODUCTS[i], productQuantities[i]);
+            }
+        }
+        return productStock;
+    }
+
+    public Map<Cash, Integer> getCashStock()
+    {
+        final Map<Cash, Integer> cashStock = new LinkedHashMap<>();
+        for (int i = 0; i < CASH_ITEMS.length; i++)
+        {
+            if (cashQuantities[i] > 0)
+            {
+                cashStock.put(CASH_ITEMS[i], cashQuantities[i]);
+            }
+        }
+        return cashStock;
+    }
+
+    /**
+     * @return the sessions left open, including the one of the customer served without a session
+     * ({@link Journal#MACHINE_SESSION_ID})
+     */
+    public Collection<RecoveredSession> getSessions()
+    {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * @return an independent copy of this state
+     */
+    JournalState copy()
+    {
+        final JournalState copy = new JournalState();
+        System.arraycopy(productQuantities, 0, copy.productQuantities, 0, productQuantities.length);
+        System.arraycopy(cashQuantities, 0, copy.cashQuantities, 0, cashQuantities.length);
+        for (final RecoveredSession session : sessions.values())
+        {
+            final RecoveredSession sessionCopy = new RecoveredSession(session.id);
+            sessionCopy.balanceCents = session.balanceCents;
+            sessionCopy.selectedProduct = session.selectedProduct;
+            copy.sessions.put(sessionCopy.id, sessionCopy);
+        }
+        copy.lastSequence = lastSequence;
+        copy.lastSessionId = lastSessionId;
+        return copy;
+    }
+
+    /**
+     * @return the maximum number of bytes that {@link #writeTo(ByteBuffer)} takes
+     */
+    int getMaxEncodedSize()
+    {
+        // every varint takes at most 10 bytes
+        return 10 * (4 + productQuantities.length + cashQuantities.length + 3 * sessions.size());
+    }
+
+    void writeTo(final ByteBuffer buffer)
+    {
+        VarInts.putVarLong(buffer, lastSequence);
+        VarInts.putVarLong(buffer, lastSessionId);
+        putQuantities(buffer, productQuantities);
+        putQuantities(buffer, cashQuantities);
+        VarInts.putVarLong(buffer, sessions.size());
+        for (final RecoveredSession session : sessions.values())
+        {
+            VarInts.putVarLong(buffer, session.id);
+            VarInts.putVarLong(buffer, session.balanceCents);
+            // 0 when no product is selected
+            VarInts.putVarLong(buffer, session.selectedProduct == null ? 0 : JournalCodec.ordinalOf(session.selectedProduct) + 1);
+        }
+    }
+
+    static JournalState readFrom(final ByteBuffer buffer)
+    {
+        final JournalState state = new JournalState();
+        state.lastSequence = VarInts.getVarLong(buffer);
+        state.lastSessionId = VarInts.getVarLong(buffer);
+        getQuantities(buffer, state.productQuantities);
+        getQuantities(buffer, state.cashQuantities);
+        final long numberOfSessions = VarInts.getVarLong(buffer);
+        for (long i = 0; i < numberOfSessions; i++)
+        {
+            final RecoveredSession session = new RecoveredSession(VarInts.getVarLong(buffer));
+            session.balanceCents = VarInts.getVarLong(buffer);
+            final long selectedProduct = VarInts.getVarLong(buffer);
+            if (selectedProduct > PRODUCTS.length)
+            {
+                throw new JournalException("Unknown product " + (selectedProduct - 1) + " in snapshot.");
+            }
+            session.selectedProduct = selectedProduct == 0 ? null : PRODUCTS[(int) selectedProduct - 1];
+            state.sessions.put(session.id, session);
+        }
+        return state;
+    }
+
+    private static void putQuantities(final ByteBuffer buffer, final int[] quantities)
+    {
+        VarInts.putVarLong(buffer, quantities.length);
+        for (final int quantity : quantities)
+        {
+            VarInts.putZigZag(buffer, quantity);
+        }
+    }
+
+    private static void getQuantities(final ByteBuffer buffer, final int[] quantities)
+    {
+        if (VarInts.getVarLong(buffer) != quantities.length)
+        {
+            throw new JournalException("Snapshot doesn't match the number of items.");
+        }
+        for (int i = 0; i < quantities.length; i++)
+        {
+            quantities[i] = (int) VarInts.getZigZag(buffer);
+        }
+    }
+
+    void setLastSequence(final long lastSequence)
+    {
+        this.lastSequence = lastSequence;
+    }
+
+    void insertCash(final long sessionId, final int cashOrdinal)
+    {
+        cashQuantities[cashOrdinal]++;
+        getSession(sessionId).balanceCents += CASH_ITEMS[cashOrdinal].getCents();
+    }
+
+    void selectProduct(final long sessionId, final int productOrdinal)
+    {
+        getSession(sessionId).selectedProduct = PRODUCTS[productOrdinal];
+    }
+
+    void confirmPurchase(final long sessionId, final int productOrdinal, final int[] change)
+    {
+        productQuantities[productOrdinal]--;
+        subtract(cashQuantities, change);
+        sessions.remove(sessionId);
+    }
+
+    void refund(final long sessionId, final int[] refund)
+    {
+        subtract(cashQuantities, refund);
+        final RecoveredSession session = getSession(sessionId);
+        session.balanceCents = 0;
+        if (session.selectedProduct == null)
+        {
+            sessions.remove(sessionId);
+        }
+    }
+
+    void refillProducts(final int[] quantities)
+    {
+        add(productQuantities, quantities);
+    }
+
+    void refillCash(final int[] quantities)
+    {
+        add(cashQuantities, quantities);
+    }
+
+    private RecoveredSession getSession(final long sessionId)
+    {
+        lastSessionId = Math.max(lastSessionId, sessionId);
+        return sessions.computeIfAbsent(sessionId, RecoveredSession::new);
+    }
+
+    private static void add(final int[] target, final int[] quantities)
+    {
+        for (int i = 0; i < target.length; i++)
+        {
+            target[i] += quantities[i];
+        }
+    }
+
+    private static void subtract(final int[] target, final int[] quantities)
+    {
+        for (int i = 0; i < target.length; i++)
+        {
+            target[i] -= quantities[i];
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "JournalState{lastSequence=" + lastSequence + ", productStock=" + getProductStock() + ", cashStock=" + getCashStock()
+            + ", sessions=" + sessions.values() + "}";
+    }
+
+    /**
+     * RecoveredSession class - The balance and selected product of a session left open.
+     */
+    public static final class RecoveredSession
+    {
+        private final long id;
+        private long balanceCents;
+        private Product selectedProduct;
+
+        private RecoveredSession(final long id)
+        {
+            this.id = id;
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public BigDecimal getCurrentBalance()
+        {
+            return Cents.fromCents(balanceCents);
+        }
+
+        public Product getSelectedProduct()
+        {
+            return selectedProduct;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "RecoveredSession{id=" + id + ", currentBalance=" + getCurrentBalance() + ", selectedProduct=" + selectedProduct + "}";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.dexma.hometest.stats;
+
+/**
+ * FailureCause enum - Why an operation of the vending machine failed with a
+ * {@link com.dexma.hometest.error.VendingMachineException}, as counted by {@link OperationMetrics}.
+ */
+public enum FailureCause
+{
+    INVALID_PRODUCT,
+    OUT_OF_STOCK,
+    INVALID_CASH,
+    NO_PRODUCT_SELECTED,
+    INSUFFICIENT_BALANCE,
+    NO_CHANGE,
+    INVALID_SESSION,
+    JOURNAL_FAILURE
+}
@@ -0,0 +1,68 @@
+package com.dexma.hometest.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * LatencyHistogram class - Fixed-memory histogram of latencies in nanoseconds, with log-linear buckets as in an HDR
+ * histogram.
+ * <p>
+ * Values below {@code 32} have a bucket each, and every power of two above is split in {@code 32} buckets, so a value is
+ * counted in a bucket at most about 3% wider than itself, from nanoseconds up to {@link #MAX_TRACKABLE_NANOS} (larger
+ * values are counted in the last bucket). Recording a value is one atomic increment of its bucket, so it doesn't allocate
+ * nor lock.
+ */
+public final class LatencyHistogram
+{
+    public static final long MAX_TRACKABLE_NANOS = (1L << 40) - 1;
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int NUMBER_OF_BUCKETS = bucketIndex(MAX_TRACKABLE_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUMBER_OF_BUCKETS);
+
+    public void recordNanos(final long nanos)
+    {
+        counts.incrementAndGet(bucketIndex(Math.min(Math.max(nanos, 0L), MAX_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * @return a copy of the counts recorded so far. Values recorded while copying may be in it or not.
+     */
+    public LatencySnapshot getSnapshot()
+    {
+        final long[] snapshot = new long[NUMBER_OF_BUCKETS];
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++)
+        {
+            snapshot[i] = counts.get(i);
+        }
+        return new LatencySnapshot(snapshot);
+    }
+
+    static int bucketIndex(final long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    static long lowestValueOf(final int bucketIndex)
+    {
+        if (bucketIndex < SUB_BUCKETS)
+        {
+            return bucketIndex;
+        }
+        final int shift = bucketIndex / SUB_BUCKETS - 1;
+        return (long) (bucketIndex % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highestValueOf(final int bucketIndex)
+    {
+        return lowestValueOf(bucketIndex + 1) - 1;
+    }
+}
@@ -0,0 +1,89 @@
+package com.dexma.hometest.stats;
+
+/**
+ * LatencySnapshot class - The counts of a {@link LatencyHistogram} at some moment, to export its percentiles.
+ * <p>
+ * Every value is reported as the highest one of its bucket, so they are never below the latencies recorded.
+ */
+public final class LatencySnapshot
+{
+    private final long[] counts;
+    private final long totalCount;
+
+    LatencySnapshot(final long[] counts)
+    {
+        this.counts = counts;
+        long total = 0L;
+        for (final long count : counts)
+        {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    public long getCount()
+    {
+        return totalCount;
+    }
+
+    /**
+     * @return the latency in nanoseconds that {@code percentile} percent of the values recorded are not above, or 0 if
+     * none was recorded
+     */
+    public long getValueAtPercentile(final double percentile)
+    {
+        if (percentile < 0.0 || percentile > 100.0)
+        {
+            throw new IllegalArgumentException("A percentile from 0 to 100 should be provided.");
+        }
+        final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0L;
+    }
+
+    public long getMaxValue()
+    {
+        for (int i = counts.length - 1; i >= 0; i--)
+        {
+            if (counts[i] > 0)
+            {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+        return 0L;
+    }
+
+    public double getMean()
+    {
+        if (totalCount == 0)
+        {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            if (counts[i] > 0)
+            {
+                final long lowest = LatencyHistogram.lowestValueOf(i);
+                sum += counts[i] * (lowest + (LatencyHistogram.highestValueOf(i) - lowest) / 2.0);
+            }
+        }
+        return sum / totalCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LatencySnapshot{count=" + totalCount + ", p50=" + getValueAtPercentile(50.0) + "ns, p90="
+            + getValueAtPercentile(90.0) + "ns, p99=" + getValueAtPercentile(99.0) + "ns, p99.9="
+            + getValueAtPercentile(99.9) + "ns, max=" + getMaxValue() + "ns}";
+    }
+}
@@ -0,0 +1,17 @@
+package com.dexma.hometest.stats;
+
+/**
+ * MeteredOperation enum - The operations of the vending machine whose latency is recorded by {@link OperationMetrics}.
+ * Each one counts both the operations without a session and the ones with.
+ */
+public enum MeteredOperation
+{
+    SELECT_PRODUCT,
+    INSERT_CASH,
+    CONFIRM_PURCHASE,
+    REFUND,
+    REFILL_PRODUCTS,
+    REFILL_CASH,
+    // the change computation alone, inside CONFIRM_PURCHASE
+    CHANGE_COMPUTATION
+}
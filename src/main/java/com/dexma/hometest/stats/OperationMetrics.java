@@ -0,0 +1,70 @@
+package com.dexma.hometest.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * OperationMetrics class - The latency histogram of every {@link MeteredOperation} and the number of failures of every
+ * {@link FailureCause}, since the vending machine started.
+ * <p>
+ * All of them are allocated up front, so recording doesn't allocate nor lock and can stay on the hot path.
+ */
+public final class OperationMetrics
+{
+    private static final MeteredOperation[] OPERATIONS = MeteredOperation.values();
+    private static final FailureCause[] CAUSES = FailureCause.values();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final AtomicLongArray failures = new AtomicLongArray(CAUSES.length);
+
+    public OperationMetrics()
+    {
+        for (final MeteredOperation operation : OPERATIONS)
+        {
+            latencies[operation.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records that {@code operation} took {@code nanos}, whether it completed or failed.
+     */
+    public void recordLatency(final MeteredOperation operation, final long nanos)
+    {
+        latencies[operation.ordinal()].recordNanos(nanos);
+    }
+
+    public void recordFailure(final FailureCause cause)
+    {
+        failures.incrementAndGet(cause.ordinal());
+    }
+
+    public LatencySnapshot getLatencySnapshot(final MeteredOperation operation)
+    {
+        return latencies[operation.ordinal()].getSnapshot();
+    }
+
+    public long getFailures(final FailureCause cause)
+    {
+        return failures.get(cause.ordinal());
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder("OperationMetrics{");
+        for (final MeteredOperation operation : OPERATIONS)
+        {
+            builder.append(operation).append('=').append(getLatencySnapshot(operation)).append(", ");
+        }
+        builder.append("failures={");
+        for (final FailureCause cause : CAUSES)
+        {
+            if (cause.ordinal() > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(cause).append('=').append(getFailures(cause));
+        }
+        return builder.append("}}").toString();
+    }
+}
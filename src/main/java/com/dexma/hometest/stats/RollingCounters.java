@@ -0,0 +1,98 @@
+package com.dexma.hometest.stats;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * RollingCounters class - A fixed ring of buckets, each one with the same number of counters, covering a rolling window.
+ * <p>
+ * The bucket of a time is its number of bucket spans since the epoch, kept in the slot of that number modulo the size of
+ * the ring. A bucket carries its number along with its counters, and the first thread adding to a newer bucket swaps a
+ * new one into the slot. A thread that checked the number of the bucket it adds to therefore always adds to that bucket:
+ * when a newer bucket took the slot meanwhile, the addition goes to the old one, which was too old for the ring anyway,
+ * and never leaks into the newer one. Memory is only allocated when a slot moves to a newer bucket, once per bucket
+ * span, and the sums only visit the buckets of the ring, whatever the number of additions.
+ */
+final class RollingCounters
+{
+    private static final Bucket UNUSED = new Bucket(Long.MIN_VALUE, 0);
+
+    private final long bucketMillis;
+    private final int numberOfBuckets;
+    private final int numberOfCounters;
+    private final AtomicReferenceArray<Bucket> slots;
+
+    RollingCounters(final long bucketMillis, final int numberOfBuckets, final int numberOfCounters)
+    {
+        this.bucketMillis = bucketMillis;
+        this.numberOfBuckets = numberOfBuckets;
+        this.numberOfCounters = numberOfCounters;
+        this.slots = new AtomicReferenceArray<>(numberOfBuckets);
+        for (int slot = 0; slot < numberOfBuckets; slot++)
+        {
+            slots.set(slot, UNUSED);
+        }
+    }
+
+    /**
+     * Adds {@code value} to {@code counter} in the bucket of {@code timeMillis}.
+     *
+     * @return false if the time is too old for the ring, so it wasn't added
+     */
+    boolean add(final long timeMillis, final int counter, final long value)
+    {
+        final long number = Math.floorDiv(timeMillis, bucketMillis);
+        final int slot = (int) Math.floorMod(number, (long) numberOfBuckets);
+        Bucket current = slots.get(slot);
+        while (current.number != number)
+        {
+            if (current.number > number)
+            {
+                return false;
+            }
+            final Bucket next = new Bucket(number, numberOfCounters);
+            // another thread may have moved the slot first, to this bucket or to a newer one
+            current = slots.compareAndSet(slot, current, next) ? next : slots.get(slot);
+        }
+        current.counters[counter].add(value);
+        return true;
+    }
+
+    /**
+     * @return the sum of {@code counter} over the buckets of the ring up to the bucket of {@code nowMillis}
+     */
+    long sum(final long nowMillis, final int counter)
+    {
+        final long last = Math.floorDiv(nowMillis, bucketMillis);
+        long sum = 0;
+        for (int slot = 0; slot < numberOfBuckets; slot++)
+        {
+            final Bucket bucket = slots.get(slot);
+            if (bucket.number > last - numberOfBuckets && bucket.number <= last)
+            {
+                sum += bucket.counters[counter].sum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Bucket class - The counters of one bucket span, tagged with its number.
+     */
+    private static final class Bucket
+    {
+        private final long number;
+        private final LongAdder[] counters;
+
+        private Bucket(final long number, final int numberOfCounters)
+        {
+            this.number = number;
+            this.counters = new LongAdder[numberOfCounters];
+            for (int counter = 0; counter < numberOfCounters; counter++)
+            {
+                counters[counter] = new LongAdder();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.dexma.hometest.stats;
+
+import java.util.function.LongSupplier;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cents;
+import com.dexma.hometest.domain.Product;
+
+
+/**
+ * SalesStatistics class - In-memory rolling counters of the sales of each product and of the revenue, over every
+ * {@link SalesWindow}.
+ * <p>
+ * Each window is a fixed ring of buckets of {@link java.util.concurrent.atomic.LongAdder} counters, so recording a sale
+ * doesn't lock, only allocates when a bucket span starts, and a query only sums the buckets of its window, never the
+ * sales themselves. The prices are converted to cents once, when the class is loaded.
+ */
+public final class SalesStatistics
+{
+    private static final SalesWindow[] WINDOWS = SalesWindow.values();
+    private static final int NUMBER_OF_PRODUCTS = Beverage.getValidBeverages().length;
+    // counters after the one of each product by ordinal
+    private static final int SALES = NUMBER_OF_PRODUCTS;
+    private static final int REVENUE_CENTS = NUMBER_OF_PRODUCTS + 1;
+    // price of each product by ordinal
+    private static final long[] PRICES_CENTS = new long[NUMBER_OF_PRODUCTS];
+
+    static
+    {
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            PRICES_CENTS[beverage.ordinal()] = Cents.toCents(beverage.getPrice());
+        }
+    }
+
+    private final LongSupplier clock;
+    private final RollingCounters[] windows = new RollingCounters[WINDOWS.length];
+
+    public SalesStatistics()
+    {
+        this(System::currentTimeMillis);
+    }
+
+    SalesStatistics(final LongSupplier clock)
+    {
+        this.clock = clock;
+        for (final SalesWindow window : WINDOWS)
+        {
+            windows[window.ordinal()] = new RollingCounters(window.getBucketMillis(), window.getNumberOfBuckets(), REVENUE_CENTS + 1);
+        }
+    }
+
+    /**
+     * Records a sale of {@code product} completed at {@code timeMillis} (epoch millis) at its price.
+     */
+    public void recordSale(final long timeMillis, final Product product)
+    {
+        final int ordinal = ((Beverage) product).ordinal();
+        final long priceCents = PRICES_CENTS[ordinal];
+        for (final RollingCounters counters : windows)
+        {
+            counters.add(timeMillis, ordinal, 1L);
+            counters.add(timeMillis, SALES, 1L);
+            counters.add(timeMillis, REVENUE_CENTS, priceCents);
+        }
+    }
+
+    /**
+     * @return the number of items of {@code product} sold in the last {@code window}
+     */
+    public long getSales(final SalesWindow window, final Product product)
+    {
+        return windows[window.ordinal()].sum(clock.getAsLong(), ((Beverage) product).ordinal());
+    }
+
+    /**
+     * @return the number of items sold in the last {@code window}
+     */
+    public long getSales(final SalesWindow window)
+    {
+        return windows[window.ordinal()].sum(clock.getAsLong(), SALES);
+    }
+
+    /**
+     * @return the revenue in cents of the items sold in the last {@code window}
+     */
+    public long getRevenueCents(final SalesWindow window)
+    {
+        return windows[window.ordinal()].sum(clock.getAsLong(), REVENUE_CENTS);
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder builder = new StringBuilder("SalesStatistics{");
+        for (final SalesWindow window : WINDOWS)
+        {
+            if (window.ordinal() > 0)
+            {
+                builder.append(", ");
+            }
+            builder.append(window).append("={sales=").append(getSales(window)).append(", revenueCents=")
+                .append(getRevenueCents(window)).append('}');
+        }
+        return builder.append('}').toString();
+    }
+}
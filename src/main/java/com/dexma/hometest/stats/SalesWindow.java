@@ -0,0 +1,39 @@
+package com.dexma.hometest.stats;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * SalesWindow enum - The rolling time windows kept by {@link SalesStatistics}, each one split in a fixed number of
+ * buckets. A window covers its buckets up to the current one, so it may reach back one bucket more than its span.
+ */
+public enum SalesWindow
+{
+    ONE_MINUTE(TimeUnit.SECONDS.toMillis(1), 60),
+    ONE_HOUR(TimeUnit.MINUTES.toMillis(1), 60),
+    ONE_DAY(TimeUnit.HOURS.toMillis(1), 24);
+
+    private final long bucketMillis;
+    private final int numberOfBuckets;
+
+    SalesWindow(final long bucketMillis, final int numberOfBuckets)
+    {
+        this.bucketMillis = bucketMillis;
+        this.numberOfBuckets = numberOfBuckets;
+    }
+
+    public long getBucketMillis()
+    {
+        return bucketMillis;
+    }
+
+    public int getNumberOfBuckets()
+    {
+        return numberOfBuckets;
+    }
+
+    public long getSpanMillis()
+    {
+        return bucketMillis * numberOfBuckets;
+    }
+}
@@ -0,0 +1,285 @@
+package com.dexma.hometest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.error.VendingMachineException;
+
+
+/**
+ * IdempotencyTableTest class - IdempotencyTable test class.
+ */
+class IdempotencyTableTest
+{
+    private static final int CAPACITY = 3;
+    private static final long TIME_TO_LIVE_MILLIS = 1_000L;
+    private static final long MACHINE = 0L;
+
+    private AtomicLong now;
+    private AtomicInteger runs;
+    private IdempotencyTable idempotencyTable;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.now = new AtomicLong();
+        this.runs = new AtomicInteger();
+        this.idempotencyTable = new IdempotencyTable(CAPACITY, TIME_TO_LIVE_MILLIS, now::get);
+    }
+
+    @Test
+    void givenOperationRunWithKey_whenRetry_thenReturnFirstResultWithoutRunningIt()
+    {
+        // given
+        final int first = idempotencyTable.execute("insertCash", MACHINE, "a", null, runs::incrementAndGet);
+
+        // when
+        final int retry = idempotencyTable.execute("insertCash", MACHINE, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(1, first);
+        assertEquals(1, retry);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void givenSameKeyForAnotherOperation_whenExecute_thenRunIt()
+    {
+        // given
+        idempotencyTable.execute("insertCash", MACHINE, "a", null, runs::incrementAndGet);
+
+        // when
+        final int result = idempotencyTable.execute("confirmPurchase", MACHINE, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(2, result);
+    }
+
+    @Test
+    void givenSameKeyInAnotherSession_whenExecute_thenRunIt()
+    {
+        // given
+        idempotencyTable.execute("insertCash", 1L, "a", null, runs::incrementAndGet);
+
+        // when
+        final int result = idempotencyTable.execute("insertCash", 2L, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(2, result);
+    }
+
+    @Test
+    void givenKeyUsedWithOtherArguments_whenExecute_thenThrowSpecificException()
+    {
+        // given
+        final String expectedMsg = "The idempotency key a was already used with other arguments.";
+        idempotencyTable.execute("insertCash", MACHINE, "a", "TWO", runs::incrementAndGet);
+
+        // when
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class,
+            () -> idempotencyTable.execute("insertCash", MACHINE, "a", "ONE", runs::incrementAndGet));
+
+        // then
+        assertEquals(expectedMsg, thrown.getMessage());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void givenExpiredKey_whenRetry_thenRunOperationAgain()
+    {
+        // given
+        idempotencyTable.execute("insertCash", MACHINE, "a", null, runs::incrementAndGet);
+        now.addAndGet(TIME_TO_LIVE_MILLIS);
+
+        // when
+        final int retry = idempotencyTable.execute("insertCash", MACHINE, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(2, retry);
+        assertEquals(1, idempotencyTable.size());
+    }
+
+    @Test
+    void givenFullTable_whenExecuteNewKey_thenDropEldestKey()
+    {
+        // given
+        for (int i = 0; i < CAPACITY; i++)
+        {
+            idempotencyTable.execute("insertCash", MACHINE, "key" + i, null, runs::incrementAndGet);
+        }
+
+        // when
+        idempotencyTable.execute("insertCash", MACHINE, "new", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(CAPACITY, idempotencyTable.size());
+        assertEquals(5, (int) idempotencyTable.execute("insertCash", MACHINE, "key0", null, runs::incrementAndGet));
+        assertEquals(3, (int) idempotencyTable.execute("insertCash", MACHINE, "key2", null, runs::incrementAndGet));
+    }
+
+    @Test
+    void givenFullTableWithEldestRunning_whenExecuteNewKey_thenDropEldestCompletedKey() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Future<Integer> eldest = executor.submit(() -> idempotencyTable.execute("refillCash", MACHINE, "eldest", null, () ->
+        {
+            running.countDown();
+            await(finish);
+            return runs.incrementAndGet();
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < CAPACITY; i++)
+        {
+            idempotencyTable.execute("insertCash", MACHINE, "key" + i, null, runs::incrementAndGet);
+        }
+
+        // when
+        idempotencyTable.execute("insertCash", MACHINE, "new", null, runs::incrementAndGet);
+        finish.countDown();
+
+        // then
+        assertEquals(CAPACITY, idempotencyTable.size());
+        assertEquals(eldest.get(), idempotencyTable.execute("refillCash", MACHINE, "eldest", null, runs::incrementAndGet));
+        assertEquals(5, (int) idempotencyTable.execute("insertCash", MACHINE, "key1", null, runs::incrementAndGet));
+        executor.shutdown();
+    }
+
+    @Test
+    void givenFullTableOfRunningOperations_whenExecuteNewKey_thenThrowSpecificException() throws Exception
+    {
+        // given
+        final String expectedMsg = "Too many operations with an idempotency key are running, try again later.";
+        final ExecutorService executor = Executors.newFixedThreadPool(CAPACITY);
+        final CountDownLatch running = new CountDownLatch(CAPACITY);
+        final CountDownLatch finish = new CountDownLatch(1);
+        for (int i = 0; i < CAPACITY; i++)
+        {
+            final String key = "key" + i;
+            executor.submit(() -> idempotencyTable.execute("refillCash", MACHINE, key, null, () ->
+            {
+                running.countDown();
+                await(finish);
+                return runs.incrementAndGet();
+            }));
+        }
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // when
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class,
+            () -> idempotencyTable.execute("refillCash", MACHINE, "new", null, runs::incrementAndGet));
+
+        // then
+        assertEquals(expectedMsg, thrown.getMessage());
+        finish.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(CAPACITY, runs.get());
+    }
+
+    @Test
+    void givenFailedOperation_whenRetry_thenRunItAgain()
+    {
+        // given
+        assertThrows(VendingMachineException.class, () -> idempotencyTable.execute("confirmPurchase", MACHINE, "a", null, () ->
+        {
+            runs.incrementAndGet();
+            throw new VendingMachineException("Not sufficient change to provide.");
+        }));
+
+        // when
+        final int retry = idempotencyTable.execute("confirmPurchase", MACHINE, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(2, retry);
+    }
+
+    @Test
+    void givenInvalidKey_whenExecute_thenThrowSpecificException()
+    {
+        // given
+        final String expectedMsg = "An idempotency key of 1 to 64 characters should be provided.";
+        final StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i <= IdempotencyTable.MAX_KEY_LENGTH; i++)
+        {
+            longKey.append('k');
+        }
+
+        // when + then
+        assertEquals(expectedMsg, assertThrows(VendingMachineException.class,
+            () -> idempotencyTable.execute("insertCash", MACHINE, null, null, runs::incrementAndGet)).getMessage());
+        assertEquals(expectedMsg, assertThrows(VendingMachineException.class,
+            () -> idempotencyTable.execute("insertCash", MACHINE, longKey.toString(), null, runs::incrementAndGet)).getMessage());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void givenOperationRunning_whenRetryConcurrently_thenWaitForItsResult() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final Future<Integer> first = executor.submit(() -> idempotencyTable.execute("refillCash", MACHINE, "a", null, () ->
+        {
+            running.countDown();
+            await(finish);
+            return runs.incrementAndGet();
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // when
+        final Thread release = new Thread(() ->
+        {
+            sleepQuietly();
+            finish.countDown();
+        });
+        release.start();
+        final int retry = idempotencyTable.execute("refillCash", MACHINE, "a", null, runs::incrementAndGet);
+
+        // then
+        assertEquals(1, retry);
+        assertEquals(1, (int) first.get());
+        assertEquals(1, runs.get());
+        executor.shutdown();
+        release.join();
+    }
+
+    private static void await(final CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly()
+    {
+        try
+        {
+            Thread.sleep(50);
+        }
+        catch (final InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
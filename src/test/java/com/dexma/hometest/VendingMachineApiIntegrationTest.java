@@ -4,30 +4,59 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.hamcrest.collection.IsMapContaining;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.dexma.hometest.archive.SalesArchive;
+import com.dexma.hometest.archive.SalesArchiveReader;
+import com.dexma.hometest.archive.SalesColumn;
 import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeFeasibilityTable;
 import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ChangeStrategy;
 import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
 import com.dexma.hometest.domain.Beverage;
 import com.dexma.hometest.domain.Cash;
 import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.ConcurrentStock;
+import com.dexma.hometest.domain.EnumStock;
+import com.dexma.hometest.domain.MappedStockRegion;
 import com.dexma.hometest.domain.Product;
 import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.domain.StockRegionReader;
 import com.dexma.hometest.error.VendingMachineException;
+import com.dexma.hometest.events.EventOutcome;
+import com.dexma.hometest.events.EventType;
+import com.dexma.hometest.events.VendingMachineEvent;
+import com.dexma.hometest.events.VendingMachineEvents;
+import com.dexma.hometest.journal.FileJournal;
+import com.dexma.hometest.stats.FailureCause;
+import com.dexma.hometest.stats.LatencySnapshot;
+import com.dexma.hometest.stats.MeteredOperation;
+import com.dexma.hometest.stats.OperationMetrics;
+import com.dexma.hometest.stats.SalesStatistics;
+import com.dexma.hometest.stats.SalesWindow;
 
 import javafx.util.Pair;
 
@@ -401,4 +430,510 @@ class VendingMachineApiIntegrationTest
         assertThat(productStockStatus, IsMapContaining.hasEntry(Beverage.COKE, 0));
         assertThat(productStockStatus, IsMapContaining.hasEntry(Beverage.SPRITE, 0));
     }
+
+    @Test
+    void testScenarioExactChangeOnly()
+    {
+        // setup vending machine keeping track of the amounts that can be given as change (up to 2)
+        final CashManager feasibilityCashManager = new CashManager(new Stock<>(new HashMap<>()), new ChangeProcessorFactory(), 0,
+            new ChangeFeasibilityTable(200));
+        final VendingMachineApi feasibilityVendingMachineApi =
+            new VendingMachineApi(new ProductManager(new Stock<>(new HashMap<>())), feasibilityCashManager);
+        feasibilityVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+        assertTrue(feasibilityVendingMachineApi.isExactChangeOnly());
+
+        // - supplier refill cash with enough coins to give any change up to 2
+        feasibilityVendingMachineApi.refillCash(generateCashStockValues(1, 1, 2, 1, 1, 1));
+        assertFalse(feasibilityVendingMachineApi.isExactChangeOnly());
+
+        // - user buys water with a coin of two - change = 1.1 (one coin of one and one coin of ten cents)
+        feasibilityVendingMachineApi.selectProduct(Beverage.WATER);
+        feasibilityVendingMachineApi.insertCash(Coin.TWO);
+        final Pair<Product, Map<Cash, Integer>> result = feasibilityVendingMachineApi.confirmPurchase();
+        assertThat(result.getValue(), IsMapContaining.hasEntry(Coin.ONE, 1));
+        assertThat(result.getValue(), IsMapContaining.hasEntry(Coin.TEN_CENTS, 1));
+
+        // - without the coin of one there are amounts that can't be given as change anymore
+        assertTrue(feasibilityVendingMachineApi.isExactChangeOnly());
+        assertTrue(feasibilityCashManager.canGiveChange(BigDecimal.valueOf(2)));
+        assertFalse(feasibilityCashManager.canGiveChange(BigDecimal.valueOf(1.95)));
+
+        // - user buys sprite with a coin of two - change = 0.6 isn't possible (known without running the change processor)
+        feasibilityVendingMachineApi.selectProduct(Beverage.SPRITE);
+        feasibilityVendingMachineApi.insertCash(Coin.TWO);
+        assertFalse(feasibilityCashManager.canGiveChange(BigDecimal.valueOf(0.6)));
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> feasibilityVendingMachineApi.confirmPurchase());
+        assertEquals("Not sufficient change to provide.", thrown.getMessage());
+    }
+
+    @Test
+    void testScenarioConcurrentSessions()
+    {
+        // setup vending machine serving several customers over the same stock
+        final VendingMachineApi sessionVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+            new CashManager(EnumStock.forCash(), new ChangeProcessorFactory()));
+        sessionVendingMachineApi.refillCash(generateCashStockValues(1, 2, 2, 1, 1, 1));
+        sessionVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+        final Map<Cash, Integer> cashStockStatus = sessionVendingMachineApi.getCashStockStatus();
+        final Map<Product, Integer> productStockStatus = sessionVendingMachineApi.getProductStockStatus();
+
+        // two customers select the last water at the same time
+        final Session firstSession = sessionVendingMachineApi.openSession();
+        final Session secondSession = sessionVendingMachineApi.openSession();
+        assertNotEquals(firstSession.getId(), secondSession.getId());
+        assertEquals(0, sessionVendingMachineApi.selectProduct(firstSession, Beverage.WATER).compareTo(BigDecimal.valueOf(0.9)));
+        assertEquals(0, sessionVendingMachineApi.selectProduct(secondSession, Beverage.WATER).compareTo(BigDecimal.valueOf(0.9)));
+
+        // - each one has its own balance
+        assertEquals(0, sessionVendingMachineApi.insertCash(firstSession, Coin.ONE).compareTo(BigDecimal.ONE));
+        assertEquals(0, sessionVendingMachineApi.insertCash(secondSession, Coin.FIFTY_CENTS).compareTo(BigDecimal.valueOf(0.5)));
+        assertEquals(0, sessionVendingMachineApi.insertCash(secondSession, Coin.FIFTY_CENTS).compareTo(BigDecimal.ONE));
+
+        // - first customer gets the water - change = 0.1
+        final Pair<Product, Map<Cash, Integer>> firstResult = sessionVendingMachineApi.confirmPurchase(firstSession);
+        assertEquals(Beverage.WATER, firstResult.getKey());
+        assertThat(firstResult.getValue(), is(Collections.singletonMap(Coin.TEN_CENTS, 1)));
+        assertNull(firstSession.getSelectedProduct());
+        assertEquals(BigDecimal.ZERO, firstSession.getCurrentBalance());
+
+        // - second customer can't get it anymore, but keeps the balance
+        final VendingMachineException thrown =
+            assertThrows(VendingMachineException.class, () -> sessionVendingMachineApi.confirmPurchase(secondSession));
+        assertEquals("Product " + Beverage.WATER.getName() + " is not available in stock.", thrown.getMessage());
+        assertEquals(0, secondSession.getCurrentBalance().compareTo(BigDecimal.ONE));
+
+        // - second customer buys coke instead - change = 0.5
+        sessionVendingMachineApi.selectProduct(secondSession, Beverage.COKE);
+        sessionVendingMachineApi.insertCash(secondSession, Coin.ONE);
+        final Pair<Product, Map<Cash, Integer>> secondResult = sessionVendingMachineApi.confirmPurchase(secondSession);
+        assertEquals(Beverage.COKE, secondResult.getKey());
+        assertThat(secondResult.getValue(), is(Collections.singletonMap(Coin.FIFTY_CENTS, 1)));
+        assertNull(sessionVendingMachineApi.refund(secondSession));
+
+        // check stock shared by both sessions
+        assertThat(productStockStatus, IsMapContaining.hasEntry(Beverage.WATER, 0));
+        assertThat(productStockStatus, IsMapContaining.hasEntry(Beverage.COKE, 0));
+        assertThat(productStockStatus, IsMapContaining.hasEntry(Beverage.SPRITE, 1));
+        assertThat(cashStockStatus, IsMapContaining.hasEntry(Coin.ONE, 3));
+        assertThat(cashStockStatus, IsMapContaining.hasEntry(Coin.FIFTY_CENTS, 2));
+        assertThat(cashStockStatus, IsMapContaining.hasEntry(Coin.TEN_CENTS, 1));
+    }
+
+    @Test
+    void testScenarioSessionWithoutChange()
+    {
+        // user starts a session in a vending machine without cash for change
+        final VendingMachineApi sessionVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+            new CashManager(EnumStock.forCash(), new ChangeProcessorFactory()));
+        sessionVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+        final Session session = sessionVendingMachineApi.openSession();
+
+        // - user buys sprite with a coin of two - change = 0.6 isn't possible
+        sessionVendingMachineApi.selectProduct(session, Beverage.SPRITE);
+        sessionVendingMachineApi.insertCash(session, Coin.TWO);
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> sessionVendingMachineApi.confirmPurchase(session));
+        assertEquals("Not sufficient change to provide.", thrown.getMessage());
+
+        // - sprite is back in stock and the coin is refunded
+        assertThat(sessionVendingMachineApi.getProductStockStatus(), IsMapContaining.hasEntry(Beverage.SPRITE, 1));
+        assertThat(sessionVendingMachineApi.refund(session), is(Collections.singletonMap(Coin.TWO, 1)));
+        assertEquals(BigDecimal.ZERO, session.getCurrentBalance());
+        assertThat(sessionVendingMachineApi.getCashStockStatus(), IsMapContaining.hasEntry(Coin.TWO, 0));
+    }
+
+    @Test
+    void testScenarioRecoverFromJournal() throws IOException
+    {
+        final Path directory = Files.createTempDirectory("journal");
+        try
+        {
+            // vending machine recording its operations stops while a customer is buying
+            final Session session;
+            try (FileJournal journal = FileJournal.open(directory))
+            {
+                final VendingMachineApi journaledVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+                    new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory()), journal);
+                journaledVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+                journaledVendingMachineApi.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 2));
+                journaledVendingMachineApi.selectProduct(Beverage.WATER);
+                journaledVendingMachineApi.insertCash(Coin.ONE);
+                journaledVendingMachineApi.confirmPurchase();
+
+                session = journaledVendingMachineApi.openSession();
+                journaledVendingMachineApi.selectProduct(session, Beverage.SPRITE);
+                journaledVendingMachineApi.insertCash(session, Coin.ONE);
+            }
+
+            // - vending machine restarts with the same stock and the session of the customer
+            try (FileJournal journal = FileJournal.open(directory))
+            {
+                final VendingMachineApi recoveredVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+                    new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory()), journal);
+                assertFalse(recoveredVendingMachineApi.getAvailableProducts().contains(Beverage.WATER));
+                assertThat(recoveredVendingMachineApi.getProductStockStatus(), IsMapContaining.hasEntry(Beverage.SPRITE, 1));
+                assertThat(recoveredVendingMachineApi.getCashStockStatus(), IsMapContaining.hasEntry(Coin.TEN_CENTS, 1));
+                assertThat(recoveredVendingMachineApi.getCashStockStatus(), IsMapContaining.hasEntry(Coin.ONE, 2));
+
+                // - customer goes on buying the sprite and new sessions don't reuse its id
+                final Session recoveredSession = recoveredVendingMachineApi.getRecoveredSessions().get(session.getId());
+                assertEquals(Beverage.SPRITE, recoveredSession.getSelectedProduct());
+                assertEquals(0, recoveredSession.getCurrentBalance().compareTo(BigDecimal.ONE));
+                assertNotEquals(session.getId(), recoveredVendingMachineApi.openSession().getId());
+                recoveredVendingMachineApi.insertCash(recoveredSession, Coin.FIFTY_CENTS);
+                final Pair<Product, Map<Cash, Integer>> result = recoveredVendingMachineApi.confirmPurchase(recoveredSession);
+                assertEquals(Beverage.SPRITE, result.getKey());
+                assertThat(result.getValue(), is(Collections.singletonMap(Coin.TEN_CENTS, 1)));
+            }
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testScenarioRefillWithInvalidEntry() throws IOException
+    {
+        final Path directory = Files.createTempDirectory("journal");
+        try
+        {
+            // supplier refills the machine with maps whose last entry is invalid
+            final Map<Product, Integer> productStock;
+            final Map<Cash, Integer> cashStock;
+            try (FileJournal journal = FileJournal.open(directory))
+            {
+                final VendingMachineApi journaledVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+                    new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory()), journal);
+                journaledVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+                journaledVendingMachineApi.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 2));
+                productStock = new HashMap<>(journaledVendingMachineApi.getProductStockStatus());
+                cashStock = new HashMap<>(journaledVendingMachineApi.getCashStockStatus());
+
+                final Map<Product, Integer> productRefill = new LinkedHashMap<>();
+                productRefill.put(Beverage.COKE, 5);
+                productRefill.put(Beverage.SPRITE, 0);
+                final Map<Cash, Integer> cashRefill = new LinkedHashMap<>();
+                cashRefill.put(Coin.ONE, 5);
+                cashRefill.put(null, 1);
+                assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.refillProducts(productRefill));
+                assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.refillCash(cashRefill));
+
+                // - none of the valid entries is applied
+                assertEquals(productStock, journaledVendingMachineApi.getProductStockStatus());
+                assertEquals(cashStock, journaledVendingMachineApi.getCashStockStatus());
+            }
+
+            // - nor replayed when the vending machine restarts
+            try (FileJournal journal = FileJournal.open(directory))
+            {
+                final VendingMachineApi recoveredVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+                    new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory()), journal);
+                assertEquals(productStock, recoveredVendingMachineApi.getProductStockStatus());
+                assertEquals(cashStock, recoveredVendingMachineApi.getCashStockStatus());
+            }
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testScenarioJournalFailure() throws IOException
+    {
+        final Path directory = Files.createTempDirectory("journal");
+        try
+        {
+            // a customer is buying a coke when the journal stops accepting records
+            final FileJournal journal = FileJournal.open(directory);
+            final VendingMachineApi journaledVendingMachineApi = new VendingMachineApi(new ProductManager(ConcurrentStock.forProducts()),
+                new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory()), journal);
+            journaledVendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+            journaledVendingMachineApi.refillCash(Collections.singletonMap(Coin.FIFTY_CENTS, 1));
+            final Session session = journaledVendingMachineApi.openSession();
+            journaledVendingMachineApi.selectProduct(session, Beverage.COKE);
+            journaledVendingMachineApi.insertCash(session, Coin.TWO);
+            final Map<Product, Integer> productStock = new HashMap<>(journaledVendingMachineApi.getProductStockStatus());
+            journal.close();
+
+            // - none of its operations is applied without its record
+            assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.insertCash(session, Coin.ONE));
+            assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.confirmPurchase(session));
+            assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.refund(session));
+            assertThrows(VendingMachineException.class, () -> journaledVendingMachineApi.refillCash(Collections.singletonMap(Coin.ONE, 1)));
+            assertEquals(productStock, journaledVendingMachineApi.getProductStockStatus());
+            assertThat(journaledVendingMachineApi.getCashStockStatus().get(Coin.TWO), is(1));
+            assertThat(journaledVendingMachineApi.getCashStockStatus().get(Coin.FIFTY_CENTS), is(1));
+            assertThat(journaledVendingMachineApi.getCashStockStatus().getOrDefault(Coin.ONE, 0), is(0));
+            assertEquals(Beverage.COKE, session.getSelectedProduct());
+            assertEquals(0, session.getCurrentBalance().compareTo(new BigDecimal(2)));
+            assertEquals(Collections.singletonMap(Coin.TWO, 1), session.getInsertedCash());
+            assertEquals(4, journaledVendingMachineApi.getOperationMetrics().getFailures(FailureCause.JOURNAL_FAILURE));
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testScenarioMirrorStock() throws IOException
+    {
+        final Path file = Files.createTempFile("stock", ".region");
+        try (MappedStockRegion region = vendingMachineApi.mirrorStockTo(file);
+             StockRegionReader reader = StockRegionReader.open(file))
+        {
+            final int[] products = new int[reader.getNumberOfProducts()];
+            final int[] cash = new int[reader.getNumberOfCashItems()];
+
+            // supplier refills the machine and a user buys a water
+            vendingMachineApi.refillProducts(generateProductStockValues(1, 1, 1));
+            vendingMachineApi.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 2));
+            vendingMachineApi.selectProduct(Beverage.WATER);
+            vendingMachineApi.insertCash(Coin.ONE);
+            vendingMachineApi.confirmPurchase();
+
+            // - another process reads the same counters as the vending machine, as of its last update
+            assertEquals(region.getSequence(), reader.read(products, cash));
+            for (final Beverage beverage : Beverage.getValidBeverages())
+            {
+                assertEquals(vendingMachineApi.getProductStockStatus().get(beverage).intValue(), products[beverage.ordinal()]);
+            }
+            for (final Coin coin : Coin.getValidCoins())
+            {
+                assertEquals(vendingMachineApi.getCashStockStatus().get(coin).intValue(), cash[coin.ordinal()]);
+            }
+            assertEquals(1, products[Beverage.WATER.ordinal()]);
+            assertEquals(3, cash[Coin.TEN_CENTS.ordinal()]);
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testScenarioArchiveSales() throws IOException
+    {
+        final Path directory = Files.createTempDirectory("sales");
+        try (SalesArchive archive = SalesArchive.open(directory))
+        {
+            vendingMachineApi.archiveSalesTo(archive);
+
+            // a user buys a water with a coin and a session buys a coke with change
+            vendingMachineApi.selectProduct(Beverage.WATER);
+            vendingMachineApi.insertCash(Coin.FIFTY_CENTS);
+            vendingMachineApi.insertCash(Coin.TWENTY_CENTS);
+            vendingMachineApi.insertCash(Coin.TWENTY_CENTS);
+            vendingMachineApi.confirmPurchase();
+            final Session session = vendingMachineApi.openSession();
+            vendingMachineApi.selectProduct(session, Beverage.COKE);
+            vendingMachineApi.insertCash(session, Coin.TWO);
+            final Pair<Product, Map<Cash, Integer>> purchase = vendingMachineApi.confirmPurchase(session);
+            archive.flush();
+
+            // - the archive has both sales, each with the coins inserted and the change given back
+            final SalesArchiveReader reader = new SalesArchiveReader(directory);
+            final List<Long> products = new ArrayList<>();
+            reader.readColumn(SalesColumn.PRODUCT, products::add);
+            assertEquals(Arrays.asList((long) Beverage.WATER.ordinal(), (long) Beverage.COKE.ordinal()), products);
+            final List<Long> inserted = new ArrayList<>();
+            reader.readColumn(SalesColumn.INSERTED_COINS, inserted::add);
+            assertEquals(2L, (long) inserted.get(Coin.TWENTY_CENTS.ordinal()));
+            assertEquals(1L, (long) inserted.get(Coin.FIFTY_CENTS.ordinal()));
+            assertEquals(1L, (long) inserted.get(Coin.getValidCoins().length + Coin.TWO.ordinal()));
+            final List<Long> change = new ArrayList<>();
+            reader.readColumn(SalesColumn.CHANGE_COINS, change::add);
+            for (final Coin coin : Coin.getValidCoins())
+            {
+                final Integer quantity = purchase.getValue().get(coin);
+                assertEquals(quantity == null ? 0L : quantity.longValue(), (long) change.get(Coin.getValidCoins().length + coin.ordinal()));
+            }
+            assertNull(vendingMachineApi.getSalesArchiveFailure());
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testScenarioArchiveClosed() throws IOException
+    {
+        final Path directory = Files.createTempDirectory("sales");
+        try
+        {
+            // the sales archive is closed while the vending machine keeps selling
+            final SalesArchive archive = SalesArchive.open(directory);
+            vendingMachineApi.archiveSalesTo(archive);
+            archive.close();
+
+            // - a user buys a water and gets it even though its sale can't be archived
+            vendingMachineApi.selectProduct(Beverage.WATER);
+            vendingMachineApi.insertCash(Coin.FIFTY_CENTS);
+            vendingMachineApi.insertCash(Coin.TWENTY_CENTS);
+            vendingMachineApi.insertCash(Coin.TWENTY_CENTS);
+            assertEquals(Beverage.WATER, vendingMachineApi.confirmPurchase().getKey());
+            assertEquals("The sales archive is closed.", vendingMachineApi.getSalesArchiveFailure().getMessage());
+        }
+        finally
+        {
+            try (Stream<Path> paths = Files.walk(directory))
+            {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testScenarioSalesStatistics()
+    {
+        // a user buys a water and a session buys a coke
+        vendingMachineApi.selectProduct(Beverage.WATER);
+        vendingMachineApi.insertCash(Coin.ONE);
+        vendingMachineApi.confirmPurchase();
+        final Session session = vendingMachineApi.openSession();
+        vendingMachineApi.selectProduct(session, Beverage.COKE);
+        vendingMachineApi.insertCash(session, Coin.TWO);
+        vendingMachineApi.confirmPurchase(session);
+
+        // - both sales are counted in every window
+        final SalesStatistics salesStatistics = vendingMachineApi.getSalesStatistics();
+        for (final SalesWindow window : SalesWindow.values())
+        {
+            assertEquals(2, salesStatistics.getSales(window));
+            assertEquals(1, salesStatistics.getSales(window, Beverage.WATER));
+            assertEquals(240, salesStatistics.getRevenueCents(window));
+        }
+    }
+
+    @Test
+    void testScenarioRetriedOperationsWithIdempotencyKeys()
+    {
+        final Map<Cash, Integer> initialCashStock = new HashMap<>(vendingMachineApi.getCashStockStatus());
+        final int initialCokes = vendingMachineApi.getProductStockStatus().get(Beverage.COKE);
+
+        // supplier refill and user coin are sent twice, as a gateway retrying after a lost response would
+        final Map<Cash, Integer> refill = new HashMap<>();
+        refill.put(Coin.TEN_CENTS, 5);
+        vendingMachineApi.refillCashOnce("refill-1", refill);
+        // - even once the gateway reuses its map for another refill
+        refill.put(Coin.FIFTY_CENTS, 1);
+        vendingMachineApi.refillCashOnce("refill-1", Collections.singletonMap(Coin.TEN_CENTS, 5));
+        assertThrows(VendingMachineException.class, () -> vendingMachineApi.refillCashOnce("refill-1", refill));
+        assertThat(vendingMachineApi.getCashStockStatus().get(Coin.FIFTY_CENTS), is(initialCashStock.get(Coin.FIFTY_CENTS)));
+        vendingMachineApi.selectProduct(Beverage.COKE);
+        assertEquals(0, vendingMachineApi.insertCashOnce("coin-1", Coin.TWO).compareTo(new BigDecimal(2)));
+        assertEquals(0, vendingMachineApi.insertCashOnce("coin-1", Coin.TWO).compareTo(new BigDecimal(2)));
+        assertThrows(VendingMachineException.class, () -> vendingMachineApi.insertCashOnce("coin-1", Coin.ONE));
+
+        // - the purchase is confirmed twice but the coke is dispensed once, with the same change
+        final Pair<Product, Map<Cash, Integer>> purchase = vendingMachineApi.confirmPurchaseOnce("purchase-1");
+        assertEquals(purchase, vendingMachineApi.confirmPurchaseOnce("purchase-1"));
+        assertThat(vendingMachineApi.getProductStockStatus().get(Beverage.COKE), is(initialCokes - 1));
+        assertThat(vendingMachineApi.getCashStockStatus().get(Coin.TWO), is(initialCashStock.get(Coin.TWO) + 1));
+        int changeInTenCents = 0;
+        for (final Map.Entry<Cash, Integer> entry : purchase.getValue().entrySet())
+        {
+            changeInTenCents += entry.getKey() == Coin.TEN_CENTS ? entry.getValue() : 0;
+        }
+        assertThat(vendingMachineApi.getCashStockStatus().get(Coin.TEN_CENTS),
+            is(initialCashStock.get(Coin.TEN_CENTS) + 5 - changeInTenCents));
+
+        // - a new key is a new operation
+        assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchaseOnce("purchase-2"));
+    }
+
+    @Test
+    void testScenarioOperationMetrics()
+    {
+        final OperationMetrics operationMetrics = vendingMachineApi.getOperationMetrics();
+        final long initialRefills = operationMetrics.getLatencySnapshot(MeteredOperation.REFILL_PRODUCTS).getCount();
+
+        // a user confirms before selecting, then with too little money, and finally buys a water with change
+        assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase());
+        vendingMachineApi.selectProduct(Beverage.WATER);
+        vendingMachineApi.insertCash(Coin.TWENTY_CENTS);
+        assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase());
+        vendingMachineApi.insertCash(Coin.ONE);
+        vendingMachineApi.confirmPurchase();
+        vendingMachineApi.refillProducts(Collections.singletonMap(Beverage.WATER, 1));
+
+        // - every operation is timed, failed or not, and each failure is counted by its cause
+        assertEquals(1, operationMetrics.getLatencySnapshot(MeteredOperation.SELECT_PRODUCT).getCount());
+        assertEquals(2, operationMetrics.getLatencySnapshot(MeteredOperation.INSERT_CASH).getCount());
+        assertEquals(3, operationMetrics.getLatencySnapshot(MeteredOperation.CONFIRM_PURCHASE).getCount());
+        assertEquals(1, operationMetrics.getLatencySnapshot(MeteredOperation.CHANGE_COMPUTATION).getCount());
+        assertEquals(initialRefills + 1, operationMetrics.getLatencySnapshot(MeteredOperation.REFILL_PRODUCTS).getCount());
+        assertEquals(1, operationMetrics.getFailures(FailureCause.NO_PRODUCT_SELECTED));
+        assertEquals(1, operationMetrics.getFailures(FailureCause.INSUFFICIENT_BALANCE));
+        assertEquals(0, operationMetrics.getFailures(FailureCause.NO_CHANGE));
+
+        // - the percentiles are exported from a snapshot
+        final LatencySnapshot confirmLatency = operationMetrics.getLatencySnapshot(MeteredOperation.CONFIRM_PURCHASE);
+        assertTrue(confirmLatency.getValueAtPercentile(50.0) <= confirmLatency.getValueAtPercentile(99.0));
+        assertEquals(confirmLatency.getMaxValue(), confirmLatency.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    void testScenarioPurchaseEvents()
+    {
+        final List<VendingMachineEvent> events = new ArrayList<>();
+        VendingMachineEvents.startRecording(events::add);
+        try
+        {
+            // a user tries to buy a water with too little money, and then buys it with change
+            vendingMachineApi.selectProduct(Beverage.WATER);
+            vendingMachineApi.insertCash(Coin.FIFTY_CENTS);
+            assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase());
+            vendingMachineApi.insertCash(Coin.FIFTY_CENTS);
+            final Pair<Product, Map<Cash, Integer>> purchase = vendingMachineApi.confirmPurchase();
+
+            // - both purchases are recorded with the product, its price and the outcome
+            final List<VendingMachineEvent> purchaseEvents = new ArrayList<>();
+            for (final VendingMachineEvent event : events)
+            {
+                if (event.getType() == EventType.PURCHASE)
+                {
+                    purchaseEvents.add(event);
+                }
+            }
+            assertEquals(2, purchaseEvents.size());
+            assertEquals(EventOutcome.FAILED, purchaseEvents.get(0).getOutcome());
+            final VendingMachineEvent completed = purchaseEvents.get(1);
+            assertEquals(EventOutcome.COMPLETED, completed.getOutcome());
+            assertEquals(Beverage.WATER, completed.getProduct());
+            assertEquals(90, completed.getAmountCents());
+            // - with one or two coins of each kind in stock the adaptive strategy calculates the change with the optimal one
+            assertEquals(ChangeStrategy.OPTIMAL, completed.getStrategy());
+            assertNull(purchaseEvents.get(0).getStrategy());
+            int coins = 0;
+            for (final int quantity : purchase.getValue().values())
+            {
+                coins += quantity;
+            }
+            assertEquals(coins, completed.getCoins());
+
+            // - the change and the stock mutations were recorded too
+            assertTrue(events.stream().anyMatch(event -> event.getType() == EventType.CHANGE));
+            assertTrue(events.stream().anyMatch(event -> event.getType() == EventType.STOCK && event.getProduct() == Beverage.WATER
+                && event.getAmountCents() == -90));
+        }
+        finally
+        {
+            VendingMachineEvents.stopRecording();
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package com.dexma.hometest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeFeasibilityTable;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.ConcurrentStock;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineApiStressTest class - Checks that concurrent sessions over the same stock never lose nor duplicate cash
+ * or product items.
+ */
+class VendingMachineApiStressTest
+{
+    private static final int THREADS = 8;
+    private static final int CUSTOMERS_PER_THREAD = 500;
+    private static final int INITIAL_PRODUCT_QUANTITY = 1_000;
+    private static final int INITIAL_CASH_QUANTITY = 20;
+    private static final Coin[] CUSTOMER_COINS = {Coin.TWENTY_CENTS, Coin.FIFTY_CENTS, Coin.ONE, Coin.TWO};
+
+    private VendingMachineApi vendingMachineApi;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(ConcurrentStock.forProducts());
+        final CashManager cashManager =
+            new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory(), 0, new ChangeFeasibilityTable(500));
+        this.vendingMachineApi = new VendingMachineApi(productManager, cashManager);
+
+        final Map<Product, Integer> productInputMap = new HashMap<>();
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            productInputMap.put(beverage, INITIAL_PRODUCT_QUANTITY);
+        }
+        vendingMachineApi.refillProducts(productInputMap);
+
+        final Map<Cash, Integer> cashInputMap = new HashMap<>();
+        for (final Coin coin : Coin.getValidCoins())
+        {
+            cashInputMap.put(coin, INITIAL_CASH_QUANTITY);
+        }
+        vendingMachineApi.refillCash(cashInputMap);
+    }
+
+    @Test
+    void givenConcurrentSessions_whenPurchaseAndRefund_thenNoCashNorProductItemIsLostOrDuplicated() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Tally>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                start.await();
+                final Tally tally = new Tally();
+                for (int customer = 0; customer < CUSTOMERS_PER_THREAD; customer++)
+                {
+                    serveCustomer(tally);
+                }
+                return tally;
+            }));
+        }
+        start.countDown();
+        final Tally total = new Tally();
+        for (final Future<Tally> future : futures)
+        {
+            total.add(future.get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        final Map<Product, Integer> productStock = vendingMachineApi.getProductStockStatus();
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            assertThat(productStock.get(beverage) + total.sold[beverage.ordinal()], is(INITIAL_PRODUCT_QUANTITY));
+        }
+
+        final Map<Cash, Integer> cashStock = vendingMachineApi.getCashStockStatus();
+        for (final Coin coin : Coin.getValidCoins())
+        {
+            assertThat(coin.name(), cashStock.get(coin) + total.returned[coin.ordinal()],
+                is(INITIAL_CASH_QUANTITY + total.inserted[coin.ordinal()]));
+        }
+
+        assertEquals(total.insertedCents, total.spentCents + total.returnedCents + total.leftInSessionsCents);
+        assertTrue(total.sold[0] + total.sold[1] + total.sold[2] > 0);
+    }
+
+    private void serveCustomer(final Tally tally)
+    {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final Session session = vendingMachineApi.openSession();
+        final Beverage beverage = Beverage.getValidBeverages()[random.nextInt(Beverage.getValidBeverages().length)];
+        try
+        {
+            vendingMachineApi.selectProduct(session, beverage);
+        }
+        catch (final VendingMachineException ex)
+        {
+            // sold out
+            return;
+        }
+
+        final int priceInCents = beverage.getPrice().movePointRight(2).intValueExact();
+        int balanceInCents = 0;
+        while (balanceInCents < priceInCents)
+        {
+            final Coin coin = CUSTOMER_COINS[random.nextInt(CUSTOMER_COINS.length)];
+            vendingMachineApi.insertCash(session, coin);
+            tally.inserted[coin.ordinal()]++;
+            tally.insertedCents += coin.getCents();
+            balanceInCents += coin.getCents();
+        }
+
+        if (random.nextInt(10) > 0)
+        {
+            try
+            {
+                final Pair<Product, Map<Cash, Integer>> result = vendingMachineApi.confirmPurchase(session);
+                tally.sold[((Beverage) result.getKey()).ordinal()]++;
+                tally.spentCents += priceInCents;
+                tally.addReturned(result.getValue());
+                return;
+            }
+            catch (final VendingMachineException ex)
+            {
+                // sold out or no change, the customer asks for the money back
+            }
+        }
+
+        final Map<Cash, Integer> refund = vendingMachineApi.refund(session);
+        if (refund != null)
+        {
+            tally.addReturned(refund);
+        }
+        tally.leftInSessionsCents += session.getCurrentBalance().movePointRight(2).intValueExact();
+    }
+
+    /**
+     * Tally class - What the customers of one thread inserted, bought and got back.
+     */
+    private static final class Tally
+    {
+        private final int[] inserted = new int[Coin.getValidCoins().length];
+        private final int[] returned = new int[Coin.getValidCoins().length];
+        private final int[] sold = new int[Beverage.getValidBeverages().length];
+        private long insertedCents;
+        private long spentCents;
+        private long returnedCents;
+        private long leftInSessionsCents;
+
+        private void addReturned(final Map<Cash, Integer> cashItems)
+        {
+            for (final Map.Entry<Cash, Integer> entry : cashItems.entrySet())
+            {
+                returned[((Coin) entry.getKey()).ordinal()] += entry.getValue();
+                returnedCents += (long) entry.getKey().getCents() * entry.getValue();
+            }
+        }
+
+        private void add(final Tally other)
+        {
+            for (int i = 0; i < inserted.length; i++)
+            {
+                inserted[i] += other.inserted[i];
+                returned[i] += other.returned[i];
+            }
+            for (int i = 0; i < sold.length; i++)
+            {
+                sold[i] += other.sold[i];
+            }
+            insertedCents += other.insertedCents;
+            spentCents += other.spentCents;
+            returnedCents += other.returnedCents;
+            leftInSessionsCents += other.leftInSessionsCents;
+        }
+    }
+}
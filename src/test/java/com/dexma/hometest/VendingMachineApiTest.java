@@ -13,6 +13,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -34,11 +35,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.dexma.hometest.business.CashManager;
 import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
 import com.dexma.hometest.domain.BalanceResult;
 import com.dexma.hometest.domain.Beverage;
 import com.dexma.hometest.domain.Cash;
 import com.dexma.hometest.domain.Coin;
 import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.domain.StockSnapshot;
 import com.dexma.hometest.error.CashManagerException;
 import com.dexma.hometest.error.ProductManagerException;
 import com.dexma.hometest.error.VendingMachineException;
@@ -188,6 +192,42 @@ class VendingMachineApiTest
         assertTrue(result.isEmpty());
     }
 
+    // getCashStockSnapshot
+    @Test
+    void givenCashStock_whenGetCashStockSnapshot_thenReturnCashStockSnapshot()
+    {
+        // given
+        final Map<Cash, Integer> mockStockMap = new HashMap<>();
+        mockStockMap.put(Coin.FIFTY_CENTS, 1);
+        final StockSnapshot<Cash> expectedResult = new Stock<>(mockStockMap).getSnapshot();
+        when(mockCashManager.getCashStockSnapshot()).thenReturn(expectedResult);
+
+        // when
+        final StockSnapshot<Cash> result = vendingMachineApi.getCashStockSnapshot();
+
+        // then
+        assertThat(result, is(expectedResult));
+        assertThat(result.getStockMap(), IsMapContaining.hasEntry(Coin.FIFTY_CENTS, 1));
+    }
+
+    // getProductStockSnapshot
+    @Test
+    void givenProductStock_whenGetProductStockSnapshot_thenReturnProductStockSnapshot()
+    {
+        // given
+        final Map<Product, Integer> mockStockMap = new HashMap<>();
+        mockStockMap.put(Beverage.COKE, 2);
+        final StockSnapshot<Product> expectedResult = new Stock<>(mockStockMap).getSnapshot();
+        when(mockProductManager.getProductStockSnapshot()).thenReturn(expectedResult);
+
+        // when
+        final StockSnapshot<Product> result = vendingMachineApi.getProductStockSnapshot();
+
+        // then
+        assertThat(result, is(expectedResult));
+        assertThat(result.getStockMap(), IsMapContaining.hasEntry(Beverage.COKE, 2));
+    }
+
     // refund
     // has balance
     @Test
@@ -393,6 +433,7 @@ class VendingMachineApiTest
         final Map<Cash, Integer> expectedRemainingChange = new HashMap<>();
         expectedRemainingChange.put(Coin.TEN_CENTS, 1);
         when(mockCashManager.getCashItemsForChange(mockChangeToRefund)).thenReturn(expectedRemainingChange);
+        when(mockCashManager.takeCashItemsFromStock(expectedRemainingChange)).thenReturn(true);
         final Pair<Product, Map<Cash, Integer>> expectedResult = new Pair<>(mockSelectedProduct, expectedRemainingChange);
 
         // when
@@ -412,6 +453,76 @@ class VendingMachineApiTest
         assertThat(result, is(expectedResult));
     }
 
+    // - current item selected + balance > product price + change taken by another purchase meanwhile
+    @Test
+    void givenChangeTakenAfterCalculation_whenConfirmPurchase_thenReturnProductToStockAndThrowSpecificException()
+    {
+        // given
+        when(mockProductManager.isProductSelected()).thenReturn(true);
+        final Product mockSelectedProduct = Beverage.WATER;
+        when(mockProductManager.getSelectedProduct()).thenReturn(mockSelectedProduct);
+        when(mockCashManager.isPossibleToPurchaseProduct(mockSelectedProduct.getPrice())).thenReturn(BalanceResult.ABOVE_AMOUNT);
+        final BigDecimal mockChangeToRefund = BigDecimal.valueOf(0.1);
+        when(mockCashManager.calculateRemainingChange(mockSelectedProduct.getPrice())).thenReturn(mockChangeToRefund);
+        final Map<Cash, Integer> mockChange = Collections.singletonMap(Coin.TEN_CENTS, 1);
+        when(mockCashManager.getCashItemsForChange(mockChangeToRefund)).thenReturn(mockChange);
+        when(mockCashManager.takeCashItemsFromStock(mockChange)).thenReturn(false);
+        final String expectedMsg = "Not sufficient change to provide.";
+
+        // when + then
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase());
+        assertEquals(expectedMsg, thrown.getMessage());
+        verify(mockProductManager, times(1)).takeProductItemFromStock(mockSelectedProduct);
+        verify(mockProductManager, times(1)).returnProductItemToStock(mockSelectedProduct);
+        verify(mockProductManager, never()).resetSelectedProduct();
+        verify(mockCashManager, never()).resetCurrentBalance();
+    }
+
+    // - current item selected + balance == product price + product sold out meanwhile
+    @Test
+    void givenProductSoldOutAfterSelection_whenConfirmPurchase_thenThrowSpecificException()
+    {
+        // given
+        when(mockProductManager.isProductSelected()).thenReturn(true);
+        final Product mockSelectedProduct = Beverage.WATER;
+        when(mockProductManager.getSelectedProduct()).thenReturn(mockSelectedProduct);
+        final BalanceResult balanceResult = BalanceResult.EXACT_AMOUNT;
+        when(mockCashManager.isPossibleToPurchaseProduct(mockSelectedProduct.getPrice())).thenReturn(balanceResult);
+        final String expectedMsg = "Product " + mockSelectedProduct.getName() + " is not available in stock.";
+        doThrow(new ProductManagerException(expectedMsg)).when(mockProductManager).takeProductItemFromStock(mockSelectedProduct);
+
+        // when + then
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase());
+        assertEquals(expectedMsg, thrown.getMessage());
+        verify(mockCashManager, never()).resetCurrentBalance();
+    }
+
+    // session operations
+    // - no session
+    @Test
+    void givenNoSession_whenConfirmPurchase_thenThrowSpecificException()
+    {
+        // given
+        final String expectedMsg = "A valid session should be provided.";
+
+        // when + then
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase(null));
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+
+    // - session without product selected
+    @Test
+    void givenSessionWithNoProductSelected_whenConfirmPurchase_thenThrowSpecificException()
+    {
+        // given
+        final Session mockSession = vendingMachineApi.openSession();
+        final String expectedMsg = "Before confirm a purchase one product should be selected first.";
+
+        // when + then
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> vendingMachineApi.confirmPurchase(mockSession));
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+
     // allowed cash items
     @Test
     void givenAllowedCashItems_whenRequestingAllowedCashItems_thenReturnCollectionOfAllowedCashItems()
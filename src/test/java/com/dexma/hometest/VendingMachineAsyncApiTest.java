@@ -0,0 +1,166 @@
+package com.dexma.hometest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.collection.IsMapContaining;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.ConcurrentStock;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineAsyncApiTest class - VendingMachineAsyncApi test class.
+ */
+class VendingMachineAsyncApiTest
+{
+    private static final int THREADS = 4;
+    private static final int SESSIONS = 1_000;
+
+    private ExecutorService executor;
+    private VendingMachineAsyncApi vendingMachineAsyncApi;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(ConcurrentStock.forProducts());
+        final CashManager cashManager = new CashManager(ConcurrentStock.forCash(), new ChangeProcessorFactory());
+        this.executor = Executors.newFixedThreadPool(THREADS);
+        this.vendingMachineAsyncApi = new VendingMachineAsyncApi(new VendingMachineApi(productManager, cashManager), executor);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException
+    {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private Map<Product, Integer> generateProductStockValues(final int quantity)
+    {
+        final Map<Product, Integer> values = new HashMap<>();
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            values.put(beverage, quantity);
+        }
+        return values;
+    }
+
+    // user and supplier operations
+    @Test
+    void givenPipelinedOperations_whenConfirmPurchaseAsync_thenReturnProductWithChange()
+    {
+        // given
+        vendingMachineAsyncApi.refillProductsAsync(generateProductStockValues(1));
+        vendingMachineAsyncApi.refillCashAsync(Collections.singletonMap(Coin.TEN_CENTS, 2));
+        vendingMachineAsyncApi.selectProductAsync(Beverage.WATER);
+        vendingMachineAsyncApi.insertCashAsync(Coin.ONE);
+
+        // when
+        final Pair<Product, Map<Cash, Integer>> result = vendingMachineAsyncApi.confirmPurchaseAsync().join();
+
+        // then
+        assertEquals(Beverage.WATER, result.getKey());
+        assertThat(result.getValue(), is(Collections.singletonMap(Coin.TEN_CENTS, 1)));
+        assertThat(vendingMachineAsyncApi.getProductStockStatusAsync().join(), IsMapContaining.hasEntry(Beverage.WATER, 0));
+        assertThat(vendingMachineAsyncApi.getCashStockStatusAsync().join(), IsMapContaining.hasEntry(Coin.ONE, 1));
+        assertThat(vendingMachineAsyncApi.getAvailableProductsAsync().join().size(), is(2));
+    }
+
+    // session operations
+    @Test
+    void givenPipelinedSessionOperations_whenConfirmPurchaseAsync_thenReturnProductWithoutChange()
+    {
+        // given
+        vendingMachineAsyncApi.refillProductsAsync(generateProductStockValues(1)).join();
+        final Session session = vendingMachineAsyncApi.openSessionAsync().join();
+        vendingMachineAsyncApi.selectProductAsync(session, Beverage.COKE);
+        vendingMachineAsyncApi.insertCashAsync(session, Coin.ONE);
+        vendingMachineAsyncApi.insertCashAsync(session, Coin.FIFTY_CENTS);
+
+        // when
+        final Pair<Product, Map<Cash, Integer>> result = vendingMachineAsyncApi.confirmPurchaseAsync(session).join();
+
+        // then
+        assertEquals(Beverage.COKE, result.getKey());
+        assertTrue(result.getValue().isEmpty());
+        assertEquals(0, session.getCurrentBalance().compareTo(BigDecimal.ZERO));
+    }
+
+    // a failed operation doesn't stop the next ones of the same session
+    @Test
+    void givenProductNotInStock_whenSelectProductAsync_thenCompleteExceptionallyAndRunNextOperations()
+    {
+        // given
+        final Session session = vendingMachineAsyncApi.openSessionAsync().join();
+        final String expectedMsg = "Product " + Beverage.COKE.getName() + " is not available in stock.";
+
+        // when
+        final CompletableFuture<BigDecimal> selection = vendingMachineAsyncApi.selectProductAsync(session, Beverage.COKE);
+        final CompletableFuture<BigDecimal> balance = vendingMachineAsyncApi.insertCashAsync(session, Coin.ONE);
+
+        // then
+        final ExecutionException thrown = assertThrows(ExecutionException.class, selection::get);
+        assertTrue(thrown.getCause() instanceof VendingMachineException);
+        assertEquals(expectedMsg, thrown.getCause().getMessage());
+        assertEquals(0, balance.join().compareTo(BigDecimal.ONE));
+    }
+
+    // many sessions pipelined over a small pool
+    @Test
+    void givenManyPipelinedSessions_whenConfirmPurchaseAsync_thenEverySessionKeepsItsOrder()
+    {
+        // given
+        vendingMachineAsyncApi.refillProductsAsync(generateProductStockValues(SESSIONS)).join();
+        final List<CompletableFuture<Pair<Product, Map<Cash, Integer>>>> purchases = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < SESSIONS; i++)
+        {
+            final Session session = vendingMachineAsyncApi.openSessionAsync().join();
+            vendingMachineAsyncApi.selectProductAsync(session, Beverage.WATER);
+            vendingMachineAsyncApi.insertCashAsync(session, Coin.FIFTY_CENTS);
+            vendingMachineAsyncApi.insertCashAsync(session, Coin.TWENTY_CENTS);
+            vendingMachineAsyncApi.insertCashAsync(session, Coin.TWENTY_CENTS);
+            purchases.add(vendingMachineAsyncApi.confirmPurchaseAsync(session));
+        }
+        CompletableFuture.allOf(purchases.toArray(new CompletableFuture<?>[0])).join();
+
+        // then
+        for (final CompletableFuture<Pair<Product, Map<Cash, Integer>>> purchase : purchases)
+        {
+            assertEquals(Beverage.WATER, purchase.join().getKey());
+        }
+        assertThat(vendingMachineAsyncApi.getProductStockStatusAsync().join(), IsMapContaining.hasEntry(Beverage.WATER, 0));
+        assertThat(vendingMachineAsyncApi.getCashStockStatusAsync().join(), IsMapContaining.hasEntry(Coin.FIFTY_CENTS, SESSIONS));
+        assertThat(vendingMachineAsyncApi.getCashStockStatusAsync().join(), IsMapContaining.hasEntry(Coin.TWENTY_CENTS, 2 * SESSIONS));
+    }
+}
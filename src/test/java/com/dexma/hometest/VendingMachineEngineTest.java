@@ -0,0 +1,392 @@
+package com.dexma.hometest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.collection.IsMapContaining;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.business.Session;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.error.JournalException;
+import com.dexma.hometest.error.VendingMachineException;
+import com.dexma.hometest.journal.Journal;
+import com.dexma.hometest.journal.JournalState;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineEngineTest class - VendingMachineEngine test class.
+ */
+class VendingMachineEngineTest
+{
+    private static final int THREADS = 8;
+    private static final int PURCHASES_PER_THREAD = 2_000;
+
+    private VendingMachineEngine engine;
+
+    @BeforeEach
+    void setUp()
+    {
+        // plain stock, only the writer thread touches it
+        final ProductManager productManager = new ProductManager(new Stock<>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<>(new HashMap<>()), new ChangeProcessorFactory());
+        this.engine = VendingMachineEngine.start(new VendingMachineApi(productManager, cashManager), 8);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        engine.close();
+    }
+
+    private Map<Product, Integer> generateProductStockValues(final int quantity)
+    {
+        final Map<Product, Integer> values = new HashMap<>();
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            values.put(beverage, quantity);
+        }
+        return values;
+    }
+
+    // user operations
+    @Test
+    void givenRefilledMachine_whenPurchaseProduct_thenReturnProductWithChange()
+    {
+        // given
+        engine.refillProducts(generateProductStockValues(1));
+        engine.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 2));
+
+        // when
+        engine.selectProduct(Beverage.WATER);
+        final BigDecimal balance = engine.insertCash(Coin.ONE);
+        final Pair<Product, Map<Cash, Integer>> result = engine.confirmPurchase();
+
+        // then
+        assertEquals(0, balance.compareTo(BigDecimal.ONE));
+        assertEquals(Beverage.WATER, result.getKey());
+        assertThat(result.getValue(), is(Collections.singletonMap(Coin.TEN_CENTS, 1)));
+        assertThat(engine.getProductStockStatus(), IsMapContaining.hasEntry(Beverage.WATER, 0));
+        assertThat(engine.getCashStockStatus(), IsMapContaining.hasEntry(Coin.ONE, 1));
+        assertThat(engine.getAvailableProducts().size(), is(2));
+    }
+
+    // exceptions thrown by the writer
+    @Test
+    void givenProductNotInStock_whenSelectProduct_thenThrowSpecificException()
+    {
+        // given
+        final String expectedMsg = "Product " + Beverage.COKE.getName() + " is not available in stock.";
+
+        // when + then
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> engine.selectProduct(Beverage.COKE));
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+
+    // errors thrown by a command
+    @Test
+    void givenCommandThrowingError_whenExecute_thenFailOnlyThatCommand()
+    {
+        // given
+        final Map<Product, Integer> brokenMap = new HashMap<Product, Integer>()
+        {
+            private static final long serialVersionUID = 4471935127853307281L;
+
+            @Override
+            public boolean isEmpty()
+            {
+                throw new Error("Broken map.");
+            }
+        };
+
+        // when
+        final Error thrown = assertThrows(Error.class, () -> engine.refillProducts(brokenMap));
+
+        // then
+        assertEquals("Broken map.", thrown.getMessage());
+        engine.refillProducts(generateProductStockValues(1));
+        assertThat(engine.getAvailableProducts().size(), is(3));
+    }
+
+    @Test
+    void givenSaleThatCannotBeCounted_whenConfirmPurchase_thenCompletePurchase()
+    {
+        // given
+        final Product juice = new Product()
+        {
+            @Override
+            public String getName()
+            {
+                return "Juice";
+            }
+
+            @Override
+            public BigDecimal getPrice()
+            {
+                return BigDecimal.ONE;
+            }
+        };
+        final ProductManager productManager = spy(new ProductManager(new Stock<>(new HashMap<>())));
+        doReturn(true).when(productManager).isProductItemAllowed(juice);
+        final VendingMachineApi vendingMachineApi = new VendingMachineApi(productManager,
+            new CashManager(new Stock<>(new HashMap<>()), new ChangeProcessorFactory()));
+        final VendingMachineEngine juiceEngine = VendingMachineEngine.start(vendingMachineApi, 8);
+        try
+        {
+            juiceEngine.refillProducts(Collections.singletonMap(juice, 1));
+            final Session session = juiceEngine.openSession();
+            juiceEngine.selectProduct(session, juice);
+            juiceEngine.insertCash(session, Coin.ONE);
+
+            // when
+            final Pair<Product, Map<Cash, Integer>> result = juiceEngine.confirmPurchase(session);
+
+            // then
+            assertEquals(juice, result.getKey());
+            assertThat(juiceEngine.getProductStockStatus(), IsMapContaining.hasEntry(juice, 0));
+            assertTrue(vendingMachineApi.getCompletionFailure() instanceof ClassCastException);
+        }
+        finally
+        {
+            juiceEngine.close();
+        }
+    }
+
+    // journal
+    @Test
+    void givenCommandsPublishedTogether_whenApplyBatch_thenAwaitDurableOnce() throws Exception
+    {
+        // given
+        final CountingJournal journal = new CountingJournal();
+        final VendingMachineEngine journaledEngine = startEngine(journal);
+        try
+        {
+            final CompletableFuture<Void> refill = journaledEngine.submit(VendingMachineEngine.CommandType.REFILL_PRODUCTS,
+                generateProductStockValues(1), null);
+            assertTrue(journal.awaiting.await(10, TimeUnit.SECONDS));
+
+            // when
+            final List<CompletableFuture<BigDecimal>> insertions = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+            {
+                insertions.add(journaledEngine.submit(VendingMachineEngine.CommandType.INSERT_CASH, Coin.ONE, null));
+            }
+            journal.released.countDown();
+            refill.join();
+            for (final CompletableFuture<BigDecimal> insertion : insertions)
+            {
+                insertion.join();
+            }
+
+            // then
+            assertEquals(6L, journal.records.get());
+            assertEquals(2, journal.awaits.get());
+            assertEquals(0, journaledEngine.insertCash(Coin.ONE).compareTo(BigDecimal.valueOf(6)));
+        }
+        finally
+        {
+            journaledEngine.close();
+        }
+    }
+
+    @Test
+    void givenFailingJournal_whenInsertCash_thenRollBackAndKeepRunning()
+    {
+        // given
+        final CountingJournal journal = new CountingJournal();
+        journal.released.countDown();
+        final VendingMachineEngine journaledEngine = startEngine(journal);
+        try
+        {
+            journaledEngine.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 2));
+            journal.failing = true;
+            final String expectedMsg = "The operation couldn't be recorded in the journal.";
+
+            // when
+            final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> journaledEngine.insertCash(Coin.ONE));
+
+            // then
+            assertEquals(expectedMsg, thrown.getMessage());
+            assertEquals(0, journaledEngine.getCashStockStatus().getOrDefault(Coin.ONE, 0).intValue());
+            assertThat(journaledEngine.getCashStockStatus(), IsMapContaining.hasEntry(Coin.TEN_CENTS, 2));
+            journal.failing = false;
+            assertEquals(0, journaledEngine.insertCash(Coin.ONE).compareTo(BigDecimal.ONE));
+        }
+        finally
+        {
+            journaledEngine.close();
+        }
+    }
+
+    private static VendingMachineEngine startEngine(final Journal journal)
+    {
+        final ProductManager productManager = new ProductManager(new Stock<>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<>(new HashMap<>()), new ChangeProcessorFactory());
+        return VendingMachineEngine.start(new VendingMachineApi(productManager, cashManager, journal), 8);
+    }
+
+    // closed engine
+    @Test
+    void givenClosedEngine_whenSubmitOperation_thenThrowSpecificException()
+    {
+        // given
+        engine.close();
+        final String expectedMsg = "The vending machine engine is closed.";
+
+        // when + then
+        assertTrue(engine.isClosed());
+        final VendingMachineException thrown = assertThrows(VendingMachineException.class, () -> engine.getAvailableProducts());
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+
+    // many callers over a ring smaller than the number of commands in flight
+    @Test
+    void givenConcurrentSessions_whenPurchaseProducts_thenEveryCommandIsAppliedOnce() throws Exception
+    {
+        // given
+        final int totalPurchases = THREADS * PURCHASES_PER_THREAD;
+        engine.refillProducts(generateProductStockValues(totalPurchases));
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                start.await();
+                int purchases = 0;
+                for (int purchase = 0; purchase < PURCHASES_PER_THREAD; purchase++)
+                {
+                    final Session session = engine.openSession();
+                    engine.selectProduct(session, Beverage.WATER);
+                    engine.insertCash(session, Coin.FIFTY_CENTS);
+                    engine.insertCash(session, Coin.TWENTY_CENTS);
+                    engine.insertCash(session, Coin.TWENTY_CENTS);
+                    purchases += engine.confirmPurchase(session).getValue().isEmpty() ? 1 : 0;
+                }
+                return purchases;
+            }));
+        }
+        start.countDown();
+        int purchases = 0;
+        for (final Future<Integer> future : futures)
+        {
+            purchases += future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        assertEquals(totalPurchases, purchases);
+        assertThat(engine.getProductStockStatus(), IsMapContaining.hasEntry(Beverage.WATER, 0));
+        assertThat(engine.getCashStockStatus(), IsMapContaining.hasEntry(Coin.FIFTY_CENTS, totalPurchases));
+        assertThat(engine.getCashStockStatus(), IsMapContaining.hasEntry(Coin.TWENTY_CENTS, 2 * totalPurchases));
+    }
+
+    /**
+     * CountingJournal class - A journal keeping nothing, which counts its records and waits, and holds the first wait
+     * until released.
+     */
+    private static final class CountingJournal implements Journal
+    {
+        private final AtomicLong records = new AtomicLong();
+        private final AtomicInteger awaits = new AtomicInteger();
+        private final CountDownLatch awaiting = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean failing;
+
+        @Override
+        public long recordInsertCash(final long sessionId, final Cash cash)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public long recordSelectProduct(final long sessionId, final Product product)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public long recordConfirmPurchase(final long sessionId, final Product product, final Map<Cash, Integer> change)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public long recordRefund(final long sessionId, final Map<Cash, Integer> refund)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public long recordRefillProducts(final Map<Product, Integer> productMap)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public long recordRefillCash(final Map<Cash, Integer> cashMap)
+        {
+            return records.incrementAndGet();
+        }
+
+        @Override
+        public void awaitDurable(final long sequence)
+        {
+            awaits.incrementAndGet();
+            awaiting.countDown();
+            try
+            {
+                released.await();
+            }
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (failing)
+            {
+                throw new JournalException("The journal is failing.");
+            }
+        }
+
+        @Override
+        public JournalState getRecoveredState()
+        {
+            return new JournalState();
+        }
+    }
+}
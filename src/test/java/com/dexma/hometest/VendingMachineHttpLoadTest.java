@@ -0,0 +1,141 @@
+package com.dexma.hometest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+
+
+/**
+ * VendingMachineHttpLoadTest class - Local load test of the VendingMachineHttpServer, reporting the requests per second and
+ * the 99th percentile of the latency seen by concurrent clients while one customer buys products, and checking the latter.
+ * Tagged as a benchmark, so it only runs with the benchmark task.
+ */
+@Tag("benchmark")
+class VendingMachineHttpLoadTest
+{
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 500;
+    // the first client is a customer buying a coke with exact cash, the machine serves one customer at a time
+    private static final String[] PURCHASE_PATHS = {"/user/select/COKE", "/user/insert/ONE", "/user/insert/FIFTY_CENTS", "/user/confirm"};
+    private static final int PURCHASES = REQUESTS_PER_CLIENT / PURCHASE_PATHS.length;
+    // the other clients read the machine and refill it now and then
+    private static final String[] PATHS = {"/user/products", "/user/cash-items", "/supplier/products", "/supplier/cash/snapshot"};
+    private static final int REFILL_EVERY = 50;
+    private static final int REFILLS = (CLIENTS - 1) * REQUESTS_PER_CLIENT / REFILL_EVERY;
+    private static final long MAX_P99_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private VendingMachineHttpServer server;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(new Stock<Product>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<Cash>(new HashMap<>()), new ChangeProcessorFactory());
+        this.server = VendingMachineHttpServer.start(new VendingMachineApi(productManager, cashManager),
+            new InetSocketAddress("127.0.0.1", 0), 4, 64);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        server.close();
+    }
+
+    private String sendRequest(final int client, final int request) throws IOException
+    {
+        if (client == 0)
+        {
+            return VendingMachineHttpServerTest.send(server.getAddress(), "POST", PURCHASE_PATHS[request % PURCHASE_PATHS.length], null);
+        }
+        if (request % REFILL_EVERY == 0)
+        {
+            return VendingMachineHttpServerTest.send(server.getAddress(), "POST", "/supplier/products", "{\"COKE\": 1}");
+        }
+        return VendingMachineHttpServerTest.send(server.getAddress(), "GET", PATHS[request % PATHS.length], null);
+    }
+
+    @Test
+    void givenConcurrentClients_whenSendRequests_thenAnswerAllWithinP99Bound(final TestReporter testReporter) throws Exception
+    {
+        // given
+        assertEquals("204 ", VendingMachineHttpServerTest.send(server.getAddress(), "POST", "/supplier/products",
+            "{\"COKE\": " + PURCHASES + "}"));
+        final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<long[]>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < CLIENTS; i++)
+        {
+            final int client = i;
+            futures.add(clients.submit(() ->
+            {
+                start.await();
+                final long[] latencies = new long[REQUESTS_PER_CLIENT];
+                for (int request = 0; request < REQUESTS_PER_CLIENT; request++)
+                {
+                    final long startNanos = System.nanoTime();
+                    final String response = sendRequest(client, request);
+                    latencies[request] = System.nanoTime() - startNanos;
+                    assertTrue(response.startsWith("20"), response);
+                }
+                return latencies;
+            }));
+        }
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        final long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+        int offset = 0;
+        for (final Future<long[]> future : futures)
+        {
+            final long[] clientLatencies = future.get();
+            System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+            offset += clientLatencies.length;
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        Arrays.sort(latencies);
+        final long p99Nanos = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+        final Map<String, String> report = new LinkedHashMap<>();
+        report.put("requests", String.valueOf(latencies.length));
+        final double requestsPerSecond = latencies.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        report.put("requestsPerSecond", String.format(Locale.ROOT, "%.0f", requestsPerSecond));
+        report.put("p99Millis", String.format(Locale.ROOT, "%.3f", p99Nanos / 1_000_000.0));
+        testReporter.publishEntry(report);
+        assertTrue(p99Nanos < MAX_P99_NANOS, "p99 of " + TimeUnit.NANOSECONDS.toMillis(p99Nanos) + " ms");
+        assertEquals("200 {\"COKE\":" + REFILLS + "}",
+            VendingMachineHttpServerTest.send(server.getAddress(), "GET", "/supplier/products", null));
+        final String cash = VendingMachineHttpServerTest.send(server.getAddress(), "GET", "/supplier/cash", null);
+        assertTrue(cash.contains("\"ONE\":" + PURCHASES) && cash.contains("\"FIFTY_CENTS\":" + PURCHASES), cash);
+    }
+}
@@ -0,0 +1,240 @@
+package com.dexma.hometest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+
+
+/**
+ * VendingMachineHttpServerTest class - VendingMachineHttpServer test class.
+ */
+class VendingMachineHttpServerTest
+{
+    private VendingMachineHttpServer server;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(new Stock<Product>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<Cash>(new HashMap<>()), new ChangeProcessorFactory());
+        this.server = VendingMachineHttpServer.start(new VendingMachineApi(productManager, cashManager),
+            new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        server.close();
+    }
+
+    /**
+     * Sends a request and returns its status followed by its body.
+     */
+    static String send(final InetSocketAddress address, final String method, final String path, final String body)
+        throws IOException
+    {
+        return send(address, method, path, body, null);
+    }
+
+    /**
+     * Sends a request with an Idempotency-Key header, if not null, and returns its status followed by its body.
+     */
+    static String send(final InetSocketAddress address, final String method, final String path, final String body,
+                       final String idempotencyKey) throws IOException
+    {
+        final HttpURLConnection connection =
+            (HttpURLConnection) new URL("http://127.0.0.1:" + address.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (idempotencyKey != null)
+        {
+            connection.setRequestProperty("Idempotency-Key", idempotencyKey);
+        }
+        if (body != null)
+        {
+            connection.setDoOutput(true);
+            try (OutputStream output = connection.getOutputStream())
+            {
+                output.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        final int status = connection.getResponseCode();
+        final InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        if (input != null)
+        {
+            try (InputStream stream = input)
+            {
+                final byte[] buffer = new byte[256];
+                int read;
+                while ((read = stream.read(buffer)) != -1)
+                {
+                    response.write(buffer, 0, read);
+                }
+            }
+        }
+        return status + " " + new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String send(final String method, final String path, final String body) throws IOException
+    {
+        return send(server.getAddress(), method, path, body);
+    }
+
+    private String send(final String method, final String path, final String body, final String idempotencyKey) throws IOException
+    {
+        return send(server.getAddress(), method, path, body, idempotencyKey);
+    }
+
+    @Test
+    void givenRefilledMachine_whenPurchaseOverHttp_thenReturnProductAndChange() throws IOException
+    {
+        // given
+        assertEquals("204 ", send("POST", "/supplier/products", "{\"COKE\": 2, \"WATER\": 1}"));
+        assertEquals("204 ", send("POST", "/supplier/cash", "{\"TEN_CENTS\": 5}"));
+
+        // when
+        assertEquals("200 {\"price\":1.5}", send("POST", "/user/select/COKE", null));
+        assertEquals("200 {\"balance\":1}", send("POST", "/user/insert/ONE", null));
+        assertEquals("200 {\"balance\":1.5}", send("POST", "/user/insert/FIFTY_CENTS", null));
+        assertEquals("200 {\"balance\":1.7}", send("POST", "/user/insert/TWENTY_CENTS", null));
+        final String purchase = send("POST", "/user/confirm", null);
+
+        // then
+        assertEquals("200 {\"product\":\"COKE\",\"change\":{\"TWENTY_CENTS\":1}}", purchase);
+        assertEquals("200 {\"refund\":null}", send("POST", "/user/refund", null));
+        final Map<Cash, Integer> expectedCash = new HashMap<>();
+        expectedCash.put(Coin.TEN_CENTS, 5);
+        expectedCash.put(Coin.FIFTY_CENTS, 1);
+        expectedCash.put(Coin.ONE, 1);
+        final String stock = send("GET", "/supplier/cash", null);
+        for (final Map.Entry<Cash, Integer> entry : expectedCash.entrySet())
+        {
+            assertTrue(stock.contains("\"" + ((Coin) entry.getKey()).name() + "\":" + entry.getValue()), stock);
+        }
+        assertTrue(send("GET", "/supplier/products/snapshot", null).contains("\"COKE\":1"));
+    }
+
+    @Test
+    void givenIdempotencyKey_whenRetryInsertCash_thenCountCoinOnce() throws IOException
+    {
+        // given
+        send("POST", "/supplier/products", "{\"WATER\": 1}");
+        send("POST", "/user/select/WATER", null);
+
+        // when
+        assertEquals("200 {\"balance\":1}", send("POST", "/user/insert/ONE", null, "coin-1"));
+        final String retry = send("POST", "/user/insert/ONE", null, "coin-1");
+
+        // then
+        assertEquals("200 {\"balance\":1}", retry);
+        assertEquals("200 {\"ONE\":1}", send("GET", "/supplier/cash", null));
+    }
+
+    @Test
+    void givenUserOperations_whenListItems_thenReturnNames() throws IOException
+    {
+        // given
+        send("POST", "/supplier/products", "{\"SPRITE\": 1}");
+
+        // when + then
+        assertEquals("200 {\"products\":[\"SPRITE\"]}", send("GET", "/user/products", null));
+        assertEquals("200 {\"cashItems\":[\"FIVE_CENTS\",\"TEN_CENTS\",\"TWENTY_CENTS\",\"FIFTY_CENTS\",\"ONE\",\"TWO\"]}",
+            send("GET", "/user/cash-items", null));
+    }
+
+    @Test
+    void givenFailingOperation_whenSendOverHttp_thenReturnConflictWithMessage() throws IOException
+    {
+        // given
+        final String expectedMsg = "Before confirm a purchase one product should be selected first.";
+
+        // when + then
+        assertEquals("409 {\"error\":\"" + expectedMsg + "\"}", send("POST", "/user/confirm", null));
+    }
+
+    @Test
+    void givenMalformedRequests_whenSendOverHttp_thenReturnClientErrors() throws IOException
+    {
+        // when + then
+        assertTrue(send("POST", "/user/select/TEA", null).startsWith("400 "));
+        assertTrue(send("POST", "/supplier/cash", "{\"ONE\": }").startsWith("400 "));
+        assertTrue(send("GET", "/user/confirm", null).startsWith("405 "));
+        assertTrue(send("GET", "/user/nothing", null).startsWith("404 "));
+    }
+
+    @Test
+    void givenTooLargeBody_whenRefillOverHttp_thenReturnPayloadTooLarge() throws IOException
+    {
+        // given
+        final StringBuilder body = new StringBuilder("{\"ONE\": 1");
+        while (body.length() <= VendingMachineHttpServer.MAX_BODY_SIZE)
+        {
+            body.append("          ");
+        }
+        body.append('}');
+
+        // when + then
+        assertTrue(send("POST", "/supplier/cash", body.toString()).startsWith("413 "));
+        assertEquals("200 {}", send("GET", "/supplier/cash", null));
+    }
+
+    @Test
+    void givenOperationThrowingUnexpectedException_whenSendOverHttp_thenReturnInternalServerError() throws IOException
+    {
+        // given
+        final VendingMachineApi vendingMachineApi = mock(VendingMachineApi.class);
+        when(vendingMachineApi.getAvailableProducts()).thenThrow(new IllegalStateException("Broken stock."));
+        try (VendingMachineHttpServer failingServer = VendingMachineHttpServer.start(vendingMachineApi, new InetSocketAddress("127.0.0.1", 0)))
+        {
+            // when + then
+            assertEquals("500 {\"error\":\"Internal error.\"}", send(failingServer.getAddress(), "GET", "/user/products", null));
+        }
+    }
+
+    @Test
+    void givenClosedServer_whenSendOverHttp_thenFailToConnect()
+    {
+        // given
+        final InetSocketAddress address = server.getAddress();
+        server.close();
+
+        // when + then
+        assertThrows(IOException.class, () -> send(address, "GET", "/user/products", null));
+    }
+
+    @Test
+    void givenQuantitiesObject_whenReadQuantities_thenKeepTheirOrder()
+    {
+        // when
+        final Map<String, Integer> quantities = JsonCodec.readQuantities(" { \"ONE\" : 3 , \"TWO\":-1 } ");
+
+        // then
+        assertEquals("{ONE=3, TWO=-1}", quantities.toString());
+        assertThrows(IllegalArgumentException.class, () -> JsonCodec.readQuantities("{\"ONE\": 3} trailing"));
+    }
+}
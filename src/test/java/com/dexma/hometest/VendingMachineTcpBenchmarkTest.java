@@ -0,0 +1,106 @@
+package com.dexma.hometest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+
+
+/**
+ * VendingMachineTcpBenchmarkTest class - Local benchmark of the throughput of one VendingMachineTcpClient connection,
+ * checking that pipelining many requests beats sending one at a time. Tagged as a benchmark, so it only runs with the
+ * benchmark task.
+ */
+@Tag("benchmark")
+class VendingMachineTcpBenchmarkTest
+{
+    private static final int WARMUP_REQUESTS = 5_000;
+    private static final int REQUESTS = 20_000;
+    private static final int MAX_IN_FLIGHT = 256;
+
+    private VendingMachineTcpServer server;
+    private VendingMachineTcpClient client;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(new Stock<Product>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<Cash>(new HashMap<>()), new ChangeProcessorFactory());
+        this.server = VendingMachineTcpServer.start(new VendingMachineApi(productManager, cashManager),
+            new InetSocketAddress("127.0.0.1", 0));
+        this.client = VendingMachineTcpClient.connect(server.getAddress());
+        client.refillProducts(Collections.singletonMap(Beverage.COKE, 1)).join();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        client.close();
+        server.close();
+    }
+
+    private long sendOneAtATime(final int requests)
+    {
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < requests; i++)
+        {
+            assertEquals(1, client.getAvailableProducts().join().size());
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    private long sendPipelined(final int requests)
+    {
+        final Queue<CompletableFuture<List<Product>>> inFlight = new ArrayDeque<>();
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < requests; i++)
+        {
+            if (inFlight.size() == MAX_IN_FLIGHT)
+            {
+                assertEquals(1, inFlight.poll().join().size());
+            }
+            inFlight.add(client.getAvailableProducts());
+        }
+        while (!inFlight.isEmpty())
+        {
+            assertEquals(1, inFlight.poll().join().size());
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    @Test
+    void givenOneConnection_whenPipelineRequests_thenTakeLessTimeThanOneAtATime()
+    {
+        // given
+        sendOneAtATime(WARMUP_REQUESTS);
+        sendPipelined(WARMUP_REQUESTS);
+
+        // when
+        final long oneAtATimeNanos = sendOneAtATime(REQUESTS);
+        final long pipelinedNanos = sendPipelined(REQUESTS);
+
+        // then
+        assertTrue(pipelinedNanos < oneAtATimeNanos, "pipelined in " + TimeUnit.NANOSECONDS.toMillis(pipelinedNanos)
+            + " ms, one at a time in " + TimeUnit.NANOSECONDS.toMillis(oneAtATimeNanos) + " ms");
+    }
+}
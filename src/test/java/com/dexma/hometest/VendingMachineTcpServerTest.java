@@ -0,0 +1,241 @@
+package com.dexma.hometest;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ProductManager;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+import com.dexma.hometest.error.VendingMachineException;
+
+import javafx.util.Pair;
+
+
+/**
+ * VendingMachineTcpServerTest class - VendingMachineTcpServer and VendingMachineTcpClient test class.
+ */
+class VendingMachineTcpServerTest
+{
+    private static final int CONNECTIONS = 500;
+
+    private VendingMachineTcpServer server;
+
+    @BeforeEach
+    void setUp()
+    {
+        final ProductManager productManager = new ProductManager(new Stock<Product>(new HashMap<>()));
+        final CashManager cashManager = new CashManager(new Stock<Cash>(new HashMap<>()), new ChangeProcessorFactory());
+        this.server = VendingMachineTcpServer.start(new VendingMachineApi(productManager, cashManager),
+            new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        server.close();
+    }
+
+    @Test
+    void givenPipelinedOperations_whenPurchase_thenCompleteEachOneWithItsResult() throws Exception
+    {
+        // given
+        try (VendingMachineTcpClient client = VendingMachineTcpClient.connect(server.getAddress()))
+        {
+            // when: nothing waits for its response before sending the next one
+            final CompletableFuture<Void> refillProducts = client.refillProducts(Collections.singletonMap(Beverage.WATER, 2));
+            final CompletableFuture<Void> refillCash = client.refillCash(Collections.singletonMap(Coin.TEN_CENTS, 3));
+            final CompletableFuture<BigDecimal> price = client.selectProduct(Beverage.WATER);
+            final CompletableFuture<BigDecimal> balance = client.insertCash(Coin.ONE);
+            final CompletableFuture<Pair<Product, Map<Cash, Integer>>> purchase = client.confirmPurchase();
+            final CompletableFuture<Map<Cash, Integer>> refund = client.refund();
+            final CompletableFuture<Map<Product, Integer>> productStock = client.getProductStockStatus();
+            final CompletableFuture<Map<Cash, Integer>> cashStock = client.getCashStockStatus();
+
+            // then
+            assertNull(refillProducts.get());
+            assertNull(refillCash.get());
+            assertEquals(0, price.get().compareTo(new BigDecimal("0.90")));
+            assertEquals(0, balance.get().compareTo(BigDecimal.ONE));
+            assertEquals(Beverage.WATER, purchase.get().getKey());
+            assertThat(purchase.get().getValue(), is(Collections.singletonMap(Coin.TEN_CENTS, 1)));
+            assertNull(refund.get());
+            assertThat(productStock.get().get(Beverage.WATER), is(1));
+            assertThat(cashStock.get().get(Coin.TEN_CENTS), is(2));
+            assertThat(cashStock.get().get(Coin.ONE), is(1));
+        }
+    }
+
+    @Test
+    void givenUserOperations_whenListItems_thenReturnThem() throws Exception
+    {
+        // given
+        try (VendingMachineTcpClient client = VendingMachineTcpClient.connect(server.getAddress()))
+        {
+            client.refillProducts(Collections.singletonMap(Beverage.SPRITE, 1));
+
+            // when + then
+            assertEquals(Collections.singletonList(Beverage.SPRITE), client.getAvailableProducts().get());
+            assertEquals(Arrays.asList((Cash[]) Coin.getValidCoins()), client.getAllowedCashItems().get());
+        }
+    }
+
+    @Test
+    void givenFailingOperation_whenSend_thenCompleteExceptionallyWithMessage()
+    {
+        // given
+        final String expectedMsg = "Before confirm a purchase one product should be selected first.";
+
+        // when
+        try (VendingMachineTcpClient client = VendingMachineTcpClient.connect(server.getAddress()))
+        {
+            final ExecutionException thrown = assertThrows(ExecutionException.class, () -> client.confirmPurchase().get());
+
+            // then
+            assertTrue(thrown.getCause() instanceof VendingMachineException);
+            assertEquals(expectedMsg, thrown.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void givenOperationThrowingUnexpectedException_whenSend_thenAnswerFailedAndKeepConnection() throws Exception
+    {
+        // given
+        final VendingMachineApi vendingMachineApi = mock(VendingMachineApi.class);
+        when(vendingMachineApi.getAvailableProducts()).thenThrow(new IllegalStateException("Broken stock."));
+        when(vendingMachineApi.getAllowedCashItems()).thenReturn(Collections.singletonList(Coin.ONE));
+        final String expectedMsg = "Operation " + BinaryProtocol.GET_AVAILABLE_PRODUCTS + " failed unexpectedly.";
+
+        try (VendingMachineTcpServer failingServer = VendingMachineTcpServer.start(vendingMachineApi, new InetSocketAddress("127.0.0.1", 0));
+             VendingMachineTcpClient client = VendingMachineTcpClient.connect(failingServer.getAddress()))
+        {
+            // when
+            final ExecutionException thrown = assertThrows(ExecutionException.class, () -> client.getAvailableProducts().get());
+
+            // then
+            assertTrue(thrown.getCause() instanceof VendingMachineException);
+            assertEquals(expectedMsg, thrown.getCause().getMessage());
+            assertEquals(Collections.singletonList(Coin.ONE), client.getAllowedCashItems().get());
+        }
+    }
+
+    // many connections on the selector thread
+    @Test
+    void givenManyConnections_whenSendOperations_thenServeAllOfThem() throws Exception
+    {
+        // given
+        final List<VendingMachineTcpClient> clients = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < CONNECTIONS; i++)
+            {
+                clients.add(VendingMachineTcpClient.connect(server.getAddress()));
+            }
+
+            // when
+            final List<CompletableFuture<Void>> refills = new ArrayList<>();
+            for (final VendingMachineTcpClient client : clients)
+            {
+                refills.add(client.refillProducts(Collections.singletonMap(Beverage.COKE, 1)));
+            }
+            CompletableFuture.allOf(refills.toArray(new CompletableFuture<?>[0])).get();
+
+            // then
+            assertThat(clients.get(0).getProductStockStatus().get().get(Beverage.COKE), is(CONNECTIONS));
+        }
+        finally
+        {
+            for (final VendingMachineTcpClient client : clients)
+            {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    void givenInvalidFrame_whenSend_thenCloseConnection() throws IOException
+    {
+        // given
+        try (SocketChannel channel = SocketChannel.open(server.getAddress()))
+        {
+            // when
+            final ByteBuffer frame = ByteBuffer.allocate(8).putInt(1_000_000).putInt(1);
+            frame.flip();
+            channel.write(frame);
+
+            // then
+            assertEquals(-1, channel.read(ByteBuffer.allocate(16)));
+        }
+    }
+
+    @Test
+    void givenUnknownOperation_whenSend_thenAnswerBadRequest() throws IOException
+    {
+        // given
+        try (SocketChannel channel = SocketChannel.open(server.getAddress()))
+        {
+            // when
+            final ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.HEADER_SIZE);
+            final int start = BinaryProtocol.beginFrame(frame, 7, (byte) 99);
+            BinaryProtocol.endFrame(frame, start);
+            frame.flip();
+            channel.write(frame);
+
+            // then
+            final ByteBuffer response = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_SIZE);
+            while (response.position() < Integer.BYTES || response.position() < Integer.BYTES + response.getInt(0))
+            {
+                channel.read(response);
+            }
+            response.flip();
+            response.getInt();
+            assertEquals(7, response.getInt());
+            assertEquals(BinaryProtocol.BAD_REQUEST, response.get());
+            assertEquals("Malformed request for operation 99.", BinaryProtocol.getMessage(response));
+        }
+    }
+
+    @Test
+    void givenClosedServer_whenSend_thenCompleteExceptionally() throws Exception
+    {
+        // given
+        try (VendingMachineTcpClient client = VendingMachineTcpClient.connect(server.getAddress()))
+        {
+            client.getAvailableProducts().get();
+
+            // when
+            server.close();
+
+            // then
+            assertThrows(ExecutionException.class, () -> client.getAvailableProducts().get());
+        }
+    }
+}
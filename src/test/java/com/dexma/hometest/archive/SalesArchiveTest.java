@@ -0,0 +1,233 @@
+package com.dexma.hometest.archive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.SalesArchiveException;
+
+
+/**
+ * SalesArchiveTest class - SalesArchive and SalesArchiveReader test class.
+ */
+class SalesArchiveTest
+{
+    private static final long SEGMENT_MILLIS = 1_000L;
+    private static final int BLOCK_ROWS = 4;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        this.directory = Files.createTempDirectory("sales");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private List<Long> readColumn(final SalesColumn column, final long fromMillis, final long toMillis)
+    {
+        final List<Long> values = new ArrayList<>();
+        new SalesArchiveReader(directory).readColumn(column, fromMillis, toMillis, values::add);
+        return values;
+    }
+
+    @Test
+    void givenSales_whenReadColumns_thenReturnEveryValueOfEachRow()
+    {
+        // given
+        final Map<Cash, Integer> inserted = new HashMap<>();
+        inserted.put(Coin.ONE, 1);
+        inserted.put(Coin.TWENTY_CENTS, 2);
+        final Map<Cash, Integer> change = Collections.singletonMap(Coin.FIVE_CENTS, 1);
+
+        // when
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(100L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+            archive.recordSale(250L, Beverage.COKE, inserted, change);
+        }
+
+        // then
+        assertEquals(Arrays.asList(100L, 250L), readColumn(SalesColumn.TIMESTAMP, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Arrays.asList((long) Beverage.WATER.ordinal(), (long) Beverage.COKE.ordinal()),
+            readColumn(SalesColumn.PRODUCT, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(90L, 150L), readColumn(SalesColumn.PRICE_CENTS, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(0L, 0L, 0L, 0L, 1L, 0L, 0L, 0L, 2L, 0L, 1L, 0L),
+            readColumn(SalesColumn.INSERTED_COINS, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(0L, 0L, 0L, 0L, 0L, 0L, 1L, 0L, 0L, 0L, 0L, 0L),
+            readColumn(SalesColumn.CHANGE_COINS, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void givenSalesOverSeveralSegments_whenReadTimeSpan_thenOnlyReadOverlappingSegments()
+    {
+        // given
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            // 10 blocks in 3 segments
+            for (long timestamp = 0; timestamp < 3 * SEGMENT_MILLIS; timestamp += 100)
+            {
+                archive.recordSale(timestamp, Beverage.SPRITE, Collections.singletonMap(Coin.TWO, 1), Collections.emptyMap());
+            }
+        }
+
+        // when
+        final List<Long> timestamps = readColumn(SalesColumn.TIMESTAMP, 1_500L, 2_000L);
+
+        // then
+        assertEquals(Arrays.asList(0L, 1_000L, 2_000L), new SalesArchiveReader(directory).getSegmentStarts());
+        assertEquals(10, timestamps.size());
+        assertEquals(1_000L, (long) timestamps.get(0));
+        assertEquals(1_900L, (long) timestamps.get(9));
+        assertEquals(30, readColumn(SalesColumn.PRODUCT, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void givenReopenedArchive_whenRecordSales_thenAppendToExistingSegment()
+    {
+        // given
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(10L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+        }
+
+        // when
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(20L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+        }
+
+        // then
+        assertEquals(Collections.singletonList(0L), new SalesArchiveReader(directory).getSegmentStarts());
+        assertEquals(Arrays.asList(10L, 20L), readColumn(SalesColumn.TIMESTAMP, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    // commits
+    @Test
+    void givenFailedFlush_whenFlushAgain_thenWriteTheKeptRows() throws IOException
+    {
+        // given
+        final Path segment = directory.resolve(SalesArchive.segmentName(0L, SEGMENT_MILLIS));
+        Files.createFile(segment);
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(10L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+            archive.recordSale(20L, Beverage.COKE, Collections.singletonMap(Coin.TWO, 1), Collections.emptyMap());
+            assertThrows(SalesArchiveException.class, archive::flush);
+
+            // when
+            Files.delete(segment);
+            archive.flush();
+        }
+
+        // then
+        assertEquals(Arrays.asList(10L, 20L), readColumn(SalesColumn.TIMESTAMP, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(Arrays.asList((long) Beverage.WATER.ordinal(), (long) Beverage.COKE.ordinal()),
+            readColumn(SalesColumn.PRODUCT, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void givenBytesAfterLastCommit_whenReadAndFlush_thenIgnoreAndOverwriteThem() throws IOException
+    {
+        // given
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(10L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+        }
+        // a block written by a flush that failed before its commit
+        final Path timestamps = directory.resolve(SalesArchive.segmentName(0L, SEGMENT_MILLIS)).resolve(SalesColumn.TIMESTAMP.getFileName());
+        Files.write(timestamps, new byte[] {1, 1, 2}, StandardOpenOption.APPEND);
+
+        // when
+        final List<Long> committed = readColumn(SalesColumn.TIMESTAMP, Long.MIN_VALUE, Long.MAX_VALUE);
+        try (SalesArchive archive = SalesArchive.open(directory, SEGMENT_MILLIS, BLOCK_ROWS))
+        {
+            archive.recordSale(20L, Beverage.WATER, Collections.singletonMap(Coin.ONE, 1), Collections.emptyMap());
+        }
+
+        // then
+        assertEquals(Collections.singletonList(10L), committed);
+        assertEquals(Arrays.asList(10L, 20L), readColumn(SalesColumn.TIMESTAMP, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    // run-length encoding
+    @Test
+    void givenRepeatedValues_whenFlush_thenColumnTakesFewBytes() throws IOException
+    {
+        // given
+        final int sales = 1_000;
+
+        // when
+        try (SalesArchive archive = SalesArchive.open(directory, SalesArchive.DEFAULT_SEGMENT_MILLIS, SalesArchive.DEFAULT_BLOCK_ROWS))
+        {
+            for (int i = 0; i < sales; i++)
+            {
+                archive.recordSale(i, Beverage.COKE, Collections.singletonMap(Coin.FIFTY_CENTS, 3), Collections.singletonMap(Coin.FIVE_CENTS, 3));
+            }
+        }
+
+        // then
+        final Path segment = directory.resolve(SalesArchive.segmentName(0L, SalesArchive.DEFAULT_SEGMENT_MILLIS));
+        assertTrue(Files.size(segment.resolve(SalesColumn.PRODUCT.getFileName())) < 10);
+        assertTrue(Files.size(segment.resolve(SalesColumn.TIMESTAMP.getFileName())) < sales + 10);
+        assertEquals(sales * Coin.getValidCoins().length, readColumn(SalesColumn.INSERTED_COINS, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void givenClosedArchive_whenRecordSale_thenThrowException()
+    {
+        // given
+        final SalesArchive archive = SalesArchive.open(directory);
+        archive.close();
+
+        // when + then
+        assertThrows(SalesArchiveException.class,
+            () -> archive.recordSale(1L, Beverage.WATER, Collections.emptyMap(), Collections.emptyMap()));
+    }
+
+    @Test
+    void givenProductThatIsNotBeverage_whenRecordSale_thenThrowException()
+    {
+        // given
+        final Product product = mock(Product.class);
+        when(product.getPrice()).thenReturn(BigDecimal.ONE);
+
+        // when + then
+        try (SalesArchive archive = SalesArchive.open(directory))
+        {
+            assertThrows(SalesArchiveException.class, () -> archive.recordSale(1L, product, Collections.emptyMap(), Collections.emptyMap()));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.events.VendingMachineEvents;
+
+
+/**
+ * AdaptiveChangeProcessorTest class - AdaptiveChangeProcessor test class.
+ */
+class AdaptiveChangeProcessorTest
+{
+    private static final int MOCK_PLENTIFUL_QUANTITY = 3;
+    private static final long MOCK_MAX_OPTIMAL_AMOUNT = 1_000L;
+
+    private AdaptiveChangeProcessor adaptiveChangeProcessor;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.adaptiveChangeProcessor = new AdaptiveChangeProcessor(MOCK_PLENTIFUL_QUANTITY, MOCK_MAX_OPTIMAL_AMOUNT);
+    }
+
+    private Map<Cash, Integer> generateCashStockValues(final int fiveCentsQnt,
+                                                       final int tenCentsQnt,
+                                                       final int twentyCentsQnt,
+                                                       final int fiftyCentsQnt,
+                                                       final int oneQnt,
+                                                       final int twoQnt)
+    {
+        final Map<Cash, Integer> values = new HashMap<>();
+        values.put(Coin.FIVE_CENTS, fiveCentsQnt);
+        values.put(Coin.TEN_CENTS, tenCentsQnt);
+        values.put(Coin.TWENTY_CENTS, twentyCentsQnt);
+        values.put(Coin.FIFTY_CENTS, fiftyCentsQnt);
+        values.put(Coin.ONE, oneQnt);
+        values.put(Coin.TWO, twoQnt);
+
+        return values;
+    }
+
+    // test - canonical cash items and plentiful stock -- greedy strategy
+    @Test
+    void givenPlentifulCashStock_whenProcessChange_thenExpectGreedyStrategy()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(3, 3, 3, 3, 3, 3);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+        expectedChange.put(Coin.TEN_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = adaptiveChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.6));
+
+        // then
+        assertEquals(expectedChange, change);
+        assertEquals(ChangeStrategy.CENTS_GREEDY, adaptiveChangeProcessor.selectStrategy(mockCashStockMap, 60));
+        assertEquals(1, adaptiveChangeProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getCalls());
+        assertEquals(0, adaptiveChangeProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+    }
+
+    // test - scarce stock -- optimal strategy
+    @Test
+    void givenScarceCashStock_whenProcessChange_thenExpectOptimalStrategy()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 3, 1, 0, 0);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 3);
+
+        // when
+        final Map<Cash, Integer> change = adaptiveChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.6));
+
+        // then
+        assertEquals(expectedChange, change);
+        assertEquals(ChangeStrategy.OPTIMAL, adaptiveChangeProcessor.selectStrategy(mockCashStockMap, 60));
+        assertEquals(0, adaptiveChangeProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getCalls());
+        assertEquals(1, adaptiveChangeProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+    }
+
+    // test - greedy strategy doesn't find change -- fallback to optimal strategy
+    @Test
+    void givenGreedyStrategyWithoutChange_whenProcessChange_thenExpectFallbackToOptimalStrategy()
+    {
+        // given
+        final AdaptiveChangeProcessor alwaysGreedyProcessor = new AdaptiveChangeProcessor(0, MOCK_MAX_OPTIMAL_AMOUNT);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 3, 1, 0, 0);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 3);
+
+        // when
+        final Map<Cash, Integer> change = alwaysGreedyProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.6));
+
+        // then
+        assertEquals(expectedChange, change);
+        assertEquals(1, alwaysGreedyProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getCalls());
+        assertEquals(1, alwaysGreedyProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getFallbacks());
+        assertEquals(1, alwaysGreedyProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+    }
+
+    // test - amount above the maximum of the optimal strategy -- greedy strategy without fallback
+    @Test
+    void givenAmountAboveMaxOptimalAmount_whenProcessChange_thenExpectGreedyStrategyOnly()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 0, 1, 0, 10);
+
+        // when
+        final Map<Cash, Integer> change = adaptiveChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(11));
+
+        // then
+        assertNull(change);
+        assertEquals(ChangeStrategy.CENTS_GREEDY, adaptiveChangeProcessor.selectStrategy(mockCashStockMap, 1_100));
+        assertEquals(0, adaptiveChangeProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+    }
+
+    // test - invalid input -- no strategy called
+    @Test
+    void givenInvalidAmount_whenProcessChange_thenReturnNullValueWithoutCallingStrategies()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(3, 3, 3, 3, 3, 3);
+
+        // when + then
+        assertNull(adaptiveChangeProcessor.processChange(mockCashStockMap, BigDecimal.ZERO));
+        assertNull(adaptiveChangeProcessor.processChange(null, BigDecimal.ONE));
+        assertEquals(0, adaptiveChangeProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getCalls());
+        assertEquals(0, adaptiveChangeProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+    }
+
+    // test - non canonical cash items -- always optimal strategy
+    @Test
+    void givenNonCanonicalCashItems_whenSelectStrategy_thenExpectOptimalStrategy()
+    {
+        // given
+        final AdaptiveChangeProcessor nonCanonicalProcessor =
+            new AdaptiveChangeProcessor(new Cash[] {Coin.TWENTY_CENTS, Coin.FIFTY_CENTS}, MOCK_PLENTIFUL_QUANTITY, MOCK_MAX_OPTIMAL_AMOUNT);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 5, 5, 0, 0);
+
+        // when + then
+        assertEquals(ChangeStrategy.OPTIMAL, nonCanonicalProcessor.selectStrategy(mockCashStockMap, 60));
+        assertEquals(3, (int) nonCanonicalProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.6)).get(Coin.TWENTY_CENTS));
+    }
+
+    // test - batch with amounts below and above the maximum of the optimal strategy
+    @Test
+    void givenCashStockAndAmounts_whenProcessChangeBatch_thenExpectEachAmountProcessedByExpectedStrategy()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 3, 1, 0, 10);
+        final BigDecimal[] mockAmounts = {BigDecimal.valueOf(0.6), BigDecimal.valueOf(12), BigDecimal.valueOf(0.7)};
+
+        // when
+        final List<Map<Cash, Integer>> changes = adaptiveChangeProcessor.processChangeBatch(mockCashStockMap, mockAmounts);
+
+        // then
+        assertEquals(3, (int) changes.get(0).get(Coin.TWENTY_CENTS));
+        assertEquals(6, (int) changes.get(1).get(Coin.TWO));
+        assertEquals(1, (int) changes.get(2).get(Coin.FIFTY_CENTS));
+        assertEquals(1, (int) changes.get(2).get(Coin.TWENTY_CENTS));
+        assertEquals(2, adaptiveChangeProcessor.getStats(ChangeStrategy.OPTIMAL).getCalls());
+        assertEquals(1, adaptiveChangeProcessor.getStats(ChangeStrategy.CENTS_GREEDY).getCalls());
+    }
+
+    // test - events recording -- strategy of each call
+    @Test
+    void givenEventsRecording_whenProcessChange_thenKeepStrategyOfEachCall()
+    {
+        // given
+        final Map<Cash, Integer> plentifulCashStockMap = generateCashStockValues(3, 3, 3, 3, 3, 3);
+        final Map<Cash, Integer> scarceCashStockMap = generateCashStockValues(0, 0, 3, 1, 0, 0);
+        VendingMachineEvents.startRecording(event -> { });
+        try
+        {
+            // when
+            adaptiveChangeProcessor.processChange(plentifulCashStockMap, BigDecimal.valueOf(0.6));
+            final ChangeStrategy plentifulStrategy = adaptiveChangeProcessor.getLastStrategy();
+            adaptiveChangeProcessor.processChange(scarceCashStockMap, BigDecimal.valueOf(0.6));
+            final ChangeStrategy scarceStrategy = adaptiveChangeProcessor.getLastStrategy();
+
+            // then
+            assertEquals(ChangeStrategy.CENTS_GREEDY, plentifulStrategy);
+            assertEquals(ChangeStrategy.OPTIMAL, scarceStrategy);
+        }
+        finally
+        {
+            VendingMachineEvents.stopRecording();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Stock;
+
+
+/**
+ * CachingChangeProcessorTest class - CachingChangeProcessor test class.
+ */
+class CachingChangeProcessorTest
+{
+    private static final int MOCK_MAX_ENTRIES = 2;
+
+    private Stock<Cash> cashStock;
+    private AtomicInteger delegateCalls;
+    private CachingChangeProcessor cachingChangeProcessor;
+
+    @BeforeEach
+    void setUp()
+    {
+        final Map<Cash, Integer> values = new HashMap<>();
+        values.put(Coin.TEN_CENTS, 2);
+        values.put(Coin.FIFTY_CENTS, 2);
+        values.put(Coin.ONE, 2);
+        this.cashStock = new Stock<>(values);
+        this.delegateCalls = new AtomicInteger();
+        final CentsChangeProcessor centsChangeProcessor = new CentsChangeProcessor();
+        final ChangeProcessor countingProcessor = (stock, amount) -> {
+            delegateCalls.incrementAndGet();
+            return centsChangeProcessor.processChange(stock, amount);
+        };
+        this.cachingChangeProcessor = new CachingChangeProcessor(countingProcessor, cashStock, MOCK_MAX_ENTRIES);
+    }
+
+    // test - same amount and same stock -- second call served from cache
+    @Test
+    void givenSameAmountAndUnchangedStock_whenProcessChange_thenExpectCacheHit()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.6);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+        expectedChange.put(Coin.TEN_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> firstChange = cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmount);
+        final Map<Cash, Integer> secondChange = cachingChangeProcessor.processChange(cashStock.getStockMap(), BigDecimal.valueOf(0.60));
+
+        // then
+        assertEquals(expectedChange, firstChange);
+        assertEquals(expectedChange, secondChange);
+        assertEquals(1, delegateCalls.get());
+        assertEquals(1, cachingChangeProcessor.getHits());
+        assertEquals(1, cachingChangeProcessor.getMisses());
+    }
+
+    // test - not possible change is cached as well
+    @Test
+    void givenAmountWithoutChange_whenProcessChangeTwice_thenExpectCacheHitWithNullValue()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.05);
+
+        // when + then
+        assertNull(cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmount));
+        assertNull(cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmount));
+        assertEquals(1, delegateCalls.get());
+        assertEquals(1, cachingChangeProcessor.getHits());
+    }
+
+    // test - stock changed between calls -- entry not served
+    @Test
+    void givenSameAmountAndChangedStock_whenProcessChange_thenExpectCacheMiss()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.6);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+        expectedChange.put(Coin.TEN_CENTS, 1);
+
+        // when
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmount);
+        cashStock.deleteItem(Coin.FIFTY_CENTS, 2);
+        final Map<Cash, Integer> change = cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmount);
+
+        // then
+        assertNull(change);
+        assertEquals(2, delegateCalls.get());
+        assertEquals(0, cachingChangeProcessor.getHits());
+        assertEquals(2, cachingChangeProcessor.getMisses());
+    }
+
+    // test - more amounts than entries -- least recently used entry evicted
+    @Test
+    void givenMoreAmountsThanMaxEntries_whenProcessChange_thenExpectLeastRecentlyUsedEvicted()
+    {
+        // given
+        final BigDecimal[] mockAmounts = {BigDecimal.valueOf(0.1), BigDecimal.valueOf(0.5), BigDecimal.valueOf(1)};
+
+        // when
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[0]);
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[1]);
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[0]);
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[2]);
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[0]);
+        cachingChangeProcessor.processChange(cashStock.getStockMap(), mockAmounts[1]);
+
+        // then
+        assertEquals(MOCK_MAX_ENTRIES, cachingChangeProcessor.size());
+        assertEquals(2, cachingChangeProcessor.getHits());
+        assertEquals(4, cachingChangeProcessor.getMisses());
+    }
+
+    // test - other map than the one of the stock -- not cached
+    @Test
+    void givenOtherCashStockMap_whenProcessChange_thenExpectNoCaching()
+    {
+        // given
+        final Map<Cash, Integer> otherStockMap = new HashMap<>(cashStock.getStockMap());
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.6);
+
+        // when
+        cachingChangeProcessor.processChange(otherStockMap, mockAmount);
+        cachingChangeProcessor.processChange(otherStockMap, mockAmount);
+
+        // then
+        assertEquals(2, delegateCalls.get());
+        assertEquals(0, cachingChangeProcessor.size());
+    }
+
+    // test - invalid max entries
+    @Test
+    void givenInvalidMaxEntries_whenCreate_thenThrowSpecificException()
+    {
+        // when + then
+        assertThrows(IllegalArgumentException.class, () -> new CachingChangeProcessor(new CentsChangeProcessor(), cashStock, 0));
+    }
+}
@@ -7,10 +7,12 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -28,6 +30,7 @@ import org.hamcrest.collection.IsMapContaining;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -540,4 +543,160 @@ class CashManagerTest
         // then
         assertEquals(BigDecimal.ZERO, cashManager.getCurrentBalance());
     }
+
+    // takeCashItemsForChange
+    // - zero amount
+    @Test
+    void givenZeroAmount_whenTakeCashItemsForChange_thenReturnEmptyMapWithoutChangingStock()
+    {
+        // given
+
+        // when
+        final Map<Cash, Integer> result = cashManager.takeCashItemsForChange(BigDecimal.ZERO);
+
+        // then
+        assertTrue(result.isEmpty());
+        verify(mockCashStock, times(0)).deleteItem(any(Cash.class), anyInt());
+    }
+
+    // - no change available
+    @Test
+    void givenNoChangeAvailable_whenTakeCashItemsForChange_thenReturnNullValueWithoutChangingStock()
+    {
+        // given
+        final BigDecimal mockValue = BigDecimal.valueOf(0.3);
+        when(mockChangeProcessorFactory.getChangeProcessor()).thenReturn(mockGreedyChangeProcessor);
+        when(mockCashStock.getStockMap()).thenReturn(MOCK_CASH_STOCK_MAP);
+        when(mockGreedyChangeProcessor.processChange(MOCK_CASH_STOCK_MAP, mockValue)).thenReturn(null);
+
+        // when
+        final Map<Cash, Integer> result = cashManager.takeCashItemsForChange(mockValue);
+
+        // then
+        assertNull(result);
+        verify(mockCashStock, times(0)).deleteItem(any(Cash.class), anyInt());
+    }
+
+    // session related operations
+    // - receiveCash
+    @Test
+    void givenSession_whenReceiveCash_thenReturnExpectedSessionBalance()
+    {
+        // given
+        final Session mockSession = new Session(1L);
+        final Session mockOtherSession = new Session(2L);
+        doNothing().when(mockCashStock).insertItem(any(Cash.class));
+
+        // when
+        cashManager.receiveCash(mockSession, Coin.ONE);
+        final BigDecimal result = cashManager.receiveCash(mockSession, Coin.FIFTY_CENTS);
+
+        // then
+        verify(mockCashStock, times(1)).insertItem(Coin.ONE);
+        verify(mockCashStock, times(1)).insertItem(Coin.FIFTY_CENTS);
+        assertEquals(0, result.compareTo(BigDecimal.valueOf(1.5)));
+        assertEquals(result, mockSession.getCurrentBalance());
+        assertEquals(BigDecimal.ZERO, mockOtherSession.getCurrentBalance());
+        assertEquals(BigDecimal.ZERO, cashManager.getCurrentBalance());
+    }
+
+    // - calculateRefund
+    @Test
+    void givenSessionWithPositiveBalance_whenCalculateRefund_thenReturnExpectedCashItemsAndZeroSessionBalance()
+    {
+        // given
+        final Session mockSession = new Session(1L);
+        cashManager.setCurrentBalance(BigDecimal.ONE);
+        doNothing().when(mockCashStock).insertItem(any(Cash.class));
+        cashManager.receiveCash(mockSession, Coin.TWO);
+        cashManager.receiveCash(mockSession, Coin.TWO);
+        final Map<Cash, Integer> expectedResult = Collections.singletonMap(Coin.TWO, 2);
+        when(mockChangeProcessorFactory.getChangeProcessor()).thenReturn(mockGreedyChangeProcessor);
+        when(mockCashStock.getStockMap()).thenReturn(MOCK_CASH_STOCK_MAP);
+        when(mockGreedyChangeProcessor.processChange(MOCK_CASH_STOCK_MAP, mockSession.getCurrentBalance())).thenReturn(expectedResult);
+        when(mockCashStock.tryTakeAll(expectedResult)).thenReturn(true);
+
+        // when
+        final Map<Cash, Integer> result = cashManager.calculateRefund(mockSession);
+
+        // then
+        verify(mockCashStock, times(1)).tryTakeAll(expectedResult);
+        assertThat(result, is(expectedResult));
+        assertEquals(BigDecimal.ZERO, mockSession.getCurrentBalance());
+        assertEquals(BigDecimal.ONE, cashManager.getCurrentBalance());
+    }
+
+    // - change taken by another session meanwhile
+    @Test
+    void givenChangeTakenAfterCalculation_whenTakeCashItemsForChange_thenCalculateChangeAgain()
+    {
+        // given
+        final BigDecimal mockValue = BigDecimal.valueOf(0.4);
+        final Map<Cash, Integer> mockFirstChange = Collections.singletonMap(Coin.TWENTY_CENTS, 2);
+        final Map<Cash, Integer> expectedResult = new HashMap<>();
+        expectedResult.put(Coin.TWENTY_CENTS, 1);
+        expectedResult.put(Coin.TEN_CENTS, 2);
+        when(mockChangeProcessorFactory.getChangeProcessor()).thenReturn(mockGreedyChangeProcessor);
+        when(mockCashStock.getStockMap()).thenReturn(MOCK_CASH_STOCK_MAP);
+        when(mockCashStock.getVersion()).thenReturn(1L, 2L, 2L);
+        when(mockGreedyChangeProcessor.processChange(MOCK_CASH_STOCK_MAP, mockValue)).thenReturn(mockFirstChange)
+            .thenReturn(expectedResult);
+        when(mockCashStock.tryTakeAll(any())).thenReturn(false, true);
+
+        // when
+        final Map<Cash, Integer> result = cashManager.takeCashItemsForChange(mockValue);
+
+        // then
+        assertThat(result, is(expectedResult));
+        verify(mockGreedyChangeProcessor, times(2)).processChange(MOCK_CASH_STOCK_MAP, mockValue);
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Map<Cash, Integer>> takenChanges = ArgumentCaptor.forClass(Map.class);
+        verify(mockCashStock, times(2)).tryTakeAll(takenChanges.capture());
+        assertEquals(Arrays.asList(mockFirstChange, expectedResult), takenChanges.getAllValues());
+    }
+
+    // - change not in stock and stock unchanged
+    @Test
+    void givenChangeNotInStockAndStockUnchanged_whenTakeCashItemsForChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal mockValue = BigDecimal.valueOf(0.4);
+        final Map<Cash, Integer> mockChange = Collections.singletonMap(Coin.TWENTY_CENTS, 2);
+        when(mockChangeProcessorFactory.getChangeProcessor()).thenReturn(mockGreedyChangeProcessor);
+        when(mockCashStock.getStockMap()).thenReturn(MOCK_CASH_STOCK_MAP);
+        when(mockCashStock.getVersion()).thenReturn(1L);
+        when(mockGreedyChangeProcessor.processChange(MOCK_CASH_STOCK_MAP, mockValue)).thenReturn(mockChange);
+        when(mockCashStock.tryTakeAll(mockChange)).thenReturn(false);
+
+        // when
+        final Map<Cash, Integer> result = cashManager.takeCashItemsForChange(mockValue);
+
+        // then
+        assertNull(result);
+        verify(mockGreedyChangeProcessor, times(1)).processChange(MOCK_CASH_STOCK_MAP, mockValue);
+    }
+
+    // getCashItemsForChangeBatch
+    @Test
+    void givenSeveralAmounts_whenGetCashItemsForChangeBatch_thenCalculateOverSnapshotOfCashStock()
+    {
+        // given
+        final Stock<Cash> cashStock = new Stock<>(new HashMap<>(MOCK_CASH_STOCK_MAP));
+        final CashManager snapshotCashManager = new CashManager(cashStock, mockChangeProcessorFactory);
+        final BigDecimal[] mockAmounts = {BigDecimal.valueOf(0.1), BigDecimal.valueOf(5)};
+        final List<Map<Cash, Integer>> expectedResult = Arrays.asList(Collections.singletonMap(Coin.TEN_CENTS, 1), null);
+        when(mockChangeProcessorFactory.getChangeProcessor()).thenReturn(mockGreedyChangeProcessor);
+        when(mockGreedyChangeProcessor.processChangeBatch(any(), eq(mockAmounts))).thenReturn(expectedResult);
+
+        // when
+        final List<Map<Cash, Integer>> result = snapshotCashManager.getCashItemsForChangeBatch(mockAmounts);
+
+        // then
+        assertThat(result, is(expectedResult));
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Map<Cash, Integer>> cashStockMap = ArgumentCaptor.forClass(Map.class);
+        verify(mockGreedyChangeProcessor).processChangeBatch(cashStockMap.capture(), eq(mockAmounts));
+        assertSame(cashStock.getSnapshot().getStockMap(), cashStockMap.getValue());
+        assertEquals(MOCK_CASH_STOCK_MAP, cashStockMap.getValue());
+    }
 }
@@ -0,0 +1,325 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * CentsChangeProcessorTest class - CentsChangeProcessor test class.
+ */
+class CentsChangeProcessorTest
+{
+    private CentsChangeProcessor centsChangeProcessor;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.centsChangeProcessor = new CentsChangeProcessor();
+    }
+
+    private Map<Cash, Integer> generateCashStockValues(final int fiveCentsQnt,
+                                                       final int tenCentsQnt,
+                                                       final int twentyCentsQnt,
+                                                       final int fiftyCentsQnt,
+                                                       final int oneQnt,
+                                                       final int twoQnt)
+    {
+        final Map<Cash, Integer> values = new HashMap<>();
+        values.put(Coin.FIVE_CENTS, fiveCentsQnt);
+        values.put(Coin.TEN_CENTS, tenCentsQnt);
+        values.put(Coin.TWENTY_CENTS, twentyCentsQnt);
+        values.put(Coin.FIFTY_CENTS, fiftyCentsQnt);
+        values.put(Coin.ONE, oneQnt);
+        values.put(Coin.TWO, twoQnt);
+
+        return values;
+    }
+
+    // test - cash stock with enough cash and valid changeAmount -- return change (other case)
+    @Test
+    void givenCashStockAndHighAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(10);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 5);
+        expectedChange.put(Coin.FIFTY_CENTS, 2);
+        expectedChange.put(Coin.ONE, 4);
+        expectedChange.put(Coin.TWO, 2);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockAndLowAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.75);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 1);
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+        expectedChange.put(Coin.FIVE_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockAndAmountEqualsToCertainCashItem_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.1);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TEN_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockAndAmountMultipleOfCashItem_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(8);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 4);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWO, 4);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockAndAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.60);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TEN_CENTS, 1);
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    // test - cash stock will have some cash not available and valid changeAmount -- return change but with diff result from above
+    @Test
+    void givenCashStockWithLimitedItemsAndAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantityWithoutDefaultValue()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.60);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 3, 0, 2, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 3);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange.size(), change.size());
+        assertEquals(expectedChange, change);
+    }
+
+    // test - cash stock with enough cash and invalid changeAmount -- not able to return change
+    @Test
+    void givenCashStockAndInvalidAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal[] testCases = {BigDecimal.valueOf(-1.5), BigDecimal.ZERO};
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+
+        // when + then
+        Arrays.stream(testCases).map(testCase -> centsChangeProcessor.processChange(mockCashStockMap, testCase)).forEach(Assertions::assertNull);
+    }
+
+    // test - cash stock will have some cash not available and valid changeAmount -- not able to return change
+    @Test
+    void givenCashStockWithLimitedItemsAndAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal[] testCases = {BigDecimal.valueOf(20), BigDecimal.valueOf(300)};
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+
+        // when + then
+        for (final BigDecimal testCase : testCases)
+        {
+            assertNull(centsChangeProcessor.processChange(mockCashStockMap, testCase));
+        }
+    }
+
+    // test - with null or empty cash stock and valid changeAmount - not able to return change
+    @Test
+    void givenInvalidCashStockAndAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(1.5);
+        final Map[] mockCashStockMap = new Map[] {
+            null, Collections.emptyMap()
+        };
+
+        // when + then
+        for (final Map map : mockCashStockMap)
+        {
+            assertNull(centsChangeProcessor.processChange(map, mockAmount));
+        }
+    }
+
+    // test - with cash stock with items = 0 and valid changeAmount - not able to return change
+    @Test
+    void givenCashStockWithEmptyItemsAndAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(1.5);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 0, 0, 0, 0);
+
+        // when + then
+        assertNull(centsChangeProcessor.processChange(mockCashStockMap, mockAmount));
+    }
+
+    // test - amount with fractions of a cent -- not able to return change
+    @Test
+    void givenCashStockAndAmountWithFractionOfCent_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal mockAmount = new BigDecimal("0.155");
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+
+        // when + then
+        assertNull(centsChangeProcessor.processChange(mockCashStockMap, mockAmount));
+    }
+
+    // test - amount with trailing zeros in scale -- return change
+    @Test
+    void givenCashStockAndAmountWithTrailingZeros_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = new BigDecimal("0.7000");
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 1);
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = centsChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange, change);
+    }
+
+    // test - processor restricted to some cash items -- ignore the other cash items in stock
+    @Test
+    void givenProcessorWithRestrictedCashItems_whenProcessChange_thenReturnChangeOnlyWithThoseCashItems()
+    {
+        // given
+        final CentsChangeProcessor restrictedProcessor = new CentsChangeProcessor(new Cash[] {Coin.TEN_CENTS, Coin.ONE});
+        final BigDecimal mockAmount = BigDecimal.valueOf(1.2);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.ONE, 1);
+        expectedChange.put(Coin.TEN_CENTS, 2);
+
+        // when
+        final Map<Cash, Integer> change = restrictedProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange, change);
+    }
+
+    // test - batch of amounts -- return the same change as processing each amount
+    @Test
+    void givenCashStockAndAmounts_whenProcessChangeBatch_thenReturnChangeOfEachAmount()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 3, 0, 2, 2);
+        final BigDecimal[] mockAmounts = new BigDecimal[CentsChangeProcessor.PARALLEL_BATCH_THRESHOLD + 1];
+        for (int i = 0; i < mockAmounts.length; i++)
+        {
+            mockAmounts[i] = BigDecimal.valueOf(i * 5L, 2);
+        }
+
+        // when
+        final List<Map<Cash, Integer>> changes = centsChangeProcessor.processChangeBatch(mockCashStockMap, mockAmounts);
+
+        // then
+        assertEquals(mockAmounts.length, changes.size());
+        assertNull(changes.get(0));
+        assertEquals(Collections.singletonMap(Coin.TWENTY_CENTS, 3), changes.get(12));
+        for (int i = 0; i < mockAmounts.length; i++)
+        {
+            assertEquals(centsChangeProcessor.processChange(mockCashStockMap, mockAmounts[i]), changes.get(i));
+        }
+    }
+
+    @Test
+    void givenSharedCashStock_whenProcessChange_thenReadEachDenominationOnce()
+    {
+        // given
+        // shared cash stock where the only coin of fifty cents is taken right after being read
+        final Map<Cash, Integer> reads = new HashMap<>();
+        final Map<Cash, Integer> mockCashStockMap = new HashMap<Cash, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Integer get(final Object key)
+            {
+                reads.merge((Cash) key, 1, Integer::sum);
+                return key == Coin.FIFTY_CENTS && reads.get(key) > 1 ? Integer.valueOf(0) : super.get(key);
+            }
+        };
+        mockCashStockMap.put(Coin.FIFTY_CENTS, 1);
+        mockCashStockMap.put(Coin.TEN_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> result = centsChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.6));
+
+        // then
+        final Map<Cash, Integer> expected = new HashMap<>();
+        expected.put(Coin.FIFTY_CENTS, 1);
+        expected.put(Coin.TEN_CENTS, 1);
+        assertEquals(expected, result);
+        for (final Integer count : reads.values())
+        {
+            assertEquals(1, count.intValue());
+        }
+    }
+}
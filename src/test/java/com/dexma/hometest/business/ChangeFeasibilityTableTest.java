@@ -0,0 +1,200 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * ChangeFeasibilityTableTest class - ChangeFeasibilityTable test class.
+ */
+class ChangeFeasibilityTableTest
+{
+    private static final int MOCK_MAX_AMOUNT = 300;
+
+    private ChangeFeasibilityTable changeFeasibilityTable;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.changeFeasibilityTable = new ChangeFeasibilityTable(MOCK_MAX_AMOUNT);
+    }
+
+    // test - empty stock -- only zero can be paid
+    @Test
+    void givenEmptyStock_whenCanGiveChange_thenReturnFalseForAnyPositiveAmount()
+    {
+        // when + then
+        assertTrue(changeFeasibilityTable.canGiveChange(0));
+        assertFalse(changeFeasibilityTable.canGiveChange(5));
+        assertFalse(changeFeasibilityTable.canGiveChange(200));
+        assertTrue(changeFeasibilityTable.isExactChangeOnly());
+    }
+
+    // test - cash items added -- amounts made of several cash items can be paid
+    @Test
+    void givenAddedCashItems_whenCanGiveChange_thenReturnExpectedValues()
+    {
+        // given
+        changeFeasibilityTable.addCashItem(Coin.FIFTY_CENTS, 1);
+        changeFeasibilityTable.addCashItem(Coin.TWENTY_CENTS, 3);
+
+        // when + then
+        assertTrue(changeFeasibilityTable.canGiveChange(60));
+        assertTrue(changeFeasibilityTable.canGiveChange(BigDecimal.valueOf(0.9)));
+        assertTrue(changeFeasibilityTable.canGiveChange(110));
+        assertFalse(changeFeasibilityTable.canGiveChange(10));
+        assertFalse(changeFeasibilityTable.canGiveChange(30));
+        assertFalse(changeFeasibilityTable.canGiveChange(130));
+    }
+
+    // test - cash items removed -- amounts depending on them can't be paid anymore
+    @Test
+    void givenRemovedCashItems_whenCanGiveChange_thenReturnExpectedValues()
+    {
+        // given
+        changeFeasibilityTable.addCashItem(Coin.FIFTY_CENTS, 1);
+        changeFeasibilityTable.addCashItem(Coin.TWENTY_CENTS, 3);
+        changeFeasibilityTable.addCashItem(Coin.TEN_CENTS, 1);
+
+        // when
+        changeFeasibilityTable.removeCashItem(Coin.TWENTY_CENTS, 2);
+        changeFeasibilityTable.removeCashItem(Coin.TEN_CENTS, 5);
+
+        // then
+        assertTrue(changeFeasibilityTable.canGiveChange(70));
+        assertTrue(changeFeasibilityTable.canGiveChange(20));
+        assertFalse(changeFeasibilityTable.canGiveChange(60));
+        assertFalse(changeFeasibilityTable.canGiveChange(10));
+    }
+
+    // test - reset with a stock -- same result as adding the cash items one by one
+    @Test
+    void givenCashStock_whenReset_thenReturnSameValuesAsIncrementalUpdates()
+    {
+        // given
+        final Map<Cash, Integer> cashStock = new HashMap<>();
+        cashStock.put(Coin.FIVE_CENTS, 1);
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+        cashStock.put(Coin.ONE, 1);
+        final ChangeFeasibilityTable incrementalTable = new ChangeFeasibilityTable(MOCK_MAX_AMOUNT);
+        incrementalTable.addCashItem(Coin.ONE, 1);
+        incrementalTable.addCashItem(Coin.TWENTY_CENTS, 1);
+        incrementalTable.addCashItem(Coin.FIVE_CENTS, 1);
+        incrementalTable.addCashItem(Coin.TWENTY_CENTS, 1);
+        incrementalTable.addCashItem(Coin.TWO, 1);
+        incrementalTable.removeCashItem(Coin.TWO, 1);
+
+        // when
+        changeFeasibilityTable.reset(cashStock);
+
+        // then
+        for (int amount = 0; amount <= MOCK_MAX_AMOUNT; amount++)
+        {
+            assertTrue(changeFeasibilityTable.canGiveChange(amount) == incrementalTable.canGiveChange(amount));
+        }
+    }
+
+    // test - plenty of small cash items -- every amount can be paid
+    // test - random updates -- the table always matches a search over the cash stock
+    @Test
+    void givenRandomUpdates_whenCanGiveChange_thenMatchSearchOverCashStock()
+    {
+        // given
+        final Random random = new Random(42L);
+        final Map<Cash, Integer> cashStock = new HashMap<>();
+        final Coin[] coins = Coin.getValidCoins();
+
+        for (int update = 0; update < 200; update++)
+        {
+            // when
+            final Coin coin = coins[random.nextInt(coins.length)];
+            final int quantity = 1 + random.nextInt(4);
+            if (random.nextBoolean())
+            {
+                changeFeasibilityTable.addCashItem(coin, quantity);
+                cashStock.merge(coin, quantity, Integer::sum);
+            }
+            else
+            {
+                changeFeasibilityTable.removeCashItem(coin, quantity);
+                cashStock.put(coin, Math.max(cashStock.getOrDefault(coin, 0) - quantity, 0));
+            }
+
+            // then
+            for (int amount = 0; amount <= MOCK_MAX_AMOUNT; amount += 5)
+            {
+                assertEquals(canPay(cashStock, coins, 0, amount), changeFeasibilityTable.canGiveChange(amount), "amount " + amount);
+            }
+        }
+    }
+
+    private static boolean canPay(final Map<Cash, Integer> cashStock, final Coin[] coins, final int index, final int amount)
+    {
+        if (amount == 0)
+        {
+            return true;
+        }
+        if (index == coins.length)
+        {
+            return false;
+        }
+        final int available = Math.min(cashStock.getOrDefault(coins[index], 0), amount / coins[index].getCents());
+        for (int used = available; used >= 0; used--)
+        {
+            if (canPay(cashStock, coins, index + 1, amount - used * coins[index].getCents()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void givenPlentyOfCashItems_whenCheckIfExactChangeOnly_thenReturnFalse()
+    {
+        // given
+        changeFeasibilityTable.addCashItem(Coin.FIVE_CENTS, 60);
+
+        // when + then
+        assertFalse(changeFeasibilityTable.isExactChangeOnly());
+
+        changeFeasibilityTable.removeCashItem(Coin.FIVE_CENTS, 1);
+        assertTrue(changeFeasibilityTable.isExactChangeOnly());
+    }
+
+    // test - amounts out of range or not multiple of the smallest unit
+    @Test
+    void givenInvalidAmounts_whenCanGiveChange_thenReturnFalse()
+    {
+        // given
+        changeFeasibilityTable.addCashItem(Coin.FIVE_CENTS, 100);
+
+        // when + then
+        assertFalse(changeFeasibilityTable.canGiveChange(-5));
+        assertFalse(changeFeasibilityTable.canGiveChange(7));
+        assertFalse(changeFeasibilityTable.isTracked(MOCK_MAX_AMOUNT + 5));
+        assertFalse(changeFeasibilityTable.canGiveChange(MOCK_MAX_AMOUNT + 5));
+        assertFalse(changeFeasibilityTable.canGiveChange(new BigDecimal("0.155")));
+    }
+
+    // test - invalid max amount
+    @Test
+    void givenInvalidMaxAmount_whenCreate_thenThrowSpecificException()
+    {
+        // when + then
+        assertThrows(IllegalArgumentException.class, () -> new ChangeFeasibilityTable(0));
+    }
+}
@@ -1,5 +1,6 @@
 package com.dexma.hometest.business;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 
@@ -27,6 +28,61 @@ class ChangeProcessorFactoryTest
 
         // when + then
         final ChangeProcessor changeProcessor = processorFactory.getChangeProcessor();
+        assertThat(changeProcessor, instanceOf(AdaptiveChangeProcessor.class));
+    }
+
+    @Test
+    void givenGreedyStrategy_whenGetSpecificProcessor_thenReturnCorrectProcessor()
+    {
+        // given
+        final ChangeProcessorFactory greedyProcessorFactory = new ChangeProcessorFactory(ChangeStrategy.GREEDY);
+
+        // when + then
+        final ChangeProcessor changeProcessor = greedyProcessorFactory.getChangeProcessor();
         assertThat(changeProcessor, instanceOf(GreedyChangeProcessor.class));
     }
+
+    @Test
+    void givenCentsGreedyStrategy_whenGetSpecificProcessor_thenReturnCorrectProcessor()
+    {
+        // given
+        final ChangeProcessorFactory centsProcessorFactory = new ChangeProcessorFactory(ChangeStrategy.CENTS_GREEDY);
+
+        // when + then
+        final ChangeProcessor changeProcessor = centsProcessorFactory.getChangeProcessor();
+        assertThat(changeProcessor, instanceOf(CentsChangeProcessor.class));
+    }
+
+    @Test
+    void givenOptimalStrategy_whenGetSpecificProcessor_thenReturnCorrectProcessor()
+    {
+        // given
+        final ChangeProcessorFactory optimalProcessorFactory = new ChangeProcessorFactory(ChangeStrategy.OPTIMAL);
+
+        // when + then
+        final ChangeProcessor changeProcessor = optimalProcessorFactory.getChangeProcessor();
+        assertThat(changeProcessor, instanceOf(OptimalChangeProcessor.class));
+    }
+
+    @Test
+    void givenConfiguredProcessor_whenGetSpecificProcessor_thenReturnSameProcessor()
+    {
+        // given
+        final AdaptiveChangeProcessor adaptiveChangeProcessor = new AdaptiveChangeProcessor(10, 5_000L);
+        final ChangeProcessorFactory configuredProcessorFactory = new ChangeProcessorFactory(adaptiveChangeProcessor);
+
+        // when + then
+        assertThat(configuredProcessorFactory.getChangeProcessor(), is(adaptiveChangeProcessor));
+    }
+
+    @Test
+    void givenEveryStrategy_whenGetChangeStrategy_thenReturnIt()
+    {
+        for (final ChangeStrategy changeStrategy : ChangeStrategy.values())
+        {
+            // when + then
+            assertThat(new ChangeProcessorFactory(changeStrategy).getChangeStrategy(), is(changeStrategy));
+        }
+        assertThat(new ChangeProcessorFactory((cashStock, amount) -> null).getChangeStrategy(), is((ChangeStrategy) null));
+    }
 }
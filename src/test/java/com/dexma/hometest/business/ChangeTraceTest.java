@@ -0,0 +1,166 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * ChangeTraceTest class - ChangeTrace test class, over the change processors that record it.
+ */
+class ChangeTraceTest
+{
+    private static final BigDecimal THIRTY_CENTS = new BigDecimal("0.30");
+
+    private Map<Cash, Integer> cashStock;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.cashStock = new HashMap<>();
+        ChangeTrace.clear();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        ChangeTrace.disable();
+        ChangeTrace.clear();
+    }
+
+    @Test
+    void givenDisabledTrace_whenProcessChange_thenTraceNothing()
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+
+        // when
+        new GreedyChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+
+        // then
+        assertEquals("", ChangeTrace.getCurrentThreadTrace());
+    }
+
+    @Test
+    void givenChangesTracedByAnotherThread_whenGetAllThreadsTrace_thenIncludeItsTrace() throws InterruptedException
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+        cashStock.put(Coin.TEN_CENTS, 0);
+        ChangeTrace.enable();
+        new GreedyChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+        final CountDownLatch traced = new CountDownLatch(1);
+        final CountDownLatch dumped = new CountDownLatch(1);
+        final Thread other = new Thread(() ->
+        {
+            new GreedyChangeProcessor().processChange(Collections.singletonMap(Coin.TEN_CENTS, 3), THIRTY_CENTS);
+            traced.countDown();
+            try
+            {
+                dumped.await();
+            }
+            catch (final InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "other-tracer");
+        other.start();
+
+        // when
+        traced.await();
+        final String trace = ChangeTrace.getAllThreadsTrace();
+        dumped.countDown();
+        other.join();
+
+        // then
+        assertTrue(trace.contains(Thread.currentThread().getName() + ":\nGREEDY change for 30 cents: 20 cents -> 10 left (1 in stock), not found"), trace);
+        assertTrue(trace.contains("other-tracer:\nGREEDY change for 30 cents:"), trace);
+    }
+
+    @Test
+    void givenEnabledTrace_whenGreedyHasNoChange_thenTraceEachSubtraction()
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+        cashStock.put(Coin.TEN_CENTS, 0);
+        ChangeTrace.enable();
+
+        // when
+        final Map<Cash, Integer> change = new GreedyChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+
+        // then
+        assertNull(change);
+        assertEquals("GREEDY change for 30 cents: 20 cents -> 10 left (1 in stock), not found",
+            ChangeTrace.getCurrentThreadTrace());
+    }
+
+    @Test
+    void givenEnabledTrace_whenCentsGreedyFindsChange_thenTraceEachDenominationTried()
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 1);
+        cashStock.put(Coin.TEN_CENTS, 2);
+        ChangeTrace.enable();
+
+        // when
+        new CentsChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+
+        // then
+        assertEquals("CENTS_GREEDY change for 30 cents: 200 cents -> 30 left (0 in stock), 100 cents -> 30 left (0 in stock),"
+                + " 50 cents -> 30 left (0 in stock), 20 cents -> 10 left (0 in stock), 10 cents -> 0 left (1 in stock), found",
+            ChangeTrace.getCurrentThreadTrace());
+    }
+
+    @Test
+    void givenEnabledTrace_whenOptimalHasNoChange_thenTraceStockOfEachDenomination()
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+        ChangeTrace.enable();
+
+        // when
+        new OptimalChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+        new OptimalChangeProcessor().processChange(cashStock, new BigDecimal("0.40"));
+
+        // then: one line per change
+        final String[] lines = ChangeTrace.getCurrentThreadTrace().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("OPTIMAL change for 30 cents:"));
+        assertTrue(lines[0].contains(" 20 cents -> 30 left (2 in stock),"));
+        assertTrue(lines[0].endsWith("not found"));
+        assertEquals("OPTIMAL change for 40 cents: 20 cents -> 0 left (0 in stock), found", lines[1]);
+    }
+
+    @Test
+    void givenFullBuffer_whenProcessChange_thenKeepOnlyLastRows()
+    {
+        // given
+        cashStock.put(Coin.TWENTY_CENTS, 2);
+        ChangeTrace.enable();
+
+        // when
+        for (int i = 0; i < ChangeTrace.CAPACITY; i++)
+        {
+            new GreedyChangeProcessor().processChange(cashStock, THIRTY_CENTS);
+        }
+
+        // then: three rows per change
+        final String[] lines = ChangeTrace.getCurrentThreadTrace().split("\n");
+        assertEquals(ChangeTrace.CAPACITY / 3 + 1, lines.length);
+        assertTrue(lines[0].startsWith("..."));
+        assertEquals("GREEDY change for 30 cents: 20 cents -> 10 left (1 in stock), not found", lines[lines.length - 1]);
+    }
+}
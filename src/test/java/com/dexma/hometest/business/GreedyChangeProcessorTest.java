@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Assertions;
@@ -214,4 +215,20 @@ class GreedyChangeProcessorTest
         assertNull(greedyChangeProcessor.processChange(mockCashStockMap, mockAmount));
     }
 
+    // test - batch of amounts -- return the change of each amount
+    @Test
+    void givenCashStockAndAmounts_whenProcessChangeBatch_thenReturnChangeOfEachAmount()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 3, 0, 2, 2);
+        final BigDecimal[] mockAmounts = {BigDecimal.valueOf(0.6), null, BigDecimal.valueOf(300)};
+
+        // when
+        final List<Map<Cash, Integer>> changes = greedyChangeProcessor.processChangeBatch(mockCashStockMap, mockAmounts);
+
+        // then
+        assertEquals(Collections.singletonMap(Coin.TWENTY_CENTS, 3), changes.get(0));
+        assertNull(changes.get(1));
+        assertNull(changes.get(2));
+    }
 }
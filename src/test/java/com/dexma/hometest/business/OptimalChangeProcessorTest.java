@@ -0,0 +1,231 @@
+package com.dexma.hometest.business;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+
+
+/**
+ * OptimalChangeProcessorTest class - OptimalChangeProcessor test class.
+ */
+class OptimalChangeProcessorTest
+{
+    private OptimalChangeProcessor optimalChangeProcessor;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.optimalChangeProcessor = new OptimalChangeProcessor();
+    }
+
+    private Map<Cash, Integer> generateCashStockValues(final int fiveCentsQnt,
+                                                       final int tenCentsQnt,
+                                                       final int twentyCentsQnt,
+                                                       final int fiftyCentsQnt,
+                                                       final int oneQnt,
+                                                       final int twoQnt)
+    {
+        final Map<Cash, Integer> values = new HashMap<>();
+        values.put(Coin.FIVE_CENTS, fiveCentsQnt);
+        values.put(Coin.TEN_CENTS, tenCentsQnt);
+        values.put(Coin.TWENTY_CENTS, twentyCentsQnt);
+        values.put(Coin.FIFTY_CENTS, fiftyCentsQnt);
+        values.put(Coin.ONE, oneQnt);
+        values.put(Coin.TWO, twoQnt);
+
+        return values;
+    }
+
+    // test - cash stock with enough cash and valid changeAmount -- return change with fewest cash items
+    @Test
+    void givenCashStockAndHighAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(10);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 5);
+        expectedChange.put(Coin.FIFTY_CENTS, 2);
+        expectedChange.put(Coin.ONE, 4);
+        expectedChange.put(Coin.TWO, 2);
+
+        // when
+        final Map<Cash, Integer> change = optimalChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockAndLowAmount_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.75);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 5, 2, 4, 2);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 1);
+        expectedChange.put(Coin.FIFTY_CENTS, 1);
+        expectedChange.put(Coin.FIVE_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = optimalChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange, change);
+    }
+
+    // test - greedy choice of the biggest cash item leads to a dead end -- return change with other cash items
+    @Test
+    void givenCashStockWhereGreedyFails_whenProcessChange_thenReturnCollectionWithCashAndQuantity()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(0.60);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 3, 1, 0, 0);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.TWENTY_CENTS, 3);
+
+        // when
+        final Map<Cash, Integer> change = optimalChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertNull(new GreedyChangeProcessor().processChange(mockCashStockMap, mockAmount));
+        assertEquals(expectedChange, change);
+    }
+
+    @Test
+    void givenCashStockWithSeveralCombinations_whenProcessChange_thenReturnCollectionWithFewestCashItems()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(1.2);
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 6, 2, 1, 0);
+        final Map<Cash, Integer> expectedChange = new HashMap<>();
+        expectedChange.put(Coin.ONE, 1);
+        expectedChange.put(Coin.TWENTY_CENTS, 1);
+
+        // when
+        final Map<Cash, Integer> change = optimalChangeProcessor.processChange(mockCashStockMap, mockAmount);
+
+        // then
+        assertEquals(expectedChange, change);
+    }
+
+    // test - several calls reusing the same buffers -- return change for each of them
+    @Test
+    void givenCashStockAndSeveralAmounts_whenProcessChangeRepeatedly_thenReturnExpectedChangeEachTime()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(1, 1, 1, 1, 1, 1);
+        final Map<Cash, Integer> expectedHighChange = new HashMap<>();
+        expectedHighChange.put(Coin.TWO, 1);
+        expectedHighChange.put(Coin.ONE, 1);
+        expectedHighChange.put(Coin.TWENTY_CENTS, 1);
+        final Map<Cash, Integer> expectedLowChange = Collections.singletonMap(Coin.FIVE_CENTS, 1);
+
+        // when + then
+        assertEquals(expectedHighChange, optimalChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(3.2)));
+        assertEquals(expectedLowChange, optimalChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.05)));
+        assertNull(optimalChangeProcessor.processChange(mockCashStockMap, BigDecimal.valueOf(0.45)));
+    }
+
+    // test - cash stock with enough cash and invalid changeAmount -- not able to return change
+    @Test
+    void givenCashStockAndInvalidAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal[] testCases = {BigDecimal.valueOf(-1.5), BigDecimal.ZERO, BigDecimal.valueOf(0.01), null};
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+
+        // when + then
+        for (final BigDecimal testCase : testCases)
+        {
+            assertNull(optimalChangeProcessor.processChange(mockCashStockMap, testCase));
+        }
+    }
+
+    // test - cash stock without enough cash -- not able to return change
+    @Test
+    void givenCashStockWithLimitedItemsAndAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal[] testCases = {BigDecimal.valueOf(20), BigDecimal.valueOf(300)};
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(2, 2, 2, 2, 2, 2);
+
+        // when + then
+        for (final BigDecimal testCase : testCases)
+        {
+            assertNull(optimalChangeProcessor.processChange(mockCashStockMap, testCase));
+        }
+    }
+
+    // test - with null or empty cash stock and valid changeAmount - not able to return change
+    @Test
+    void givenInvalidCashStockAndAmount_whenProcessChange_thenReturnNullValue()
+    {
+        // given
+        final BigDecimal mockAmount = BigDecimal.valueOf(1.5);
+        final Map[] mockCashStockMap = new Map[] {
+            null, Collections.emptyMap()
+        };
+
+        // when + then
+        for (final Map map : mockCashStockMap)
+        {
+            assertNull(optimalChangeProcessor.processChange(map, mockAmount));
+        }
+    }
+
+    // test - batch of amounts -- return the same change as processing each amount
+    @Test
+    void givenCashStockAndAmounts_whenProcessChangeBatch_thenReturnChangeOfEachAmount()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(0, 0, 3, 1, 1, 0);
+        final BigDecimal[] mockAmounts = {BigDecimal.valueOf(0.6), BigDecimal.valueOf(1.2), BigDecimal.valueOf(0.1), null};
+        final Map<Cash, Integer> expectedHighChange = new HashMap<>();
+        expectedHighChange.put(Coin.ONE, 1);
+        expectedHighChange.put(Coin.TWENTY_CENTS, 1);
+
+        // when
+        final List<Map<Cash, Integer>> changes = optimalChangeProcessor.processChangeBatch(mockCashStockMap, mockAmounts);
+
+        // then
+        assertEquals(mockAmounts.length, changes.size());
+        assertEquals(Collections.singletonMap(Coin.TWENTY_CENTS, 3), changes.get(0));
+        assertEquals(expectedHighChange, changes.get(1));
+        assertNull(changes.get(2));
+        assertNull(changes.get(3));
+    }
+
+    // test - large batch of amounts (processed in parallel) -- return the same change as processing each amount
+    @Test
+    void givenCashStockAndLargeBatchOfAmounts_whenProcessChangeBatch_thenReturnChangeOfEachAmount()
+    {
+        // given
+        final Map<Cash, Integer> mockCashStockMap = generateCashStockValues(1, 2, 3, 1, 2, 3);
+        final BigDecimal[] mockAmounts = new BigDecimal[OptimalChangeProcessor.PARALLEL_BATCH_THRESHOLD * 2];
+        for (int i = 0; i < mockAmounts.length; i++)
+        {
+            mockAmounts[i] = BigDecimal.valueOf(i % 200, 2).multiply(BigDecimal.valueOf(5));
+        }
+
+        // when
+        final List<Map<Cash, Integer>> changes = optimalChangeProcessor.processChangeBatch(mockCashStockMap, mockAmounts);
+
+        // then
+        for (int i = 0; i < mockAmounts.length; i++)
+        {
+            assertEquals(optimalChangeProcessor.processChange(mockCashStockMap, mockAmounts[i]), changes.get(i));
+        }
+    }
+}
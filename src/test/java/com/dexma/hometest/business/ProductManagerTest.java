@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -158,6 +159,55 @@ class ProductManagerTest
         assertThat(result, IsEmptyCollection.empty());
     }
 
+    @Test
+    void givenUnchangedStock_whenGetAvailableProductsAgain_thenReturnCachedProductsWithoutCheckingStock()
+    {
+        // given
+        when(mockProductStock.getVersion()).thenReturn(1L);
+        when(mockProductStock.hasItem(ArgumentMatchers.any(Product.class))).thenReturn(true);
+        final List<Product> expectedProducts = productManager.getAvailableProducts();
+
+        // when
+        final List<Product> result = productManager.getAvailableProducts();
+
+        // then
+        assertSame(expectedProducts, result);
+        verify(mockProductStock, times(Beverage.getValidBeverages().length)).hasItem(any(Product.class));
+    }
+
+    @Test
+    void givenStockChangedWithSameAvailability_whenGetAvailableProductsAgain_thenReturnSameProducts()
+    {
+        // given
+        when(mockProductStock.getVersion()).thenReturn(1L, 2L);
+        when(mockProductStock.hasItem(ArgumentMatchers.any(Product.class))).thenReturn(true);
+        final List<Product> expectedProducts = productManager.getAvailableProducts();
+
+        // when
+        final List<Product> result = productManager.getAvailableProducts();
+
+        // then
+        assertSame(expectedProducts, result);
+    }
+
+    @Test
+    void givenStockChangedWithDifferentAvailability_whenGetAvailableProductsAgain_thenReturnUpdatedProducts()
+    {
+        // given
+        final List<Product> expectedProducts = Arrays.asList(Beverage.COKE, Beverage.WATER);
+        when(mockProductStock.getVersion()).thenReturn(1L, 2L);
+        when(mockProductStock.hasItem(ArgumentMatchers.any(Product.class))).thenReturn(true);
+        when(mockProductStock.hasItem(Beverage.SPRITE)).thenReturn(true, false);
+        productManager.getAvailableProducts();
+
+        // when
+        final List<Product> result = productManager.getAvailableProducts();
+
+        // then
+        assertThat(result, is(expectedProducts));
+        assertThrows(UnsupportedOperationException.class, () -> result.add(Beverage.SPRITE));
+    }
+
     // insertProductItemsInStock
     // - null or empty map
     @Test
@@ -251,6 +301,35 @@ class ProductManagerTest
         verify(mockProductStock, times(1)).deleteItem(mockProduct);
     }
 
+    // takeProductItemFromStock
+    // - product in stock
+    @Test
+    void givenProductInStock_whenTakeProductFromStock_thenExpectTakeProductFromStock()
+    {
+        // given
+        final Product mockProduct = Beverage.WATER;
+        when(mockProductStock.tryTake(mockProduct, 1)).thenReturn(true);
+
+        // when + then
+        assertDoesNotThrow(() -> productManager.takeProductItemFromStock(mockProduct));
+        verify(mockProductStock, times(1)).tryTake(mockProduct, 1);
+    }
+
+    // - product not in stock
+    @Test
+    void givenProductNotInStock_whenTakeProductFromStock_thenThrowSpecificException()
+    {
+        // given
+        final Product mockProduct = Beverage.WATER;
+        when(mockProductStock.tryTake(mockProduct, 1)).thenReturn(false);
+        final String expectedMsg = "Product " + mockProduct.getName() + " is not available in stock.";
+
+        // when + then
+        final ProductManagerException thrown =
+            assertThrows(ProductManagerException.class, () -> productManager.takeProductItemFromStock(mockProduct));
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+
     // getPriceOfSelectedProduct
     // - selected product ok -- return price
     @Test
@@ -0,0 +1,80 @@
+package com.dexma.hometest.codec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * VarIntsTest class - VarInts test class.
+ */
+class VarIntsTest
+{
+    private static final long[] VALUES = {0L, 1L, -1L, 127L, 128L, -64L, 300L, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    void givenNumbers_whenPutAndGetZigZag_thenReturnTheSameNumbers()
+    {
+        // given
+        final ByteBuffer buffer = ByteBuffer.allocate(VALUES.length * VarInts.MAX_VAR_LONG_SIZE);
+        for (final long value : VALUES)
+        {
+            VarInts.putZigZag(buffer, value);
+        }
+        buffer.flip();
+
+        // when + then
+        for (final long value : VALUES)
+        {
+            assertEquals(value, VarInts.getZigZag(buffer));
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    void givenSmallNumbers_whenPutVarLong_thenTakeOneByte()
+    {
+        // given
+        final ByteBuffer buffer = ByteBuffer.allocate(VarInts.MAX_VAR_LONG_SIZE);
+
+        // when
+        VarInts.putVarLong(buffer, 127L);
+        VarInts.putZigZag(buffer, -64L);
+
+        // then
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    void givenNegativeNumber_whenPutVarLong_thenTakeMaximumSize()
+    {
+        // given
+        final ByteBuffer buffer = ByteBuffer.allocate(VarInts.MAX_VAR_LONG_SIZE);
+
+        // when
+        VarInts.putVarLong(buffer, -1L);
+        buffer.flip();
+
+        // then
+        assertEquals(VarInts.MAX_VAR_LONG_SIZE, buffer.remaining());
+        assertEquals(-1L, VarInts.getVarLong(buffer));
+    }
+
+    @Test
+    void givenTooManyContinuationBytes_whenGetVarLong_thenThrowException()
+    {
+        // given
+        final ByteBuffer buffer = ByteBuffer.allocate(VarInts.MAX_VAR_LONG_SIZE + 1);
+        while (buffer.hasRemaining())
+        {
+            buffer.put((byte) 0x80);
+        }
+        buffer.flip();
+
+        // when + then
+        assertThrows(IllegalArgumentException.class, () -> VarInts.getVarLong(buffer));
+    }
+}
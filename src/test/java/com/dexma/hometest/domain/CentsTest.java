@@ -0,0 +1,63 @@
+package com.dexma.hometest.domain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * CentsTest class - Test Cents class.
+ */
+class CentsTest
+{
+    // test convert to cents - ok
+    @Test
+    void givenValidAmounts_whenToCents_returnCorrectValue()
+    {
+        assertEquals(0L, Cents.toCents(BigDecimal.ZERO));
+        assertEquals(5L, Cents.toCents(BigDecimal.valueOf(0.05)));
+        assertEquals(60L, Cents.toCents(BigDecimal.valueOf(0.60)));
+        assertEquals(150L, Cents.toCents(BigDecimal.valueOf(1.5)));
+        assertEquals(200L, Cents.toCents(BigDecimal.valueOf(2)));
+        assertEquals(130L, Cents.toCents(new BigDecimal("1.3000")));
+    }
+
+    // test convert to cents - amounts out of the fast path
+    @Test
+    void givenLargeOrScaledAmounts_whenToCents_returnCorrectValue()
+    {
+        assertEquals(123_456_789_012_345_678L, Cents.toCents(new BigDecimal("1234567890123456.78")));
+        assertEquals(99_999_999_999_999L, Cents.toCents(new BigDecimal("999999999999.99")));
+        assertEquals(1_000L, Cents.toCents(new BigDecimal("1E+1")));
+        assertEquals(Cents.INVALID, Cents.toCents(new BigDecimal("1.0000000000000001")));
+    }
+
+    // test cents of a cash item without them cached
+    @Test
+    void givenCashWithoutCachedCents_whenGetCents_returnCentsOfItsValue()
+    {
+        final Cash cash = () -> new BigDecimal("0.25");
+
+        assertEquals(25, cash.getCents());
+    }
+
+    // test convert to cents - nok
+    @Test
+    void givenInvalidAmounts_whenToCents_returnInvalidValue()
+    {
+        assertEquals(Cents.INVALID, Cents.toCents(null));
+        assertEquals(Cents.INVALID, Cents.toCents(BigDecimal.valueOf(-1.5)));
+        assertEquals(Cents.INVALID, Cents.toCents(new BigDecimal("0.155")));
+    }
+
+    // test convert from cents
+    @Test
+    void givenCents_whenFromCents_returnCorrectValue()
+    {
+        assertEquals(BigDecimal.valueOf(0.05), Cents.fromCents(5));
+        assertEquals(BigDecimal.valueOf(0.9), Cents.fromCents(90));
+        assertEquals(BigDecimal.valueOf(2), Cents.fromCents(200));
+    }
+}
@@ -26,6 +26,18 @@ class CoinTest
         assertEquals(BigDecimal.valueOf(2), Coin.TWO.getValue());
     }
 
+    // test get value in cents
+    @Test
+    void givenEnumValues_whenGetCents_returnCorrectValue()
+    {
+        assertEquals(5, Coin.FIVE_CENTS.getCents());
+        assertEquals(10, Coin.TEN_CENTS.getCents());
+        assertEquals(20, Coin.TWENTY_CENTS.getCents());
+        assertEquals(50, Coin.FIFTY_CENTS.getCents());
+        assertEquals(100, Coin.ONE.getCents());
+        assertEquals(200, Coin.TWO.getCents());
+    }
+
     // test get valid values
     @Test
     void givenEnumValues_whenGetValidCoins_returnCorrectValue()
@@ -0,0 +1,179 @@
+package com.dexma.hometest.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.collection.IsMapContaining;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ *
+ */
+class ConcurrentStockTest
+{
+    private static final int MOCK_QUANTITY = 2;
+    private static final int THREADS = 8;
+
+    private static ConcurrentStock<Product> MOCK_STOCK;
+
+    @BeforeEach
+    void setUp()
+    {
+        MOCK_STOCK = ConcurrentStock.forProducts();
+        MOCK_STOCK.insertItem(Beverage.WATER, MOCK_QUANTITY);
+    }
+
+    // tryTake - enough items
+    @Test
+    void givenEnoughItems_whenTryTake_thenRemoveItems()
+    {
+        // given
+        final long previousVersion = MOCK_STOCK.getVersion();
+
+        // when
+        final boolean result = MOCK_STOCK.tryTake(Beverage.WATER, MOCK_QUANTITY);
+
+        // then
+        assertTrue(result);
+        assertFalse(MOCK_STOCK.hasItem(Beverage.WATER));
+        assertTrue(MOCK_STOCK.getVersion() > previousVersion);
+    }
+
+    // tryTake - not enough items
+    @Test
+    void givenNotEnoughItems_whenTryTake_thenStockUnchanged()
+    {
+        // given
+        final long expectedVersion = MOCK_STOCK.getVersion();
+
+        // when
+        final boolean result = MOCK_STOCK.tryTake(Beverage.WATER, MOCK_QUANTITY + 1);
+
+        // then
+        assertFalse(result);
+        assertEquals(MOCK_QUANTITY, MOCK_STOCK.getQuantity(Beverage.WATER));
+        assertEquals(expectedVersion, MOCK_STOCK.getVersion());
+    }
+
+    // tryTake - item never inserted
+    @Test
+    void givenItemNotInStock_whenTryTake_thenReturnFalse()
+    {
+        // given
+
+        // when
+        final boolean result = MOCK_STOCK.tryTake(Beverage.COKE, 1);
+
+        // then
+        assertFalse(result);
+        assertFalse(MOCK_STOCK.getStockMap().containsKey(Beverage.COKE));
+    }
+
+    // getStockMap - same contents as a hash map stock
+    @Test
+    void givenSameOperations_whenGetStockMap_thenEqualToHashMapStock()
+    {
+        // given
+        final Stock<Product> mockHashStock = new Stock<>(new HashMap<>());
+        mockHashStock.insertItem(Beverage.WATER, MOCK_QUANTITY);
+        mockHashStock.deleteItem(Beverage.WATER);
+        mockHashStock.deleteItem(Beverage.COKE, 1);
+        MOCK_STOCK.deleteItem(Beverage.WATER);
+        MOCK_STOCK.deleteItem(Beverage.COKE, 1);
+
+        // when + then
+        assertEquals(mockHashStock.getStockMap(), MOCK_STOCK.getStockMap());
+        assertThat(MOCK_STOCK.getStockMap(), IsMapContaining.hasEntry(Beverage.COKE, 0));
+        assertThat(MOCK_STOCK.getStockMap(), IsMapContaining.hasEntry(Beverage.WATER, 1));
+    }
+
+    // tryTake - concurrent callers never oversell
+    @Test
+    void givenConcurrentCallers_whenTryTake_thenTakeExactlyTheItemsInStock() throws Exception
+    {
+        // given
+        final int itemsInStock = 10_000;
+        final ConcurrentStock<Product> mockStock = ConcurrentStock.forProducts();
+        mockStock.insertItem(Beverage.COKE, itemsInStock);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Integer>> results = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++)
+        {
+            results.add(executor.submit(() ->
+            {
+                start.await();
+                int taken = 0;
+                while (mockStock.tryTake(Beverage.COKE, 1))
+                {
+                    taken++;
+                }
+                return taken;
+            }));
+        }
+        start.countDown();
+        int totalTaken = 0;
+        for (final Future<Integer> result : results)
+        {
+            totalTaken += result.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(itemsInStock, totalTaken);
+        assertThat(mockStock.getQuantity(Beverage.COKE), is(0));
+    }
+
+    // getSnapshot - copied while another thread changes the stock
+    @Test
+    void givenStockChangedByAnotherThread_whenGetSnapshot_thenContentsMatchVersion() throws Exception
+    {
+        // given
+        final ConcurrentStock<Cash> stock = ConcurrentStock.forCash();
+        final int writes = 200_000;
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // when: ONE and TWO are inserted in turns, so each version has known contents
+            final Future<?> writer = executor.submit(() ->
+            {
+                for (int i = 0; i < writes; i++)
+                {
+                    stock.insertItem(i % 2 == 0 ? Coin.ONE : Coin.TWO, 1);
+                }
+            });
+
+            // then
+            while (!writer.isDone())
+            {
+                final StockSnapshot<Cash> snapshot = stock.getSnapshot();
+                final long version = snapshot.getVersion();
+                assertEquals((version + 1) / 2, snapshot.getQuantity(Coin.ONE), snapshot.toString());
+                assertEquals(version / 2, snapshot.getQuantity(Coin.TWO), snapshot.toString());
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            assertEquals(writes, stock.getSnapshot().getVersion());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
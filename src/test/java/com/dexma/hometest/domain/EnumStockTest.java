@@ -0,0 +1,192 @@
+package com.dexma.hometest.domain;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.collection.IsMapContaining;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ *
+ */
+class EnumStockTest
+{
+    private static final int MOCK_QUANTITY1 = 1;
+    private static final int MOCK_QUANTITY2 = 2;
+
+    private static EnumStock<Cash> MOCK_STOCK;
+
+    @BeforeEach
+    void setUp()
+    {
+        MOCK_STOCK = EnumStock.forCash();
+        MOCK_STOCK.insertItem(Coin.FIVE_CENTS, MOCK_QUANTITY1);
+        MOCK_STOCK.insertItem(Coin.ONE, MOCK_QUANTITY2);
+    }
+
+    // constructor - invalid items
+    @Test
+    void givenItemsNotInOrdinalOrder_whenCreateEnumStock_thenThrowIllegalArgumentException()
+    {
+        // given
+        final Cash[] mockItems = {Coin.ONE, Coin.FIVE_CENTS};
+
+        // when + then
+        assertThrows(IllegalArgumentException.class, () -> new EnumStock<>(mockItems));
+    }
+
+    // insertItem - ok
+    @Test
+    void givenExistentItem_whenInsertItem_thenIncreaseQuantity()
+    {
+        // given
+        final int expectedQuantity = MOCK_QUANTITY2 + 1;
+
+        // when
+        MOCK_STOCK.insertItem(Coin.ONE);
+
+        // then
+        assertEquals(expectedQuantity, MOCK_STOCK.getQuantity(Coin.ONE));
+        assertThat(MOCK_STOCK.getStockMap(), IsMapContaining.hasEntry(Coin.ONE, expectedQuantity));
+    }
+
+    // insertItem - unknown item
+    @Test
+    void givenItemOfAnotherEnum_whenInsertItem_thenThrowIllegalArgumentException()
+    {
+        // given
+        final EnumStock<Object> mockStock = new EnumStock<>(Coin.getValidCoins());
+
+        // when + then
+        assertThrows(IllegalArgumentException.class, () -> mockStock.insertItem(Beverage.WATER));
+    }
+
+    // deleteItem - ok
+    @Test
+    void givenExistentItem_whenDeleteItem_thenDecreaseQuantity()
+    {
+        // given
+
+        // when
+        MOCK_STOCK.deleteItem(Coin.ONE);
+
+        // then
+        assertEquals(MOCK_QUANTITY1, MOCK_STOCK.getQuantity(Coin.ONE));
+    }
+
+    // deleteItem - nonexistent item
+    @Test
+    void givenNonexistentItem_whenDeleteItem_thenStockUnchanged()
+    {
+        // given
+        final long expectedVersion = MOCK_STOCK.getVersion();
+
+        // when
+        MOCK_STOCK.deleteItem(Coin.TWO);
+
+        // then
+        assertFalse(MOCK_STOCK.getStockMap().containsKey(Coin.TWO));
+        assertEquals(expectedVersion, MOCK_STOCK.getVersion());
+    }
+
+    // deleteItem with quantity - more than available
+    @Test
+    void givenQuantityHigherThanAvailable_whenDeleteItem_thenQuantityIsZero()
+    {
+        // given
+
+        // when
+        MOCK_STOCK.deleteItem(Coin.ONE, MOCK_QUANTITY2 + 1);
+
+        // then
+        assertFalse(MOCK_STOCK.hasItem(Coin.ONE));
+        assertThat(MOCK_STOCK.getStockMap(), IsMapContaining.hasEntry(Coin.ONE, 0));
+    }
+
+    // getStockMap - same contents as a hash map stock
+    @Test
+    void givenSameOperations_whenGetStockMap_thenEqualToHashMapStock()
+    {
+        // given
+        final Stock<Cash> mockHashStock = new Stock<>(new HashMap<>());
+        mockHashStock.insertItem(Coin.FIVE_CENTS, MOCK_QUANTITY1);
+        mockHashStock.insertItem(Coin.ONE, MOCK_QUANTITY2);
+        mockHashStock.deleteItem(Coin.FIVE_CENTS, MOCK_QUANTITY2);
+        MOCK_STOCK.deleteItem(Coin.FIVE_CENTS, MOCK_QUANTITY2);
+
+        // when
+        final Map<Cash, Integer> result = MOCK_STOCK.getStockMap();
+
+        // then
+        assertThat(result.size(), is(2));
+        assertEquals(mockHashStock.getStockMap(), result);
+        assertEquals(result, mockHashStock.getStockMap());
+        assertEquals(mockHashStock.getStockMap().hashCode(), result.hashCode());
+    }
+
+    // getStockMap - empty stock
+    @Test
+    void givenNewStock_whenGetStockMap_thenReturnEmptyMap()
+    {
+        // given
+        final EnumStock<Product> mockStock = EnumStock.forProducts();
+
+        // when
+        final Map<Product, Integer> result = mockStock.getStockMap();
+
+        // then
+        assertTrue(result.isEmpty());
+        assertNull(result.get(Beverage.WATER));
+        assertFalse(mockStock.hasItem(Beverage.WATER));
+    }
+
+    // getSnapshot - copied while another thread changes the stock
+    @Test
+    void givenStockChangedByAnotherThread_whenGetSnapshot_thenContentsMatchVersion() throws Exception
+    {
+        // given
+        final EnumStock<Cash> stock = EnumStock.forCash();
+        final int writes = 200_000;
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // when: ONE and TWO are inserted in turns, so each version has known contents
+            final Future<?> writer = executor.submit(() ->
+            {
+                for (int i = 0; i < writes; i++)
+                {
+                    stock.insertItem(i % 2 == 0 ? Coin.ONE : Coin.TWO, 1);
+                }
+            });
+
+            // then
+            while (!writer.isDone())
+            {
+                final StockSnapshot<Cash> snapshot = stock.getSnapshot();
+                final long version = snapshot.getVersion();
+                assertEquals((version + 1) / 2, snapshot.getQuantity(Coin.ONE), snapshot.toString());
+                assertEquals(version / 2, snapshot.getQuantity(Coin.TWO), snapshot.toString());
+            }
+            writer.get(10, TimeUnit.SECONDS);
+            assertEquals(writes, stock.getSnapshot().getVersion());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.dexma.hometest.domain;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * MappedStockRegionTest class - MappedStockRegion and StockRegionReader test class.
+ */
+class MappedStockRegionTest
+{
+    private static final int TOTAL_PRODUCTS = 1_000;
+    private static final int WRITES = 20_000;
+
+    private Path file;
+    private Map<Product, Integer> productStock;
+    private Map<Cash, Integer> cashStock;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        this.file = Files.createTempFile("stock", ".region");
+        this.productStock = new ConcurrentHashMap<>();
+        this.cashStock = new ConcurrentHashMap<>();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    void givenStock_whenCreateRegion_thenReaderReadsItsCounters() throws IOException
+    {
+        // given
+        productStock.put(Beverage.SPRITE, 3);
+        cashStock.put(Coin.TEN_CENTS, 7);
+        cashStock.put(Coin.TWO, 1);
+        final int[] products = new int[Beverage.getValidBeverages().length];
+        final int[] cash = new int[Coin.getValidCoins().length];
+
+        // when
+        try (MappedStockRegion region = MappedStockRegion.create(file, productStock, cashStock);
+             StockRegionReader reader = StockRegionReader.open(file))
+        {
+            final long sequence = reader.read(products, cash);
+
+            // then
+            assertEquals(region.getSequence(), sequence);
+            assertEquals(Beverage.getValidBeverages().length, reader.getNumberOfProducts());
+            assertEquals(Coin.getValidCoins().length, reader.getNumberOfCashItems());
+            assertArrayEquals(new int[] {0, 3, 0}, products);
+            assertArrayEquals(new int[] {0, 7, 0, 0, 0, 1}, cash);
+        }
+    }
+
+    @Test
+    void givenChangedStock_whenUpdate_thenReaderReadsNewCounters() throws IOException
+    {
+        // given
+        final int[] products = new int[Beverage.getValidBeverages().length];
+        final int[] cash = new int[Coin.getValidCoins().length];
+        try (MappedStockRegion region = MappedStockRegion.create(file, productStock, cashStock);
+             StockRegionReader reader = StockRegionReader.open(file))
+        {
+            final long sequence = reader.read(products, cash);
+            productStock.put(Beverage.WATER, 2);
+
+            // when
+            region.update();
+
+            // then
+            assertEquals(sequence + 2, reader.read(products, cash));
+            assertEquals(2, products[Beverage.WATER.ordinal()]);
+        }
+    }
+
+    // seqlock
+    @Test
+    void givenConcurrentUpdates_whenRead_thenNeverSeeHalfWrittenCounters() throws Exception
+    {
+        // given
+        productStock.put(Beverage.COKE, TOTAL_PRODUCTS);
+        productStock.put(Beverage.WATER, 0);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (MappedStockRegion region = MappedStockRegion.create(file, productStock, cashStock);
+             StockRegionReader reader = StockRegionReader.open(file))
+        {
+            // when
+            final Future<?> writer = executor.submit(() ->
+            {
+                for (int i = 1; i <= WRITES; i++)
+                {
+                    final int moved = i % TOTAL_PRODUCTS;
+                    productStock.put(Beverage.COKE, TOTAL_PRODUCTS - moved);
+                    productStock.put(Beverage.WATER, moved);
+                    region.update();
+                }
+            });
+
+            // then
+            final int[] products = new int[Beverage.getValidBeverages().length];
+            final int[] cash = new int[Coin.getValidCoins().length];
+            long previousSequence = 0;
+            while (!writer.isDone())
+            {
+                final long sequence = reader.read(products, cash);
+                assertEquals(0, sequence & 1);
+                assertTrue(sequence >= previousSequence);
+                assertEquals(TOTAL_PRODUCTS, products[Beverage.COKE.ordinal()] + products[Beverage.WATER.ordinal()]);
+                previousSequence = sequence;
+            }
+            writer.get();
+            assertEquals(2 * (WRITES + 1), reader.read(products, cash));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenFileWithoutRegion_whenOpenReader_thenThrowException() throws IOException
+    {
+        // given
+        Files.write(file, new byte[] {1, 2, 3});
+
+        // when + then
+        assertThrows(IOException.class, () -> StockRegionReader.open(file));
+    }
+}
@@ -4,7 +4,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashMap;
@@ -254,4 +257,126 @@ class StockTest
         assertThat(stockMap, IsMapContaining.hasEntry(MOCK_ITEM1, MOCK_QUANTITY1));
         assertThat(stockMap, IsMapContaining.hasEntry(MOCK_ITEM2, MOCK_QUANTITY2));
     }
+
+    // getVersion - ok
+    @Test
+    void givenStock_whenInsertOrDeleteItems_thenExpectVersionIncremented()
+    {
+        // given
+        final long initialVersion = MOCK_STOCK.getVersion();
+
+        // when
+        MOCK_STOCK.insertItem(MOCK_ITEM1);
+        MOCK_STOCK.insertItem(MOCK_ITEM2, MOCK_QUANTITY2);
+        MOCK_STOCK.deleteItem(MOCK_ITEM1);
+        MOCK_STOCK.deleteItem(MOCK_ITEM2, MOCK_QUANTITY1);
+
+        // then
+        assertEquals(initialVersion + 4, MOCK_STOCK.getVersion());
+    }
+
+    @Test
+    void givenStock_whenReadItems_thenExpectSameVersion()
+    {
+        // given
+        final long initialVersion = MOCK_STOCK.getVersion();
+
+        // when
+        MOCK_STOCK.hasItem(MOCK_ITEM1);
+        MOCK_STOCK.getItem(MOCK_ITEM2);
+        MOCK_STOCK.deleteItem(MOCK_UNKNOWN_ITEM);
+
+        // then
+        assertEquals(initialVersion, MOCK_STOCK.getVersion());
+    }
+
+    // tryTake
+    @Test
+    void givenEnoughItems_whenTryTake_thenRemoveItems()
+    {
+        // given
+
+        // when
+        final boolean result = MOCK_STOCK.tryTake(MOCK_ITEM2, MOCK_QUANTITY2);
+
+        // then
+        assertTrue(result);
+        assertFalse(MOCK_STOCK.hasItem(MOCK_ITEM2));
+    }
+
+    @Test
+    void givenNotEnoughItems_whenTryTake_thenStockUnchanged()
+    {
+        // given
+        final long expectedVersion = MOCK_STOCK.getVersion();
+
+        // when
+        final boolean result = MOCK_STOCK.tryTake(MOCK_ITEM1, MOCK_QUANTITY2);
+
+        // then
+        assertFalse(result);
+        assertThat(MOCK_STOCK.getStockMap(), IsMapContaining.hasEntry(MOCK_ITEM1, MOCK_QUANTITY1));
+        assertEquals(expectedVersion, MOCK_STOCK.getVersion());
+    }
+
+    // getSnapshot
+    @Test
+    void givenUnchangedStock_whenGetSnapshot_thenReturnSameSnapshot()
+    {
+        // given
+        final StockSnapshot<String> expectedSnapshot = MOCK_STOCK.getSnapshot();
+
+        // when
+        MOCK_STOCK.hasItem(MOCK_ITEM1);
+        final StockSnapshot<String> result = MOCK_STOCK.getSnapshot();
+
+        // then
+        assertSame(expectedSnapshot, result);
+        assertEquals(MOCK_STOCK.getVersion(), result.getVersion());
+        assertThat(result.getStockMap(), is(generateStockMap()));
+    }
+
+    @Test
+    void givenChangedStock_whenGetSnapshot_thenPreviousSnapshotIsUnchanged()
+    {
+        // given
+        final StockSnapshot<String> previousSnapshot = MOCK_STOCK.getSnapshot();
+
+        // when
+        MOCK_STOCK.insertItem(MOCK_ITEM3);
+        final StockSnapshot<String> result = MOCK_STOCK.getSnapshot();
+
+        // then
+        assertNotSame(previousSnapshot, result);
+        assertThat(previousSnapshot.getVersion() < result.getVersion(), is(true));
+        assertFalse(previousSnapshot.getStockMap().containsKey(MOCK_ITEM3));
+        assertEquals(1, result.getQuantity(MOCK_ITEM3));
+        assertEquals(0, previousSnapshot.getQuantity(MOCK_ITEM3));
+    }
+
+    @Test
+    void givenChangedStock_whenGetSnapshot_thenReturnSnapshotPublishedByTheChange()
+    {
+        // given
+        MOCK_STOCK.insertItem(MOCK_ITEM3);
+
+        // when: the map is changed behind the stock, so no snapshot is published
+        MOCK_STOCK.getStockMap().put(MOCK_UNKNOWN_ITEM, MOCK_QUANTITY1);
+        final StockSnapshot<String> result = MOCK_STOCK.getSnapshot();
+
+        // then: the map wasn't copied on read
+        assertEquals(MOCK_STOCK.getVersion(), result.getVersion());
+        assertEquals(1, result.getQuantity(MOCK_ITEM3));
+        assertFalse(result.getStockMap().containsKey(MOCK_UNKNOWN_ITEM));
+    }
+
+    @Test
+    void givenSnapshot_whenModifyStockMap_thenThrowUnsupportedOperationException()
+    {
+        // given
+        final Map<String, Integer> stockMap = MOCK_STOCK.getSnapshot().getStockMap();
+
+        // when + then
+        assertThrows(UnsupportedOperationException.class, () -> stockMap.put(MOCK_ITEM3, MOCK_QUANTITY1));
+    }
 }
@@ -0,0 +1,179 @@
+package com.dexma.hometest.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.business.CashManager;
+import com.dexma.hometest.business.ChangeProcessorFactory;
+import com.dexma.hometest.business.ChangeStrategy;
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.ConcurrentStock;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.domain.Stock;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+
+/**
+ * VendingMachineEventsTest class - VendingMachineEvents test class.
+ */
+class VendingMachineEventsTest
+{
+    private List<VendingMachineEvent> events;
+    private CashManager cashManager;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.events = Collections.synchronizedList(new ArrayList<>());
+        final Stock<Cash> cashStock = new Stock<>(new HashMap<>());
+        this.cashManager = new CashManager(cashStock, new ChangeProcessorFactory(ChangeStrategy.OPTIMAL));
+        cashManager.insertCashItemsInStock(Collections.singletonMap(Coin.TEN_CENTS, 3));
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        VendingMachineEvents.stopRecording();
+    }
+
+    @Test
+    void givenNotRecording_whenCalculateChange_thenRecordNothing()
+    {
+        // given
+        VendingMachineEvents.startRecording(events::add);
+        VendingMachineEvents.stopRecording();
+
+        // when
+        cashManager.getCashItemsForChange(new BigDecimal("0.20"));
+
+        // then
+        assertFalse(VendingMachineEvents.isRecording());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void givenRecording_whenCalculateChange_thenRecordAmountStrategyCoinsAndOutcome()
+    {
+        // given
+        VendingMachineEvents.startRecording(events::add);
+
+        // when
+        cashManager.getCashItemsForChange(new BigDecimal("0.20"));
+        cashManager.getCashItemsForChange(new BigDecimal("0.50"));
+
+        // then
+        assertEquals(2, events.size());
+        final VendingMachineEvent change = events.get(0);
+        assertEquals(EventType.CHANGE, change.getType());
+        assertEquals(20, change.getAmountCents());
+        assertEquals(ChangeStrategy.OPTIMAL, change.getStrategy());
+        assertEquals(2, change.getCoins());
+        assertEquals(EventOutcome.COMPLETED, change.getOutcome());
+        assertNull(change.getProduct());
+        assertTrue(change.getDurationNanos() >= 0);
+        assertEquals(EventOutcome.NO_CHANGE, events.get(1).getOutcome());
+        assertEquals(0, events.get(1).getCoins());
+    }
+
+    @Test
+    void givenRecording_whenRefund_thenRecordRefundAfterItsChangeAndStockEvents()
+    {
+        // given
+        cashManager.receiveCash(Coin.TWENTY_CENTS);
+        VendingMachineEvents.startRecording(events::add);
+
+        // when
+        cashManager.calculateRefund();
+
+        // then: the change, the coin taken from the stock and the refund itself
+        assertEquals(3, events.size());
+        assertEquals(EventType.CHANGE, events.get(0).getType());
+        assertEquals(EventType.STOCK, events.get(1).getType());
+        assertEquals(-1, events.get(1).getCoins());
+        assertEquals(-20, events.get(1).getAmountCents());
+        final VendingMachineEvent refund = events.get(2);
+        assertEquals(EventType.REFUND, refund.getType());
+        assertEquals(20, refund.getAmountCents());
+        assertEquals(1, refund.getCoins());
+        assertEquals(EventOutcome.COMPLETED, refund.getOutcome());
+    }
+
+    @Test
+    void givenRecording_whenMutateStocks_thenRecordItemsAndQuantities()
+    {
+        // given
+        final ConcurrentStock<Product> productStock = ConcurrentStock.forProducts();
+        VendingMachineEvents.startRecording(events::add);
+
+        // when
+        productStock.insertItem(Beverage.COKE, 2);
+        productStock.tryTake(Beverage.COKE, 1);
+        productStock.tryTake(Beverage.COKE, 5);
+
+        // then: the failed take changed nothing
+        assertEquals(2, events.size());
+        assertEquals(Beverage.COKE, events.get(0).getProduct());
+        assertEquals(300, events.get(0).getAmountCents());
+        assertEquals(-150, events.get(1).getAmountCents());
+        assertEquals(0, events.get(1).getCoins());
+    }
+
+    @Test
+    void givenFlightRecording_whenCalculateChange_thenCommitChangeEvent() throws IOException
+    {
+        // given
+        final Path file = Files.createTempFile("events", ".jfr");
+        try
+        {
+            try (Recording recording = new Recording())
+            {
+                recording.enable("com.dexma.hometest.Change");
+                recording.start();
+                assertTrue(VendingMachineEvents.isRecording());
+
+                // when
+                cashManager.getCashItemsForChange(new BigDecimal("0.20"));
+                recording.stop();
+                recording.dump(file);
+            }
+
+            // then: committed to the flight recording only, as no recorder was started
+            final List<RecordedEvent> changes = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.dexma.hometest.Change"))
+                .collect(Collectors.toList());
+            assertEquals(1, changes.size());
+            final RecordedEvent change = changes.get(0);
+            assertFalse(change.getBoolean("refund"));
+            assertEquals(20, change.getLong("amountCents"));
+            assertEquals(ChangeStrategy.OPTIMAL.name(), change.getString("strategy"));
+            assertEquals(2, change.getInt("coins"));
+            assertEquals(EventOutcome.COMPLETED.name(), change.getString("outcome"));
+            assertTrue(events.isEmpty());
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+}
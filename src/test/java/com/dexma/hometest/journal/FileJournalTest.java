@@ -0,0 +1,326 @@
+package com.dexma.hometest.journal;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Beverage;
+import com.dexma.hometest.domain.Cash;
+import com.dexma.hometest.domain.Coin;
+import com.dexma.hometest.domain.Product;
+import com.dexma.hometest.error.JournalException;
+
+
+/**
+ * FileJournalTest class - FileJournal test class.
+ */
+class FileJournalTest
+{
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 200;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        this.directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private Map<Product, Integer> generateProductStockValues(final int quantity)
+    {
+        final Map<Product, Integer> values = new HashMap<>();
+        for (final Beverage beverage : Beverage.getValidBeverages())
+        {
+            values.put(beverage, quantity);
+        }
+        return values;
+    }
+
+    private void recordPurchases(final FileJournal journal)
+    {
+        journal.awaitDurable(journal.recordRefillProducts(generateProductStockValues(2)));
+        journal.awaitDurable(journal.recordRefillCash(Collections.singletonMap(Coin.TEN_CENTS, 3)));
+        // session 1 buys a water with change
+        journal.recordSelectProduct(1, Beverage.WATER);
+        journal.recordInsertCash(1, Coin.ONE);
+        journal.recordConfirmPurchase(1, Beverage.WATER, Collections.singletonMap(Coin.TEN_CENTS, 1));
+        // session 2 is left with a coke selected and 1.20 inserted
+        journal.recordSelectProduct(2, Beverage.COKE);
+        journal.recordInsertCash(2, Coin.ONE);
+        journal.recordInsertCash(2, Coin.TWENTY_CENTS);
+        // the machine customer gets a refund
+        journal.recordInsertCash(Journal.MACHINE_SESSION_ID, Coin.FIFTY_CENTS);
+        journal.awaitDurable(journal.recordRefund(Journal.MACHINE_SESSION_ID, Collections.singletonMap(Coin.FIFTY_CENTS, 1)));
+    }
+
+    @Test
+    void givenRecordedOperations_whenOpenJournal_thenRecoverStockAndOpenSessions()
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            recordPurchases(journal);
+        }
+
+        // when
+        final JournalState state;
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            state = journal.getRecoveredState();
+        }
+
+        // then
+        assertEquals(10, state.getLastSequence());
+        assertEquals(2, state.getLastSessionId());
+        assertThat(state.getProductStock().get(Beverage.WATER), is(1));
+        assertThat(state.getProductStock().get(Beverage.COKE), is(2));
+        final Map<Cash, Integer> expectedCashStock = new HashMap<>();
+        expectedCashStock.put(Coin.TEN_CENTS, 2);
+        expectedCashStock.put(Coin.TWENTY_CENTS, 1);
+        expectedCashStock.put(Coin.ONE, 2);
+        assertThat(state.getCashStock(), is(expectedCashStock));
+        assertEquals(1, state.getSessions().size());
+        final JournalState.RecoveredSession session = state.getSessions().iterator().next();
+        assertEquals(2, session.getId());
+        assertEquals(0, session.getCurrentBalance().compareTo(new BigDecimal("1.20")));
+        assertEquals(Beverage.COKE, session.getSelectedProduct());
+    }
+
+    @Test
+    void givenHalfWrittenRecord_whenOpenJournal_thenDiscardIt() throws IOException
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            recordPurchases(journal);
+        }
+        final Path segment = FileJournal.listSegments(directory).get(0);
+        final long size = Files.size(segment);
+        Files.write(segment, new byte[] {5, JournalCodec.INSERT_CASH, 3}, StandardOpenOption.APPEND);
+
+        // when
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            assertEquals(10, journal.getRecoveredState().getLastSequence());
+            assertEquals(size, Files.size(segment));
+            journal.awaitDurable(journal.recordInsertCash(3, Coin.TWO));
+        }
+
+        // then
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            assertEquals(11, journal.getRecoveredState().getLastSequence());
+            assertThat(journal.getRecoveredState().getCashStock().get(Coin.TWO), is(1));
+        }
+    }
+
+    @Test
+    void givenSmallSegments_whenRecordOperations_thenRecoverFromAllSegments() throws IOException
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                journal.awaitDurable(journal.recordInsertCash(i + 1, Coin.FIVE_CENTS));
+            }
+        }
+
+        // when
+        final JournalState state;
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            state = journal.getRecoveredState();
+        }
+
+        // then
+        assertTrue(FileJournal.listSegments(directory).size() > 1);
+        assertEquals(20, state.getLastSequence());
+        assertThat(state.getCashStock().get(Coin.FIVE_CENTS), is(20));
+        assertEquals(20, state.getSessions().size());
+    }
+
+    // group commit
+    @Test
+    void givenConcurrentRecords_whenAwaitDurable_thenRecoverAllOfThem() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        // when
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            for (int i = 0; i < THREADS; i++)
+            {
+                final long sessionId = i + 1;
+                futures.add(executor.submit(() ->
+                {
+                    for (int record = 0; record < RECORDS_PER_THREAD; record++)
+                    {
+                        final long sequence = journal.recordInsertCash(sessionId, Coin.TEN_CENTS);
+                        journal.awaitDurable(sequence);
+                        assertTrue(journal.getDurableSequence() >= sequence);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // then
+        try (FileJournal journal = FileJournal.open(directory))
+        {
+            final JournalState state = journal.getRecoveredState();
+            assertEquals(THREADS * RECORDS_PER_THREAD, state.getLastSequence());
+            assertThat(state.getCashStock().get(Coin.TEN_CENTS), is(THREADS * RECORDS_PER_THREAD));
+            for (final JournalState.RecoveredSession session : state.getSessions())
+            {
+                assertEquals(0, session.getCurrentBalance().compareTo(new BigDecimal(RECORDS_PER_THREAD / 10)));
+                assertNull(session.getSelectedProduct());
+            }
+        }
+    }
+
+    // snapshots
+    @Test
+    void givenSnapshot_whenOpenJournal_thenLoadSnapshotAndReplayRecordsAfterIt() throws IOException
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            recordPurchases(journal);
+            assertEquals(10, journal.snapshot());
+            journal.awaitDurable(journal.recordInsertCash(3, Coin.TWO));
+            journal.awaitDurable(journal.recordSelectProduct(3, Beverage.SPRITE));
+        }
+
+        // when
+        final JournalState state;
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            state = journal.getRecoveredState();
+        }
+
+        // then
+        assertEquals(1, JournalSnapshots.list(directory).size());
+        // the segments before the snapshot are deleted, but the one being written then (3 to 10) is left for the next one
+        assertEquals(2, FileJournal.listSegments(directory).size());
+        assertEquals(3, FileJournal.firstSequenceOf(FileJournal.listSegments(directory).get(0)));
+        assertEquals(12, state.getLastSequence());
+        assertEquals(3, state.getLastSessionId());
+        assertThat(state.getProductStock().get(Beverage.WATER), is(1));
+        assertThat(state.getCashStock().get(Coin.TWO), is(1));
+        assertThat(state.getCashStock().get(Coin.ONE), is(2));
+        assertEquals(2, state.getSessions().size());
+    }
+
+    @Test
+    void givenCorruptedSnapshot_whenOpenJournal_thenUseOlderSnapshot() throws IOException
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            recordPurchases(journal);
+            journal.snapshot();
+            journal.awaitDurable(journal.recordInsertCash(3, Coin.TWO));
+        }
+        // a newer snapshot left corrupted, while the segments after the first snapshot are still there
+        Files.write(directory.resolve("snapshot-00000000000000000011.bin"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        // when
+        final JournalState state;
+        try (FileJournal journal = FileJournal.open(directory, 16))
+        {
+            state = journal.getRecoveredState();
+        }
+
+        // then
+        assertEquals(11, state.getLastSequence());
+        assertThat(state.getCashStock().get(Coin.TWO), is(1));
+    }
+
+    @Test
+    void givenBackgroundSnapshots_whenRecordOperations_thenRecoverFromLatestSnapshot() throws Exception
+    {
+        // given
+        try (FileJournal journal = FileJournal.open(directory, 64))
+        {
+            journal.startSnapshots(5, TimeUnit.MILLISECONDS);
+
+            // when
+            for (int i = 0; i < 500; i++)
+            {
+                journal.awaitDurable(journal.recordInsertCash(i % 7 + 1, Coin.FIFTY_CENTS));
+            }
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (journal.snapshot() != 500 && System.nanoTime() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            assertNull(journal.getSnapshotFailure());
+        }
+
+        // then
+        try (FileJournal journal = FileJournal.open(directory, 64))
+        {
+            final JournalState state = journal.getRecoveredState();
+            assertEquals(500, state.getLastSequence());
+            assertThat(state.getCashStock().get(Coin.FIFTY_CENTS), is(500));
+            assertEquals(7, state.getSessions().size());
+        }
+        assertEquals(1, JournalSnapshots.list(directory).size());
+        assertTrue(FileJournal.listSegments(directory).size() <= 2);
+    }
+
+    @Test
+    void givenClosedJournal_whenRecordOperation_thenThrowSpecificException()
+    {
+        // given
+        final FileJournal journal = FileJournal.open(directory);
+        journal.close();
+        final String expectedMsg = "The journal is closed.";
+
+        // when + then
+        final JournalException thrown = assertThrows(JournalException.class, () -> journal.recordInsertCash(1, Coin.ONE));
+        assertEquals(expectedMsg, thrown.getMessage());
+    }
+}
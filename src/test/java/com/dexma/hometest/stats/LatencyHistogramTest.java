@@ -0,0 +1,130 @@
+package com.dexma.hometest.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * LatencyHistogramTest class - LatencyHistogram and LatencySnapshot test class.
+ */
+class LatencyHistogramTest
+{
+    private static final int THREADS = 4;
+    private static final int VALUES_PER_THREAD = 10_000;
+
+    private LatencyHistogram latencyHistogram;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.latencyHistogram = new LatencyHistogram();
+    }
+
+    @Test
+    void givenAnyValue_whenGetBucket_thenBucketContainsValueWithinPrecision()
+    {
+        for (long value = 1; value > 0 && value <= LatencyHistogram.MAX_TRACKABLE_NANOS; value = value * 3 / 2 + 1)
+        {
+            // when
+            final int bucket = LatencyHistogram.bucketIndex(value);
+
+            // then
+            assertTrue(LatencyHistogram.lowestValueOf(bucket) <= value);
+            assertTrue(LatencyHistogram.highestValueOf(bucket) >= value);
+            assertTrue(LatencyHistogram.highestValueOf(bucket) - value <= value / LatencyHistogram.SUB_BUCKETS);
+        }
+        assertEquals(LatencyHistogram.NUMBER_OF_BUCKETS - 1, LatencyHistogram.bucketIndex(LatencyHistogram.MAX_TRACKABLE_NANOS));
+    }
+
+    @Test
+    void givenRecordedValues_whenGetSnapshot_thenReturnPercentiles()
+    {
+        // given: 1 to 1000 microseconds
+        for (int i = 1; i <= 1_000; i++)
+        {
+            latencyHistogram.recordNanos(i * 1_000L);
+        }
+
+        // when
+        final LatencySnapshot snapshot = latencyHistogram.getSnapshot();
+
+        // then: within the precision of the buckets
+        assertEquals(1_000, snapshot.getCount());
+        assertWithinPrecision(500_000, snapshot.getValueAtPercentile(50.0));
+        assertWithinPrecision(990_000, snapshot.getValueAtPercentile(99.0));
+        assertWithinPrecision(1_000_000, snapshot.getMaxValue());
+        assertWithinPrecision(500_500, snapshot.getMean());
+    }
+
+    @Test
+    void givenOutOfRangeValues_whenRecord_thenClampThem()
+    {
+        // given
+        latencyHistogram.recordNanos(-5L);
+        latencyHistogram.recordNanos(Long.MAX_VALUE);
+
+        // when
+        final LatencySnapshot snapshot = latencyHistogram.getSnapshot();
+
+        // then
+        assertEquals(0, snapshot.getValueAtPercentile(50.0));
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, snapshot.getMaxValue());
+    }
+
+    @Test
+    void givenEmptyHistogram_whenGetSnapshot_thenReturnZeros()
+    {
+        // when
+        final LatencySnapshot snapshot = latencyHistogram.getSnapshot();
+
+        // then
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99.0));
+        assertEquals(0, snapshot.getMaxValue());
+        assertEquals(0.0, snapshot.getMean());
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getValueAtPercentile(101.0));
+    }
+
+    @Test
+    void givenConcurrentRecords_whenGetSnapshot_thenCountAllOfThem() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                for (int i = 0; i < VALUES_PER_THREAD; i++)
+                {
+                    latencyHistogram.recordNanos(i);
+                }
+            }));
+        }
+
+        // when
+        for (final Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        // then
+        assertEquals(THREADS * VALUES_PER_THREAD, latencyHistogram.getSnapshot().getCount());
+    }
+
+    private static void assertWithinPrecision(final double expected, final double actual)
+    {
+        assertTrue(Math.abs(expected - actual) <= expected / LatencyHistogram.SUB_BUCKETS, "expected ~" + expected + " but was " + actual);
+    }
+}
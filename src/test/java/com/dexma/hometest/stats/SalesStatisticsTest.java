@@ -0,0 +1,159 @@
+package com.dexma.hometest.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dexma.hometest.domain.Beverage;
+
+
+/**
+ * SalesStatisticsTest class - SalesStatistics test class.
+ */
+class SalesStatisticsTest
+{
+    private static final long START = TimeUnit.DAYS.toMillis(365);
+    private static final int THREADS = 4;
+    private static final int SALES_PER_THREAD = 10_000;
+
+    private AtomicLong now;
+    private SalesStatistics salesStatistics;
+
+    @BeforeEach
+    void setUp()
+    {
+        this.now = new AtomicLong(START);
+        this.salesStatistics = new SalesStatistics(now::get);
+    }
+
+    @Test
+    void givenSales_whenGetStatistics_thenCountSalesAndRevenueInEveryWindow()
+    {
+        // given
+        salesStatistics.recordSale(START, Beverage.COKE);
+        salesStatistics.recordSale(START, Beverage.WATER);
+        salesStatistics.recordSale(START + 500, Beverage.WATER);
+
+        // when + then
+        for (final SalesWindow window : SalesWindow.values())
+        {
+            assertEquals(3, salesStatistics.getSales(window));
+            assertEquals(1, salesStatistics.getSales(window, Beverage.COKE));
+            assertEquals(2, salesStatistics.getSales(window, Beverage.WATER));
+            assertEquals(0, salesStatistics.getSales(window, Beverage.SPRITE));
+            assertEquals(150 + 2 * 90, salesStatistics.getRevenueCents(window));
+        }
+    }
+
+    @Test
+    void givenOldSales_whenWindowRollsOver_thenOnlyCountSalesInsideEachWindow()
+    {
+        // given
+        salesStatistics.recordSale(START, Beverage.SPRITE);
+        now.set(START + TimeUnit.MINUTES.toMillis(30));
+        salesStatistics.recordSale(now.get(), Beverage.SPRITE);
+
+        // when
+        now.addAndGet(TimeUnit.MINUTES.toMillis(45));
+
+        // then
+        assertEquals(0, salesStatistics.getSales(SalesWindow.ONE_MINUTE));
+        assertEquals(1, salesStatistics.getSales(SalesWindow.ONE_HOUR));
+        assertEquals(2, salesStatistics.getSales(SalesWindow.ONE_DAY));
+        assertEquals(140, salesStatistics.getRevenueCents(SalesWindow.ONE_HOUR));
+    }
+
+    @Test
+    void givenReusedBucket_whenRecordSale_thenForgetOlderSalesOfThatBucket()
+    {
+        // given
+        salesStatistics.recordSale(START, Beverage.COKE);
+
+        // when: one minute later the same bucket of the minute window is used again
+        now.addAndGet(SalesWindow.ONE_MINUTE.getSpanMillis());
+        salesStatistics.recordSale(now.get(), Beverage.WATER);
+
+        // then
+        assertEquals(1, salesStatistics.getSales(SalesWindow.ONE_MINUTE));
+        assertEquals(0, salesStatistics.getSales(SalesWindow.ONE_MINUTE, Beverage.COKE));
+        assertEquals(2, salesStatistics.getSales(SalesWindow.ONE_HOUR));
+    }
+
+    @Test
+    void givenConcurrentSales_whenGetStatistics_thenCountAllOfThem() throws Exception
+    {
+        // given
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                for (int sale = 0; sale < SALES_PER_THREAD; sale++)
+                {
+                    // spread over several buckets of the minute window
+                    salesStatistics.recordSale(START + sale % 30 * 1_000L, Beverage.SPRITE);
+                }
+            }));
+        }
+        for (final Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        now.addAndGet(30_000L);
+
+        // then
+        assertEquals(THREADS * SALES_PER_THREAD, salesStatistics.getSales(SalesWindow.ONE_MINUTE, Beverage.SPRITE));
+        assertEquals(THREADS * SALES_PER_THREAD * 140L, salesStatistics.getRevenueCents(SalesWindow.ONE_DAY));
+    }
+
+    @Test
+    void givenConcurrentSalesAcrossReusedBucket_whenGetStatistics_thenNeverCountOlderSalesInNewerBucket() throws Exception
+    {
+        // given: the two times fall in the same slot of the minute window
+        final long newer = START + SalesWindow.ONE_MINUTE.getSpanMillis();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Integer>> futures = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < THREADS; i++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                int newerSales = 0;
+                for (int sale = 0; sale < SALES_PER_THREAD; sale++)
+                {
+                    final boolean isNewer = sale % 2 == 0;
+                    salesStatistics.recordSale(isNewer ? newer : START, Beverage.WATER);
+                    newerSales += isNewer ? 1 : 0;
+                }
+                return newerSales;
+            }));
+        }
+        int newerSales = 0;
+        for (final Future<Integer> future : futures)
+        {
+            newerSales += future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        now.set(newer);
+
+        // then: some older sales may have come first, before the bucket moved on, but they are out of the window
+        assertEquals(newerSales, salesStatistics.getSales(SalesWindow.ONE_MINUTE, Beverage.WATER));
+        assertEquals(newerSales * 90L, salesStatistics.getRevenueCents(SalesWindow.ONE_MINUTE));
+    }
+}